@@ -21,6 +21,7 @@ import static azkaban.Constants.ConfigurationKeys.METRICS_SERVER_URL;
 
 import azkaban.utils.Props;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.jvm.GarbageCollectorMetricSet;
@@ -78,6 +79,14 @@ public class MetricsManager {
     this.registry.register(name, (Gauge<T>) gaugeFunc::get);
   }
 
+  /**
+   * A {@link Histogram} measures the statistical distribution of values in a stream of data, e.g.
+   * how long an operation took each time it ran.
+   */
+  public void addHistogram(final String name, final Histogram histogram) {
+    this.registry.register(name, histogram);
+  }
+
   /**
    * reporting metrics to remote metrics collector. Note: this method must be synchronized, since
    * both web server and executor will call it during initialization.
@@ -17,24 +17,33 @@
 package azkaban.utils;
 
 import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
+import org.apache.log4j.Logger;
 import org.codehaus.jackson.JsonFactory;
-import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.ObjectWriter;
 
 public class JSONUtils {
 
+  private static final Logger logger = Logger.getLogger(JSONUtils.class);
+
+  // Both are thread safe once configured. Sharing them also shares the field name tables of the
+  // factory, which saves interning the same keys again for every document.
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final JsonFactory FACTORY = MAPPER.getJsonFactory();
+
   /**
    * The constructor. Cannot construct this class.
    */
@@ -46,14 +55,23 @@ public class JSONUtils {
   }
 
   public static String toJSON(final Object obj, final boolean prettyPrint) {
-    final ObjectMapper mapper = new ObjectMapper();
-
     try {
       if (prettyPrint) {
-        final ObjectWriter writer = mapper.writerWithDefaultPrettyPrinter();
+        final ObjectWriter writer = MAPPER.writerWithDefaultPrettyPrinter();
         return writer.writeValueAsString(obj);
       }
-      return mapper.writeValueAsString(obj);
+      return MAPPER.writeValueAsString(obj);
+    } catch (final Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Like {@link #toJSON(Object)}, but encoded as UTF-8 without going through a String.
+   */
+  public static byte[] toJSONBytes(final Object obj) {
+    try {
+      return MAPPER.writeValueAsBytes(obj);
     } catch (final Exception e) {
       throw new RuntimeException(e);
     }
@@ -65,14 +83,13 @@ public class JSONUtils {
 
   public static void toJSON(final Object obj, final OutputStream stream,
       final boolean prettyPrint) {
-    final ObjectMapper mapper = new ObjectMapper();
     try {
       if (prettyPrint) {
-        final ObjectWriter writer = mapper.writerWithDefaultPrettyPrinter();
+        final ObjectWriter writer = MAPPER.writerWithDefaultPrettyPrinter();
         writer.writeValue(stream, obj);
         return;
       }
-      mapper.writeValue(stream, obj);
+      MAPPER.writeValue(stream, obj);
     } catch (final Exception e) {
       throw new RuntimeException(e);
     }
@@ -103,73 +120,107 @@ public class JSONUtils {
   }
 
   public static Object parseJSONFromString(final String json) throws IOException {
-    final ObjectMapper mapper = new ObjectMapper();
-    final JsonFactory factory = new JsonFactory();
-    final JsonParser parser = factory.createJsonParser(json);
-    final JsonNode node = mapper.readTree(parser);
+    try (JsonParser parser = FACTORY.createJsonParser(json)) {
+      return parseValue(parser);
+    }
+  }
 
-    return toObjectFromJSONNode(node);
+  /**
+   * Parses the JSON into an instance of the class, with Jackson data binding.
+   */
+  public static <T> T parseJSONFromString(final String json, final Class<T> valueType)
+      throws IOException {
+    return MAPPER.readValue(json, valueType);
   }
 
-  public static Object parseJSONFromFile(final File file) throws IOException {
-    final ObjectMapper mapper = new ObjectMapper();
-    final JsonFactory factory = new JsonFactory();
-    final JsonParser parser = factory.createJsonParser(file);
-    final JsonNode node = mapper.readTree(parser);
+  /**
+   * Parses UTF-8 encoded JSON without decoding it into a String first.
+   */
+  public static Object parseJSONFromBytes(final byte[] json) throws IOException {
+    try (JsonParser parser = FACTORY.createJsonParser(json)) {
+      return parseValue(parser);
+    }
+  }
 
-    return toObjectFromJSONNode(node);
+  /**
+   * Parses the JSON value at the start of the stream. Doesn't close the stream.
+   */
+  public static Object parseJSONFromStream(final InputStream stream) throws IOException {
+    final JsonParser parser = FACTORY.createJsonParser(stream);
+    return parseValue(parser);
   }
 
-  public static Object parseJSONFromReader(final Reader reader) throws IOException {
-    final ObjectMapper mapper = new ObjectMapper();
-    final JsonFactory factory = new JsonFactory();
-    final JsonParser parser = factory.createJsonParser(reader);
-    final JsonNode node = mapper.readTree(parser);
+  public static Object parseJSONFromFile(final File file) throws IOException {
+    try (JsonParser parser = FACTORY.createJsonParser(file)) {
+      return parseValue(parser);
+    }
+  }
 
-    return toObjectFromJSONNode(node);
+  public static Object parseJSONFromReader(final Reader reader) throws IOException {
+    final JsonParser parser = FACTORY.createJsonParser(reader);
+    return parseValue(parser);
   }
 
-  private static Object toObjectFromJSONNode(final JsonNode node) {
-    if (node.isObject()) {
-      final HashMap<String, Object> obj = new HashMap<>();
-      final Iterator<String> iter = node.getFieldNames();
-      while (iter.hasNext()) {
-        final String fieldName = iter.next();
-        final JsonNode subNode = node.get(fieldName);
-        final Object subObj = toObjectFromJSONNode(subNode);
-        obj.put(fieldName, subObj);
-      }
+  /**
+   * Reads the next JSON value straight into HashMaps, ArrayLists, Strings, Integers, Longs,
+   * Doubles and Booleans, without building a tree of it first.
+   */
+  private static Object parseValue(final JsonParser parser) throws IOException {
+    final JsonToken token = parser.nextToken();
+    if (token == null) {
+      throw new EOFException("No JSON content");
+    }
+    return parseValue(parser, token);
+  }
 
-      return obj;
-    } else if (node.isArray()) {
-      final ArrayList<Object> array = new ArrayList<>();
-      final Iterator<JsonNode> iter = node.getElements();
-      while (iter.hasNext()) {
-        final JsonNode element = iter.next();
-        final Object subObject = toObjectFromJSONNode(element);
-        array.add(subObject);
-      }
-      return array;
-    } else if (node.isTextual()) {
-      return node.asText();
-    } else if (node.isNumber()) {
-      if (node.isInt()) {
-        return node.asInt();
-      } else if (node.isLong()) {
-        return node.asLong();
-      } else if (node.isDouble()) {
-        return node.asDouble();
-      } else {
-        System.err.println("ERROR What is this!? " + node.getNumberType());
+  private static Object parseValue(final JsonParser parser, final JsonToken token)
+      throws IOException {
+    switch (token) {
+      case START_OBJECT:
+        final HashMap<String, Object> obj = new HashMap<>();
+        while (nextToken(parser) != JsonToken.END_OBJECT) {
+          final String fieldName = parser.getCurrentName();
+          obj.put(fieldName, parseValue(parser, nextToken(parser)));
+        }
+        return obj;
+      case START_ARRAY:
+        final ArrayList<Object> array = new ArrayList<>();
+        JsonToken element;
+        while ((element = nextToken(parser)) != JsonToken.END_ARRAY) {
+          array.add(parseValue(parser, element));
+        }
+        return array;
+      case VALUE_STRING:
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+        switch (parser.getNumberType()) {
+          case INT:
+            return parser.getIntValue();
+          case LONG:
+            return parser.getLongValue();
+          default:
+            logger.error("Unsupported JSON integer, read as null: " + parser.getText());
+            return null;
+        }
+      case VALUE_NUMBER_FLOAT:
+        return parser.getDoubleValue();
+      case VALUE_TRUE:
+        return true;
+      case VALUE_FALSE:
+        return false;
+      default:
         return null;
-      }
-    } else if (node.isBoolean()) {
-      return node.asBoolean();
-    } else {
-      return null;
     }
   }
 
+  private static JsonToken nextToken(final JsonParser parser) throws IOException {
+    final JsonToken token = parser.nextToken();
+    if (token == null) {
+      throw new EOFException("Unexpected end of JSON content");
+    }
+    return token;
+  }
+
   public static long getLongFromObject(final Object obj) {
     if (obj instanceof Integer) {
       return Long.valueOf((Integer) obj);
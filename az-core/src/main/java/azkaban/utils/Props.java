@@ -26,6 +26,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -44,7 +45,9 @@ import org.apache.log4j.Logger;
  */
 public class Props {
 
-  private final Map<String, String> _current;
+  private Map<String, String> _current;
+  // Whether _current is shared with snapshots, so it must be copied before it's changed.
+  private boolean sharedCurrent = false;
   private Props _parent;
   private String source = null;
 
@@ -150,6 +153,39 @@ public class Props {
     return new Props(parent, vals);
   }
 
+  /**
+   * Returns all properties of this Props and its parents in a single Props without a parent, so
+   * that lookups don't walk the parent chain. Take a snapshot of a deep hierarchy that will only
+   * be read, many times over. Later changes to this Props or its parents don't show in the
+   * snapshot. A snapshot of an unchanged snapshot shares its map until either of them is changed.
+   */
+  public Props snapshot() {
+    final Map<String, String> flattened;
+    if (this._parent == null) {
+      // only a map that is already copied before it's changed is shared, so that this Props
+      // doesn't have to copy it on its next change
+      flattened = this.sharedCurrent ? this._current : new HashMap<>(this._current);
+    } else {
+      final List<Props> hierarchy = new ArrayList<>();
+      int size = 0;
+      for (Props curr = this; curr != null; curr = curr._parent) {
+        hierarchy.add(curr);
+        size += curr._current.size();
+      }
+      flattened = new HashMap<>((int) (size / 0.75f) + 1);
+      // from the earliest ancestor on, so that children override their parents
+      for (int i = hierarchy.size() - 1; i >= 0; i--) {
+        flattened.putAll(hierarchy.get(i)._current);
+      }
+    }
+
+    final Props snapshot = new Props();
+    snapshot._current = flattened;
+    snapshot.sharedCurrent = true;
+    snapshot.source = this.source;
+    return snapshot;
+  }
+
   /**
    * Clones the Props p object and all of its parents.
    */
@@ -203,7 +239,12 @@ public class Props {
    * Clear the current Props, but leaves the parent untouched.
    */
   public void clearLocal() {
-    this._current.clear();
+    if (this.sharedCurrent) {
+      this._current = new HashMap<>();
+      this.sharedCurrent = false;
+    } else {
+      this._current.clear();
+    }
   }
 
   /**
@@ -239,7 +280,7 @@ public class Props {
    * Get the key set from the current Props
    */
   public Set<String> localKeySet() {
-    return this._current.keySet();
+    return Collections.unmodifiableSet(this._current.keySet());
   }
 
   /**
@@ -263,7 +304,7 @@ public class Props {
    * this Props.
    */
   public String put(final String key, final String value) {
-    return this._current.put(key, value);
+    return writableCurrent().put(key, value);
   }
 
   /**
@@ -277,7 +318,7 @@ public class Props {
    */
   public void put(final Properties properties) {
     for (final String propName : properties.stringPropertyNames()) {
-      this._current.put(propName, properties.getProperty(propName));
+      writableCurrent().put(propName, properties.getProperty(propName));
     }
   }
 
@@ -285,21 +326,21 @@ public class Props {
    * Put integer
    */
   public String put(final String key, final Integer value) {
-    return this._current.put(key, value.toString());
+    return writableCurrent().put(key, value.toString());
   }
 
   /**
    * Put Long. Stores as String.
    */
   public String put(final String key, final Long value) {
-    return this._current.put(key, value.toString());
+    return writableCurrent().put(key, value.toString());
   }
 
   /**
    * Put Double. Stores as String.
    */
   public String put(final String key, final Double value) {
-    return this._current.put(key, value.toString());
+    return writableCurrent().put(key, value.toString());
   }
 
   /**
@@ -341,7 +382,15 @@ public class Props {
    * Remove only the local value of key s, and not the parents.
    */
   public String removeLocal(final Object s) {
-    return this._current.remove(s);
+    return writableCurrent().remove(s);
+  }
+
+  private Map<String, String> writableCurrent() {
+    if (this.sharedCurrent) {
+      this._current = new HashMap<>(this._current);
+      this.sharedCurrent = false;
+    }
+    return this._current;
   }
 
   /**
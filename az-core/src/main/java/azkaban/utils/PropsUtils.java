@@ -40,6 +40,13 @@ public class PropsUtils {
   private static final Logger logger = Logger.getLogger(PropsUtils.class);
   private static final Pattern VARIABLE_REPLACEMENT_PATTERN = Pattern
       .compile("\\$\\{([a-zA-Z_.0-9]+)\\}");
+  private static final int JEXL_CACHE_SIZE = 1024;
+  // Shared, so that an expression is parsed once rather than for every job that resolves it.
+  private static final JexlEngine JEXL_ENGINE = new JexlEngine();
+
+  static {
+    JEXL_ENGINE.setCache(JEXL_CACHE_SIZE);
+  }
 
   /**
    * Load job schedules from the given directories
@@ -147,25 +154,35 @@ public class PropsUtils {
     return matcher.matches();
   }
 
-  public static Props resolveProps(final Props props) {
-    if (props == null) {
+  public static Props resolveProps(final Props hierarchy) {
+    if (hierarchy == null) {
       return null;
     }
+    // Every key is looked up several times, so look them up without walking the parents.
+    final Props props = hierarchy.snapshot();
 
     final Props resolvedProps = new Props();
 
+    // Every variable is substituted once, however many values refer to it.
+    final Map<String, String> resolvedVariables = new HashMap<>();
     final LinkedHashSet<String> visitedVariables = new LinkedHashSet<>();
-    for (final String key : props.getKeySet()) {
+    for (final String key : props.localKeySet()) {
       String value = props.get(key);
       if (value == null) {
         logger.warn("Null value in props for key '" + key + "'. Replacing with empty string.");
         value = "";
       }
 
-      visitedVariables.add(key);
-      final String replacedValue =
-          resolveVariableReplacement(value, props, visitedVariables);
-      visitedVariables.clear();
+      String replacedValue = resolvedVariables.get(key);
+      if (replacedValue == null) {
+        visitedVariables.add(key);
+        replacedValue =
+            resolveVariableReplacement(value, props, visitedVariables, resolvedVariables);
+        visitedVariables.clear();
+        if (props.get(key) != null) {
+          resolvedVariables.put(key, replacedValue);
+        }
+      }
 
       resolvedProps.put(key, replacedValue);
     }
@@ -180,15 +197,19 @@ public class PropsUtils {
   }
 
   private static String resolveVariableReplacement(final String value, final Props props,
-      final LinkedHashSet<String> visitedVariables) {
-    final StringBuffer buffer = new StringBuffer();
+      final LinkedHashSet<String> visitedVariables, final Map<String, String> resolvedVariables) {
+    if (value.indexOf("${") < 0) {
+      return value;
+    }
+
+    final StringBuilder buffer = new StringBuilder();
     int startIndex = 0;
 
     final Matcher matcher = VARIABLE_REPLACEMENT_PATTERN.matcher(value);
     while (matcher.find(startIndex)) {
       if (startIndex < matcher.start()) {
         // Copy everything up front to the buffer
-        buffer.append(value.substring(startIndex, matcher.start()));
+        buffer.append(value, startIndex, matcher.start());
       }
 
       final String subVariable = matcher.group(1);
@@ -197,7 +218,10 @@ public class PropsUtils {
         throw new IllegalArgumentException(String.format(
             "Circular variable substitution found: [%s] -> [%s]",
             StringUtils.join(visitedVariables, "->"), subVariable));
-      } else {
+      }
+
+      String resolved = resolvedVariables.get(subVariable);
+      if (resolved == null) {
         // Add substitute variable and recurse.
         final String replacement = props.get(subVariable);
         visitedVariables.add(subVariable);
@@ -208,10 +232,12 @@ public class PropsUtils {
               StringUtils.join(visitedVariables, "->")));
         }
 
-        buffer.append(resolveVariableReplacement(replacement, props,
-            visitedVariables));
+        resolved = resolveVariableReplacement(replacement, props, visitedVariables,
+            resolvedVariables);
+        resolvedVariables.put(subVariable, resolved);
         visitedVariables.remove(subVariable);
       }
+      buffer.append(resolved);
 
       startIndex = matcher.end();
     }
@@ -224,8 +250,10 @@ public class PropsUtils {
   }
 
   private static String resolveVariableExpression(final String value) {
-    final JexlEngine jexl = new JexlEngine();
-    return resolveVariableExpression(value, value.length(), jexl);
+    if (!value.contains("$(")) {
+      return value;
+    }
+    return resolveVariableExpression(value, value.length(), JEXL_ENGINE);
   }
 
   /**
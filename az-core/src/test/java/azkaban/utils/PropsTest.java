@@ -18,6 +18,7 @@ package azkaban.utils;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -46,4 +47,71 @@ public class PropsTest {
     List<String> s6 = Arrays.asList("thrift://hcat1:port,thrift://hcat2:port");
     Assert.assertTrue(p.getStringListFromCluster(EXTRA_HCAT_CLUSTERS).equals(s6));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testSnapshotFlattensHierarchy() {
+    final Props grandParent = new Props();
+    grandParent.put("a", "grandparent");
+    grandParent.put("b", "grandparent");
+    final Props parent = new Props(grandParent);
+    parent.put("b", "parent");
+    parent.put("c", "parent");
+    final Props child = new Props(parent);
+    child.put("c", "child");
+
+    final Props snapshot = child.snapshot();
+    Assert.assertNull(snapshot.getParent());
+    Assert.assertEquals("grandparent", snapshot.get("a"));
+    Assert.assertEquals("parent", snapshot.get("b"));
+    Assert.assertEquals("child", snapshot.get("c"));
+    Assert.assertEquals(child.getKeySet(), snapshot.localKeySet());
+
+    // later changes don't show in the snapshot
+    grandParent.put("a", "changed");
+    child.put("d", "child");
+    Assert.assertEquals("grandparent", snapshot.get("a"));
+    Assert.assertFalse(snapshot.containsKey("d"));
+  }
+
+  @Test
+  public void testSnapshotCopiesOnWrite() {
+    final Props props = new Props();
+    props.put("a", "1");
+    final Props snapshot = props.snapshot();
+    final Props snapshotOfSnapshot = snapshot.snapshot();
+
+    props.put("a", "2");
+    snapshot.put("b", "1");
+    snapshotOfSnapshot.removeLocal("a");
+
+    Assert.assertEquals("2", props.get("a"));
+    Assert.assertFalse(props.containsKey("b"));
+    Assert.assertEquals("1", snapshot.get("a"));
+    Assert.assertEquals("1", snapshot.get("b"));
+    Assert.assertFalse(snapshotOfSnapshot.containsKey("a"));
+    Assert.assertFalse(snapshotOfSnapshot.containsKey("b"));
+
+    snapshot.clearLocal();
+    Assert.assertEquals("2", props.get("a"));
+  }
+
+  @Test
+  public void testSnapshotLeavesPropsWithoutParentInPlace() {
+    final Props props = new Props();
+    props.put("a", "1");
+    final Set<String> keys = props.localKeySet();
+    final Props snapshot = props.snapshot();
+
+    // the props keep changing their own map rather than copying it
+    props.put("b", "1");
+    Assert.assertTrue(keys.contains("b"));
+    Assert.assertFalse(snapshot.containsKey("b"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testLocalKeySetIsUnmodifiable() {
+    final Props props = new Props();
+    props.put("a", "1");
+    props.localKeySet().remove("a");
+  }
+}
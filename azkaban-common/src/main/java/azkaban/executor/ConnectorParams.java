@@ -25,13 +25,18 @@ public interface ConnectorParams {
   public static final String USER_PARAM = "user";
 
   public static final String UPDATE_ACTION = "update";
+  public static final String UPDATE_STREAM_ACTION = "updateStream";
   public static final String STATUS_ACTION = "status";
   public static final String EXECUTE_ACTION = "execute";
+  public static final String RESERVE_ACTION = "reserve";
+  public static final String PREPARE_PROJECT_ACTION = "prepareProject";
   public static final String CANCEL_ACTION = "cancel";
   public static final String PAUSE_ACTION = "pause";
   public static final String RESUME_ACTION = "resume";
   public static final String PING_ACTION = "ping";
   public static final String LOG_ACTION = "log";
+  public static final String LOG_STREAM_ACTION = "logStream";
+  public static final String LOG_SEARCH_ACTION = "logSearch";
   public static final String ATTACHMENTS_ACTION = "attachments";
   public static final String METADATA_ACTION = "metadata";
   public static final String RELOAD_JOBTYPE_PLUGINS_ACTION = "reloadJobTypePlugins";
@@ -56,6 +61,8 @@ public interface ConnectorParams {
   public static final String STATUS_PARAM = "status";
   public static final String NODES_PARAM = "nodes";
   public static final String EXECPATH_PARAM = "execpath";
+  public static final String PROJECT_ID_PARAM = "projectId";
+  public static final String PROJECT_VERSION_PARAM = "projectVersion";
 
   public static final String RESPONSE_NOTFOUND = "notfound";
   public static final String RESPONSE_ERROR = "error";
@@ -63,6 +70,9 @@ public interface ConnectorParams {
   public static final String RESPONSE_ALIVE = "alive";
   public static final String RESPONSE_UPDATETIME = "lasttime";
   public static final String RESPONSE_UPDATED_FLOWS = "updated";
+  public static final String RESPONSE_UPDATED_FLOWS_BINARY = "updatedBinary";
+  public static final String RESPONSE_RESERVED = "reserved";
+  public static final String RESPONSE_AVAILABLE_SLOTS = "availableSlots";
 
   public static final int NODE_NAME_INDEX = 0;
   public static final int NODE_STATUS_INDEX = 1;
@@ -71,6 +81,20 @@ public interface ConnectorParams {
 
   public static final String UPDATE_TIME_LIST_PARAM = "updatetime";
   public static final String EXEC_ID_LIST_PARAM = "executionId";
+  public static final String STREAM_DURATION_PARAM = "streamDurationMs";
+  // Executors that know the binary format answer with it, others ignore the param.
+  public static final String UPDATE_FORMAT_PARAM = "updateFormat";
+  public static final String UPDATE_FORMAT_BINARY = "binary";
+
+  // The log stream answers with the raw bytes of the log, and their place in the log in headers.
+  public static final String LOG_OFFSET_HEADER = "Azkaban-Log-Offset";
+  public static final String LOG_LENGTH_HEADER = "Azkaban-Log-Length";
+
+  // The log search finds the lines that match a regular expression.
+  public static final String LOG_SEARCH_PATTERN_PARAM = "pattern";
+  public static final String LOG_SEARCH_IGNORE_CASE_PARAM = "ignoreCase";
+  public static final String LOG_SEARCH_MAX_MATCHES_PARAM = "maxMatches";
+  public static final String LOG_SEARCH_MAX_BYTES_PARAM = "maxBytes";
 
   public static final String FORCED_FAILED_MARKER = ".failed";
 
@@ -28,7 +28,9 @@ import java.sql.SQLException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.dbutils.ResultSetHandler;
@@ -216,21 +218,23 @@ public class ExecutionFlowDao {
     }
   }
 
-  void updateExecutableFlow(final ExecutableFlow flow) throws ExecutorManagerException {
-    updateExecutableFlow(flow, EncodingType.GZIP);
+  /**
+   * @return the size in bytes of the flow data written
+   */
+  int updateExecutableFlow(final ExecutableFlow flow) throws ExecutorManagerException {
+    return updateExecutableFlow(flow, EncodingType.GZIP);
   }
 
-  private void updateExecutableFlow(final ExecutableFlow flow, final EncodingType encType)
+  private int updateExecutableFlow(final ExecutableFlow flow, final EncodingType encType)
       throws ExecutorManagerException {
     final String UPDATE_EXECUTABLE_FLOW_DATA =
         "UPDATE execution_flows "
             + "SET status=?,update_time=?,start_time=?,end_time=?,enc_type=?,flow_data=? "
             + "WHERE exec_id=?";
 
-    final String json = JSONUtils.toJSON(flow.toObject());
     byte[] data = null;
     try {
-      final byte[] stringData = json.getBytes("UTF-8");
+      final byte[] stringData = JSONUtils.toJSONBytes(flow.toObject());
       data = stringData;
       // Todo kunkun-tang: use a common method to transform stringData to data.
       if (encType == EncodingType.GZIP) {
@@ -247,8 +251,31 @@ public class ExecutionFlowDao {
     } catch (final SQLException e) {
       throw new ExecutorManagerException("Error updating flow.", e);
     }
+    return data.length;
   }
 
+  /**
+   * Writes the state of the flow itself, without its flow data. The state of its jobs is in their
+   * execution_jobs rows; the flow data has to be written again once the flow finishes.
+   */
+  void updateExecutableFlowStatus(final ExecutableFlow flow) throws ExecutorManagerException {
+    final String UPDATE_EXECUTABLE_FLOW_STATUS =
+        "UPDATE execution_flows SET status=?,update_time=?,start_time=?,end_time=? "
+            + "WHERE exec_id=?";
+    try {
+      this.dbOperator.update(UPDATE_EXECUTABLE_FLOW_STATUS, flow.getStatus().getNumVal(),
+          flow.getUpdateTime(), flow.getStartTime(), flow.getEndTime(), flow.getExecutionId());
+    } catch (final SQLException e) {
+      throw new ExecutorManagerException("Error updating flow status.", e);
+    }
+  }
+
+  /**
+   * Fetches a flow. The flow data of an unfinished flow may be older than the rows of its jobs,
+   * so their state is taken from the rows. That is only the case when the executor writes just the
+   * state of the flow in between flow data writes, which shows as newer flow columns, so the rows
+   * aren't read otherwise.
+   */
   public ExecutableFlow fetchExecutableFlow(final int execId) throws ExecutorManagerException {
     final FetchExecutableFlows flowHandler = new FetchExecutableFlows();
     try {
@@ -256,9 +283,13 @@ public class ExecutionFlowDao {
           .query(FetchExecutableFlows.FETCH_EXECUTABLE_FLOW, flowHandler, execId);
       if (properties.isEmpty()) {
         return null;
-      } else {
-        return properties.get(0);
       }
+      final ExecutableFlow flow = properties.get(0);
+      if (!Status.isStatusFinished(flow.getStatus()) && flowHandler.hasNewerFlowState(execId)) {
+        this.dbOperator.query(ApplyNodeStates.FETCH_NODE_STATES, new ApplyNodeStates(flow),
+            execId);
+      }
+      return flow;
     } catch (final SQLException e) {
       throw new ExecutorManagerException("Error fetching flow id " + execId, e);
     }
@@ -268,22 +299,30 @@ public class ExecutionFlowDao {
       ResultSetHandler<List<ExecutableFlow>> {
 
     static String FETCH_BASE_EXECUTABLE_FLOW_QUERY =
-        "SELECT exec_id, enc_type, flow_data FROM execution_flows ";
+        "SELECT exec_id, enc_type, flow_data, status, update_time, start_time, end_time "
+            + "FROM execution_flows ";
     static String FETCH_EXECUTABLE_FLOW =
-        "SELECT exec_id, enc_type, flow_data FROM execution_flows "
+        "SELECT exec_id, enc_type, flow_data, status, update_time, start_time, end_time "
+            + "FROM execution_flows "
             + "WHERE exec_id=?";
     static String FETCH_ALL_EXECUTABLE_FLOW_HISTORY =
-        "SELECT exec_id, enc_type, flow_data FROM execution_flows "
+        "SELECT exec_id, enc_type, flow_data, status, update_time, start_time, end_time "
+            + "FROM execution_flows "
             + "ORDER BY exec_id DESC LIMIT ?, ?";
     static String FETCH_EXECUTABLE_FLOW_HISTORY =
-        "SELECT exec_id, enc_type, flow_data FROM execution_flows "
+        "SELECT exec_id, enc_type, flow_data, status, update_time, start_time, end_time "
+            + "FROM execution_flows "
             + "WHERE project_id=? AND flow_id=? "
             + "ORDER BY exec_id DESC LIMIT ?, ?";
     static String FETCH_EXECUTABLE_FLOW_BY_STATUS =
-        "SELECT exec_id, enc_type, flow_data FROM execution_flows "
+        "SELECT exec_id, enc_type, flow_data, status, update_time, start_time, end_time "
+            + "FROM execution_flows "
             + "WHERE project_id=? AND flow_id=? AND status=? "
             + "ORDER BY exec_id DESC LIMIT ?, ?";
 
+    // Executions whose flow columns were newer than their flow data.
+    private final Set<Integer> newerFlowStates = new HashSet<>();
+
     @Override
     public List<ExecutableFlow> handle(final ResultSet rs) throws SQLException {
       if (!rs.next()) {
@@ -302,6 +341,7 @@ public class ExecutionFlowDao {
             final ExecutableFlow exFlow =
                 ExecutableFlow.createExecutableFlowFromObject(
                     GZIPUtils.transformBytesToObject(data, encType));
+            applyFlowState(exFlow, rs);
             execFlows.add(exFlow);
           } catch (final IOException e) {
             throw new SQLException("Error retrieving flow data " + id, e);
@@ -311,6 +351,86 @@ public class ExecutionFlowDao {
 
       return execFlows;
     }
+
+    /**
+     * @return true, if the state of the flow was written after its flow data
+     */
+    boolean hasNewerFlowState(final int execId) {
+      return this.newerFlowStates.contains(execId);
+    }
+
+    /**
+     * The flow columns are newer than the flow data when only the state of the flow was written
+     * after it.
+     */
+    private void applyFlowState(final ExecutableFlow flow, final ResultSet rs)
+        throws SQLException {
+      final long updateTime = rs.getLong(5);
+      if (updateTime > flow.getUpdateTime()) {
+        this.newerFlowStates.add(flow.getExecutionId());
+        flow.setStatus(Status.fromInteger(rs.getInt(4)));
+        flow.setUpdateTime(updateTime);
+        flow.setStartTime(rs.getLong(6));
+        flow.setEndTime(rs.getLong(7));
+      }
+    }
+  }
+
+  /**
+   * JDBC ResultSetHandler that applies the job rows of an execution to the nodes of its flow.
+   *
+   * A row of a later attempt than the node's is always newer. A row of the node's attempt is
+   * older than the node when the node was reset for a retry after the row last changed, as the
+   * reset writes the flow data again; such a row is skipped, or the retry would be undone.
+   */
+  private static class ApplyNodeStates implements ResultSetHandler<Void> {
+
+    private static final String FETCH_NODE_STATES =
+        "SELECT flow_id, job_id, attempt, start_time, end_time, status "
+            + "FROM execution_jobs WHERE exec_id=? ORDER BY attempt";
+
+    private final ExecutableFlow flow;
+
+    ApplyNodeStates(final ExecutableFlow flow) {
+      this.flow = flow;
+    }
+
+    @Override
+    public Void handle(final ResultSet rs) throws SQLException {
+      while (rs.next()) {
+        final ExecutableNode node = findNode(rs.getString(1), rs.getString(2));
+        if (node != null && isNewer(rs, node)) {
+          node.setStartTime(rs.getLong(4));
+          node.setEndTime(rs.getLong(5));
+          node.setStatus(Status.fromInteger(rs.getInt(6)));
+        }
+      }
+      return null;
+    }
+
+    private static boolean isNewer(final ResultSet rs, final ExecutableNode node)
+        throws SQLException {
+      final int attempt = rs.getInt(3);
+      if (attempt != node.getAttempt()) {
+        return attempt > node.getAttempt();
+      }
+      return Math.max(rs.getLong(4), rs.getLong(5)) >= node.getUpdateTime();
+    }
+
+    /**
+     * @param flowPath the path of the parent flow of the job, as in {@link
+     * ExecutableFlowBase#getFlowPath()}: the root flow id, then nodeId:flowId for every embedded
+     * flow, separated by commas.
+     */
+    private ExecutableNode findNode(final String flowPath, final String jobId) {
+      final String[] flows = flowPath.split(",");
+      final String[] ids = new String[flows.length];
+      for (int i = 1; i < flows.length; i++) {
+        ids[i - 1] = flows[i].split(":")[0];
+      }
+      ids[flows.length - 1] = jobId;
+      return this.flow.getExecutableNodePath(ids);
+    }
   }
 
   /**
@@ -22,21 +22,33 @@ import azkaban.db.DatabaseTransOperator;
 import azkaban.db.SQLTransaction;
 import azkaban.utils.FileIOUtils;
 import azkaban.utils.FileIOUtils.LogData;
+import azkaban.utils.GZIPCompressor;
 import azkaban.utils.GZIPUtils;
+import azkaban.utils.LogSearcher;
 import azkaban.utils.Pair;
-import java.io.BufferedInputStream;
+import azkaban.utils.Props;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.regex.Pattern;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.dbutils.ResultSetHandler;
-import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 
@@ -45,28 +57,150 @@ import org.joda.time.DateTime;
 public class ExecutionLogsDao {
 
   private static final Logger logger = Logger.getLogger(ExecutionLogsDao.class);
+  private static final String LOG_CHUNK_SIZE = "azkaban.execution.logs.chunk.size";
+  // 50K chunks... we better prevent large log files from being uploaded somehow
+  private static final int DEFAULT_LOG_CHUNK_SIZE = 50 * 1024;
+  // Chunks are inserted in batches of this many rows
+  private static final int INSERT_BATCH_SIZE = 20;
+  private static final String LOG_CACHE_SIZE = "azkaban.execution.logs.cache.size";
+  // Decompressed chunks of archived logs, in bytes
+  private static final long DEFAULT_LOG_CACHE_SIZE = 64 * 1024 * 1024;
+  private static final int MAX_CACHED_CHUNK_INDEXES = 1000;
+  // Searches fetch this many chunks at a time
+  private static final int SEARCH_BATCH_SIZE = 20;
+  // The chunkers kept for later uploads; more concurrent uploads end theirs when they finish
+  private static final int MAX_POOLED_CHUNKERS = 8;
+  private static final String INSERT_EXECUTION_LOGS = "INSERT INTO execution_logs "
+      + "(exec_id, name, attempt, enc_type, start_byte, end_byte, "
+      + "log, upload_time) VALUES (?,?,?,?,?,?,?,?)";
+
   private final DatabaseOperator dbOperator;
   private final EncodingType defaultEncodingType = EncodingType.GZIP;
+  private final int chunkSize;
+  // The buffers and compressors of finished uploads, for the next ones
+  private final Queue<LogChunker> chunkers = new ArrayBlockingQueue<>(MAX_POOLED_CHUNKERS);
+  private volatile boolean shutdown = false;
+  // Paging through an archived log only reads each chunk once
+  private final Cache<LogKey, ChunkIndex> chunkIndexes;
+  private final Cache<ChunkKey, byte[]> chunks;
 
   @Inject
+  ExecutionLogsDao(final DatabaseOperator dbOperator, final Props props) {
+    this(dbOperator, props.getInt(LOG_CHUNK_SIZE, DEFAULT_LOG_CHUNK_SIZE),
+        props.getLong(LOG_CACHE_SIZE, DEFAULT_LOG_CACHE_SIZE));
+  }
+
   ExecutionLogsDao(final DatabaseOperator dbOperator) {
+    this(dbOperator, DEFAULT_LOG_CHUNK_SIZE, DEFAULT_LOG_CACHE_SIZE);
+  }
+
+  ExecutionLogsDao(final DatabaseOperator dbOperator, final int chunkSize,
+      final long cacheSize) {
     this.dbOperator = dbOperator;
+    this.chunkSize = chunkSize;
+    this.chunkIndexes = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_CHUNK_INDEXES).build();
+    this.chunks = CacheBuilder.newBuilder().maximumWeight(cacheSize)
+        .weigher((final ChunkKey key, final byte[] chunk) -> chunk.length).build();
   }
 
   // TODO kunkun-tang: the interface's parameter is called endByte, but actually is length.
   LogData fetchLogs(final int execId, final String name, final int attempt,
       final int startByte,
       final int length) throws ExecutorManagerException {
-    final FetchLogsHandler handler = new FetchLogsHandler(startByte, length + startByte);
+    final LogKey key = new LogKey(execId, name, attempt);
+    final int endByte = startByte + length;
     try {
-      return this.dbOperator.query(FetchLogsHandler.FETCH_LOGS, handler,
-          execId, name, attempt, startByte, startByte + length);
+      final ChunkIndex index = getChunkIndex(key);
+      final int first = index.findChunk(startByte);
+      if (first < 0) {
+        return null;
+      }
+      int last = first;
+      while (last + 1 < index.getNumChunks() && index.starts[last + 1] < endByte) {
+        last++;
+      }
+
+      final byte[][] chunks = new byte[last - first + 1][];
+      int firstMissing = -1;
+      int lastMissing = -1;
+      for (int i = first; i <= last; i++) {
+        chunks[i - first] = this.chunks.getIfPresent(new ChunkKey(key, index.starts[i]));
+        if (chunks[i - first] == null) {
+          firstMissing = firstMissing < 0 ? i : firstMissing;
+          lastMissing = i;
+        }
+      }
+      if (firstMissing >= 0) {
+        final Map<Integer, byte[]> fetched = this.dbOperator.query(ChunksHandler.FETCH_CHUNKS,
+            new ChunksHandler(), execId, name, attempt, index.starts[firstMissing],
+            index.starts[lastMissing]);
+        for (int i = firstMissing; i <= lastMissing; i++) {
+          if (chunks[i - first] == null) {
+            chunks[i - first] = fetched.get(index.starts[i]);
+            if (chunks[i - first] == null) {
+              // removed in the meantime
+              this.chunkIndexes.invalidate(key);
+              return null;
+            }
+            this.chunks.put(new ChunkKey(key, index.starts[i]), chunks[i - first]);
+          }
+        }
+      }
+
+      final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+      for (int i = first; i <= last; i++) {
+        final int chunkStart = index.starts[i];
+        final int offset = Math.max(startByte - chunkStart, 0);
+        final int chunkLength = Math.min(endByte, index.ends[i]) - chunkStart - offset;
+        byteStream.write(chunks[i - first], offset, chunkLength);
+      }
+
+      final byte[] buffer = byteStream.toByteArray();
+      final Pair<Integer, Integer> result =
+          FileIOUtils.getUtf8Range(buffer, 0, buffer.length);
+      return new LogData(startByte + result.getFirst(), result.getSecond(),
+          new String(buffer, result.getFirst(), result.getSecond(), StandardCharsets.UTF_8));
     } catch (final SQLException e) {
       throw new ExecutorManagerException("Error fetching logs " + execId
           + " : " + name, e);
     }
   }
 
+  /**
+   * Searches a log from startByte on, a few chunks at a time. The chunks bypass the cache, so that
+   * a search doesn't evict the chunks of the logs being read.
+   */
+  LogSearcher.Result searchLogs(final int execId, final String name, final int attempt,
+      final Pattern pattern, final int startByte, final int maxMatches, final long maxBytes)
+      throws ExecutorManagerException {
+    final LogKey key = new LogKey(execId, name, attempt);
+    final LogSearcher searcher = new LogSearcher(pattern, startByte, maxMatches, maxBytes);
+    try {
+      final ChunkIndex index = getChunkIndex(key);
+      int next = index.findChunk(startByte);
+      while (next >= 0 && next < index.getNumChunks() && !searcher.isDone()) {
+        final int last = Math.min(next + SEARCH_BATCH_SIZE, index.getNumChunks()) - 1;
+        final Map<Integer, byte[]> fetched = this.dbOperator.query(ChunksHandler.FETCH_CHUNKS,
+            new ChunksHandler(), execId, name, attempt, index.starts[next], index.starts[last]);
+        for (int i = next; i <= last && !searcher.isDone(); i++) {
+          final byte[] chunk = fetched.get(index.starts[i]);
+          if (chunk == null) {
+            this.chunkIndexes.invalidate(key);
+            throw new ExecutorManagerException("Log " + name + " of exec " + execId
+                + " was removed while searching it");
+          }
+          final int offset = Math.max(startByte - index.starts[i], 0);
+          searcher.update(chunk, offset, index.ends[i] - index.starts[i] - offset);
+        }
+        next = last + 1;
+      }
+      return searcher.getResult();
+    } catch (final SQLException e) {
+      throw new ExecutorManagerException("Error searching logs " + execId
+          + " : " + name, e);
+    }
+  }
+
   public void uploadLogFile(final int execId, final String name, final int attempt,
       final File... files) throws ExecutorManagerException {
     final SQLTransaction<Integer> transaction = transOperator -> {
@@ -76,71 +210,108 @@ public class ExecutionLogsDao {
     };
     try {
       this.dbOperator.transaction(transaction);
+      this.chunkIndexes.invalidate(new LogKey(execId, name, attempt));
     } catch (final SQLException e) {
       logger.error("uploadLogFile failed.", e);
       throw new ExecutorManagerException("uploadLogFile failed.", e);
     }
   }
 
+  private ChunkIndex getChunkIndex(final LogKey key) throws SQLException {
+    ChunkIndex index = this.chunkIndexes.getIfPresent(key);
+    if (index == null) {
+      // A log is uploaded in one transaction, so it is complete once it has chunks
+      index = this.dbOperator.query(ChunkIndexHandler.FETCH_CHUNK_INDEX,
+          new ChunkIndexHandler(), key.execId, key.name, key.attempt);
+      if (index.getNumChunks() > 0) {
+        this.chunkIndexes.put(key, index);
+      }
+    }
+    return index;
+  }
+
   private void uploadLogFile(final DatabaseTransOperator transOperator, final int execId,
       final String name,
       final int attempt, final File[] files, final EncodingType encType)
       throws SQLException {
-    // 50K buffer... if logs are greater than this, we chunk.
-    // However, we better prevent large log files from being uploaded somehow
-    final byte[] buffer = new byte[50 * 1024];
+    LogChunker chunker = this.chunkers.poll();
+    if (chunker == null) {
+      chunker = new LogChunker(this.chunkSize);
+    }
+    // The files are read straight into the chunk, which can span files.
+    final byte[] chunk = chunker.chunk;
+    final List<Object[]> rows = new ArrayList<>(INSERT_BATCH_SIZE);
     int pos = 0;
-    int length = buffer.length;
     int startByte = 0;
     try {
-      for (int i = 0; i < files.length; ++i) {
-        final File file = files[i];
-
-        final BufferedInputStream bufferedStream =
-            new BufferedInputStream(new FileInputStream(file));
-        try {
-          int size = bufferedStream.read(buffer, pos, length);
+      for (final File file : files) {
+        try (InputStream inputStream = new FileInputStream(file)) {
+          int size = inputStream.read(chunk, pos, chunk.length - pos);
           while (size >= 0) {
-            if (pos + size == buffer.length) {
-              // Flush here.
-              uploadLogPart(transOperator, execId, name, attempt, startByte,
-                  startByte + buffer.length, encType, buffer, buffer.length);
-
+            pos += size;
+            if (pos == chunk.length) {
+              rows.add(createLogPart(chunker, execId, name, attempt, startByte, encType, pos));
+              startByte += pos;
               pos = 0;
-              length = buffer.length;
-              startByte += buffer.length;
-            } else {
-              // Usually end of file.
-              pos += size;
-              length = buffer.length - pos;
+              if (rows.size() == INSERT_BATCH_SIZE) {
+                insertLogParts(transOperator, rows);
+              }
             }
-            size = bufferedStream.read(buffer, pos, length);
+            size = inputStream.read(chunk, pos, chunk.length - pos);
           }
-        } finally {
-          IOUtils.closeQuietly(bufferedStream);
         }
       }
 
       // Final commit of buffer.
       if (pos > 0) {
-        uploadLogPart(transOperator, execId, name, attempt, startByte, startByte
-            + pos, encType, buffer, pos);
+        rows.add(createLogPart(chunker, execId, name, attempt, startByte, encType, pos));
       }
+      insertLogParts(transOperator, rows);
     } catch (final SQLException e) {
       logger.error("Error writing log part.", e);
       throw new SQLException("Error writing log part", e);
     } catch (final IOException e) {
       logger.error("Error chunking.", e);
       throw new SQLException("Error chunking", e);
+    } finally {
+      releaseChunker(chunker);
+    }
+  }
+
+  private void releaseChunker(final LogChunker chunker) {
+    if (this.shutdown || !this.chunkers.offer(chunker)) {
+      chunker.close();
+    } else if (this.shutdown) {
+      // shut down while it was pooled
+      closeChunkers();
+    }
+  }
+
+  private void closeChunkers() {
+    LogChunker chunker;
+    while ((chunker = this.chunkers.poll()) != null) {
+      chunker.close();
     }
   }
 
+  /**
+   * Ends the compressors of the pooled chunkers, and of the chunkers of the uploads still running
+   * when they finish.
+   */
+  void shutdown() {
+    this.shutdown = true;
+    closeChunkers();
+  }
+
   int removeExecutionLogsByTime(final long millis)
       throws ExecutorManagerException {
     final String DELETE_BY_TIME =
         "DELETE FROM execution_logs WHERE upload_time < ?";
     try {
-      return this.dbOperator.update(DELETE_BY_TIME, millis);
+      final int numRemoved = this.dbOperator.update(DELETE_BY_TIME, millis);
+      this.chunkIndexes.invalidateAll();
+      this.chunks.invalidateAll();
+      return numRemoved;
     } catch (final SQLException e) {
       logger.error("delete execution logs failed", e);
       throw new ExecutorManagerException(
@@ -148,85 +319,175 @@ public class ExecutionLogsDao {
     }
   }
 
-  private void uploadLogPart(final DatabaseTransOperator transOperator, final int execId,
-      final String name,
-      final int attempt, final int startByte, final int endByte,
-      final EncodingType encType,
-      final byte[] buffer, final int length)
-      throws SQLException, IOException {
-    final String INSERT_EXECUTION_LOGS = "INSERT INTO execution_logs "
-        + "(exec_id, name, attempt, enc_type, start_byte, end_byte, "
-        + "log, upload_time) VALUES (?,?,?,?,?,?,?,?)";
-
-    byte[] buf = buffer;
+  private Object[] createLogPart(final LogChunker chunker, final int execId, final String name,
+      final int attempt, final int startByte, final EncodingType encType, final int length) {
+    final byte[] buf;
     if (encType == EncodingType.GZIP) {
-      buf = GZIPUtils.gzipBytes(buf, 0, length);
-    } else if (length < buf.length) {
-      buf = Arrays.copyOf(buffer, length);
+      buf = chunker.compressor.compress(chunker.chunk, 0, length);
+    } else {
+      buf = Arrays.copyOf(chunker.chunk, length);
+    }
+    return new Object[]{execId, name, attempt, encType.getNumVal(), startByte,
+        startByte + length, buf, DateTime.now().getMillis()};
+  }
+
+  private void insertLogParts(final DatabaseTransOperator transOperator,
+      final List<Object[]> rows) throws SQLException {
+    if (!rows.isEmpty()) {
+      transOperator.batch(INSERT_EXECUTION_LOGS, rows.toArray(new Object[0][]));
+      rows.clear();
     }
+  }
+
+  /**
+   * The chunk buffer and compressor of an upload.
+   */
+  private static class LogChunker implements AutoCloseable {
+
+    private final byte[] chunk;
+    private final GZIPCompressor compressor = new GZIPCompressor();
 
-    transOperator.update(INSERT_EXECUTION_LOGS, execId, name, attempt,
-        encType.getNumVal(), startByte, startByte + length, buf, DateTime.now()
-            .getMillis());
+    private LogChunker(final int chunkSize) {
+      this.chunk = new byte[chunkSize];
+    }
+
+    @Override
+    public void close() {
+      this.compressor.close();
+    }
   }
 
-  private static class FetchLogsHandler implements ResultSetHandler<LogData> {
+  /**
+   * Identifies the log of a job attempt, or of a flow with an empty name.
+   */
+  private static final class LogKey {
+
+    private final int execId;
+    private final String name;
+    private final int attempt;
+
+    private LogKey(final int execId, final String name, final int attempt) {
+      this.execId = execId;
+      this.name = name;
+      this.attempt = attempt;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof LogKey)) {
+        return false;
+      }
+      final LogKey other = (LogKey) o;
+      return this.execId == other.execId && this.attempt == other.attempt
+          && Objects.equals(this.name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.execId, this.name, this.attempt);
+    }
+  }
 
-    private static final String FETCH_LOGS =
-        "SELECT exec_id, name, attempt, enc_type, start_byte, end_byte, log "
-            + "FROM execution_logs "
-            + "WHERE exec_id=? AND name=? AND attempt=? AND end_byte > ? "
-            + "AND start_byte <= ? ORDER BY start_byte";
+  private static final class ChunkKey {
 
+    private final LogKey log;
     private final int startByte;
-    private final int endByte;
 
-    FetchLogsHandler(final int startByte, final int endByte) {
+    private ChunkKey(final LogKey log, final int startByte) {
+      this.log = log;
       this.startByte = startByte;
-      this.endByte = endByte;
     }
 
     @Override
-    public LogData handle(final ResultSet rs) throws SQLException {
-      if (!rs.next()) {
-        return null;
+    public boolean equals(final Object o) {
+      if (!(o instanceof ChunkKey)) {
+        return false;
       }
+      final ChunkKey other = (ChunkKey) o;
+      return this.startByte == other.startByte && this.log.equals(other.log);
+    }
 
-      final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    @Override
+    public int hashCode() {
+      return 31 * this.log.hashCode() + this.startByte;
+    }
+  }
 
-      do {
-        // int execId = rs.getInt(1);
-        // String name = rs.getString(2);
-        final int attempt = rs.getInt(3);
-        final EncodingType encType = EncodingType.fromInteger(rs.getInt(4));
-        final int startByte = rs.getInt(5);
-        final int endByte = rs.getInt(6);
-
-        final byte[] data = rs.getBytes(7);
-
-        final int offset =
-            this.startByte > startByte ? this.startByte - startByte : 0;
-        final int length =
-            this.endByte < endByte ? this.endByte - startByte - offset
-                : endByte - startByte - offset;
-        try {
-          byte[] buffer = data;
-          if (encType == EncodingType.GZIP) {
-            buffer = GZIPUtils.unGzipBytes(data);
-          }
+  /**
+   * The byte ranges of the chunks of a log, in order.
+   */
+  private static final class ChunkIndex {
 
-          byteStream.write(buffer, offset, length);
-        } catch (final IOException e) {
-          throw new SQLException(e);
-        }
-      } while (rs.next());
+    private final int[] starts;
+    private final int[] ends;
 
-      final byte[] buffer = byteStream.toByteArray();
-      final Pair<Integer, Integer> result =
-          FileIOUtils.getUtf8Range(buffer, 0, buffer.length);
+    private ChunkIndex(final int[] starts, final int[] ends) {
+      this.starts = starts;
+      this.ends = ends;
+    }
 
-      return new LogData(this.startByte + result.getFirst(), result.getSecond(),
-          new String(buffer, result.getFirst(), result.getSecond(), StandardCharsets.UTF_8));
+    private int getNumChunks() {
+      return this.starts.length;
+    }
+
+    /**
+     * @return the index of the chunk that holds the byte, or -1 if the log ends before it
+     */
+    private int findChunk(final int startByte) {
+      int i = Arrays.binarySearch(this.starts, startByte);
+      if (i < 0) {
+        // the chunk before the insertion point; the first one for negative offsets
+        i = Math.max(-i - 2, 0);
+      }
+      return i < this.ends.length && this.ends[i] > startByte ? i : -1;
+    }
+  }
+
+  private static class ChunkIndexHandler implements ResultSetHandler<ChunkIndex> {
+
+    private static final String FETCH_CHUNK_INDEX =
+        "SELECT start_byte, end_byte FROM execution_logs "
+            + "WHERE exec_id=? AND name=? AND attempt=? ORDER BY start_byte";
+
+    @Override
+    public ChunkIndex handle(final ResultSet rs) throws SQLException {
+      final List<Integer> starts = new ArrayList<>();
+      final List<Integer> ends = new ArrayList<>();
+      while (rs.next()) {
+        starts.add(rs.getInt(1));
+        ends.add(rs.getInt(2));
+      }
+      return new ChunkIndex(starts.stream().mapToInt(Integer::intValue).toArray(),
+          ends.stream().mapToInt(Integer::intValue).toArray());
+    }
+  }
+
+  /**
+   * Decompresses the fetched chunks, by their start byte.
+   */
+  private static class ChunksHandler implements ResultSetHandler<Map<Integer, byte[]>> {
+
+    private static final String FETCH_CHUNKS =
+        "SELECT start_byte, enc_type, log FROM execution_logs "
+            + "WHERE exec_id=? AND name=? AND attempt=? AND start_byte >= ? "
+            + "AND start_byte <= ?";
+
+    @Override
+    public Map<Integer, byte[]> handle(final ResultSet rs) throws SQLException {
+      final Map<Integer, byte[]> chunks = new HashMap<>();
+      while (rs.next()) {
+        final EncodingType encType = EncodingType.fromInteger(rs.getInt(2));
+        byte[] data = rs.getBytes(3);
+        if (encType == EncodingType.GZIP) {
+          try {
+            data = GZIPUtils.unGzipBytes(data);
+          } catch (final IOException e) {
+            throw new SQLException(e);
+          }
+        }
+        chunks.put(rs.getInt(1), data);
+      }
+      return chunks;
     }
   }
 }
@@ -24,6 +24,8 @@ public class ExecutionReference {
   private long updateTime;
   private long nextCheckTime = -1;
   private int numErrors = 0;
+  // Update time of the last status update applied from the executor.
+  private long lastAppliedUpdateTime = -1;
 
 
   public ExecutionReference(final int execId) {
@@ -75,6 +77,14 @@ public class ExecutionReference {
     this.numErrors = numErrors;
   }
 
+  public long getLastAppliedUpdateTime() {
+    return this.lastAppliedUpdateTime;
+  }
+
+  public void setLastAppliedUpdateTime(final long lastAppliedUpdateTime) {
+    this.lastAppliedUpdateTime = lastAppliedUpdateTime;
+  }
+
   public Executor getExecutor() {
     return this.executor;
   }
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of the flow updates sent for the update action.
+ *
+ * The encoding carries the same delta as {@link ExecutableFlowBase#toUpdateObject(long)}: only the
+ * nodes changed since the given time, with their status, times and attempts. Decoding gives back
+ * exactly the maps toUpdateObject would have produced, so the web server applies either form the
+ * same way. Field names are left out and numbers are written in binary, which makes the payload a
+ * fraction of the JSON one for large flows.
+ */
+public class ExecutionUpdateCodec {
+
+  private static final byte FORMAT_VERSION = 1;
+  private static final byte FLAG_FLOW = 1;
+
+  private ExecutionUpdateCodec() {
+  }
+
+  /**
+   * Encodes the updates of the given flows.
+   *
+   * @param flows the flows to encode
+   * @param lastUpdateTimes for each flow, the update time the receiver already has
+   */
+  public static byte[] encode(final List<ExecutableFlow> flows, final List<Long> lastUpdateTimes)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(FORMAT_VERSION);
+    out.writeInt(flows.size());
+    for (int i = 0; i < flows.size(); ++i) {
+      final ExecutableFlow flow = flows.get(i);
+      out.writeInt(flow.getExecutionId());
+      writeNode(out, flow, lastUpdateTimes.get(i));
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes updates into the maps {@link ExecutableFlow#toUpdateObject(long)} would return.
+   */
+  public static List<Map<String, Object>> decode(final byte[] data) throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    final byte version = in.readByte();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported update format version " + version);
+    }
+
+    final int numFlows = in.readInt();
+    final List<Map<String, Object>> updates = new ArrayList<>(numFlows);
+    for (int i = 0; i < numFlows; ++i) {
+      final int execId = in.readInt();
+      final Map<String, Object> update = readNode(in);
+      update.put(ExecutableFlow.EXECUTIONID_PARAM, execId);
+      updates.add(update);
+    }
+    return updates;
+  }
+
+  private static void writeNode(final DataOutputStream out, final ExecutableNode node,
+      final long lastUpdateTime) throws IOException {
+    out.writeByte(node instanceof ExecutableFlowBase ? FLAG_FLOW : 0);
+    out.writeUTF(node.getId());
+    out.writeByte(node.getStatus().getNumVal());
+    out.writeLong(node.getStartTime());
+    out.writeLong(node.getEndTime());
+    out.writeLong(node.getUpdateTime());
+    out.writeInt(node.getAttempt());
+
+    if (node.getAttempt() > 0) {
+      final List<ExecutionAttempt> pastAttempts = node.getPastAttemptList();
+      out.writeInt(pastAttempts.size());
+      for (final ExecutionAttempt attempt : pastAttempts) {
+        out.writeInt(attempt.getAttempt());
+        out.writeLong(attempt.getStartTime());
+        out.writeLong(attempt.getEndTime());
+        out.writeByte(attempt.getStatus().getNumVal());
+      }
+    }
+
+    if (node instanceof ExecutableFlowBase) {
+      final List<ExecutableNode> updatedNodes = new ArrayList<>();
+      for (final ExecutableNode child : ((ExecutableFlowBase) node).getExecutableNodes()) {
+        if (child.getUpdateTime() > lastUpdateTime
+            || child instanceof ExecutableFlowBase
+            && hasUpdatedNodes((ExecutableFlowBase) child, lastUpdateTime)) {
+          updatedNodes.add(child);
+        }
+      }
+      out.writeInt(updatedNodes.size());
+      for (final ExecutableNode child : updatedNodes) {
+        writeNode(out, child, lastUpdateTime);
+      }
+    }
+  }
+
+  private static boolean hasUpdatedNodes(final ExecutableFlowBase flow,
+      final long lastUpdateTime) {
+    for (final ExecutableNode node : flow.getExecutableNodes()) {
+      if (node.getUpdateTime() > lastUpdateTime
+          || node instanceof ExecutableFlowBase
+          && hasUpdatedNodes((ExecutableFlowBase) node, lastUpdateTime)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Map<String, Object> readNode(final DataInputStream in) throws IOException {
+    final boolean isFlow = in.readByte() == FLAG_FLOW;
+    final Map<String, Object> node = new HashMap<>();
+    node.put(ExecutableNode.ID_PARAM, in.readUTF());
+    node.put(ExecutableNode.STATUS_PARAM, (int) in.readByte());
+    node.put(ExecutableNode.STARTTIME_PARAM, in.readLong());
+    node.put(ExecutableNode.ENDTIME_PARAM, in.readLong());
+    node.put(ExecutableNode.UPDATETIME_PARAM, in.readLong());
+    final int attempt = in.readInt();
+    node.put(ExecutableNode.ATTEMPT_PARAM, attempt);
+
+    if (attempt > 0) {
+      final int numPastAttempts = in.readInt();
+      final List<Map<String, Object>> pastAttempts = new ArrayList<>(numPastAttempts);
+      for (int i = 0; i < numPastAttempts; ++i) {
+        final int pastAttempt = in.readInt();
+        final long startTime = in.readLong();
+        final long endTime = in.readLong();
+        final Status status = Status.fromInteger(in.readByte());
+        pastAttempts.add(new ExecutionAttempt(pastAttempt, startTime, endTime, status).toObject());
+      }
+      node.put(ExecutableNode.PASTATTEMPTS_PARAM, pastAttempts);
+    }
+
+    if (isFlow) {
+      final int numNodes = in.readInt();
+      if (numNodes > 0) {
+        final List<Map<String, Object>> nodes = new ArrayList<>(numNodes);
+        for (int i = 0; i < numNodes; ++i) {
+          nodes.add(readNode(in));
+        }
+        node.put(ExecutableFlowBase.NODES_PARAM, nodes);
+      }
+    }
+    return node;
+  }
+}
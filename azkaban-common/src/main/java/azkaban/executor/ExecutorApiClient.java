@@ -17,11 +17,23 @@
 package azkaban.executor;
 
 import azkaban.utils.RestfulApiClient;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
 import javax.inject.Singleton;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 
 /**
@@ -54,4 +66,60 @@ public class ExecutorApiClient extends RestfulApiClient<String> {
 
     return responseBody;
   }
+
+  /**
+   * Performs a Get request whose response body is streamed, handing every non empty line to the
+   * consumer as soon as it arrives. Returns once the server closes the stream.
+   *
+   * @param uri the URI of the request.
+   * @param readTimeoutMs how long to wait for the next piece of the body before giving up.
+   * @param lineConsumer receives the lines of the response body.
+   */
+  public void httpGetLines(final URI uri, final int readTimeoutMs,
+      final Consumer<String> lineConsumer) throws IOException {
+    final HttpGet get = new HttpGet(uri);
+    get.setConfig(RequestConfig.custom().setSocketTimeout(readTimeoutMs).build());
+
+    try (CloseableHttpClient client = HttpClients.createDefault();
+        CloseableHttpResponse response = client.execute(get)) {
+      final StatusLine statusLine = response.getStatusLine();
+      final HttpEntity entity = response.getEntity();
+      if (statusLine.getStatusCode() >= 300) {
+        throw new HttpResponseException(statusLine.getStatusCode(),
+            entity != null ? EntityUtils.toString(entity) : "");
+      }
+      if (entity == null) {
+        return;
+      }
+
+      try (BufferedReader reader = new BufferedReader(
+          new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (!line.isEmpty()) {
+            lineConsumer.accept(line);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Performs a Get request and hands the response to the handler while its body can still be read
+   * as it arrives.
+   *
+   * @param uri the URI of the request.
+   * @param readTimeoutMs how long to wait for the next piece of the body before giving up.
+   * @param responseHandler reads the response, including its status.
+   * @return what the handler returns.
+   */
+  public <T> T httpGetStream(final URI uri, final int readTimeoutMs,
+      final ResponseHandler<? extends T> responseHandler) throws IOException {
+    final HttpGet get = new HttpGet(uri);
+    get.setConfig(RequestConfig.custom().setSocketTimeout(readTimeoutMs).build());
+
+    try (CloseableHttpClient client = HttpClients.createDefault()) {
+      return client.execute(get, responseHandler);
+    }
+  }
 }
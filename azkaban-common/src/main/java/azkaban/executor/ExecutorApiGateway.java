@@ -25,12 +25,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import javax.inject.Singleton;
-import org.codehaus.jackson.map.ObjectMapper;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
 
 @Singleton
 public class ExecutorApiGateway {
 
+  // Executors send a heartbeat line every few seconds, so a much longer silence means the
+  // connection is gone.
+  private static final int STATUS_STREAM_READ_TIMEOUT_MS = 30 * 1000;
+  private static final int LOG_STREAM_READ_TIMEOUT_MS = 30 * 1000;
+
   private final ExecutorApiClient apiClient;
 
   @Inject
@@ -79,6 +87,99 @@ public class ExecutorApiGateway {
     }
   }
 
+  /**
+   * Opens a status update stream on the executor and hands every batch of updates to the consumer
+   * as it arrives. Blocks until the executor ends the stream, which it does after
+   * streamDurationMs.
+   *
+   * @param params the execution ids and update times the caller already knows about.
+   */
+  void streamUpdates(final Executor executor, final long streamDurationMs,
+      final List<Pair<String, String>> params,
+      final Consumer<Map<String, Object>> batchConsumer) throws IOException {
+    final List<Pair<String, String>> paramList = new ArrayList<>(params);
+    paramList.add(new Pair<>(ConnectorParams.ACTION_PARAM,
+        ConnectorParams.UPDATE_STREAM_ACTION));
+    paramList.add(new Pair<>(ConnectorParams.STREAM_DURATION_PARAM,
+        String.valueOf(streamDurationMs)));
+
+    @SuppressWarnings("unchecked") final URI uri =
+        ExecutorApiClient.buildUri(executor.getHost(), executor.getPort(), "/executor", true,
+            paramList.toArray(new Pair[0]));
+
+    final IOException[] failure = new IOException[1];
+    this.apiClient.httpGetLines(uri, STATUS_STREAM_READ_TIMEOUT_MS, line -> {
+      if (failure[0] != null) {
+        return;
+      }
+      try {
+        @SuppressWarnings("unchecked") final Map<String, Object> batch =
+            (Map<String, Object>) JSONUtils.parseJSONFromString(line);
+        final String error = (String) batch.get(ConnectorParams.RESPONSE_ERROR);
+        if (error != null) {
+          // Executors that predate streaming answer with an error for the unknown action.
+          failure[0] = new IOException(error);
+          return;
+        }
+        batchConsumer.accept(batch);
+      } catch (final IOException e) {
+        failure[0] = e;
+      }
+    });
+    if (failure[0] != null) {
+      throw failure[0];
+    }
+  }
+
+  /**
+   * Streams a range of a log of a running execution from its executor to the handler, without
+   * reading it into memory.
+   *
+   * @param params the type of the log, its offset and length and for job logs the job id and
+   * attempt, like for the log action.
+   */
+  void streamLog(final ExecutionReference ref, final List<Pair<String, String>> params,
+      final LogStreamHandler handler) throws ExecutorManagerException {
+    final List<Pair<String, String>> paramList = new ArrayList<>(params);
+    paramList.add(new Pair<>(ConnectorParams.ACTION_PARAM, ConnectorParams.LOG_STREAM_ACTION));
+    paramList.add(new Pair<>(ConnectorParams.EXECID_PARAM, String.valueOf(ref.getExecId())));
+
+    try {
+      @SuppressWarnings("unchecked") final URI uri =
+          ExecutorApiClient.buildUri(ref.getHost(), ref.getPort(), "/executor", true,
+              paramList.toArray(new Pair[0]));
+
+      this.apiClient.httpGetStream(uri, LOG_STREAM_READ_TIMEOUT_MS, response -> {
+        final HttpEntity entity = response.getEntity();
+        final Header offsetHeader = response.getFirstHeader(ConnectorParams.LOG_OFFSET_HEADER);
+        final Header lengthHeader = response.getFirstHeader(ConnectorParams.LOG_LENGTH_HEADER);
+        if (response.getStatusLine().getStatusCode() >= 300 || offsetHeader == null
+            || lengthHeader == null || entity == null) {
+          // Errors are answered with JSON, like the other actions.
+          throw new IOException(getError(entity));
+        }
+        handler.handle(Long.parseLong(offsetHeader.getValue()),
+            Integer.parseInt(lengthHeader.getValue()), entity.getContent());
+        return null;
+      });
+    } catch (final IOException | NumberFormatException e) {
+      throw new ExecutorManagerException(e);
+    }
+  }
+
+  private static String getError(final HttpEntity entity) throws IOException {
+    final String body = entity != null ? EntityUtils.toString(entity) : "";
+    try {
+      final Object json = JSONUtils.parseJSONFromString(body);
+      if (json instanceof Map && ((Map<?, ?>) json).get(ConnectorParams.RESPONSE_ERROR) != null) {
+        return (String) ((Map<?, ?>) json).get(ConnectorParams.RESPONSE_ERROR);
+      }
+    } catch (final IOException e) {
+      // not JSON, use the body as is
+    }
+    return "Unexpected log stream response: " + body;
+  }
+
   /**
    * Call executor and parse the JSON response as an instance of the class given as an argument.
    */
@@ -88,7 +189,7 @@ public class ExecutorApiGateway {
     if (null == responseString || responseString.length() == 0) {
       return null;
     }
-    return new ObjectMapper().readValue(responseString, valueType);
+    return JSONUtils.parseJSONFromString(responseString, valueType);
   }
 
   /*
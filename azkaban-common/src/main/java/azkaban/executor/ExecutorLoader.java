@@ -18,12 +18,14 @@ package azkaban.executor;
 
 import azkaban.executor.ExecutorLogEvent.EventType;
 import azkaban.utils.FileIOUtils.LogData;
+import azkaban.utils.LogSearcher;
 import azkaban.utils.Pair;
 import azkaban.utils.Props;
 import java.io.File;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 public interface ExecutorLoader {
 
@@ -225,6 +227,13 @@ public interface ExecutorLoader {
   LogData fetchLogs(int execId, String name, int attempt, int startByte,
       int endByte) throws ExecutorManagerException;
 
+  /**
+   * Searches an uploaded log for the lines that match the pattern, from startByte on, reading at
+   * most maxBytes bytes.
+   */
+  LogSearcher.Result searchLogs(int execId, String name, int attempt, Pattern pattern,
+      int startByte, int maxMatches, long maxBytes) throws ExecutorManagerException;
+
   List<Object> fetchAttachments(int execId, String name, int attempt)
       throws ExecutorManagerException;
 
@@ -234,7 +243,16 @@ public interface ExecutorLoader {
   void uploadAttachmentFile(ExecutableNode node, File file)
       throws ExecutorManagerException;
 
-  void updateExecutableFlow(ExecutableFlow flow)
+  /**
+   * @return the size in bytes of the flow data written
+   */
+  long updateExecutableFlow(ExecutableFlow flow)
+      throws ExecutorManagerException;
+
+  /**
+   * Updates the status and times of the flow without rewriting its flow data.
+   */
+  void updateExecutableFlowStatus(ExecutableFlow flow)
       throws ExecutorManagerException;
 
   void uploadExecutableNode(ExecutableNode node, Props inputParams)
@@ -271,4 +289,9 @@ public interface ExecutorLoader {
 
   int removeExecutionLogsByTime(long millis)
       throws ExecutorManagerException;
+
+  /**
+   * Frees what the loader keeps between calls. Call it once the server stopped using the loader.
+   */
+  void shutdown();
 }
@@ -29,15 +29,18 @@ import azkaban.project.ProjectWhitelist;
 import azkaban.utils.FileIOUtils.JobMetaData;
 import azkaban.utils.FileIOUtils.LogData;
 import azkaban.utils.JSONUtils;
+import azkaban.utils.LogSearcher;
 import azkaban.utils.Pair;
 import azkaban.utils.Props;
-import com.google.common.collect.Lists;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.lang.Thread.State;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -46,12 +49,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.lang.StringUtils;
@@ -63,7 +70,7 @@ import org.joda.time.DateTime;
  */
 @Singleton
 public class ExecutorManager extends EventHandler implements
-    ExecutorManagerAdapter {
+    ExecutorManagerAdapter, RunningFlowLookup {
 
   public static final String AZKABAN_USE_MULTIPLE_EXECUTORS =
       "azkaban.use.multiple.executors";
@@ -75,6 +82,14 @@ public class ExecutorManager extends EventHandler implements
       "azkaban.queueprocessing.enabled";
   private static final String AZKABAN_WEBSERVER_QUEUE_SIZE =
       "azkaban.webserver.queue.size";
+  private static final String AZKABAN_WEBSERVER_QUEUE_FAIRSHARE_KEY =
+      "azkaban.webserver.queue.fairshare.key";
+  private static final String AZKABAN_WEBSERVER_QUEUE_FAIRSHARE_WEIGHT_PREFIX =
+      "azkaban.webserver.queue.fairshare.weight.";
+  private static final String AZKABAN_WEBSERVER_QUEUE_QUOTA_PREFIX =
+      "azkaban.webserver.queue.quota.";
+  private static final String AZKABAN_WEBSERVER_QUEUE_DEFAULT_QUOTA =
+      "azkaban.webserver.queue.default.quota";
   private static final String AZKABAN_ACTIVE_EXECUTOR_REFRESH_IN_MS =
       "azkaban.activeexecutor.refresh.milisecinterval";
   private static final String AZKABAN_ACTIVE_EXECUTOR_REFRESH_IN_NUM_FLOW =
@@ -83,6 +98,26 @@ public class ExecutorManager extends EventHandler implements
       "azkaban.executorinfo.refresh.maxThreads";
   private static final String AZKABAN_MAX_DISPATCHING_ERRORS_PERMITTED =
       "azkaban.maxDispatchingErrors";
+  private static final String AZKABAN_DISPATCH_BATCH_SIZE =
+      "azkaban.dispatch.batch.size";
+  private static final String AZKABAN_DISPATCH_RESERVE_SLOT_ENABLED =
+      "azkaban.dispatch.reserve.slot.enabled";
+  private static final String AZKABAN_PROJECT_PREPARE_ON_UPLOAD_ENABLED =
+      "azkaban.project.prepare.on.upload.enabled";
+  private static final String AZKABAN_PROJECT_PREPARE_MAX_THREADS =
+      "azkaban.project.prepare.maxThreads";
+  private static final String AZKABAN_EXECUTOR_UPDATE_MAX_THREADS =
+      "azkaban.executor.update.maxThreads";
+  private static final String AZKABAN_EXECUTOR_UPDATE_TIMEOUT_MS =
+      "azkaban.executor.update.timeout.ms";
+  private static final String AZKABAN_EXECUTOR_UPDATE_BINARY_ENABLED =
+      "azkaban.executor.update.binary.enabled";
+  private static final String AZKABAN_EXECUTOR_STATUS_STREAM_ENABLED =
+      "azkaban.executor.status.stream.enabled";
+  private static final String AZKABAN_EXECUTOR_STATUS_STREAM_DURATION_MS =
+      "azkaban.executor.status.stream.duration.ms";
+  private static final String AZKABAN_EXECUTOR_UPDATE_RECONCILE_INTERVAL_MS =
+      "azkaban.executor.update.reconcile.interval.ms";
   // 12 weeks
   private static final long DEFAULT_EXECUTION_LOGS_RETENTION_MS = 3 * 4 * 7
       * 24 * 60 * 60 * 1000L;
@@ -98,10 +133,30 @@ public class ExecutorManager extends EventHandler implements
       new ConcurrentHashMap<>();
   private final ExecutingManagerUpdaterThread executingManager;
   private final ExecutorApiGateway apiGateway;
+  // Open status streams keyed by executor id.
+  private final ConcurrentHashMap<Integer, ExecutorStatusStreamThread> statusStreams =
+      new ConcurrentHashMap<>();
+  // Execution ids of flows being finalized after a status update.
+  private final Set<Integer> finalizingFlows = ConcurrentHashMap.newKeySet();
+  // Update call circuit breakers keyed by executor id.
+  private final ConcurrentHashMap<Integer, ExecutorUpdateCircuit> updateCircuits =
+      new ConcurrentHashMap<>();
+  private final ExecutorService executorUpdaterService;
+  // Project installs can take long, so they don't share threads with the status updates.
+  private final ExecutorService projectPreparerService;
+  private final long executorUpdateTimeoutMs;
+  private final boolean binaryUpdatesEnabled;
+  private final boolean reserveSlotEnabled;
+  private final boolean prepareProjectOnUploadEnabled;
+  private final boolean statusStreamEnabled;
+  private final long statusStreamDurationMs;
+  private final long updateReconcileIntervalMs;
   QueuedExecutions queuedFlows;
   File cacheDir;
   private QueueProcessorThread queueProcessor;
-  private volatile Pair<ExecutionReference, ExecutableFlow> runningCandidate = null;
+  // Flows taken off the queue by the queue processor and not dispatched yet.
+  private final ConcurrentHashMap<Integer, Pair<ExecutionReference, ExecutableFlow>>
+      dispatchingFlows = new ConcurrentHashMap<>();
   private long lastCleanerThreadCheckTime = -1;
   private long lastThreadCheckTime = -1;
   private String updaterStage = "not started";
@@ -109,6 +164,8 @@ public class ExecutorManager extends EventHandler implements
   private Map<String, Integer> comparatorWeightsMap;
   private long lastSuccessfulExecutorInfoRefresh;
   private ExecutorService executorInforRefresherService;
+  private ExecutorService dispatcherService;
+  private int dispatchBatchSize;
 
   @Inject
   public ExecutorManager(final Props azkProps, final ExecutorLoader loader,
@@ -120,10 +177,39 @@ public class ExecutorManager extends EventHandler implements
     this.commonMetrics = commonMetrics;
     this.executorLoader = loader;
     this.apiGateway = apiGateway;
+    // A call to an unreachable executor can hang well past its deadline, so the pool should
+    // leave room for a few of those besides the healthy executors.
+    this.executorUpdaterService = Executors.newFixedThreadPool(
+        azkProps.getInt(AZKABAN_EXECUTOR_UPDATE_MAX_THREADS, 10));
+    this.executorUpdateTimeoutMs =
+        azkProps.getLong(AZKABAN_EXECUTOR_UPDATE_TIMEOUT_MS, 10 * 1000);
+    this.binaryUpdatesEnabled =
+        azkProps.getBoolean(AZKABAN_EXECUTOR_UPDATE_BINARY_ENABLED, true);
+    this.reserveSlotEnabled =
+        azkProps.getBoolean(AZKABAN_DISPATCH_RESERVE_SLOT_ENABLED, true);
+    this.prepareProjectOnUploadEnabled =
+        azkProps.getBoolean(AZKABAN_PROJECT_PREPARE_ON_UPLOAD_ENABLED, true);
+    this.projectPreparerService = Executors.newFixedThreadPool(
+        azkProps.getInt(AZKABAN_PROJECT_PREPARE_MAX_THREADS, 2));
+    this.statusStreamEnabled =
+        azkProps.getBoolean(AZKABAN_EXECUTOR_STATUS_STREAM_ENABLED, false);
+    this.statusStreamDurationMs =
+        azkProps.getLong(AZKABAN_EXECUTOR_STATUS_STREAM_DURATION_MS, 5 * 60 * 1000);
+    this.updateReconcileIntervalMs =
+        azkProps.getLong(AZKABAN_EXECUTOR_UPDATE_RECONCILE_INTERVAL_MS, 60 * 1000);
     this.setupExecutors();
     this.loadRunningFlows();
 
-    this.queuedFlows = new QueuedExecutions(azkProps.getLong(AZKABAN_WEBSERVER_QUEUE_SIZE, 100000));
+    this.queuedFlows = new QueuedExecutions(azkProps.getLong(AZKABAN_WEBSERVER_QUEUE_SIZE, 100000),
+        QueuedExecutions.FairShareKey
+            .fromString(azkProps.getString(AZKABAN_WEBSERVER_QUEUE_FAIRSHARE_KEY, "none")),
+        getIntMapByPrefix(azkProps, AZKABAN_WEBSERVER_QUEUE_FAIRSHARE_WEIGHT_PREFIX),
+        getIntMapByPrefix(azkProps, AZKABAN_WEBSERVER_QUEUE_QUOTA_PREFIX),
+        azkProps.getInt(AZKABAN_WEBSERVER_QUEUE_DEFAULT_QUOTA, 0));
+    // flows already running count against their owners' quotas
+    for (final Pair<ExecutionReference, ExecutableFlow> running : this.runningFlows.values()) {
+      this.queuedFlows.running(running.getSecond());
+    }
     this.loadQueuedFlows();
 
     this.cacheDir = new File(azkProps.getString("cache.directory", "cache"));
@@ -166,6 +252,9 @@ public class ExecutorManager extends EventHandler implements
         Executors.newFixedThreadPool(this.azkProps.getInt(
             AZKABAN_EXECUTORINFO_REFRESH_MAX_THREADS, 5));
 
+    this.dispatchBatchSize = Math.max(1, this.azkProps.getInt(AZKABAN_DISPATCH_BATCH_SIZE, 10));
+    this.dispatcherService = Executors.newFixedThreadPool(this.dispatchBatchSize);
+
     // configure queue processor
     this.queueProcessor =
         new QueueProcessorThread(this.azkProps.getBoolean(
@@ -274,6 +363,52 @@ public class ExecutorManager extends EventHandler implements
     }
   }
 
+  /**
+   * Whether any executor may still take a flow, as far as the capacity model knows. Executors
+   * without stats are given the benefit of the doubt. The remaining flow capacity only bounds
+   * what an executor takes if the StaticRemainingFlowSize filter is on; otherwise executors queue
+   * flows beyond their threads, and it's up to each one to turn a reservation down.
+   */
+  private boolean hasDispatchCapacity(final Collection<Executor> executors) {
+    if (this.filterList == null
+        || !this.filterList.contains(ExecutorFilter.STATICREMAININGFLOWSIZE_FILTER_NAME)) {
+      return true;
+    }
+    for (final Executor executor : executors) {
+      final ExecutorInfo info = executor.getExecutorInfo();
+      if (info == null || info.getRemainingFlowCapacity() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Counts a flow just assigned to the executor in its cached stats, so that the rest of a
+   * dispatch batch sees the executor as it will be rather than as it was at the last refresh.
+   * The next refresh replaces the stats with the executor's own.
+   */
+  private void reserveDispatchCapacity(final Executor executor) {
+    final ExecutorInfo info = executor.getExecutorInfo();
+    if (info != null) {
+      synchronized (info) {
+        info.setRemainingFlowCapacity(info.getRemainingFlowCapacity() - 1);
+        info.setNumberOfAssignedFlows(info.getNumberOfAssignedFlows() + 1);
+        info.setLastDispatchedTime(System.currentTimeMillis());
+      }
+    }
+  }
+
+  private void releaseDispatchCapacity(final Executor executor) {
+    final ExecutorInfo info = executor.getExecutorInfo();
+    if (info != null) {
+      synchronized (info) {
+        info.setRemainingFlowCapacity(info.getRemainingFlowCapacity() + 1);
+        info.setNumberOfAssignedFlows(info.getNumberOfAssignedFlows() - 1);
+      }
+    }
+  }
+
   /**
    * Throws exception if running in local mode {@inheritDoc}
    *
@@ -415,6 +550,15 @@ public class ExecutorManager extends EventHandler implements
     return ports;
   }
 
+  /* owner name -> value, for the fair share weights and quotas */
+  private static Map<String, Integer> getIntMapByPrefix(final Props props, final String prefix) {
+    final Map<String, Integer> values = new HashMap<>();
+    for (final Map.Entry<String, String> entry : props.getMapByPrefix(prefix).entrySet()) {
+      values.put(entry.getKey(), Integer.valueOf(entry.getValue()));
+    }
+    return values;
+  }
+
   private void loadRunningFlows() throws ExecutorManagerException {
     this.runningFlows.putAll(this.executorLoader.fetchActiveFlows());
   }
@@ -445,13 +589,10 @@ public class ExecutorManager extends EventHandler implements
     final List<Integer> executionIds = new ArrayList<>();
     executionIds.addAll(getRunningFlowsHelper(projectId, flowId,
         this.queuedFlows.getAllEntries()));
-    // it's possible an execution is runningCandidate, meaning it's in dispatching state neither in queuedFlows nor runningFlows,
-    // so checks the runningCandidate as well.
-    if (this.runningCandidate != null) {
-      executionIds
-          .addAll(
-              getRunningFlowsHelper(projectId, flowId, Lists.newArrayList(this.runningCandidate)));
-    }
+    // it's possible an execution is in dispatching state neither in queuedFlows nor runningFlows,
+    // so checks the dispatching flows as well.
+    executionIds.addAll(getRunningFlowsHelper(projectId, flowId,
+        this.dispatchingFlows.values()));
     executionIds.addAll(getRunningFlowsHelper(projectId, flowId,
         this.runningFlows.values()));
     Collections.sort(executionIds);
@@ -536,6 +677,15 @@ public class ExecutorManager extends EventHandler implements
     return this.executorLoader.fetchExecutableFlow(execId);
   }
 
+  /**
+   * @return the flow as its executor last reported it, or null if it isn't running
+   */
+  @Override
+  public ExecutableFlow getRunningFlow(final int execId) {
+    final Pair<ExecutionReference, ExecutableFlow> ref = this.runningFlows.get(execId);
+    return ref == null ? null : ref.getSecond();
+  }
+
   /**
    * Get all active (running, non-dispatched) flows
    *
@@ -724,6 +874,97 @@ public class ExecutorManager extends EventHandler implements
     }
   }
 
+  @Override
+  public void streamExecutableFlowLog(final ExecutableFlow exFlow, final long offset,
+      final int length, final LogStreamHandler handler) throws ExecutorManagerException {
+    final Pair<ExecutionReference, ExecutableFlow> pair =
+        this.runningFlows.get(exFlow.getExecutionId());
+    if (pair != null) {
+      this.apiGateway.streamLog(pair.getFirst(), Arrays.asList(
+          new Pair<>("type", "flow"),
+          new Pair<>("offset", String.valueOf(offset)),
+          new Pair<>("length", String.valueOf(length))), handler);
+    } else {
+      streamLogData(this.executorLoader.fetchLogs(exFlow.getExecutionId(), "", 0,
+          (int) Math.min(offset, Integer.MAX_VALUE), length), offset, handler);
+    }
+  }
+
+  @Override
+  public void streamExecutionJobLog(final ExecutableFlow exFlow, final String jobId,
+      final long offset, final int length, final int attempt, final LogStreamHandler handler)
+      throws ExecutorManagerException {
+    final Pair<ExecutionReference, ExecutableFlow> pair =
+        this.runningFlows.get(exFlow.getExecutionId());
+    if (pair != null) {
+      this.apiGateway.streamLog(pair.getFirst(), Arrays.asList(
+          new Pair<>("type", "job"),
+          new Pair<>("jobId", jobId),
+          new Pair<>("offset", String.valueOf(offset)),
+          new Pair<>("length", String.valueOf(length)),
+          new Pair<>("attempt", String.valueOf(attempt))), handler);
+    } else {
+      streamLogData(this.executorLoader.fetchLogs(exFlow.getExecutionId(), jobId, attempt,
+          (int) Math.min(offset, Integer.MAX_VALUE), length), offset, handler);
+    }
+  }
+
+  @Override
+  public LogSearcher.Result searchExecutableFlowLog(final ExecutableFlow exFlow,
+      final Pattern pattern, final long offset, final int maxMatches)
+      throws ExecutorManagerException {
+    return searchLog(exFlow, "", 0, pattern, offset, maxMatches, LogSearcher.MAX_SEARCH_BYTES);
+  }
+
+  @Override
+  public LogSearcher.Result searchExecutionJobLog(final ExecutableFlow exFlow, final String jobId,
+      final int attempt, final Pattern pattern, final long offset, final int maxMatches,
+      final long maxBytes) throws ExecutorManagerException {
+    return searchLog(exFlow, jobId, attempt, pattern, offset, maxMatches, maxBytes);
+  }
+
+  /**
+   * @param name the job id, or empty for the flow log
+   */
+  private LogSearcher.Result searchLog(final ExecutableFlow exFlow, final String name,
+      final int attempt, final Pattern pattern, final long offset, final int maxMatches,
+      final long maxBytes) throws ExecutorManagerException {
+    final Pair<ExecutionReference, ExecutableFlow> pair =
+        this.runningFlows.get(exFlow.getExecutionId());
+    if (pair != null) {
+      final boolean ignoreCase = (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0;
+      @SuppressWarnings("unchecked") final Map<String, Object> result =
+          this.apiGateway.callWithReference(pair.getFirst(), ConnectorParams.LOG_SEARCH_ACTION,
+              new Pair<>("type", name.isEmpty() ? "flow" : "job"),
+              new Pair<>("jobId", name),
+              new Pair<>("attempt", String.valueOf(attempt)),
+              new Pair<>("offset", String.valueOf(offset)),
+              new Pair<>(ConnectorParams.LOG_SEARCH_PATTERN_PARAM, pattern.pattern()),
+              new Pair<>(ConnectorParams.LOG_SEARCH_IGNORE_CASE_PARAM, String.valueOf(ignoreCase)),
+              new Pair<>(ConnectorParams.LOG_SEARCH_MAX_MATCHES_PARAM,
+                  String.valueOf(maxMatches)),
+              new Pair<>(ConnectorParams.LOG_SEARCH_MAX_BYTES_PARAM, String.valueOf(maxBytes)));
+      return LogSearcher.Result.createResultFromObject(result);
+    } else {
+      return this.executorLoader.searchLogs(exFlow.getExecutionId(), name, attempt, pattern,
+          (int) Math.min(offset, Integer.MAX_VALUE), maxMatches, maxBytes);
+    }
+  }
+
+  private void streamLogData(final LogData data, final long offset,
+      final LogStreamHandler handler) throws ExecutorManagerException {
+    try {
+      if (data == null) {
+        handler.handle(offset, 0, new ByteArrayInputStream(new byte[0]));
+      } else {
+        final byte[] bytes = data.getData().getBytes(StandardCharsets.UTF_8);
+        handler.handle(data.getOffset(), bytes.length, new ByteArrayInputStream(bytes));
+      }
+    } catch (final IOException e) {
+      throw new ExecutorManagerException(e);
+    }
+  }
+
   @Override
   public List<Object> getExecutionJobStats(final ExecutableFlow exFlow, final String jobId,
       final int attempt) throws ExecutorManagerException {
@@ -1043,6 +1284,28 @@ public class ExecutorManager extends EventHandler implements
             + " seconds.");
   }
 
+  @Override
+  public void prepareProject(final int projectId, final int version) {
+    if (!this.prepareProjectOnUploadEnabled) {
+      return;
+    }
+    for (final Executor executor : new ArrayList<>(this.activeExecutors)) {
+      this.projectPreparerService.submit(() -> {
+        try {
+          this.apiGateway.callWithExecutionId(executor.getHost(), executor.getPort(),
+              ConnectorParams.PREPARE_PROJECT_ACTION, null, null,
+              new Pair<>(ConnectorParams.PROJECT_ID_PARAM, String.valueOf(projectId)),
+              new Pair<>(ConnectorParams.PROJECT_VERSION_PARAM, String.valueOf(version)));
+        } catch (final ExecutorManagerException e) {
+          // Executors that predate this action answer with an error. The project is then
+          // installed by its first execution.
+          logger.warn(String.format("Executor %s didn't prepare project %d.%d", executor,
+              projectId, version), e);
+        }
+      });
+    }
+  }
+
   /**
    * Manage servlet call for stats servlet in Azkaban execution server {@inheritDoc}
    *
@@ -1090,8 +1353,14 @@ public class ExecutorManager extends EventHandler implements
   public void shutdown() {
     if (isMultiExecutorMode()) {
       this.queueProcessor.shutdown();
+      this.dispatcherService.shutdownNow();
     }
     this.executingManager.shutdown();
+    this.executorUpdaterService.shutdownNow();
+    this.projectPreparerService.shutdownNow();
+    for (final ExecutorStatusStreamThread stream : this.statusStreams.values()) {
+      stream.shutdown();
+    }
   }
 
   private void finalizeFlows(final ExecutableFlow flow) {
@@ -1131,6 +1400,9 @@ public class ExecutorManager extends EventHandler implements
     } catch (final ExecutorManagerException e) {
       alertUser = false; // failed due to azkaban internal error, not to alert user
       logger.error(e);
+    } finally {
+      // the flow isn't running any more either way, so its owner gets the quota back
+      this.queuedFlows.finished(execId);
     }
 
     // TODO append to the flow log that we forced killed this flow because the
@@ -1194,6 +1466,24 @@ public class ExecutorManager extends EventHandler implements
 
   }
 
+  /**
+   * Finalizes a flow found finished or lost by a status update. The updater thread and the status
+   * streams can both see the same flow finish, so only the first one to claim it finalizes it.
+   */
+  private void finalizeUpdatedFlow(final ExecutableFlow flow) {
+    final int execId = flow.getExecutionId();
+    if (!this.finalizingFlows.add(execId)) {
+      return;
+    }
+    try {
+      if (this.runningFlows.containsKey(execId)) {
+        finalizeFlows(flow);
+      }
+    } finally {
+      this.finalizingFlows.remove(execId);
+    }
+  }
+
   private void failEverything(final ExecutableFlow exFlow) {
     final long time = System.currentTimeMillis();
     for (final ExecutableNode node : exFlow.getExecutableNodes()) {
@@ -1255,9 +1545,22 @@ public class ExecutorManager extends EventHandler implements
     // Reset errors.
     ref.setNextCheckTime(0);
     ref.setNumErrors(0);
-    final Status oldStatus = flow.getStatus();
-    flow.applyUpdateObject(updateData);
-    final Status newStatus = flow.getStatus();
+    final Object updateTimeObj = updateData.get(ConnectorParams.UPDATE_MAP_UPDATE_TIME);
+    final long updateTime =
+        updateTimeObj == null ? ref.getLastAppliedUpdateTime() : JSONUtils
+            .getLongFromObject(updateTimeObj);
+    final Status oldStatus;
+    final Status newStatus;
+    synchronized (flow) {
+      // Streamed and polled updates may arrive out of order. Never go back to an older state.
+      if (updateTime < ref.getLastAppliedUpdateTime()) {
+        return flow;
+      }
+      ref.setLastAppliedUpdateTime(updateTime);
+      oldStatus = flow.getStatus();
+      flow.applyUpdateObject(updateData);
+      newStatus = flow.getStatus();
+    }
 
     if (oldStatus != newStatus && newStatus == Status.FAILED) {
       this.commonMetrics.markFlowFail();
@@ -1315,8 +1618,11 @@ public class ExecutorManager extends EventHandler implements
     }
   }
 
-  /* Group Executable flow by Executors to reduce number of REST calls */
-  private Map<Executor, List<ExecutableFlow>> getFlowToExecutorMap() {
+  /*
+   * Group Executable flow by Executors to reduce number of REST calls. Flows on executors with a
+   * connected status stream are left out unless a reconciliation round is due.
+   */
+  private Map<Executor, List<ExecutableFlow>> getFlowToExecutorMap(final boolean reconcile) {
     final HashMap<Executor, List<ExecutableFlow>> exFlowMap =
         new HashMap<>();
 
@@ -1331,6 +1637,9 @@ public class ExecutorManager extends EventHandler implements
       if (ref.getNextCheckTime() >= System.currentTimeMillis()) {
         continue;
       }
+      if (!reconcile && isStatusStreamConnected(executor)) {
+        continue;
+      }
 
       List<ExecutableFlow> flows = exFlowMap.get(executor);
       if (flows == null) {
@@ -1344,6 +1653,40 @@ public class ExecutorManager extends EventHandler implements
     return exFlowMap;
   }
 
+  private boolean isStatusStreamConnected(final Executor executor) {
+    final ExecutorStatusStreamThread stream = this.statusStreams.get(executor.getId());
+    return stream != null && stream.isConnected();
+  }
+
+  /**
+   * Opens a status stream to every executor that runs flows and has none yet.
+   */
+  private void startStatusStreams() {
+    for (final Pair<ExecutionReference, ExecutableFlow> runningFlow : this.runningFlows
+        .values()) {
+      final Executor executor = runningFlow.getFirst().getExecutor();
+      if (executor == null || this.statusStreams.containsKey(executor.getId())) {
+        continue;
+      }
+      final ExecutorStatusStreamThread stream = new ExecutorStatusStreamThread(executor);
+      if (this.statusStreams.putIfAbsent(executor.getId(), stream) == null) {
+        stream.start();
+      }
+    }
+  }
+
+  private List<ExecutableFlow> getRunningFlowsOn(final Executor executor) {
+    final List<ExecutableFlow> flows = new ArrayList<>();
+    for (final Pair<ExecutionReference, ExecutableFlow> runningFlow : this.runningFlows
+        .values()) {
+      final Executor flowExecutor = runningFlow.getFirst().getExecutor();
+      if (flowExecutor != null && flowExecutor.getId() == executor.getId()) {
+        flows.add(runningFlow.getSecond());
+      }
+    }
+    return flows;
+  }
+
   @Override
   public int getExecutableFlows(final int projectId, final String flowId, final int from,
       final int length, final List<ExecutableFlow> outputList)
@@ -1361,6 +1704,44 @@ public class ExecutorManager extends EventHandler implements
         status);
   }
 
+  /**
+   * Asks the executor to hold a slot for the flow before it is dispatched, and takes the
+   * executor's count of free slots as its remaining flow capacity. Executors that are unreachable
+   * or predate reservations answer with an error; the flow is then dispatched as before and any
+   * failure is handled there.
+   *
+   * @return false, if the executor has no slot left for the flow
+   */
+  private boolean reserveSlot(final ExecutableFlow exflow, final Executor executor) {
+    if (!this.reserveSlotEnabled) {
+      return true;
+    }
+    final Map<String, Object> response;
+    try {
+      response = this.apiGateway.callWithExecutable(exflow, executor,
+          ConnectorParams.RESERVE_ACTION);
+    } catch (final ExecutorManagerException e) {
+      logger.debug(String.format("Executor %s didn't reserve a slot for exec %d", executor,
+          exflow.getExecutionId()), e);
+      return true;
+    }
+    if (response == null || !response.containsKey(ConnectorParams.RESPONSE_RESERVED)) {
+      return true;
+    }
+
+    final ExecutorInfo info = executor.getExecutorInfo();
+    final Object availableSlots = response.get(ConnectorParams.RESPONSE_AVAILABLE_SLOTS);
+    // An executor with an unbounded queue counts only its idle threads, which can go below 0
+    // while it still takes flows. Its stats are left as they are then.
+    if (info != null && availableSlots instanceof Number
+        && ((Number) availableSlots).intValue() >= 0) {
+      synchronized (info) {
+        info.setRemainingFlowCapacity(((Number) availableSlots).intValue());
+      }
+    }
+    return Boolean.TRUE.equals(response.get(ConnectorParams.RESPONSE_RESERVED));
+  }
+
   /**
    * Calls executor to dispatch the flow, update db to assign the executor and in-memory state of
    * executableFlow
@@ -1407,6 +1788,7 @@ public class ExecutorManager extends EventHandler implements
     private final int numErrors = 6;
     private final long errorThreshold = 10000;
     private boolean shutdown = false;
+    private long lastReconcileTime = -1;
 
     public ExecutingManagerUpdaterThread() {
       this.setName("ExecutorManagerUpdaterThread");
@@ -1417,113 +1799,29 @@ public class ExecutorManager extends EventHandler implements
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void run() {
       while (!this.shutdown) {
         try {
           ExecutorManager.this.lastThreadCheckTime = System.currentTimeMillis();
           ExecutorManager.this.updaterStage = "Starting update all flows.";
 
+          // With status streams on, this loop only reconciles streamed executors now and then,
+          // and keeps polling the ones whose stream is down.
+          final boolean reconcile = !ExecutorManager.this.statusStreamEnabled
+              || ExecutorManager.this.lastThreadCheckTime - this.lastReconcileTime
+              >= ExecutorManager.this.updateReconcileIntervalMs;
+          if (reconcile) {
+            this.lastReconcileTime = ExecutorManager.this.lastThreadCheckTime;
+          }
+          if (ExecutorManager.this.statusStreamEnabled) {
+            startStatusStreams();
+          }
+
           final Map<Executor, List<ExecutableFlow>> exFlowMap =
-              getFlowToExecutorMap();
-          final ArrayList<ExecutableFlow> finishedFlows =
-              new ArrayList<>();
-          final ArrayList<ExecutableFlow> finalizeFlows =
-              new ArrayList<>();
+              getFlowToExecutorMap(reconcile);
 
           if (exFlowMap.size() > 0) {
-            for (final Map.Entry<Executor, List<ExecutableFlow>> entry : exFlowMap
-                .entrySet()) {
-              final List<Long> updateTimesList = new ArrayList<>();
-              final List<Integer> executionIdsList = new ArrayList<>();
-
-              final Executor executor = entry.getKey();
-
-              ExecutorManager.this.updaterStage =
-                  "Starting update flows on " + executor.getHost() + ":"
-                      + executor.getPort();
-
-              // We pack the parameters of the same host together before we
-              // query.
-              fillUpdateTimeAndExecId(entry.getValue(), executionIdsList,
-                  updateTimesList);
-
-              final Pair<String, String> updateTimes =
-                  new Pair<>(
-                      ConnectorParams.UPDATE_TIME_LIST_PARAM,
-                      JSONUtils.toJSON(updateTimesList));
-              final Pair<String, String> executionIds =
-                  new Pair<>(ConnectorParams.EXEC_ID_LIST_PARAM,
-                      JSONUtils.toJSON(executionIdsList));
-
-              Map<String, Object> results = null;
-              try {
-                results =
-                    ExecutorManager.this.apiGateway.callWithExecutionId(executor.getHost(),
-                        executor.getPort(), ConnectorParams.UPDATE_ACTION,
-                        null, null, executionIds, updateTimes);
-              } catch (final ExecutorManagerException e) {
-                logger.error(e);
-                for (final ExecutableFlow flow : entry.getValue()) {
-                  final Pair<ExecutionReference, ExecutableFlow> pair =
-                      ExecutorManager.this.runningFlows.get(flow.getExecutionId());
-
-                  ExecutorManager.this.updaterStage =
-                      "Failed to get update. Doing some clean up for flow "
-                          + pair.getSecond().getExecutionId();
-
-                  if (pair != null) {
-                    final ExecutionReference ref = pair.getFirst();
-                    int numErrors = ref.getNumErrors();
-                    if (ref.getNumErrors() < this.numErrors) {
-                      ref.setNextCheckTime(System.currentTimeMillis()
-                          + this.errorThreshold);
-                      ref.setNumErrors(++numErrors);
-                    } else {
-                      logger.error("Evicting flow " + flow.getExecutionId()
-                          + ". The executor is unresponsive.");
-                      // TODO should send out an unresponsive email here.
-                      finalizeFlows.add(pair.getSecond());
-                    }
-                  }
-                }
-              }
-
-              // We gets results
-              if (results != null) {
-                final List<Map<String, Object>> executionUpdates =
-                    (List<Map<String, Object>>) results
-                        .get(ConnectorParams.RESPONSE_UPDATED_FLOWS);
-                for (final Map<String, Object> updateMap : executionUpdates) {
-                  try {
-                    final ExecutableFlow flow = updateExecution(updateMap);
-
-                    ExecutorManager.this.updaterStage = "Updated flow " + flow.getExecutionId();
-
-                    if (isFinished(flow)) {
-                      finishedFlows.add(flow);
-                      finalizeFlows.add(flow);
-                    }
-                  } catch (final ExecutorManagerException e) {
-                    final ExecutableFlow flow = e.getExecutableFlow();
-                    logger.error(e);
-
-                    if (flow != null) {
-                      logger.error("Finalizing flow " + flow.getExecutionId());
-                      finalizeFlows.add(flow);
-                    }
-                  }
-                }
-              }
-            }
-
-            ExecutorManager.this.updaterStage =
-                "Finalizing " + finalizeFlows.size() + " error flows.";
-
-            // Kill error flows
-            for (final ExecutableFlow flow : finalizeFlows) {
-              finalizeFlows(flow);
-            }
+            updateExecutors(exFlowMap);
           }
 
           ExecutorManager.this.updaterStage = "Updated all active flows. Waiting for next round.";
@@ -1543,6 +1841,340 @@ public class ExecutorManager extends EventHandler implements
         }
       }
     }
+
+    /**
+     * Asks all executors for updates at the same time and applies each answer, finalizing the
+     * flows it finished, as soon as it arrives, so that a slow or dead executor only delays its
+     * own flows. Executors that do not answer by the deadline, or whose circuit is open, count as
+     * failed for this round.
+     */
+    private void updateExecutors(final Map<Executor, List<ExecutableFlow>> exFlowMap)
+        throws InterruptedException {
+      final CompletionService<List<Map<String, Object>>> completionService =
+          new ExecutorCompletionService<>(ExecutorManager.this.executorUpdaterService);
+      final Map<Future<List<Map<String, Object>>>, Executor> pendingCalls = new HashMap<>();
+
+      for (final Map.Entry<Executor, List<ExecutableFlow>> entry : exFlowMap.entrySet()) {
+        final Executor executor = entry.getKey();
+        final ExecutorUpdateCircuit circuit = ExecutorManager.this.updateCircuits
+            .computeIfAbsent(executor.getId(), id -> new ExecutorUpdateCircuit());
+        if (!circuit.allowCall(System.currentTimeMillis())) {
+          finalizeAll(handleUpdateFailure(entry.getValue()));
+          continue;
+        }
+
+        ExecutorManager.this.updaterStage =
+            "Starting update flows on " + executor.getHost() + ":" + executor.getPort();
+        pendingCalls.put(completionService.submit(
+            () -> fetchUpdates(executor, entry.getValue(), circuit)), executor);
+      }
+
+      final long deadline =
+          System.currentTimeMillis() + ExecutorManager.this.executorUpdateTimeoutMs;
+      while (!pendingCalls.isEmpty()) {
+        final Future<List<Map<String, Object>>> future = completionService
+            .poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        if (future == null) {
+          break;
+        }
+        final Executor executor = pendingCalls.remove(future);
+        try {
+          finalizeAll(applyUpdates(future.get()));
+        } catch (final ExecutionException e) {
+          logger.error("Failed to get update from " + executor.getHost() + ":"
+              + executor.getPort(), e.getCause());
+          finalizeAll(handleUpdateFailure(exFlowMap.get(executor)));
+        }
+      }
+
+      for (final Map.Entry<Future<List<Map<String, Object>>>, Executor> timedOut : pendingCalls
+          .entrySet()) {
+        final Executor executor = timedOut.getValue();
+        logger.error("Timed out getting update from " + executor.getHost() + ":"
+            + executor.getPort());
+        // The call keeps its executor's circuit busy until it returns, so it can't pile up.
+        timedOut.getKey().cancel(true);
+        finalizeAll(handleUpdateFailure(exFlowMap.get(executor)));
+      }
+    }
+
+    private void finalizeAll(final List<ExecutableFlow> finalizeFlows) {
+      if (finalizeFlows.isEmpty()) {
+        return;
+      }
+      ExecutorManager.this.updaterStage = "Finalizing " + finalizeFlows.size() + " flows.";
+      for (final ExecutableFlow flow : finalizeFlows) {
+        finalizeUpdatedFlow(flow);
+      }
+    }
+
+    private List<Map<String, Object>> fetchUpdates(final Executor executor,
+        final List<ExecutableFlow> flows, final ExecutorUpdateCircuit circuit)
+        throws ExecutorManagerException {
+      final List<Long> updateTimesList = new ArrayList<>();
+      final List<Integer> executionIdsList = new ArrayList<>();
+      // We pack the parameters of the same host together before we
+      // query.
+      fillUpdateTimeAndExecId(flows, executionIdsList, updateTimesList);
+
+      final Pair<String, String> updateTimes =
+          new Pair<>(
+              ConnectorParams.UPDATE_TIME_LIST_PARAM,
+              JSONUtils.toJSON(updateTimesList));
+      final Pair<String, String> executionIds =
+          new Pair<>(ConnectorParams.EXEC_ID_LIST_PARAM,
+              JSONUtils.toJSON(executionIdsList));
+
+      // Executors that don't know the binary format ignore the param and answer in JSON.
+      final Pair<String, String> updateFormat =
+          new Pair<>(ConnectorParams.UPDATE_FORMAT_PARAM,
+              ExecutorManager.this.binaryUpdatesEnabled ? ConnectorParams.UPDATE_FORMAT_BINARY
+                  : null);
+
+      final long startTime = System.currentTimeMillis();
+      circuit.callStarted();
+      try {
+        final Map<String, Object> results =
+            ExecutorManager.this.apiGateway.callWithExecutionId(executor.getHost(),
+                executor.getPort(), ConnectorParams.UPDATE_ACTION,
+                null, null, executionIds, updateTimes, updateFormat);
+        final List<Map<String, Object>> executionUpdates = decodeUpdates(results);
+        circuit.recordSuccess();
+        return executionUpdates;
+      } catch (final ExecutorManagerException e) {
+        circuit.recordFailure(System.currentTimeMillis());
+        throw e;
+      } finally {
+        circuit.callFinished();
+        ExecutorManager.this.commonMetrics.setExecutorRefreshLatency(
+            executor.getHost() + ":" + executor.getPort(),
+            System.currentTimeMillis() - startTime);
+      }
+    }
+
+    /**
+     * Collects the flow updates of an update response, whether they came as JSON, in the binary
+     * format or both.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> decodeUpdates(final Map<String, Object> results)
+        throws ExecutorManagerException {
+      final List<Map<String, Object>> executionUpdates = new ArrayList<>();
+      if (results == null) {
+        return executionUpdates;
+      }
+
+      final List<Map<String, Object>> jsonUpdates =
+          (List<Map<String, Object>>) results.get(ConnectorParams.RESPONSE_UPDATED_FLOWS);
+      if (jsonUpdates != null) {
+        executionUpdates.addAll(jsonUpdates);
+      }
+      final String binaryUpdates =
+          (String) results.get(ConnectorParams.RESPONSE_UPDATED_FLOWS_BINARY);
+      if (binaryUpdates != null) {
+        try {
+          executionUpdates.addAll(
+              ExecutionUpdateCodec.decode(Base64.getDecoder().decode(binaryUpdates)));
+        } catch (final IOException | IllegalArgumentException e) {
+          throw new ExecutorManagerException("Malformed binary update response", e);
+        }
+      }
+      return executionUpdates;
+    }
+
+    /**
+     * Applies the updates of one executor and returns the flows that need finalizing.
+     */
+    private List<ExecutableFlow> applyUpdates(final List<Map<String, Object>> executionUpdates) {
+      final List<ExecutableFlow> finalizeFlows = new ArrayList<>();
+      for (final Map<String, Object> updateMap : executionUpdates) {
+        try {
+          final ExecutableFlow flow = updateExecution(updateMap);
+
+          ExecutorManager.this.updaterStage = "Updated flow " + flow.getExecutionId();
+
+          if (isFinished(flow)) {
+            finalizeFlows.add(flow);
+          }
+        } catch (final ExecutorManagerException e) {
+          final ExecutableFlow flow = e.getExecutableFlow();
+          logger.error(e);
+
+          if (flow != null) {
+            logger.error("Finalizing flow " + flow.getExecutionId());
+            finalizeFlows.add(flow);
+          }
+        }
+      }
+      return finalizeFlows;
+    }
+
+    private List<ExecutableFlow> handleUpdateFailure(final List<ExecutableFlow> flows) {
+      final List<ExecutableFlow> finalizeFlows = new ArrayList<>();
+      for (final ExecutableFlow flow : flows) {
+        final Pair<ExecutionReference, ExecutableFlow> pair =
+            ExecutorManager.this.runningFlows.get(flow.getExecutionId());
+
+        ExecutorManager.this.updaterStage =
+            "Failed to get update. Doing some clean up for flow " + flow.getExecutionId();
+
+        if (pair != null) {
+          final ExecutionReference ref = pair.getFirst();
+          int numErrors = ref.getNumErrors();
+          if (ref.getNumErrors() < this.numErrors) {
+            ref.setNextCheckTime(System.currentTimeMillis()
+                + this.errorThreshold);
+            ref.setNumErrors(++numErrors);
+          } else {
+            logger.error("Evicting flow " + flow.getExecutionId()
+                + ". The executor is unresponsive.");
+            // TODO should send out an unresponsive email here.
+            finalizeFlows.add(pair.getSecond());
+          }
+        }
+      }
+      return finalizeFlows;
+    }
+  }
+
+  /**
+   * Circuit breaker for the update calls to one executor. After a few failures in a row the
+   * executor is left alone for a while instead of tying up an updater thread on every round. A
+   * call that is still hanging also keeps new calls away.
+   */
+  private static class ExecutorUpdateCircuit {
+
+    private static final int FAILURES_TO_OPEN = 3;
+    private static final long OPEN_INTERVAL_MS = 30 * 1000;
+    private int consecutiveFailures = 0;
+    private long openUntil = -1;
+    private boolean callInFlight = false;
+
+    private synchronized boolean allowCall(final long now) {
+      return !this.callInFlight && now >= this.openUntil;
+    }
+
+    private synchronized void callStarted() {
+      this.callInFlight = true;
+    }
+
+    private synchronized void callFinished() {
+      this.callInFlight = false;
+    }
+
+    private synchronized void recordSuccess() {
+      this.consecutiveFailures = 0;
+      this.openUntil = -1;
+    }
+
+    private synchronized void recordFailure(final long now) {
+      this.consecutiveFailures++;
+      if (this.consecutiveFailures >= FAILURES_TO_OPEN) {
+        this.openUntil = now + OPEN_INTERVAL_MS;
+      }
+    }
+  }
+
+  /**
+   * Keeps a status update stream open to one executor and applies the updates it pushes as they
+   * arrive. The stream is reopened for as long as the executor runs flows of this web server.
+   * Failures back off exponentially; meanwhile the updater thread polls the executor as before.
+   */
+  private class ExecutorStatusStreamThread extends Thread {
+
+    private static final long MIN_RETRY_WAIT_MS = 1000;
+    private static final long MAX_RETRY_WAIT_MS = 60 * 1000;
+    private final Executor executor;
+    private volatile boolean connected = false;
+    private volatile boolean shutdown = false;
+    private long retryWaitMs = 0;
+
+    public ExecutorStatusStreamThread(final Executor executor) {
+      this.executor = executor;
+      this.setName("ExecutorStatusStream-" + executor.getHost() + ":" + executor.getPort());
+      this.setDaemon(true);
+    }
+
+    private boolean isConnected() {
+      return this.connected;
+    }
+
+    private void shutdown() {
+      this.shutdown = true;
+      this.interrupt();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!this.shutdown) {
+          final List<ExecutableFlow> flows = getRunningFlowsOn(this.executor);
+          if (flows.isEmpty()) {
+            break;
+          }
+
+          final List<Long> updateTimesList = new ArrayList<>();
+          final List<Integer> executionIdsList = new ArrayList<>();
+          fillUpdateTimeAndExecId(flows, executionIdsList, updateTimesList);
+          final List<Pair<String, String>> params = Arrays.asList(
+              new Pair<>(ConnectorParams.EXEC_ID_LIST_PARAM, JSONUtils.toJSON(executionIdsList)),
+              new Pair<>(ConnectorParams.UPDATE_TIME_LIST_PARAM,
+                  JSONUtils.toJSON(updateTimesList)));
+
+          try {
+            ExecutorManager.this.apiGateway.streamUpdates(this.executor,
+                ExecutorManager.this.statusStreamDurationMs, params, this::applyUpdates);
+            this.retryWaitMs = 0;
+          } catch (final IOException e) {
+            this.retryWaitMs = Math.min(MAX_RETRY_WAIT_MS,
+                Math.max(MIN_RETRY_WAIT_MS, this.retryWaitMs * 2));
+            logger.warn("Status stream to " + this.executor.getHost() + ":"
+                + this.executor.getPort() + " failed, retrying in " + this.retryWaitMs + " ms. "
+                + e.getMessage());
+          } finally {
+            this.connected = false;
+          }
+
+          if (this.retryWaitMs > 0) {
+            Thread.sleep(this.retryWaitMs);
+          }
+        }
+      } catch (final InterruptedException e) {
+        logger.info("Status stream to " + this.executor.getHost() + " interrupted.");
+      } finally {
+        ExecutorManager.this.statusStreams.remove(this.executor.getId(), this);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applyUpdates(final Map<String, Object> batch) {
+      this.connected = true;
+      final List<Map<String, Object>> executionUpdates =
+          (List<Map<String, Object>>) batch.get(ConnectorParams.RESPONSE_UPDATED_FLOWS);
+      if (executionUpdates == null) {
+        return;
+      }
+
+      for (final Map<String, Object> updateMap : executionUpdates) {
+        // The executor reports every flow it knows, including ones dispatched by other web
+        // servers and ones already finalized here.
+        final Integer execId = (Integer) updateMap.get(ConnectorParams.UPDATE_MAP_EXEC_ID);
+        if (execId == null || !ExecutorManager.this.runningFlows.containsKey(execId)) {
+          continue;
+        }
+        try {
+          final ExecutableFlow flow = updateExecution(updateMap);
+          if (isFinished(flow)) {
+            finalizeUpdatedFlow(flow);
+          }
+        } catch (final ExecutorManagerException e) {
+          logger.error(e);
+          if (e.getExecutableFlow() != null) {
+            finalizeUpdatedFlow(e.getExecutableFlow());
+          }
+        }
+      }
+    }
   }
 
   /*
@@ -1663,66 +2295,194 @@ public class ExecutorManager extends EventHandler implements
       }
     }
 
-    /* Method responsible for processing the non-dispatched flows */
+    /**
+     * Method responsible for processing the non-dispatched flows. Queued flows are taken in
+     * batches: executors are chosen for the whole batch against the local capacity model, and
+     * the dispatch calls then go out concurrently.
+     */
     private void processQueuedFlows(final long activeExecutorsRefreshWindow,
         final int maxContinuousFlowProcessed) throws InterruptedException,
         ExecutorManagerException {
       long lastExecutorRefreshTime = 0;
       int currentContinuousFlowProcessed = 0;
 
-      while (isActive() && (ExecutorManager.this.runningCandidate = ExecutorManager.this.queuedFlows
-          .fetchHead()) != null) {
-        final ExecutionReference reference = ExecutorManager.this.runningCandidate.getFirst();
-        final ExecutableFlow exflow = ExecutorManager.this.runningCandidate.getSecond();
+      while (isActive()) {
+        final Pair<ExecutionReference, ExecutableFlow> head =
+            ExecutorManager.this.queuedFlows.fetchHead();
+        final List<Pair<ExecutionReference, ExecutableFlow>> batch = new ArrayList<>();
+        for (Pair<ExecutionReference, ExecutableFlow> next = head; next != null;
+            next = batch.size() < ExecutorManager.this.dispatchBatchSize
+                ? ExecutorManager.this.queuedFlows.pollHead() : null) {
+          ExecutorManager.this.dispatchingFlows.put(next.getFirst().getExecId(), next);
+          batch.add(next);
+        }
         final long currentTime = System.currentTimeMillis();
+        boolean allExecutorsBusy;
+        try {
+          // if we have dispatched more than maxContinuousFlowProcessed or
+          // It has been more then activeExecutorsRefreshWindow millisec since we
+          // refreshed
+          if (currentTime - lastExecutorRefreshTime > activeExecutorsRefreshWindow
+              || currentContinuousFlowProcessed >= maxContinuousFlowProcessed) {
+            // Refresh executorInfo for all activeExecutors
+            refreshExecutors();
+            lastExecutorRefreshTime = currentTime;
+            currentContinuousFlowProcessed = 0;
+          }
+
+          final Set<Executor> availableExecutors =
+              new HashSet<>(ExecutorManager.this.activeExecutors);
+          final List<Pair<ExecutionReference, ExecutableFlow>> assigned = new ArrayList<>();
+          final List<Executor> assignedExecutors = new ArrayList<>();
+          allExecutorsBusy = !hasDispatchCapacity(availableExecutors);
+          for (final Pair<ExecutionReference, ExecutableFlow> pair : batch) {
+            final ExecutionReference reference = pair.getFirst();
+            final ExecutableFlow exflow = pair.getSecond();
+
+            // A flow that was already tried since the last refresh means the executors
+            // were busy for reasons the capacity model doesn't cover (memory, cpu). Either way,
+            // put the flows back in the queue and wait for the next refresh.
+            allExecutorsBusy =
+                allExecutorsBusy || exflow.getUpdateTime() > lastExecutorRefreshTime;
+            if (allExecutorsBusy) {
+              requeue(reference, exflow);
+              continue;
+            }
 
-        // if we have dispatched more than maxContinuousFlowProcessed or
-        // It has been more then activeExecutorsRefreshWindow millisec since we
-        // refreshed
+            synchronized (exflow) {
+              exflow.setUpdateTime(currentTime);
+              final Executor selectedExecutor = selectExecutor(exflow, availableExecutors);
+              if (selectedExecutor != null) {
+                reserveDispatchCapacity(selectedExecutor);
+                assigned.add(pair);
+                assignedExecutors.add(selectedExecutor);
+              } else {
+                ExecutorManager.this.commonMetrics.markDispatchFail();
+                handleNoExecutorSelectedCase(reference, exflow);
+                ExecutorManager.this.dispatchingFlows.remove(reference.getExecId());
+              }
+            }
+          }
 
-        if (currentTime - lastExecutorRefreshTime > activeExecutorsRefreshWindow
-            || currentContinuousFlowProcessed >= maxContinuousFlowProcessed) {
-          // Refresh executorInfo for all activeExecutors
-          refreshExecutors();
-          lastExecutorRefreshTime = currentTime;
-          currentContinuousFlowProcessed = 0;
+          currentContinuousFlowProcessed +=
+              dispatchAll(assigned, assignedExecutors, availableExecutors);
+        } finally {
+          // If the batch broke off part-way, the flows it didn't get to go back to the queue
+          // instead of staying marked as dispatching for good.
+          for (final Pair<ExecutionReference, ExecutableFlow> pair : batch) {
+            final int execId = pair.getFirst().getExecId();
+            if (ExecutorManager.this.dispatchingFlows.remove(execId) != null
+                && !ExecutorManager.this.runningFlows.containsKey(execId)
+                && !ExecutorManager.this.queuedFlows.hasExecution(execId)) {
+              requeueLeftover(pair.getFirst(), pair.getSecond());
+            }
+          }
         }
 
-        /**
-         * <pre>
-         *  TODO: Work around till we improve Filters to have a notion of GlobalSystemState.
-         *        Currently we try each queued flow once to infer a global busy state
-         * Possible improvements:-
-         *   1. Move system level filters in refreshExecutors and sleep if we have all executors busy after refresh
-         *   2. Implement GlobalSystemState in selector or in a third place to manage system filters. Basically
-         *      taking out all the filters which do not depend on the flow but are still being part of Selector.
-         * Assumptions:-
-         *   1. no one else except QueueProcessor is updating ExecutableFlow update time
-         *   2. re-attempting a flow (which has been tried before) is considered as all executors are busy
-         * </pre>
-         */
-        if (exflow.getUpdateTime() > lastExecutorRefreshTime) {
-          // put back in the queue
-          ExecutorManager.this.queuedFlows.enqueue(exflow, reference);
-          ExecutorManager.this.runningCandidate = null;
+        if (allExecutorsBusy) {
           final long sleepInterval =
               activeExecutorsRefreshWindow
-                  - (currentTime - lastExecutorRefreshTime);
+                  - (System.currentTimeMillis() - lastExecutorRefreshTime);
           // wait till next executor refresh
-          sleep(sleepInterval);
-        } else {
-          exflow.setUpdateTime(currentTime);
-          // process flow with current snapshot of activeExecutors
-          selectExecutorAndDispatchFlow(reference, exflow, new HashSet<>(
-              ExecutorManager.this.activeExecutors));
-          ExecutorManager.this.runningCandidate = null;
+          if (sleepInterval > 0) {
+            sleep(sleepInterval);
+          }
+        }
+      }
+    }
+
+    /**
+     * Sends the assigned flows to their executors concurrently. Flows whose dispatch fails go
+     * through the usual retry on the remaining executors.
+     *
+     * @return the number of flows that left the queue
+     */
+    private int dispatchAll(final List<Pair<ExecutionReference, ExecutableFlow>> assigned,
+        final List<Executor> assignedExecutors, final Set<Executor> availableExecutors)
+        throws InterruptedException, ExecutorManagerException {
+      final List<Future<Boolean>> dispatches = new ArrayList<>();
+      for (int i = 0; i < assigned.size(); ++i) {
+        final ExecutionReference reference = assigned.get(i).getFirst();
+        final ExecutableFlow exflow = assigned.get(i).getSecond();
+        final Executor executor = assignedExecutors.get(i);
+        dispatches.add(ExecutorManager.this.dispatcherService.submit(() -> {
+          if (!reserveSlot(exflow, executor)) {
+            return false;
+          }
+          synchronized (exflow) {
+            dispatch(reference, exflow, executor);
+          }
+          return true;
+        }));
+      }
+
+      // Let every call finish first, so that no flow of the batch is still on its way to an
+      // executor if handling one of the results fails.
+      for (final Future<Boolean> dispatch : dispatches) {
+        try {
+          dispatch.get();
+        } catch (final ExecutionException e) {
+          // handled below
+        }
+      }
+
+      int numProcessed = 0;
+      for (int i = 0; i < assigned.size(); ++i) {
+        final ExecutionReference reference = assigned.get(i).getFirst();
+        final ExecutableFlow exflow = assigned.get(i).getSecond();
+        final Executor executor = assignedExecutors.get(i);
+        try {
+          if (dispatches.get(i).get()) {
+            ExecutorManager.this.commonMetrics.markDispatchSuccess();
+          } else {
+            // The executor filled up since it was last refreshed. That isn't a dispatch error:
+            // the flow goes to another executor, or back to the queue if there is none.
+            logger.info(String.format("Executor %s has no slot left for exec %d",
+                executor, exflow.getExecutionId()));
+            final Set<Executor> remainingExecutors = new HashSet<>(availableExecutors);
+            remainingExecutors.remove(executor);
+            if (remainingExecutors.isEmpty()) {
+              requeue(reference, exflow);
+            } else {
+              selectExecutorAndDispatchFlow(reference, exflow, remainingExecutors);
+            }
+          }
+        } catch (final ExecutionException e) {
+          ExecutorManager.this.commonMetrics.markDispatchFail();
+          releaseDispatchCapacity(executor);
+          logger.warn(String.format(
+              "Executor %s responded with exception for exec: %d",
+              executor, exflow.getExecutionId()), e.getCause());
+          synchronized (exflow) {
+            handleDispatchExceptionCase(reference, exflow, executor,
+                new HashSet<>(availableExecutors));
+          }
+        } finally {
+          ExecutorManager.this.dispatchingFlows.remove(reference.getExecId());
         }
 
         // do not count failed flow processsing (flows still in queue)
         if (ExecutorManager.this.queuedFlows.getFlow(exflow.getExecutionId()) == null) {
-          currentContinuousFlowProcessed++;
+          numProcessed++;
         }
       }
+      return numProcessed;
+    }
+
+    private void requeue(final ExecutionReference reference, final ExecutableFlow exflow)
+        throws ExecutorManagerException {
+      ExecutorManager.this.queuedFlows.enqueue(exflow, reference);
+      ExecutorManager.this.dispatchingFlows.remove(reference.getExecId());
+    }
+
+    private void requeueLeftover(final ExecutionReference reference,
+        final ExecutableFlow exflow) {
+      try {
+        ExecutorManager.this.queuedFlows.enqueue(exflow, reference);
+      } catch (final ExecutorManagerException e) {
+        logger.error("Failed to requeue exec " + exflow.getExecutionId(), e);
+        finalizeFlows(exflow);
+      }
     }
 
     /* process flow with a snapshot of available Executors */
@@ -1731,7 +2491,9 @@ public class ExecutorManager extends EventHandler implements
         throws ExecutorManagerException {
       synchronized (exflow) {
         final Executor selectedExecutor = selectExecutor(exflow, availableExecutors);
-        if (selectedExecutor != null) {
+        if (selectedExecutor != null && !reserveSlot(exflow, selectedExecutor)) {
+          handleNoExecutorSelectedCase(reference, exflow);
+        } else if (selectedExecutor != null) {
           try {
             dispatch(reference, exflow, selectedExecutor);
             ExecutorManager.this.commonMetrics.markDispatchSuccess();
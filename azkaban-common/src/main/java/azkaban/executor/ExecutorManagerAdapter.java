@@ -19,6 +19,7 @@ package azkaban.executor;
 import azkaban.project.Project;
 import azkaban.utils.FileIOUtils.JobMetaData;
 import azkaban.utils.FileIOUtils.LogData;
+import azkaban.utils.LogSearcher;
 import azkaban.utils.Pair;
 import java.io.IOException;
 import java.lang.Thread.State;
@@ -26,6 +27,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 public interface ExecutorManagerAdapter {
 
@@ -84,6 +86,38 @@ public interface ExecutorManagerAdapter {
   public LogData getExecutionJobLog(ExecutableFlow exFlow, String jobId,
       int offset, int length, int attempt) throws ExecutorManagerException;
 
+  /**
+   * Hands a range of the flow log to the handler. The log of a running execution is streamed from
+   * its executor without reading it into memory.
+   */
+  public void streamExecutableFlowLog(ExecutableFlow exFlow, long offset, int length,
+      LogStreamHandler handler) throws ExecutorManagerException;
+
+  /**
+   * Hands a range of a job log to the handler. The log of a running execution is streamed from
+   * its executor without reading it into memory.
+   */
+  public void streamExecutionJobLog(ExecutableFlow exFlow, String jobId, long offset,
+      int length, int attempt, LogStreamHandler handler) throws ExecutorManagerException;
+
+  /**
+   * Finds the lines of the flow log that match the pattern, from offset on. The log is searched
+   * where it is, on the executor while the flow runs and in the DB after.
+   */
+  public LogSearcher.Result searchExecutableFlowLog(ExecutableFlow exFlow, Pattern pattern,
+      long offset, int maxMatches) throws ExecutorManagerException;
+
+  /**
+   * Finds the lines of a job log that match the pattern, from offset on. The log is searched
+   * where it is, on the executor while the flow runs and in the DB after.
+   *
+   * @param maxBytes the bytes to search at most, so that the searches of several attempts can
+   * share one budget
+   */
+  public LogSearcher.Result searchExecutionJobLog(ExecutableFlow exFlow, String jobId,
+      int attempt, Pattern pattern, long offset, int maxMatches, long maxBytes)
+      throws ExecutorManagerException;
+
   public List<Object> getExecutionJobStats(ExecutableFlow exflow, String jobId,
       int attempt) throws ExecutorManagerException;
 
@@ -134,6 +168,12 @@ public interface ExecutorManagerAdapter {
    * azkaban.executor.ConnectorParams#STATS_SET_ENABLEMETRICS}<li> <li>{@link
    * azkaban.executor.ConnectorParams#STATS_SET_DISABLEMETRICS}<li> </ul>
    */
+  /**
+   * Asks the active executors to install a project version in the background, so that its first
+   * execution doesn't wait for the download. Returns without waiting for the executors.
+   */
+  public void prepareProject(int projectId, int version);
+
   public Map<String, Object> callExecutorStats(int executorId, String action,
       Pair<String, String>... param) throws IOException, ExecutorManagerException;
 
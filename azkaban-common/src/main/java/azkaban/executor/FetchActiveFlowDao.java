@@ -71,13 +71,28 @@ public class FetchActiveFlowDao {
     }
   }
 
+  /**
+   * Applies the status and times of the flow columns when they were written after the flow data.
+   * The update time of the flow data is kept: the executor sends the changes of the jobs since
+   * that time, and the job states are only in the flow data and the job rows.
+   */
+  private static void applyFlowState(final ExecutableFlow flow, final ResultSet rs)
+      throws SQLException {
+    if (rs.getLong(9) > flow.getUpdateTime()) {
+      flow.setStatus(Status.fromInteger(rs.getInt(8)));
+      flow.setStartTime(rs.getLong(10));
+      flow.setEndTime(rs.getLong(11));
+    }
+  }
+
   private static class FetchActiveExecutableFlows implements
       ResultSetHandler<Map<Integer, Pair<ExecutionReference, ExecutableFlow>>> {
 
     // Select running and executor assigned flows
     private static final String FETCH_ACTIVE_EXECUTABLE_FLOW =
         "SELECT ex.exec_id exec_id, ex.enc_type enc_type, ex.flow_data flow_data, et.host host, "
-            + "et.port port, et.id executorId, et.active executorStatus"
+            + "et.port port, et.id executorId, et.active executorStatus, ex.status status, "
+            + "ex.update_time update_time, ex.start_time start_time, ex.end_time end_time"
             + " FROM execution_flows ex"
             + " INNER JOIN "
             + " executors et ON ex.executor_id = et.id"
@@ -112,6 +127,7 @@ public class FetchActiveFlowDao {
             final ExecutableFlow exFlow =
                 ExecutableFlow.createExecutableFlowFromObject(
                     GZIPUtils.transformBytesToObject(data, encType));
+            applyFlowState(exFlow, rs);
 
             final Executor executor = new Executor(executorId, host, port, executorStatus);
             final ExecutionReference ref = new ExecutionReference(id, executor);
@@ -131,7 +147,8 @@ public class FetchActiveFlowDao {
 
     private static final String FETCH_ACTIVE_EXECUTABLE_FLOW_BY_EXECID =
         "SELECT ex.exec_id exec_id, ex.enc_type enc_type, ex.flow_data flow_data, et.host host, "
-            + "et.port port, et.id executorId, et.active executorStatus"
+            + "et.port port, et.id executorId, et.active executorStatus, ex.status status, "
+            + "ex.update_time update_time, ex.start_time start_time, ex.end_time end_time"
             + " FROM execution_flows ex"
             + " INNER JOIN "
             + " executors et ON ex.executor_id = et.id"
@@ -166,6 +183,7 @@ public class FetchActiveFlowDao {
             final ExecutableFlow exFlow =
                 ExecutableFlow.createExecutableFlowFromObject(
                     GZIPUtils.transformBytesToObject(data, encType));
+            applyFlowState(exFlow, rs);
 
             final Executor executor = new Executor(executorId, host, port, executorStatus);
             final ExecutionReference ref = new ExecutionReference(id, executor);
@@ -18,6 +18,7 @@ package azkaban.executor;
 
 import azkaban.executor.ExecutorLogEvent.EventType;
 import azkaban.utils.FileIOUtils.LogData;
+import azkaban.utils.LogSearcher;
 import azkaban.utils.Pair;
 import azkaban.utils.Props;
 import javax.inject.Inject;
@@ -26,6 +27,7 @@ import java.io.File;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 @Singleton
 public class JdbcExecutorLoader implements ExecutorLoader {
@@ -68,9 +70,15 @@ public class JdbcExecutorLoader implements ExecutorLoader {
   }
 
   @Override
-  public void updateExecutableFlow(final ExecutableFlow flow)
+  public long updateExecutableFlow(final ExecutableFlow flow)
       throws ExecutorManagerException {
-    this.executionFlowDao.updateExecutableFlow(flow);
+    return this.executionFlowDao.updateExecutableFlow(flow);
+  }
+
+  @Override
+  public void updateExecutableFlowStatus(final ExecutableFlow flow)
+      throws ExecutorManagerException {
+    this.executionFlowDao.updateExecutableFlowStatus(flow);
   }
 
   @Override
@@ -237,6 +245,14 @@ public class JdbcExecutorLoader implements ExecutorLoader {
     return this.executionLogsDao.fetchLogs(execId, name, attempt, startByte, length);
   }
 
+  @Override
+  public LogSearcher.Result searchLogs(final int execId, final String name, final int attempt,
+      final Pattern pattern, final int startByte, final int maxMatches, final long maxBytes)
+      throws ExecutorManagerException {
+    return this.executionLogsDao.searchLogs(execId, name, attempt, pattern, startByte,
+        maxMatches, maxBytes);
+  }
+
   @Override
   public List<Object> fetchAttachments(final int execId, final String jobId, final int attempt)
       throws ExecutorManagerException {
@@ -329,4 +345,9 @@ public class JdbcExecutorLoader implements ExecutorLoader {
   public void unassignExecutor(final int executionId) throws ExecutorManagerException {
     this.assignExecutorDao.unassignExecutor(executionId);
   }
+
+  @Override
+  public void shutdown() {
+    this.executionLogsDao.shutdown();
+  }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives a range of a log as a stream of UTF-8 bytes.
+ */
+public interface LogStreamHandler {
+
+  /**
+   * @param offset the offset of the range in the log, aligned to a whole character
+   * @param length the number of bytes in the range
+   * @param data the bytes of the range. It is only valid during the call.
+   */
+  void handle(long offset, int length, InputStream data) throws IOException;
+}
@@ -1,91 +1,240 @@
 package azkaban.executor;
 
+import azkaban.utils.IndexedPriorityQueue;
 import azkaban.utils.Pair;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.BlockingQueue;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.log4j.Logger;
 
 /**
  * <pre>
  * Composite data structure to represent non-dispatched flows in webserver.
- * This data structure wraps a blocking queue and a concurrent hashmap.
+ * This data structure wraps indexed priority queues and a concurrent hashmap.
+ * Removing or re-prioritizing a queued execution by its id is O(log n).
+ *
+ * Flows are ordered as per {@link ExecutableFlowPriorityComparator}. When a
+ * fair share key is set, flows are grouped by project or submit user:
+ * - flows of the same priority are interleaved across owners, in proportion
+ *   to the owners' weights, so that a single owner with a large backlog
+ *   doesn't hold back everyone else.
+ * - an owner that has as many flows running as its quota allows is set aside
+ *   until one of them finishes, while flows of the other owners are dispatched.
+ * Flows taken from the head count as running until {@link #finished(int)} is
+ * called for them or they are enqueued again.
  * </pre>
  */
 public class QueuedExecutions {
 
   private static final Logger logger = Logger.getLogger(QueuedExecutions.class);
+  /* round increment of an owner with weight 1 */
+  private static final long ROUND_SCALE = 1000;
   final long capacity;
 
   /* map to easily access queued flows */
   final private ConcurrentHashMap<Integer, Pair<ExecutionReference, ExecutableFlow>> queuedFlowMap;
-  /* actual queue */
-  final private BlockingQueue<Pair<ExecutionReference, ExecutableFlow>> queuedFlowList;
+  /* owners that have queued flows and are under quota, ordered by their head flow */
+  final private IndexedPriorityQueue<String, OwnerQueue> dispatchableOwners;
+  final private Map<String, OwnerQueue> owners = new HashMap<>();
+  /* owner of every queued or running flow */
+  final private Map<Integer, OwnerQueue> ownerByExecution = new HashMap<>();
+  final private ReentrantLock lock = new ReentrantLock();
+  final private Condition notEmpty = this.lock.newCondition();
+
+  final private FairShareKey fairShareKey;
+  final private Map<String, Integer> weights;
+  final private Map<String, Integer> quotas;
+  final private int defaultQuota;
+  /* round of the most recently fetched flow */
+  private long currentRound = 0;
 
   public QueuedExecutions(final long capacity) {
+    this(capacity, FairShareKey.NONE);
+  }
+
+  public QueuedExecutions(final long capacity, final FairShareKey fairShareKey) {
+    this(capacity, fairShareKey, Collections.emptyMap(), Collections.emptyMap(), 0);
+  }
+
+  /**
+   * @param weights fair share weight per owner. Owners not listed have weight 1.
+   * @param quotas maximum number of running flows per owner
+   * @param defaultQuota quota of the owners not listed. 0 means unlimited.
+   */
+  public QueuedExecutions(final long capacity, final FairShareKey fairShareKey,
+      final Map<String, Integer> weights, final Map<String, Integer> quotas,
+      final int defaultQuota) {
     this.capacity = capacity;
+    this.fairShareKey = fairShareKey;
+    this.weights = weights;
+    this.quotas = quotas;
+    this.defaultQuota = defaultQuota;
     this.queuedFlowMap =
         new ConcurrentHashMap<>();
-    this.queuedFlowList =
-        new PriorityBlockingQueue<>(10,
-            new ExecutableFlowPriorityComparator());
+    this.dispatchableOwners =
+        new IndexedPriorityQueue<>(new OwnerQueueComparator());
   }
 
   /**
-   * Wraps BoundedQueue Take method to have a corresponding update in queuedFlowMap lookup table
+   * Blocks until a flow can be dispatched, then removes and returns the head of the queue
    */
   public Pair<ExecutionReference, ExecutableFlow> fetchHead()
       throws InterruptedException {
-    final Pair<ExecutionReference, ExecutableFlow> pair = this.queuedFlowList.take();
-    if (pair != null && pair.getFirst() != null) {
-      this.queuedFlowMap.remove(pair.getFirst().getExecId());
+    this.lock.lockInterruptibly();
+    try {
+      while (this.dispatchableOwners.isEmpty()) {
+        this.notEmpty.await();
+      }
+      return removeHead();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Non blocking version of fetchHead. Returns null if no flow can be dispatched.
+   */
+  public Pair<ExecutionReference, ExecutableFlow> pollHead() {
+    this.lock.lock();
+    try {
+      return this.dispatchableOwners.isEmpty() ? null : removeHead();
+    } finally {
+      this.lock.unlock();
     }
-    return pair;
   }
 
   /**
    * Helper method to have a single point of deletion in the queued flows
    */
   public void dequeue(final int executionId) {
-    if (this.queuedFlowMap.containsKey(executionId)) {
-      this.queuedFlowList.remove(this.queuedFlowMap.get(executionId));
-      this.queuedFlowMap.remove(executionId);
+    this.lock.lock();
+    try {
+      final OwnerQueue owner = this.ownerByExecution.get(executionId);
+      if (owner != null && owner.entries.remove(executionId) != null) {
+        this.queuedFlowMap.remove(executionId);
+        this.ownerByExecution.remove(executionId);
+        refresh(owner);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Changes the priority of a queued execution and moves it accordingly.
+   *
+   * @return false, if the execution is not queued
+   */
+  public boolean updatePriority(final int executionId, final int priority) {
+    this.lock.lock();
+    try {
+      final OwnerQueue owner = this.ownerByExecution.get(executionId);
+      final QueuedEntry entry = owner == null ? null : owner.entries.get(executionId);
+      if (entry == null) {
+        return false;
+      }
+      final ExecutableFlow exflow = entry.pair.getSecond();
+      if (exflow.getExecutionOptions() != null) {
+        exflow.getExecutionOptions().getFlowParameters()
+            .put(ExecutionOptions.FLOW_PRIORITY, String.valueOf(priority));
+      }
+      entry.priority = priority;
+      owner.entries.update(executionId);
+      refresh(owner);
+      return true;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Counts a flow that was dispatched outside of this queue, e.g. one that was already running
+   * when the web server started, against its owner's quota.
+   */
+  public void running(final ExecutableFlow exflow) {
+    this.lock.lock();
+    try {
+      if (!this.ownerByExecution.containsKey(exflow.getExecutionId())) {
+        final OwnerQueue owner = getOwnerQueue(this.fairShareKey.ownerOf(exflow));
+        owner.running++;
+        this.ownerByExecution.put(exflow.getExecutionId(), owner);
+        refresh(owner);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Releases the quota held by a flow taken from the head. No-op if the flow isn't running.
+   */
+  public void finished(final int executionId) {
+    this.lock.lock();
+    try {
+      final OwnerQueue owner = this.ownerByExecution.get(executionId);
+      if (owner != null && !owner.entries.containsKey(executionId)) {
+        this.ownerByExecution.remove(executionId);
+        owner.running--;
+        refresh(owner);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Number of flows of an owner that were taken from the head and haven't finished yet
+   */
+  public int getRunningCount(final String owner) {
+    this.lock.lock();
+    try {
+      final OwnerQueue ownerQueue = this.owners.get(owner == null ? "" : owner);
+      return ownerQueue == null ? 0 : ownerQueue.running;
+    } finally {
+      this.lock.unlock();
     }
   }
 
   /**
    * <pre>
-   * Helper method to have a single point of insertion in the queued flows
+   * Helper method to have a single point of insertion in the queued flows.
+   * A flow taken from the head earlier stops counting as running.
    *
    * @param exflow
    *          flow to be enqueued
    * @param ref
    *          reference to be enqueued
    * @throws ExecutorManagerException
-   *           case 1: if blocking queue put method fails due to
-   *           InterruptedException
-   *           case 2: if there already an element with
-   *           same execution Id
+   *           if there already an element with same execution Id
    * </pre>
    */
   public void enqueue(final ExecutableFlow exflow, final ExecutionReference ref)
       throws ExecutorManagerException {
-    if (hasExecution(exflow.getExecutionId())) {
-      final String errMsg = "Flow already in queue " + exflow.getExecutionId();
-      throw new ExecutorManagerException(errMsg);
-    }
-
     final Pair<ExecutionReference, ExecutableFlow> pair =
         new Pair<>(ref, exflow);
+    this.lock.lock();
     try {
-      this.queuedFlowMap.put(exflow.getExecutionId(), pair);
-      this.queuedFlowList.put(pair);
-    } catch (final InterruptedException e) {
-      final String errMsg = "Failed to insert flow " + exflow.getExecutionId();
-      logger.error(errMsg, e);
-      throw new ExecutorManagerException(errMsg);
+      final int execId = exflow.getExecutionId();
+      if (this.queuedFlowMap.containsKey(execId)) {
+        final String errMsg = "Flow already in queue " + execId;
+        throw new ExecutorManagerException(errMsg);
+      }
+      finished(execId);
+
+      final OwnerQueue owner = getOwnerQueue(this.fairShareKey.ownerOf(exflow));
+      final QueuedEntry entry = new QueuedEntry(pair, nextRound(owner));
+      owner.entries.offer(execId, entry);
+      owner.lastRound = entry.round;
+      this.ownerByExecution.put(execId, owner);
+      this.queuedFlowMap.put(execId, pair);
+      refresh(owner);
+    } finally {
+      this.lock.unlock();
     }
   }
 
@@ -96,10 +245,7 @@ public class QueuedExecutions {
    * @param collection
    *
    * @throws ExecutorManagerException
-   *           case 1: if blocking queue put method fails due to
-   *           InterruptedException
-   *           case 2: if there already an element with
-   *           same execution Id
+   *           if there already an element with same execution Id
    * </pre>
    */
   public void enqueueAll(
@@ -145,10 +291,10 @@ public class QueuedExecutions {
   }
 
   /**
-   * Size of the queue
+   * Size of the queue, including the flows of owners at their quota
    */
   public long size() {
-    return this.queuedFlowList.size();
+    return this.queuedFlowMap.size();
   }
 
   /**
@@ -162,15 +308,180 @@ public class QueuedExecutions {
    * Verify, if queue is empty or not
    */
   public boolean isEmpty() {
-    return this.queuedFlowList.isEmpty() && this.queuedFlowMap.isEmpty();
+    return this.queuedFlowMap.isEmpty();
   }
 
   /**
-   * Empties queue by dequeuing all the elements
+   * Empties queue by dequeuing all the elements. Running flows keep counting against quotas.
    */
   public void clear() {
-    for (final Pair<ExecutionReference, ExecutableFlow> pair : this.queuedFlowMap.values()) {
-      dequeue(pair.getFirst().getExecId());
+    this.lock.lock();
+    try {
+      for (final Integer execId : this.queuedFlowMap.keySet()) {
+        dequeue(execId);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private Pair<ExecutionReference, ExecutableFlow> removeHead() {
+    final OwnerQueue owner = this.dispatchableOwners.peek();
+    final QueuedEntry entry = owner.entries.poll();
+    this.currentRound = Math.max(this.currentRound, entry.round);
+    this.queuedFlowMap.remove(entry.execId);
+    owner.running++;
+    refresh(owner);
+    return entry.pair;
+  }
+
+  private OwnerQueue getOwnerQueue(final String name) {
+    final String key = name == null ? "" : name;
+    OwnerQueue owner = this.owners.get(key);
+    if (owner == null) {
+      final Integer weight = this.weights.get(key);
+      final Integer quota = this.quotas.get(key);
+      owner = new OwnerQueue(key, weight == null ? 1 : Math.max(1, weight),
+          quota == null ? this.defaultQuota : quota);
+      this.owners.put(key, owner);
+    }
+    return owner;
+  }
+
+  /*
+   * Puts the owner in or out of the dispatchable owners after a change to its flows, and forgets
+   * owners without queued or running flows.
+   */
+  private void refresh(final OwnerQueue owner) {
+    if (owner.isDispatchable()) {
+      if (!this.dispatchableOwners.update(owner.name)) {
+        this.dispatchableOwners.offer(owner.name, owner);
+      }
+      this.notEmpty.signal();
+    } else {
+      this.dispatchableOwners.remove(owner.name);
+      if (owner.entries.isEmpty()) {
+        owner.lastRound = -1;
+        if (owner.running <= 0) {
+          this.owners.remove(owner.name);
+        }
+      }
+    }
+  }
+
+  /*
+   * An owner's next flow goes after its previous one by a step that shrinks as its weight grows,
+   * but never before the round being dispatched, so owners without a backlog are served right
+   * away. Without a fair share key everything is in round 0.
+   */
+  private long nextRound(final OwnerQueue owner) {
+    if (this.fairShareKey == FairShareKey.NONE) {
+      return 0;
+    }
+    return owner.lastRound < 0 ? this.currentRound
+        : Math.max(this.currentRound, owner.lastRound + ROUND_SCALE / owner.weight);
+  }
+
+  /**
+   * What queued flows are grouped by for fair share ordering and quotas.
+   */
+  public enum FairShareKey {
+    NONE,
+    PROJECT,
+    USER;
+
+    public static FairShareKey fromString(final String name) {
+      return name == null ? NONE : valueOf(name.trim().toUpperCase());
+    }
+
+    String ownerOf(final ExecutableFlow exflow) {
+      switch (this) {
+        case PROJECT:
+          return exflow.getProjectName();
+        case USER:
+          return exflow.getSubmitUser();
+        default:
+          return null;
+      }
+    }
+  }
+
+  /* Queued flows of one owner */
+  private static class OwnerQueue {
+
+    private final String name;
+    private final int weight;
+    private final int quota;
+    private final IndexedPriorityQueue<Integer, QueuedEntry> entries =
+        new IndexedPriorityQueue<>(new QueuedEntryComparator());
+    private int running = 0;
+    private long lastRound = -1;
+
+    private OwnerQueue(final String name, final int weight, final int quota) {
+      this.name = name;
+      this.weight = weight;
+      this.quota = quota;
+    }
+
+    private boolean isDispatchable() {
+      return !this.entries.isEmpty() && (this.quota <= 0 || this.running < this.quota);
+    }
+  }
+
+  /* Queued pair along with the sort keys, which are fixed at insertion */
+  private static class QueuedEntry {
+
+    private final Pair<ExecutionReference, ExecutableFlow> pair;
+    private final int execId;
+    private final long updateTime;
+    private final long round;
+    private int priority;
+
+    private QueuedEntry(final Pair<ExecutionReference, ExecutableFlow> pair, final long round) {
+      this.pair = pair;
+      this.execId = pair.getSecond().getExecutionId();
+      this.updateTime = pair.getSecond().getUpdateTime();
+      this.priority = ExecutableFlowPriorityComparator.getPriority(pair.getSecond());
+      this.round = round;
+    }
+  }
+
+  /**
+   * <pre>
+   * Same order as ExecutableFlowPriorityComparator, with the fair share round
+   * taken into account right after the priority:-
+   * 1. descending order of priority
+   * 2. if same priority, ascending order of round
+   * 3. if same round, ascending order of update time
+   * 4. if same update time, ascending order of execution id
+   * </pre>
+   */
+  private static class QueuedEntryComparator implements Comparator<QueuedEntry> {
+
+    @Override
+    public int compare(final QueuedEntry entry1, final QueuedEntry entry2) {
+      int diff = Integer.compare(entry2.priority, entry1.priority);
+      if (diff == 0) {
+        diff = Long.compare(entry1.round, entry2.round);
+      }
+      if (diff == 0) {
+        diff = Long.compare(entry1.updateTime, entry2.updateTime);
+      }
+      if (diff == 0) {
+        diff = Integer.compare(entry1.execId, entry2.execId);
+      }
+      return diff;
+    }
+  }
+
+  /* Orders owners by their head flow */
+  private static class OwnerQueueComparator implements Comparator<OwnerQueue> {
+
+    private final QueuedEntryComparator entryComparator = new QueuedEntryComparator();
+
+    @Override
+    public int compare(final OwnerQueue owner1, final OwnerQueue owner2) {
+      return this.entryComparator.compare(owner1.entries.peek(), owner2.entries.peek());
     }
   }
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+/**
+ * Looks up the flows running in this server, so that reading their state doesn't fetch them from
+ * the DB.
+ */
+public interface RunningFlowLookup {
+
+  /**
+   * @return the flow, or null if it isn't running in this server. A flow that has just finished
+   * may be returned with its final status.
+   */
+  ExecutableFlow getRunningFlow(int execId);
+}
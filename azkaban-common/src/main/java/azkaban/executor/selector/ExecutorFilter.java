@@ -31,7 +31,7 @@ import java.util.Set;
 public final class ExecutorFilter extends CandidateFilter<Executor, ExecutableFlow> {
 
   // factor filter names.
-  private static final String STATICREMAININGFLOWSIZE_FILTER_NAME = "StaticRemainingFlowSize";
+  public static final String STATICREMAININGFLOWSIZE_FILTER_NAME = "StaticRemainingFlowSize";
   private static final String MINIMUMFREEMEMORY_FILTER_NAME = "MinimumFreeMemory";
   private static final String CPUSTATUS_FILTER_NAME = "CpuStatus";
   private static Map<String, FactorFilter<Executor, ExecutableFlow>> filterRepository = null;
@@ -17,8 +17,10 @@
 package azkaban.flow;
 
 import azkaban.executor.mail.DefaultMailCreator;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -166,15 +168,25 @@ public class Flow {
 
       for (final Node node : this.startNodes) {
         node.setLevel(0);
-        this.numLevels = 0;
-        recursiveSetLevels(node);
       }
+      this.numLevels = 0;
+      setLevels();
     }
   }
 
-  private void recursiveSetLevels(final Node node) {
-    final Set<Edge> edges = this.outEdges.get(node.getId());
-    if (edges != null) {
+  /**
+   * Sets the level of each node to its max distance from a start node. The nodes are visited in
+   * topological order, so a node is visited once rather than once per path leading to it.
+   */
+  private void setLevels() {
+    final Map<String, Integer> numPendingInEdges = new HashMap<>();
+    final Deque<Node> queue = new ArrayDeque<>(this.startNodes);
+    while (!queue.isEmpty()) {
+      final Node node = queue.poll();
+      final Set<Edge> edges = this.outEdges.get(node.getId());
+      if (edges == null) {
+        continue;
+      }
       for (final Edge edge : edges) {
         final Node nextNode = this.nodes.get(edge.getTargetId());
         edge.setSource(node);
@@ -184,7 +196,15 @@ public class Flow {
         final int level = Math.max(node.getLevel() + 1, nextNode.getLevel());
         nextNode.setLevel(level);
         this.numLevels = Math.max(level, this.numLevels);
-        recursiveSetLevels(nextNode);
+
+        Integer pending = numPendingInEdges.get(nextNode.getId());
+        if (pending == null) {
+          pending = this.inEdges.get(nextNode.getId()).size();
+        }
+        numPendingInEdges.put(nextNode.getId(), --pending);
+        if (pending == 0) {
+          queue.add(nextNode);
+        }
       }
     }
   }
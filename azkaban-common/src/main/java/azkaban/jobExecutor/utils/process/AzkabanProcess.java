@@ -16,13 +16,10 @@
 
 package azkaban.jobExecutor.utils.process;
 
-import azkaban.utils.LogGobbler;
 import com.google.common.base.Joiner;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.lang.reflect.Field;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
@@ -34,7 +31,8 @@ import org.apache.log4j.Logger;
 /**
  * An improved version of java.lang.Process.
  *
- * Output is read by separate threads to avoid deadlock and logged to log4j loggers.
+ * Output is read by the threads of the shared {@link ProcessOutputPump} to avoid deadlock and
+ * logged to log4j loggers.
  */
 public class AzkabanProcess {
 
@@ -97,17 +95,12 @@ public class AzkabanProcess {
 
       this.startupLatch.countDown();
 
-      final LogGobbler outputGobbler =
-          new LogGobbler(
-              new InputStreamReader(this.process.getInputStream(), StandardCharsets.UTF_8),
-              this.logger, Level.INFO, 30);
-      final LogGobbler errorGobbler =
-          new LogGobbler(
-              new InputStreamReader(this.process.getErrorStream(), StandardCharsets.UTF_8),
-              this.logger, Level.ERROR, 30);
-
-      outputGobbler.start();
-      errorGobbler.start();
+      final ProcessOutputPump pump = ProcessOutputPump.getInstance();
+      final ProcessOutputPump.Output outputGobbler =
+          pump.pump(this.process.getInputStream(), this.logger, Level.INFO, 30);
+      final ProcessOutputPump.Output errorGobbler =
+          pump.pump(this.process.getErrorStream(), this.logger, Level.ERROR, 30);
+
       int exitCode = -1;
       try {
         exitCode = this.process.waitFor();
@@ -116,6 +109,8 @@ public class AzkabanProcess {
       }
 
       this.completeLatch.countDown();
+      outputGobbler.processExited();
+      errorGobbler.processExited();
 
       // try to wait for everything to get logged out before exiting
       outputGobbler.awaitCompletion(5000);
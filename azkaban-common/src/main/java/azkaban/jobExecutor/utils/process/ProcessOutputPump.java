@@ -0,0 +1,294 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.jobExecutor.utils.process;
+
+import azkaban.utils.CircularBuffer;
+import com.google.common.base.Joiner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Logs the output of child processes with a few shared threads, instead of a thread per stream
+ * blocked on reading it.
+ *
+ * Each pump thread goes over its streams and reads whatever is available without blocking, splits
+ * it into lines in a byte buffer and logs the lines. When none of its streams had output it waits
+ * a few ms. A stream is done once its process exited and the output left in the pipe is read.
+ */
+public class ProcessOutputPump {
+
+  private static final Logger logger = Logger.getLogger(ProcessOutputPump.class);
+
+  private static final int DEFAULT_NUM_THREADS = 2;
+  private static final long IDLE_WAIT_MS = 10;
+  private static final int READ_BUFFER_SIZE = 8192;
+  // longer lines are logged in pieces
+  private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+  private static volatile ProcessOutputPump instance;
+
+  private final PumpThread[] threads;
+
+  public ProcessOutputPump(final int numThreads) {
+    this.threads = new PumpThread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      this.threads[i] = new PumpThread("azk-process-output-pump-" + i);
+      this.threads[i].start();
+    }
+  }
+
+  /**
+   * @return the pump shared by the processes of this JVM
+   */
+  public static ProcessOutputPump getInstance() {
+    if (instance == null) {
+      synchronized (ProcessOutputPump.class) {
+        if (instance == null) {
+          instance = new ProcessOutputPump(DEFAULT_NUM_THREADS);
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Starts logging the output of a process.
+   *
+   * @param input the output stream of the process
+   * @param level the level to log the lines at
+   * @param tailLines the number of last lines to keep for {@link Output#getRecentLog()}
+   */
+  public Output pump(final InputStream input, final Logger logger, final Level level,
+      final int tailLines) {
+    final Output output = new Output(input, logger, level, tailLines);
+    PumpThread thread = this.threads[0];
+    for (final PumpThread t : this.threads) {
+      if (t.getNumOutputs() < thread.getNumOutputs()) {
+        thread = t;
+      }
+    }
+    thread.add(output);
+    return output;
+  }
+
+  /**
+   * The output of a process being logged.
+   */
+  public static class Output {
+
+    private final InputStream input;
+    private final Logger logger;
+    private final Level level;
+    private final CircularBuffer<String> tail;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private byte[] line = new byte[256];
+    private int lineLength = 0;
+    private volatile boolean processExited = false;
+
+    private Output(final InputStream input, final Logger logger, final Level level,
+        final int tailLines) {
+      this.input = input;
+      this.logger = logger;
+      this.level = level;
+      this.tail = new CircularBuffer<>(tailLines);
+    }
+
+    /**
+     * Tells that the process exited, so no more output is coming once what's in the pipe is read.
+     */
+    public void processExited() {
+      this.processExited = true;
+    }
+
+    /**
+     * Waits for the output to be logged, after the process exited.
+     */
+    public void awaitCompletion(final long waitMs) {
+      try {
+        this.done.await(waitMs, TimeUnit.MILLISECONDS);
+      } catch (final InterruptedException e) {
+        log(Level.INFO, "I/O thread interrupted.", e);
+      }
+    }
+
+    public boolean isDone() {
+      return this.done.getCount() == 0;
+    }
+
+    /**
+     * @return the last lines of output
+     */
+    public String getRecentLog() {
+      synchronized (this.tail) {
+        return Joiner.on(System.getProperty("line.separator")).join(this.tail);
+      }
+    }
+
+    /**
+     * Reads and logs the available output. Returns true if there was any.
+     */
+    private boolean pump() {
+      // checked before reading, so that all output written before the exit is read
+      final boolean exited = this.processExited;
+      try {
+        final int available = this.input.available();
+        if (available > 0) {
+          final int numRead =
+              this.input.read(this.readBuffer, 0, Math.min(available, this.readBuffer.length));
+          if (numRead > 0) {
+            append(numRead);
+            return true;
+          }
+          if (numRead < 0) {
+            finish();
+            return false;
+          }
+        }
+      } catch (final IOException e) {
+        // e.g. the stream was closed
+        if (!exited) {
+          log(Level.ERROR, "Error reading from logging stream:", e);
+        }
+        finish();
+        return false;
+      }
+      if (exited) {
+        finish();
+      }
+      return false;
+    }
+
+    private void append(final int numRead) {
+      for (int i = 0; i < numRead; i++) {
+        final byte b = this.readBuffer[i];
+        if (b == '\n') {
+          logLine();
+        } else {
+          if (this.lineLength == this.line.length) {
+            if (this.lineLength >= MAX_LINE_LENGTH) {
+              logLine();
+            } else {
+              final byte[] grown = new byte[Math.min(this.line.length * 2, MAX_LINE_LENGTH)];
+              System.arraycopy(this.line, 0, grown, 0, this.lineLength);
+              this.line = grown;
+            }
+          }
+          this.line[this.lineLength++] = b;
+        }
+      }
+    }
+
+    private void logLine() {
+      int length = this.lineLength;
+      if (length > 0 && this.line[length - 1] == '\r') {
+        length--;
+      }
+      final String text = new String(this.line, 0, length, StandardCharsets.UTF_8);
+      this.lineLength = 0;
+      synchronized (this.tail) {
+        this.tail.append(text);
+      }
+      if (this.logger != null) {
+        this.logger.log(this.level, text);
+      }
+    }
+
+    private void finish() {
+      if (this.lineLength > 0) {
+        logLine();
+      }
+      this.done.countDown();
+    }
+
+    private void log(final Level level, final String message, final Exception e) {
+      if (this.logger != null) {
+        this.logger.log(level, message, e);
+      }
+    }
+  }
+
+  private static class PumpThread extends Thread {
+
+    // Guarded by itself
+    private final List<Output> outputs = new ArrayList<>();
+
+    private PumpThread(final String name) {
+      super(name);
+      setDaemon(true);
+    }
+
+    private int getNumOutputs() {
+      synchronized (this.outputs) {
+        return this.outputs.size();
+      }
+    }
+
+    private void add(final Output output) {
+      synchronized (this.outputs) {
+        this.outputs.add(output);
+        this.outputs.notifyAll();
+      }
+    }
+
+    @Override
+    public void run() {
+      final List<Output> current = new ArrayList<>();
+      while (true) {
+        try {
+          synchronized (this.outputs) {
+            while (this.outputs.isEmpty()) {
+              this.outputs.wait();
+            }
+            current.clear();
+            current.addAll(this.outputs);
+          }
+
+          boolean hadOutput = false;
+          for (final Iterator<Output> iter = current.iterator(); iter.hasNext(); ) {
+            final Output output = iter.next();
+            hadOutput |= output.pump();
+            if (!output.isDone()) {
+              iter.remove();
+            }
+          }
+          if (!current.isEmpty()) {
+            synchronized (this.outputs) {
+              this.outputs.removeAll(current);
+            }
+          }
+
+          if (!hadOutput) {
+            Thread.sleep(IDLE_WAIT_MS);
+          }
+        } catch (final InterruptedException e) {
+          return;
+        } catch (final RuntimeException e) {
+          logger.error("Error pumping process output", e);
+        }
+      }
+    }
+  }
+}
@@ -17,6 +17,8 @@
 package azkaban.metrics;
 
 import com.codahale.metrics.Meter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -30,6 +32,7 @@ import javax.inject.Singleton;
 public class CommonMetrics {
 
   private final AtomicLong OOMWaitingJobCount = new AtomicLong(0L);
+  private final Map<String, AtomicLong> executorRefreshLatencies = new ConcurrentHashMap<>();
   private final MetricsManager metricsManager;
   private Meter flowFailMeter;
   private Meter dispatchFailMeter;
@@ -89,6 +92,20 @@ public class CommonMetrics {
     this.sendEmailSuccessMeter.mark();
   }
 
+  /**
+   * Record how long the latest status refresh call to an executor took. The gauge for an executor
+   * is registered the first time it is refreshed.
+   *
+   * @param executor host:port of the executor
+   */
+  public void setExecutorRefreshLatency(final String executor, final long latencyMs) {
+    this.executorRefreshLatencies.computeIfAbsent(executor, key -> {
+      final AtomicLong latency = new AtomicLong();
+      this.metricsManager.addGauge("executor-refresh-latency-ms-" + key, latency::get);
+      return latency;
+    }).set(latencyMs);
+  }
+
   /**
    * Mark the occurrence of an job waiting event due to OOM
    */
@@ -196,6 +196,9 @@ class JdbcProjectHandlerSet {
     public static String SELECT_PROJECT_PROPERTIES =
         "SELECT project_id, version, name, modified_time, encoding_type, property FROM project_properties WHERE project_id=? AND version=?";
 
+    public static String SELECT_PROJECT_PROPERTIES_BY_NAME =
+        "SELECT project_id, version, name, modified_time, encoding_type, property FROM project_properties WHERE project_id=? AND version=? AND name LIKE ?";
+
     @Override
     public List<Pair<String, Props>> handle(final ResultSet rs) throws SQLException {
       if (!rs.next()) {
@@ -854,12 +854,13 @@ public class JdbcProjectImpl implements ProjectLoader {
   private void updateProjectProperty(final Project project, final String name, final Props props)
       throws ProjectManagerException, IOException {
     final String UPDATE_PROPERTIES =
-        "UPDATE project_properties SET property=? WHERE project_id=? AND version=? AND name=?";
+        "UPDATE project_properties SET property=?, modified_time=? WHERE project_id=? AND version=? AND name=?";
 
     final byte[] propsData = getBytes(props);
     try {
       this.dbOperator
-          .update(UPDATE_PROPERTIES, propsData, project.getId(), project.getVersion(), name);
+          .update(UPDATE_PROPERTIES, propsData, System.currentTimeMillis(), project.getId(),
+              project.getVersion(), name);
     } catch (final SQLException e) {
       throw new ProjectManagerException(
           "Error updating property " + project.getName() + " version " + project.getVersion(), e);
@@ -946,6 +947,41 @@ public class JdbcProjectImpl implements ProjectLoader {
     }
   }
 
+  @Override
+  public Map<String, Props> fetchProjectProperties(final int projectId, final int version,
+      final String nameSuffix) throws ProjectManagerException {
+    try {
+      final List<Pair<String, Props>> properties = this.dbOperator
+          .query(ProjectPropertiesResultsHandler.SELECT_PROJECT_PROPERTIES_BY_NAME,
+              new ProjectPropertiesResultsHandler(), projectId, version, "%" + nameSuffix);
+      final HashMap<String, Props> props = new HashMap<>();
+      for (final Pair<String, Props> pair : properties) {
+        props.put(pair.getFirst(), pair.getSecond());
+      }
+      return props;
+    } catch (final SQLException e) {
+      logger.error("Error fetching " + nameSuffix + " properties, project id " + projectId
+          + " version " + version, e);
+      throw new ProjectManagerException("Error fetching properties", e);
+    }
+  }
+
+  @Override
+  public long fetchProjectPropertiesModifiedTime(final int projectId, final int version,
+      final String nameSuffix) throws ProjectManagerException {
+    final String SELECT_MODIFIED_TIME =
+        "SELECT MAX(modified_time) FROM project_properties "
+            + "WHERE project_id=? AND version=? AND name LIKE ?";
+    try {
+      return this.dbOperator.query(SELECT_MODIFIED_TIME, rs -> rs.next() ? rs.getLong(1) : 0,
+          projectId, version, "%" + nameSuffix);
+    } catch (final SQLException e) {
+      logger.error("Error fetching properties modified time, project id " + projectId
+          + " version " + version, e);
+      throw new ProjectManagerException("Error fetching properties modified time", e);
+    }
+  }
+
   @Override
   public void cleanOlderProjectVersion(final int projectId, final int version)
       throws ProjectManagerException {
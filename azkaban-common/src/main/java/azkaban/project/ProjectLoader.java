@@ -185,6 +185,21 @@ public interface ProjectLoader {
   Map<String, Props> fetchProjectProperties(int projectId, int version)
       throws ProjectManagerException;
 
+  /**
+   * Fetch the project properties whose names end with the suffix, e.g. the job overrides (.jor),
+   * without reading the others. Returns an empty map if there are none.
+   */
+  Map<String, Props> fetchProjectProperties(int projectId, int version, String nameSuffix)
+      throws ProjectManagerException;
+
+  /**
+   * Fetch the time the properties of the project version whose names end with the suffix were
+   * last uploaded or updated, or 0 if it has none. Lets readers check whether properties they
+   * fetched before are still current.
+   */
+  long fetchProjectPropertiesModifiedTime(int projectId, int version, String nameSuffix)
+      throws ProjectManagerException;
+
   /**
    * Cleans all project versions less tha
    */
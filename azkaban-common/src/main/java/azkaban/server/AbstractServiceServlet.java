@@ -17,14 +17,13 @@
 package azkaban.server;
 
 import azkaban.Constants;
+import azkaban.utils.JSONUtils;
 import java.io.IOException;
-import java.io.OutputStream;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.codehaus.jackson.map.ObjectMapper;
 
 public class AbstractServiceServlet extends HttpServlet {
 
@@ -47,9 +46,7 @@ public class AbstractServiceServlet extends HttpServlet {
   protected void writeJSON(final HttpServletResponse resp, final Object obj)
       throws IOException {
     resp.setContentType(JSON_MIME_TYPE);
-    final ObjectMapper mapper = new ObjectMapper();
-    final OutputStream stream = resp.getOutputStream();
-    mapper.writeValue(stream, obj);
+    JSONUtils.toJSON(obj, resp.getOutputStream());
   }
 
   public boolean hasParam(final HttpServletRequest request, final String param) {
@@ -30,6 +30,8 @@ public class Condition {
 
   private static final Logger logger = Logger.getLogger(Condition.class);
 
+  private static final int JEXL_CACHE_SIZE = 1024;
+  // Shared, so that the expressions of the conditions, mostly alike, are parsed only once.
   private static final JexlEngine jexl = new JexlEngine();
   private static CheckerTypeLoader checkerLoader = null;
   private final MapContext context = new MapContext();
@@ -38,6 +40,10 @@ public class Condition {
       new HashMap<>();
   private Long nextCheckTime = -1L;
 
+  static {
+    jexl.setCache(JEXL_CACHE_SIZE);
+  }
+
   public Condition(final Map<String, ConditionChecker> checkers, final String expr) {
     setCheckers(checkers);
     this.expression = jexl.createExpression(expr);
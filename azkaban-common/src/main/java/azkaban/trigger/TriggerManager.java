@@ -29,10 +29,15 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.log4j.Logger;
 
 @Singleton
@@ -40,6 +45,7 @@ public class TriggerManager extends EventHandler implements
     TriggerManagerAdapter {
 
   public static final long DEFAULT_SCANNER_INTERVAL_MS = 60000;
+  public static final int DEFAULT_SCANNER_THREADS = 4;
   private static final Logger logger = Logger.getLogger(TriggerManager.class);
   private static final Map<Integer, Trigger> triggerIdMap =
       new ConcurrentHashMap<>();
@@ -52,7 +58,7 @@ public class TriggerManager extends EventHandler implements
   private final LocalTriggerJMX jmxStats = new LocalTriggerJMX();
   private long lastRunnerThreadCheckTime = -1;
   private long runnerThreadIdleTime = -1;
-  private String scannerStage = "";
+  private volatile String scannerStage = "";
 
   @Inject
   public TriggerManager(final Props props, final TriggerLoader triggerLoader,
@@ -64,7 +70,8 @@ public class TriggerManager extends EventHandler implements
 
     final long scannerInterval =
         props.getLong("trigger.scan.interval", DEFAULT_SCANNER_INTERVAL_MS);
-    this.runnerThread = new TriggerScannerThread(scannerInterval);
+    final int scannerThreads = props.getInt("trigger.scan.threads", DEFAULT_SCANNER_THREADS);
+    this.runnerThread = new TriggerScannerThread(scannerInterval, scannerThreads);
 
     this.checkerTypeLoader = new CheckerTypeLoader();
     this.actionTypeLoader = new ActionTypeLoader();
@@ -176,6 +183,8 @@ public class TriggerManager extends EventHandler implements
   public void expireTrigger(final int triggerId) {
     final Trigger t = getTrigger(triggerId);
     t.setStatus(TriggerStatus.EXPIRED);
+    // so that the scanner removes it on its next cycle, as it isn't due until much later
+    this.runnerThread.checkTriggerNow(t);
   }
 
   @Override
@@ -253,54 +262,118 @@ public class TriggerManager extends EventHandler implements
     this.actionTypeLoader.registerActionType(name, action);
   }
 
+  private enum TriggerEvent {
+    NONE, TRIGGER, PAUSE
+  }
+
+  /**
+   * Checks the triggers that are due every scanner interval. The triggers are indexed by their
+   * next check time, since their conditions can't be met before then, so a cycle only touches the
+   * due triggers. Their conditions are evaluated by a pool of threads without holding the lock of
+   * the manager, so that triggers can be inserted and removed during long cycles. The actions of
+   * the met triggers run one at a time on the scanner thread.
+   */
   private class TriggerScannerThread extends Thread {
 
     private final long scannerInterval;
-    private final BlockingQueue<Trigger> triggers;
+    private final ExecutorService checkerPool;
+    // The scheduled checks by due time. A check is current as long as it's the one of its
+    // trigger in scheduledChecks; the others are dropped when they're due. Guarded by syncObj.
+    private final Queue<ScheduledCheck> checks =
+        new PriorityQueue<>(Comparator.comparingLong(ScheduledCheck::getCheckTime));
+    private final Map<Trigger, ScheduledCheck> scheduledChecks = new HashMap<>();
     private boolean shutdown = false;
 
-    public TriggerScannerThread(final long scannerInterval) {
-      this.triggers = new PriorityBlockingQueue<>(1, new TriggerComparator());
+    public TriggerScannerThread(final long scannerInterval, final int numThreads) {
       this.setName("TriggerRunnerManager-Trigger-Scanner-Thread");
       this.scannerInterval = scannerInterval;
+      final AtomicInteger threadCount = new AtomicInteger();
+      this.checkerPool = Executors.newFixedThreadPool(numThreads, runnable -> {
+        final Thread thread = new Thread(runnable,
+            "TriggerRunnerManager-Trigger-Checker-" + threadCount.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      });
     }
 
     public void shutdown() {
       logger.error("Shutting down trigger manager thread " + this.getName());
       this.shutdown = true;
       this.interrupt();
+      this.checkerPool.shutdownNow();
     }
 
     public void addTrigger(final Trigger t) {
       synchronized (TriggerManager.this.syncObj) {
         t.updateNextCheckTime();
-        this.triggers.add(t);
+        scheduleCheck(t, t.getNextCheckTime());
       }
     }
 
     public void deleteTrigger(final Trigger t) {
-      this.triggers.remove(t);
+      synchronized (TriggerManager.this.syncObj) {
+        this.scheduledChecks.remove(t);
+        // drop the removed checks before they pile up, if they aren't due for a long time
+        if (this.checks.size() > 2 * this.scheduledChecks.size() + 1000) {
+          this.checks.removeIf(check -> !isCurrent(check));
+        }
+      }
+    }
+
+    /**
+     * Checks the trigger on the next cycle rather than when it's due.
+     */
+    public void checkTriggerNow(final Trigger t) {
+      synchronized (TriggerManager.this.syncObj) {
+        if (this.scheduledChecks.containsKey(t)) {
+          scheduleCheck(t, 0);
+        }
+      }
+    }
+
+    private void scheduleCheck(final Trigger t, final long checkTime) {
+      final ScheduledCheck check = new ScheduledCheck(t, checkTime);
+      this.scheduledChecks.put(t, check);
+      this.checks.add(check);
+    }
+
+    private boolean isCurrent(final ScheduledCheck check) {
+      return this.scheduledChecks.get(check.getTrigger()) == check;
     }
 
     @Override
     public void run() {
       while (!this.shutdown) {
-        synchronized (TriggerManager.this.syncObj) {
-          try {
+        try {
+          final List<ScheduledCheck> dueChecks;
+          synchronized (TriggerManager.this.syncObj) {
             TriggerManager.this.lastRunnerThreadCheckTime = System.currentTimeMillis();
 
             TriggerManager.this.scannerStage =
                 "Ready to start a new scan cycle at "
                     + TriggerManager.this.lastRunnerThreadCheckTime;
 
-            try {
-              checkAllTriggers();
-            } catch (final Exception e) {
-              e.printStackTrace();
-              logger.error(e.getMessage());
-            } catch (final Throwable t) {
-              t.printStackTrace();
-              logger.error(t.getMessage());
+            dueChecks = pollDueChecks(TriggerManager.this.lastRunnerThreadCheckTime);
+          }
+
+          try {
+            checkTriggers(dueChecks);
+          } catch (final InterruptedException e) {
+            throw e;
+          } catch (final Exception e) {
+            e.printStackTrace();
+            logger.error(e.getMessage());
+          } catch (final Throwable t) {
+            t.printStackTrace();
+            logger.error(t.getMessage());
+          }
+
+          synchronized (TriggerManager.this.syncObj) {
+            // The triggers may have been removed or rescheduled while they were checked.
+            for (final ScheduledCheck check : dueChecks) {
+              if (isCurrent(check)) {
+                scheduleCheck(check.getTrigger(), check.getTrigger().getNextCheckTime());
+              }
             }
 
             TriggerManager.this.scannerStage = "Done flipping all triggers.";
@@ -315,43 +388,88 @@ public class TriggerManager extends EventHandler implements
             } else {
               TriggerManager.this.syncObj.wait(TriggerManager.this.runnerThreadIdleTime);
             }
-          } catch (final InterruptedException e) {
-            logger.info("Interrupted. Probably to shut down.");
           }
+        } catch (final InterruptedException e) {
+          logger.info("Interrupted. Probably to shut down.");
         }
       }
     }
 
-    private void checkAllTriggers() throws TriggerManagerException {
-      // sweep through the rest of them
-      for (final Trigger t : this.triggers) {
-        try {
-          TriggerManager.this.scannerStage = "Checking for trigger " + t.getTriggerId();
-
-          if (t.getStatus().equals(TriggerStatus.READY)) {
-
-            /**
-             * Prior to this change, expiration condition should never be called though
-             * we have some related code here. ExpireCondition used the same BasicTimeChecker
-             * as triggerCondition do. As a consequence, we need to figure out a way to distinguish
-             * the previous ExpireCondition and this commit's ExpireCondition.
-             */
-            if (t.getExpireCondition().getExpression().contains("EndTimeChecker") && t
-                .expireConditionMet()) {
-              onTriggerPause(t);
-            } else if (t.triggerConditionMet()) {
-              onTriggerTrigger(t);
-            }
-          }
-          if (t.getStatus().equals(TriggerStatus.EXPIRED) && t.getSource().equals("azkaban")) {
-            removeTrigger(t);
-          } else {
-            t.updateNextCheckTime();
+    private List<ScheduledCheck> pollDueChecks(final long now) {
+      final List<ScheduledCheck> dueChecks = new ArrayList<>();
+      while (!this.checks.isEmpty() && this.checks.peek().getCheckTime() <= now) {
+        final ScheduledCheck check = this.checks.poll();
+        if (isCurrent(check)) {
+          dueChecks.add(check);
+        }
+      }
+      return dueChecks;
+    }
+
+    /**
+     * Evaluates the conditions of the due triggers on the pool, then does the actions of the met
+     * triggers one at a time on this thread, in the order the triggers were due. The actions
+     * submit flows and update the trigger loader, so they aren't run concurrently.
+     */
+    private void checkTriggers(final List<ScheduledCheck> dueChecks)
+        throws InterruptedException, ExecutionException {
+      final List<Future<TriggerEvent>> futures = new ArrayList<>(dueChecks.size());
+      for (final ScheduledCheck check : dueChecks) {
+        futures.add(this.checkerPool.submit(() -> evaluateTrigger(check.getTrigger())));
+      }
+      for (int i = 0; i < dueChecks.size(); i++) {
+        final TriggerEvent event = futures.get(i).get();
+        if (event != null) {
+          runTrigger(dueChecks.get(i).getTrigger(), event);
+        }
+      }
+    }
+
+    /**
+     * @return what the trigger has to do, or null if its conditions couldn't be evaluated
+     */
+    private TriggerEvent evaluateTrigger(final Trigger t) {
+      try {
+        if (t.getStatus().equals(TriggerStatus.READY)) {
+
+          /**
+           * Prior to this change, expiration condition should never be called though
+           * we have some related code here. ExpireCondition used the same BasicTimeChecker
+           * as triggerCondition do. As a consequence, we need to figure out a way to distinguish
+           * the previous ExpireCondition and this commit's ExpireCondition.
+           */
+          if (t.getExpireCondition().getExpression().contains("EndTimeChecker") && t
+              .expireConditionMet()) {
+            return TriggerEvent.PAUSE;
+          } else if (t.triggerConditionMet()) {
+            return TriggerEvent.TRIGGER;
           }
-        } catch (final Throwable th) {
-          //skip this trigger, moving on to the next one
-          logger.error("Failed to process trigger with id : " + t, th);
         }
+        return TriggerEvent.NONE;
+      } catch (final Throwable th) {
+        //skip this trigger, moving on to the next one
+        logger.error("Failed to process trigger with id : " + t, th);
+        return null;
+      }
+    }
+
+    private void runTrigger(final Trigger t, final TriggerEvent event) {
+      try {
+        TriggerManager.this.scannerStage = "Checking for trigger " + t.getTriggerId();
+
+        if (event == TriggerEvent.PAUSE) {
+          onTriggerPause(t);
+        } else if (event == TriggerEvent.TRIGGER) {
+          onTriggerTrigger(t);
+        }
+        if (t.getStatus().equals(TriggerStatus.EXPIRED) && t.getSource().equals("azkaban")) {
+          removeTrigger(t);
+        } else {
+          t.updateNextCheckTime();
+        }
+      } catch (final Throwable th) {
+        //skip this trigger, moving on to the next one
+        logger.error("Failed to process trigger with id : " + t, th);
       }
     }
 
@@ -401,19 +519,22 @@ public class TriggerManager extends EventHandler implements
       }
     }
 
-    private class TriggerComparator implements Comparator<Trigger> {
+    private class ScheduledCheck {
 
-      @Override
-      public int compare(final Trigger arg0, final Trigger arg1) {
-        final long first = arg1.getNextCheckTime();
-        final long second = arg0.getNextCheckTime();
+      private final Trigger trigger;
+      private final long checkTime;
 
-        if (first == second) {
-          return 0;
-        } else if (first < second) {
-          return 1;
-        }
-        return -1;
+      ScheduledCheck(final Trigger trigger, final long checkTime) {
+        this.trigger = trigger;
+        this.checkTime = checkTime;
+      }
+
+      Trigger getTrigger() {
+        return this.trigger;
+      }
+
+      long getCheckTime() {
+        return this.checkTime;
       }
     }
   }
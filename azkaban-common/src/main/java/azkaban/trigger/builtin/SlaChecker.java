@@ -21,6 +21,7 @@ import azkaban.executor.ExecutableFlow;
 import azkaban.executor.ExecutableNode;
 import azkaban.executor.ExecutorLoader;
 import azkaban.executor.ExecutorManagerException;
+import azkaban.executor.RunningFlowLookup;
 import azkaban.executor.Status;
 import azkaban.sla.SlaOption;
 import azkaban.trigger.ConditionChecker;
@@ -39,6 +40,7 @@ public class SlaChecker implements ConditionChecker {
   private final SlaOption slaOption;
   private final int execId;
   private final ExecutorLoader executorLoader;
+  private final RunningFlowLookup runningFlows;
   private long checkTime = -1;
 
   //todo chengren311: move this class to executor module when all existing triggers in db are expired
@@ -47,6 +49,7 @@ public class SlaChecker implements ConditionChecker {
     this.slaOption = slaOption;
     this.execId = execId;
     this.executorLoader = ServiceProvider.SERVICE_PROVIDER.getInstance(ExecutorLoader.class);
+    this.runningFlows = ServiceProvider.SERVICE_PROVIDER.getInstance(RunningFlowLookup.class);
   }
 
   public static SlaChecker createFromJson(final Object obj) throws Exception {
@@ -213,23 +216,17 @@ public class SlaChecker implements ConditionChecker {
   // return true to trigger sla action
   @Override
   public Object eval() {
-    logger.info("Checking sla for execution " + this.execId);
-    final ExecutableFlow flow;
-    try {
-      flow = this.executorLoader.fetchExecutableFlow(this.execId);
-    } catch (final ExecutorManagerException e) {
-      logger.error("Can't get executable flow.", e);
-      e.printStackTrace();
-      // something wrong, send out alerts
-      return Boolean.TRUE;
-    }
-    return isSlaMissed(flow);
+    return isSlaFailed();
   }
 
   public Object isSlaFailed() {
+    if (isBeforeDeadline()) {
+      return Boolean.FALSE;
+    }
+    logger.info("Checking sla for execution " + this.execId);
     final ExecutableFlow flow;
     try {
-      flow = this.executorLoader.fetchExecutableFlow(this.execId);
+      flow = getFlow();
     } catch (final ExecutorManagerException e) {
       logger.error("Can't get executable flow.", e);
       // something wrong, send out alerts
@@ -241,7 +238,7 @@ public class SlaChecker implements ConditionChecker {
   public Object isSlaPassed() {
     final ExecutableFlow flow;
     try {
-      flow = this.executorLoader.fetchExecutableFlow(this.execId);
+      flow = getFlow();
     } catch (final ExecutorManagerException e) {
       logger.error("Can't get executable flow.", e);
       // something wrong, send out alerts
@@ -250,6 +247,28 @@ public class SlaChecker implements ConditionChecker {
     return isSlaGood(flow);
   }
 
+  /**
+   * @return whether the deadline of a finish sla is known and yet to come, in which case the sla
+   * can't be missed. A success sla can be missed before its deadline, if the flow or job fails.
+   */
+  private boolean isBeforeDeadline() {
+    final String type = this.slaOption.getType();
+    return (type.equals(SlaOption.TYPE_FLOW_FINISH) || type.equals(SlaOption.TYPE_JOB_FINISH))
+        && this.checkTime >= DateTime.now().getMillis();
+  }
+
+  /**
+   * Only the flows this server doesn't run or reports finished are fetched from the DB, which has
+   * their final state.
+   */
+  private ExecutableFlow getFlow() throws ExecutorManagerException {
+    final ExecutableFlow flow = this.runningFlows.getRunningFlow(this.execId);
+    if (flow != null && !Status.isStatusFinished(flow.getStatus())) {
+      return flow;
+    }
+    return this.executorLoader.fetchExecutableFlow(this.execId);
+  }
+
   @Override
   public Object getNum() {
     return null;
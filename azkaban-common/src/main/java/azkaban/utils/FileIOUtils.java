@@ -25,6 +25,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -271,6 +274,59 @@ public class FileIOUtils {
     return new Pair<>(start, end - start + 1);
   }
 
+  /**
+   * Returns the position and length of the part of the given range of the file that holds whole
+   * UTF-8 characters, like {@link #getUtf8Range(byte[], int, int)}, but reads only the few bytes
+   * at both ends of the range. The range is cut to the end of the file.
+   */
+  public static Pair<Long, Integer> getUtf8Range(final FileChannel channel, final long position,
+      final int length) throws IOException {
+    final long available = channel.size() - position;
+    final int rangeLength = (int) Math.min(length, Math.max(available, 0));
+    if (rangeLength <= 0) {
+      return new Pair<>(position, 0);
+    }
+
+    // the first and last char can be found within 6 and 12 bytes, see getUtf8ByteStart/End
+    final byte[] head = readFully(channel, position, Math.min(6, rangeLength));
+    final int tailLength = Math.min(12, rangeLength);
+    final long tailPosition = position + rangeLength - tailLength;
+    final byte[] tail = readFully(channel, tailPosition, tailLength);
+
+    final long start = position + getUtf8ByteStart(head, 0);
+    final long end = tailPosition + getUtf8ByteEnd(tail, tail.length - 1);
+    return new Pair<>(start, (int) Math.max(end - start + 1, 0));
+  }
+
+  /**
+   * Transfers the given range of the file to the target, without copying it through the heap
+   * where the target allows.
+   */
+  public static void transferFully(final FileChannel channel, final long position,
+      final long length, final WritableByteChannel target) throws IOException {
+    long transferred = 0;
+    while (transferred < length) {
+      final long count =
+          channel.transferTo(position + transferred, length - transferred, target);
+      if (count <= 0) {
+        throw new IOException("File ended at " + (position + transferred) + ", expected "
+            + (position + length));
+      }
+      transferred += count;
+    }
+  }
+
+  private static byte[] readFully(final FileChannel channel, final long position,
+      final int length) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("File ended at " + (position + buffer.position()));
+      }
+    }
+    return buffer.array();
+  }
+
   private static int getUtf8ByteStart(final byte[] buffer, final int offset) {
     // If it's a proper utf-8, we should find it within the next 6 bytes.
     for (int i = offset; i < offset + 6 && i < buffer.length; i++) {
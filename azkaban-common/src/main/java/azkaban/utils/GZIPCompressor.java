@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips byte arrays like {@link GZIPUtils#gzipBytes(byte[], int, int)}, but reuses its deflater and
+ * buffer for all of them. Not thread safe; {@link #close()} frees the native memory of the
+ * deflater.
+ */
+public class GZIPCompressor implements AutoCloseable {
+
+  // magic number, deflate, no flags, no time, no extra flags, unknown OS
+  private static final byte[] GZIP_HEADER =
+      {(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+  private static final int GZIP_TRAILER_LENGTH = 8;
+
+  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+  private final CRC32 crc = new CRC32();
+  private byte[] buffer = new byte[8 * 1024];
+
+  /**
+   * @return the gzipped bytes, readable by {@link GZIPUtils#unGzipBytes(byte[])}
+   */
+  public byte[] compress(final byte[] bytes, final int offset, final int length) {
+    this.deflater.reset();
+    this.deflater.setInput(bytes, offset, length);
+    this.deflater.finish();
+    this.crc.reset();
+    this.crc.update(bytes, offset, length);
+
+    System.arraycopy(GZIP_HEADER, 0, this.buffer, 0, GZIP_HEADER.length);
+    int size = GZIP_HEADER.length;
+    while (!this.deflater.finished()) {
+      if (size == this.buffer.length) {
+        this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+      }
+      size += this.deflater.deflate(this.buffer, size, this.buffer.length - size);
+    }
+
+    final byte[] compressed = Arrays.copyOf(this.buffer, size + GZIP_TRAILER_LENGTH);
+    writeIntLE(compressed, size, (int) this.crc.getValue());
+    writeIntLE(compressed, size + 4, length);
+    return compressed;
+  }
+
+  @Override
+  public void close() {
+    this.deflater.end();
+  }
+
+  private static void writeIntLE(final byte[] bytes, final int offset, final int value) {
+    bytes[offset] = (byte) value;
+    bytes[offset + 1] = (byte) (value >> 8);
+    bytes[offset + 2] = (byte) (value >> 16);
+    bytes[offset + 3] = (byte) (value >> 24);
+  }
+}
@@ -67,12 +67,14 @@ public class GZIPUtils {
 
   public static Object transformBytesToObject(final byte[] data, final EncodingType encType)
       throws IOException {
+    // parsed as it is decompressed, without an intermediate String
     if (encType == EncodingType.GZIP) {
-      final String jsonString = GZIPUtils.unGzipString(data, "UTF-8");
-      return JSONUtils.parseJSONFromString(jsonString);
+      try (GZIPInputStream gzipInputStream =
+          new GZIPInputStream(new ByteArrayInputStream(data))) {
+        return JSONUtils.parseJSONFromStream(gzipInputStream);
+      }
     } else {
-      final String jsonString = new String(data, "UTF-8");
-      return JSONUtils.parseJSONFromString(jsonString);
+      return JSONUtils.parseJSONFromBytes(data);
     }
   }
 
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary heap whose elements are indexed by a key.
+ *
+ * Besides the usual offer/poll/peek, an element can be looked up, removed or repositioned by its
+ * key in O(log n), which java.util.PriorityQueue only does in O(n). Every element keeps its own
+ * position in the heap so swaps don't touch the index.
+ *
+ * Not thread safe.
+ */
+public class IndexedPriorityQueue<K, V> {
+
+  private final Comparator<? super V> comparator;
+  private final Map<K, Node<K, V>> index = new HashMap<>();
+  private Node<K, V>[] heap;
+  private int size = 0;
+
+  public IndexedPriorityQueue(final Comparator<? super V> comparator) {
+    this(16, comparator);
+  }
+
+  @SuppressWarnings("unchecked")
+  public IndexedPriorityQueue(final int initialCapacity, final Comparator<? super V> comparator) {
+    this.comparator = comparator;
+    this.heap = new Node[Math.max(initialCapacity, 1)];
+  }
+
+  /**
+   * Inserts a value under the given key.
+   *
+   * @return false, if the key is already present. The queue is left unchanged in that case.
+   */
+  public boolean offer(final K key, final V value) {
+    if (this.index.containsKey(key)) {
+      return false;
+    }
+    if (this.size == this.heap.length) {
+      this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+    }
+    final Node<K, V> node = new Node<>(key, value, this.size);
+    this.heap[this.size++] = node;
+    this.index.put(key, node);
+    siftUp(node.pos);
+    return true;
+  }
+
+  /**
+   * Returns the head of the queue, or null if the queue is empty.
+   */
+  public V peek() {
+    return this.size == 0 ? null : this.heap[0].value;
+  }
+
+  /**
+   * Removes and returns the head of the queue, or null if the queue is empty.
+   */
+  public V poll() {
+    if (this.size == 0) {
+      return null;
+    }
+    return removeAt(0).value;
+  }
+
+  /**
+   * Removes the value stored under a key.
+   *
+   * @return the removed value, or null if the key is not present
+   */
+  public V remove(final K key) {
+    final Node<K, V> node = this.index.get(key);
+    if (node == null) {
+      return null;
+    }
+    return removeAt(node.pos).value;
+  }
+
+  /**
+   * Restores the heap order of the value stored under a key. Must be called whenever a change to
+   * the value affects how it compares to the others.
+   *
+   * @return false, if the key is not present
+   */
+  public boolean update(final K key) {
+    final Node<K, V> node = this.index.get(key);
+    if (node == null) {
+      return false;
+    }
+    if (siftUp(node.pos) == node.pos) {
+      siftDown(node.pos);
+    }
+    return true;
+  }
+
+  public V get(final K key) {
+    final Node<K, V> node = this.index.get(key);
+    return node == null ? null : node.value;
+  }
+
+  public boolean containsKey(final K key) {
+    return this.index.containsKey(key);
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  public void clear() {
+    Arrays.fill(this.heap, 0, this.size, null);
+    this.size = 0;
+    this.index.clear();
+  }
+
+  /**
+   * Returns a copy of all values, in no particular order.
+   */
+  public List<V> values() {
+    final List<V> values = new ArrayList<>(this.size);
+    for (int i = 0; i < this.size; ++i) {
+      values.add(this.heap[i].value);
+    }
+    return values;
+  }
+
+  private Node<K, V> removeAt(final int pos) {
+    final Node<K, V> removed = this.heap[pos];
+    this.index.remove(removed.key);
+    final Node<K, V> last = this.heap[--this.size];
+    this.heap[this.size] = null;
+    if (pos != this.size) {
+      this.heap[pos] = last;
+      last.pos = pos;
+      if (siftUp(pos) == pos) {
+        siftDown(pos);
+      }
+    }
+    return removed;
+  }
+
+  /* Moves the node at pos up until its parent is not greater. Returns its final position. */
+  private int siftUp(int pos) {
+    final Node<K, V> node = this.heap[pos];
+    while (pos > 0) {
+      final int parentPos = (pos - 1) >>> 1;
+      final Node<K, V> parent = this.heap[parentPos];
+      if (this.comparator.compare(node.value, parent.value) >= 0) {
+        break;
+      }
+      this.heap[pos] = parent;
+      parent.pos = pos;
+      pos = parentPos;
+    }
+    this.heap[pos] = node;
+    node.pos = pos;
+    return pos;
+  }
+
+  private void siftDown(int pos) {
+    final Node<K, V> node = this.heap[pos];
+    final int half = this.size >>> 1;
+    while (pos < half) {
+      int childPos = 2 * pos + 1;
+      Node<K, V> child = this.heap[childPos];
+      final int rightPos = childPos + 1;
+      if (rightPos < this.size
+          && this.comparator.compare(this.heap[rightPos].value, child.value) < 0) {
+        childPos = rightPos;
+        child = this.heap[childPos];
+      }
+      if (this.comparator.compare(node.value, child.value) <= 0) {
+        break;
+      }
+      this.heap[pos] = child;
+      child.pos = pos;
+      pos = childPos;
+    }
+    this.heap[pos] = node;
+    node.pos = pos;
+  }
+
+  private static class Node<K, V> {
+
+    private final K key;
+    private final V value;
+    private int pos;
+
+    private Node(final K key, final V value, final int pos) {
+      this.key = key;
+      this.value = value;
+      this.pos = pos;
+    }
+  }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the lines of a log that match a pattern, reading the log as it streams by instead of
+ * loading it. The log is fed in pieces of any size with {@link #update(byte[], int, int)}, or
+ * read from a stream with {@link #search(InputStream)}.
+ *
+ * Only the first {@link #MAX_LINE_LENGTH} bytes of a line are matched and returned. The search
+ * stops after maxMatches matching lines, after {@link #MAX_SEARCH_BYTES} bytes, or once the pattern
+ * has taken {@link #MAX_MATCH_STEPS} steps to match; the result tells where to continue. A pattern
+ * that can't match a single line within the steps fails the search with an
+ * IllegalArgumentException.
+ */
+public class LogSearcher {
+
+  public static final int MAX_LINE_LENGTH = 16 * 1024;
+  public static final long MAX_SEARCH_BYTES = 128 * 1024 * 1024;
+  // characters the matcher may read, roughly a second of matching
+  public static final long MAX_MATCH_STEPS = 100 * 1000 * 1000;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Matcher matcher;
+  private final int maxMatches;
+  private final long maxBytes;
+  private final long maxSteps;
+  private final long startOffset;
+  private final List<Match> matches = new ArrayList<>();
+  private final byte[] line = new byte[MAX_LINE_LENGTH];
+  private int lineLength = 0;
+  // the offset in the log of the current line and of the next byte
+  private long lineStart;
+  private long position;
+  private long steps = 0;
+  // where the search stopped before the end of the log, or -1
+  private long stopOffset = -1;
+
+  /**
+   * @param startOffset the offset in the log of the first byte that will be fed
+   */
+  public LogSearcher(final Pattern pattern, final long startOffset, final int maxMatches) {
+    this(pattern, startOffset, maxMatches, MAX_SEARCH_BYTES);
+  }
+
+  /**
+   * @param maxBytes the bytes to search at most, for a search that shares its budget with others;
+   * at most {@link #MAX_SEARCH_BYTES}
+   */
+  public LogSearcher(final Pattern pattern, final long startOffset, final int maxMatches,
+      final long maxBytes) {
+    this(pattern, startOffset, maxMatches, Math.min(maxBytes, MAX_SEARCH_BYTES), MAX_MATCH_STEPS);
+  }
+
+  @VisibleForTesting
+  LogSearcher(final Pattern pattern, final long startOffset, final int maxMatches,
+      final long maxBytes, final long maxSteps) {
+    this.matcher = pattern.matcher("");
+    this.maxMatches = maxMatches;
+    this.maxBytes = maxBytes;
+    this.maxSteps = maxSteps;
+    this.startOffset = startOffset;
+    this.lineStart = startOffset;
+    this.position = startOffset;
+  }
+
+  /**
+   * Compiles the pattern for a search.
+   *
+   * @param regex whether the query is a regular expression rather than text to find as is
+   */
+  public static Pattern compile(final String query, final boolean regex,
+      final boolean ignoreCase) {
+    final int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+    return Pattern.compile(regex ? query : Pattern.quote(query), flags);
+  }
+
+  /**
+   * @return whether the search stopped, so the rest of the log needn't be fed
+   */
+  public boolean isDone() {
+    return this.stopOffset >= 0;
+  }
+
+  /**
+   * Searches the next bytes of the log. Bytes fed after the search is done are ignored.
+   */
+  public void update(final byte[] bytes, final int offset, final int length) {
+    final int end = offset + length;
+    for (int i = offset; i < end && !isDone(); i++) {
+      if (this.position - this.startOffset >= this.maxBytes) {
+        stopAtByteLimit();
+        break;
+      }
+      final byte b = bytes[i];
+      this.position++;
+      if (b == '\n') {
+        endLine();
+      } else if (this.lineLength < MAX_LINE_LENGTH) {
+        this.line[this.lineLength++] = b;
+      }
+    }
+  }
+
+  /**
+   * Searches the rest of the stream, or until the search is done. Doesn't close the stream.
+   */
+  public void search(final InputStream in) throws IOException {
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    int size;
+    while (!isDone() && (size = in.read(buffer)) >= 0) {
+      update(buffer, 0, size);
+    }
+  }
+
+  /**
+   * Ends the search. Call it only after all bytes have been fed.
+   */
+  public Result getResult() {
+    if (isDone()) {
+      return new Result(this.matches, this.stopOffset, false);
+    }
+    // the last line of the log doesn't end with a new line
+    if (this.position > this.lineStart) {
+      endLine();
+      if (isDone() && this.stopOffset < this.position) {
+        return new Result(this.matches, this.stopOffset, false);
+      }
+    }
+    return new Result(this.matches, this.position, true);
+  }
+
+  private void stopAtByteLimit() {
+    if (this.lineStart == this.startOffset) {
+      // The line is longer than the limit. Its start is matched and the search continues after
+      // the bytes read, or it would never get past the line.
+      endLine();
+    }
+    if (!isDone()) {
+      this.stopOffset = this.lineStart;
+    }
+  }
+
+  private void endLine() {
+    int length = this.lineLength;
+    if (length > 0 && this.line[length - 1] == '\r') {
+      length--;
+    }
+    final String text = new String(this.line, 0, length, StandardCharsets.UTF_8);
+    final boolean found;
+    try {
+      found = this.matcher.reset(new CountingText(text)).find();
+    } catch (final MatchStepsExceededException e) {
+      if (this.lineStart == this.startOffset) {
+        throw new IllegalArgumentException(
+            "The pattern takes too long to match the line at offset " + this.lineStart);
+      }
+      // the next search matches the line again, with steps to spare
+      this.stopOffset = this.lineStart;
+      return;
+    }
+    if (found) {
+      this.matches.add(new Match(this.lineStart, text));
+    }
+    this.lineStart = this.position;
+    this.lineLength = 0;
+    if (this.matches.size() >= this.maxMatches) {
+      this.stopOffset = this.lineStart;
+    }
+  }
+
+  private static class MatchStepsExceededException extends RuntimeException {
+
+    MatchStepsExceededException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * The text of a line that counts the characters the matcher reads, so that a pattern which
+   * backtracks a lot can be stopped.
+   */
+  private class CountingText implements CharSequence {
+
+    private final String text;
+
+    CountingText(final String text) {
+      this.text = text;
+    }
+
+    @Override
+    public int length() {
+      return this.text.length();
+    }
+
+    @Override
+    public char charAt(final int index) {
+      if (++LogSearcher.this.steps > LogSearcher.this.maxSteps) {
+        throw new MatchStepsExceededException();
+      }
+      return this.text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+      return this.text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+      return this.text;
+    }
+  }
+
+  /**
+   * A matching line and its offset in the log.
+   */
+  public static class Match {
+
+    private final long offset;
+    private final String line;
+
+    public Match(final long offset, final String line) {
+      this.offset = offset;
+      this.line = line;
+    }
+
+    public long getOffset() {
+      return this.offset;
+    }
+
+    public String getLine() {
+      return this.line;
+    }
+  }
+
+  public static class Result {
+
+    private final List<Match> matches;
+    private final long endOffset;
+    private final boolean complete;
+
+    public Result(final List<Match> matches, final long endOffset, final boolean complete) {
+      this.matches = matches;
+      this.endOffset = endOffset;
+      this.complete = complete;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Result createResultFromObject(final Map<String, Object> map) {
+      final List<Match> matches = new ArrayList<>();
+      for (final Object matchObj : (List<Object>) map.get("matches")) {
+        final Map<String, Object> match = (Map<String, Object>) matchObj;
+        matches.add(new Match(((Number) match.get("offset")).longValue(),
+            (String) match.get("line")));
+      }
+      return new Result(matches, ((Number) map.get("endOffset")).longValue(),
+          (Boolean) map.get("complete"));
+    }
+
+    public List<Match> getMatches() {
+      return Collections.unmodifiableList(this.matches);
+    }
+
+    /**
+     * @return where the search ended; the offset to continue from if it isn't complete
+     */
+    public long getEndOffset() {
+      return this.endOffset;
+    }
+
+    /**
+     * @return whether the search reached the end of the log
+     */
+    public boolean isComplete() {
+      return this.complete;
+    }
+
+    public Map<String, Object> toObject() {
+      final List<Object> matchList = new ArrayList<>();
+      for (final Match match : this.matches) {
+        final Map<String, Object> matchObj = new HashMap<>();
+        matchObj.put("offset", match.getOffset());
+        matchObj.put("line", match.getLine());
+        matchList.add(matchObj);
+      }
+      final HashMap<String, Object> map = new HashMap<>();
+      map.put("matches", matchList);
+      map.put("endOffset", this.endOffset);
+      map.put("complete", this.complete);
+      return map;
+    }
+  }
+}
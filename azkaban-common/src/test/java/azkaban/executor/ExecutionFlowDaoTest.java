@@ -120,6 +120,81 @@ public class ExecutionFlowDaoTest {
     assertTwoFlowSame(fetchFlow, fetchFlow2);
   }
 
+  @Test
+  public void testUpdateExecutableFlowStatusWithNodeRows() throws Exception {
+    final ExecutableFlow flow = createTestFlow();
+    this.executionFlowDao.uploadExecutableFlow(flow);
+
+    final ExecutableNode node = flow.getExecutableNodes().get(0);
+    node.setStatus(Status.RUNNING);
+    node.setStartTime(System.currentTimeMillis());
+    this.executionJobDao.uploadExecutableNode(node, null);
+    flow.setStatus(Status.RUNNING);
+    flow.setStartTime(node.getStartTime());
+    flow.setUpdateTime(flow.getUpdateTime() + 1);
+    this.executionFlowDao.updateExecutableFlowStatus(flow);
+
+    final ExecutableFlow fetchFlow =
+        this.executionFlowDao.fetchExecutableFlow(flow.getExecutionId());
+    assertThat(fetchFlow.getStatus()).isEqualTo(Status.RUNNING);
+    assertThat(fetchFlow.getStartTime()).isEqualTo(flow.getStartTime());
+    final ExecutableNode fetchNode = fetchFlow.getExecutableNode(node.getId());
+    assertThat(fetchNode.getStatus()).isEqualTo(Status.RUNNING);
+    assertThat(fetchNode.getStartTime()).isEqualTo(node.getStartTime());
+    assertThat(this.executionFlowDao.fetchFlowHistory(0, 1).get(0).getStatus())
+        .isEqualTo(Status.RUNNING);
+  }
+
+  @Test
+  public void testIgnoresNodeRowsWithoutNewerFlowState() throws Exception {
+    final ExecutableFlow flow = createTestFlow();
+    this.executionFlowDao.uploadExecutableFlow(flow);
+
+    // the flow data is the latest state unless only the flow state was written after it
+    final ExecutableNode node = flow.getExecutableNodes().get(0);
+    final Status dataStatus = node.getStatus();
+    node.setStatus(Status.RUNNING);
+    this.executionJobDao.uploadExecutableNode(node, null);
+
+    final ExecutableFlow fetchFlow =
+        this.executionFlowDao.fetchExecutableFlow(flow.getExecutionId());
+    assertThat(fetchFlow.getExecutableNode(node.getId()).getStatus()).isEqualTo(dataStatus);
+  }
+
+  @Test
+  public void testIgnoresNodeRowsOlderThanRetry() throws Exception {
+    final ExecutableFlow flow = createTestFlow();
+    this.executionFlowDao.uploadExecutableFlow(flow);
+
+    final ExecutableNode node = flow.getExecutableNodes().get(0);
+    node.setStatus(Status.CANCELLED);
+    node.setStartTime(1000);
+    node.setEndTime(2000);
+    this.executionJobDao.uploadExecutableNode(node, null);
+
+    // a retry resets the node under the same attempt and writes the flow data again
+    node.setStatus(Status.READY);
+    node.setStartTime(-1);
+    node.setEndTime(-1);
+    node.setUpdateTime(3000);
+    flow.setUpdateTime(3000);
+    this.executionFlowDao.updateExecutableFlow(flow);
+    flow.setUpdateTime(4000);
+    this.executionFlowDao.updateExecutableFlowStatus(flow);
+
+    ExecutableNode fetchNode = this.executionFlowDao.fetchExecutableFlow(flow.getExecutionId())
+        .getExecutableNode(node.getId());
+    assertThat(fetchNode.getStatus()).isEqualTo(Status.READY);
+
+    node.setStatus(Status.RUNNING);
+    node.setStartTime(5000);
+    this.executionJobDao.updateExecutableNode(node);
+    fetchNode = this.executionFlowDao.fetchExecutableFlow(flow.getExecutionId())
+        .getExecutableNode(node.getId());
+    assertThat(fetchNode.getStatus()).isEqualTo(Status.RUNNING);
+    assertThat(fetchNode.getStartTime()).isEqualTo(5000);
+  }
+
   @Test
   public void fetchFlowHistory() throws Exception {
     final ExecutableFlow flow = createTestFlow();
@@ -260,6 +335,29 @@ public class ExecutionFlowDaoTest {
     assertTwoFlowSame(flow1Result, flow1);
   }
 
+  @Test
+  public void testFetchActiveFlowsAppliesNewerFlowState() throws Exception {
+    final ExecutableFlow flow1 = TestUtils.createTestExecutableFlow("exectest1", "exec1");
+    this.executionFlowDao.uploadExecutableFlow(flow1);
+    final Executor executor = this.executorDao.addExecutor("test", 1);
+    this.assignExecutor.assignExecutor(executor.getId(), flow1.getExecutionId());
+
+    final long dataUpdateTime = flow1.getUpdateTime();
+    flow1.setStatus(Status.RUNNING);
+    flow1.setStartTime(dataUpdateTime + 1);
+    flow1.setUpdateTime(dataUpdateTime + 2);
+    this.executionFlowDao.updateExecutableFlowStatus(flow1);
+
+    final ExecutableFlow fetchFlow = this.fetchActiveFlowDao.fetchActiveFlows()
+        .get(flow1.getExecutionId()).getSecond();
+    assertThat(fetchFlow.getStatus()).isEqualTo(Status.RUNNING);
+    assertThat(fetchFlow.getStartTime()).isEqualTo(dataUpdateTime + 1);
+    // the executor sends the job changes since the flow data was written
+    assertThat(fetchFlow.getUpdateTime()).isEqualTo(dataUpdateTime);
+    assertThat(this.fetchActiveFlowDao.fetchActiveFlowByExecId(flow1.getExecutionId())
+        .getSecond().getStatus()).isEqualTo(Status.RUNNING);
+  }
+
   @Test
   public void testFetchActiveFlowsStatusChanged() throws Exception {
     final ExecutableFlow flow1 = TestUtils.createTestExecutableFlow("exectest1", "exec1");
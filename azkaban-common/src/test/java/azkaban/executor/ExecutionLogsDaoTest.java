@@ -22,8 +22,12 @@ import azkaban.db.DatabaseOperator;
 import azkaban.test.Utils;
 import azkaban.test.executions.ExecutionsTestUtil;
 import azkaban.utils.FileIOUtils.LogData;
+import azkaban.utils.LogSearcher;
 import java.io.File;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -109,4 +113,112 @@ public class ExecutionLogsDaoTest {
     assertThat(logsResult3).isNotNull();
     assertThat(logsResult3.getLength()).isEqualTo(185493);
   }
+
+  @Test
+  public void testUploadLogInSmallChunks() throws Exception {
+    final File logDir = ExecutionsTestUtil.getFlowDir(LOG_TEST_DIR_NAME);
+    final File[] largelog =
+        {new File(logDir, "largeLog1.log"), new File(logDir, "largeLog2.log"),
+            new File(logDir, "largeLog3.log")};
+    final StringBuilder expected = new StringBuilder();
+    for (final File file : largelog) {
+      expected.append(FileUtils.readFileToString(file, "UTF-8"));
+    }
+
+    // more chunks than fit in one insert batch, and chunks spanning files
+    final ExecutionLogsDao smallChunksDao = new ExecutionLogsDao(dbOperator, 1000, 0);
+    smallChunksDao.uploadLogFile(1, "largeFiles", 0, largelog);
+    smallChunksDao.uploadLogFile(1, "largeFiles", 1, largelog);
+
+    final LogData logsResult =
+        this.executionLogsDao.fetchLogs(1, "largeFiles", 0, 0, expected.length());
+    assertThat(logsResult.getData()).isEqualTo(expected.toString());
+    final LogData logsResult2 = this.executionLogsDao.fetchLogs(1, "largeFiles", 1, 1500, 3000);
+    assertThat(logsResult2.getData()).isEqualTo(expected.substring(1500, 4500));
+  }
+
+  @Test
+  public void testUploadAfterShutdownDoesNotReuseEndedCompressor() throws Exception {
+    final File logDir = ExecutionsTestUtil.getFlowDir(LOG_TEST_DIR_NAME);
+    final File[] smalllog = {new File(logDir, "log1.log")};
+    final ExecutionLogsDao dao = new ExecutionLogsDao(dbOperator);
+    dao.uploadLogFile(1, "smallFiles", 0, smalllog);
+
+    // the pooled compressor is ended; a later upload compresses with a new one
+    dao.shutdown();
+    dao.uploadLogFile(1, "smallFiles", 1, smalllog);
+
+    assertThat(dao.fetchLogs(1, "smallFiles", 1, 0, 50000).getData())
+        .isEqualTo(FileUtils.readFileToString(smalllog[0], "UTF-8"));
+  }
+
+  @Test
+  public void testPageThroughCachedLog() throws Exception {
+    final File logDir = ExecutionsTestUtil.getFlowDir(LOG_TEST_DIR_NAME);
+    final File[] largelog =
+        {new File(logDir, "largeLog1.log"), new File(logDir, "largeLog2.log"),
+            new File(logDir, "largeLog3.log")};
+    final StringBuilder expected = new StringBuilder();
+    for (final File file : largelog) {
+      expected.append(FileUtils.readFileToString(file, "UTF-8"));
+    }
+    final ExecutionLogsDao cachingDao = new ExecutionLogsDao(dbOperator, 1000, 1024 * 1024);
+    cachingDao.uploadLogFile(1, "largeFiles", 0, largelog);
+
+    // pages that start and end in the middle of chunks, twice to read from the cache
+    for (int round = 0; round < 2; round++) {
+      final StringBuilder paged = new StringBuilder();
+      LogData page = cachingDao.fetchLogs(1, "largeFiles", 0, 0, 2500);
+      while (page != null) {
+        paged.append(page.getData());
+        page = cachingDao.fetchLogs(1, "largeFiles", 0, page.getOffset() + page.getLength(), 2500);
+      }
+      assertThat(paged.toString()).isEqualTo(expected.toString());
+    }
+
+    assertThat(cachingDao.removeExecutionLogsByTime(System.currentTimeMillis() + 1)).isEqualTo(
+        (expected.length() + 999) / 1000);
+    assertThat(cachingDao.fetchLogs(1, "largeFiles", 0, 0, 2500)).isNull();
+  }
+
+  @Test
+  public void testSearchLog() throws Exception {
+    final File logDir = ExecutionsTestUtil.getFlowDir(LOG_TEST_DIR_NAME);
+    final File[] largelog =
+        {new File(logDir, "largeLog1.log"), new File(logDir, "largeLog2.log"),
+            new File(logDir, "largeLog3.log")};
+    final StringBuilder log = new StringBuilder();
+    for (final File file : largelog) {
+      log.append(FileUtils.readFileToString(file, "UTF-8"));
+    }
+    final List<Long> expectedOffsets = new ArrayList<>();
+    int i = log.indexOf("Willie");
+    while (i >= 0) {
+      expectedOffsets.add((long) log.lastIndexOf("\n", i) + 1);
+      final int lineEnd = log.indexOf("\n", i);
+      i = lineEnd < 0 ? -1 : log.indexOf("Willie", lineEnd);
+    }
+    assertThat(expectedOffsets).hasSize(1161);
+
+    final ExecutionLogsDao smallChunksDao = new ExecutionLogsDao(dbOperator, 1000, 0);
+    smallChunksDao.uploadLogFile(1, "largeFiles", 0, largelog);
+
+    // page through the matches, each search continuing where the last one stopped at its
+    // match or byte limit
+    final List<Long> offsets = new ArrayList<>();
+    LogSearcher.Result result;
+    int offset = 0;
+    do {
+      result = smallChunksDao.searchLogs(1, "largeFiles", 0, LogSearcher.compile("willie",
+          false, true), offset, 500, 64 * 1024);
+      for (final LogSearcher.Match match : result.getMatches()) {
+        assertThat(match.getLine()).contains("Willie");
+        offsets.add(match.getOffset());
+      }
+      offset = (int) result.getEndOffset();
+    } while (!result.isComplete());
+
+    assertThat(offsets).isEqualTo(expectedOffsets);
+    assertThat(result.getEndOffset()).isEqualTo(log.length());
+  }
 }
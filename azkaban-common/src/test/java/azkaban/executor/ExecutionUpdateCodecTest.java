@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.project.DirectoryFlowLoader;
+import azkaban.project.Project;
+import azkaban.test.executions.ExecutionsTestUtil;
+import azkaban.utils.JSONUtils;
+import azkaban.utils.Props;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutionUpdateCodecTest {
+
+  private Project project;
+  private ExecutableFlow flow;
+
+  @Before
+  public void setUp() throws Exception {
+    this.project = new Project(11, "myTestProject");
+    final DirectoryFlowLoader loader = new DirectoryFlowLoader(new Props());
+    loader.loadProjectFlow(this.project, ExecutionsTestUtil.getFlowDir("embedded"));
+    this.project.setFlows(loader.getFlowMap());
+    this.flow = new ExecutableFlow(this.project, this.project.getFlow("jobe"));
+    this.flow.setExecutionId(42);
+    this.flow.setStatus(Status.RUNNING);
+    this.flow.setStartTime(500);
+    this.flow.setUpdateTime(1000);
+  }
+
+  @Test
+  public void testDecodesToUpdateObject() throws Exception {
+    final ExecutableNode jobe = this.flow.getExecutableNode("jobe");
+    jobe.setStatus(Status.RUNNING);
+    jobe.setStartTime(1500);
+    jobe.setUpdateTime(2000);
+
+    final ExecutableFlowBase jobb = (ExecutableFlowBase) this.flow.getExecutableNode("jobb");
+    final ExecutableNode innerJobA = jobb.getExecutableNode("innerJobA");
+    innerJobA.setStatus(Status.FAILED);
+    innerJobA.setStartTime(1200);
+    innerJobA.setEndTime(1300);
+    innerJobA.setUpdateTime(3000);
+    innerJobA.resetForRetry();
+    innerJobA.setUpdateTime(3000);
+
+    for (final long lastUpdateTime : new long[]{0, 1500, 2500, 5000}) {
+      assertThat(decode(lastUpdateTime))
+          .isEqualTo(Collections.singletonList(this.flow.toUpdateObject(lastUpdateTime)));
+    }
+  }
+
+  @Test
+  public void testAppliedUpdateMatchesSource() throws Exception {
+    final ExecutableFlow copy = new ExecutableFlow(this.project, this.project.getFlow("jobe"));
+    copy.setExecutionId(42);
+
+    final ExecutableNode jobe = this.flow.getExecutableNode("jobe");
+    jobe.setStatus(Status.SUCCEEDED);
+    jobe.setUpdateTime(2000);
+    final ExecutableFlowBase jobb = (ExecutableFlowBase) this.flow.getExecutableNode("jobb");
+    jobb.getExecutableNode("innerJobA").setStatus(Status.KILLED);
+    jobb.getExecutableNode("innerJobA").setUpdateTime(2000);
+
+    copy.applyUpdateObject(decode(0).get(0));
+
+    assertThat(copy.getStatus()).isEqualTo(Status.RUNNING);
+    assertThat(copy.getUpdateTime()).isEqualTo(1000);
+    assertThat(copy.getExecutableNode("jobe").getStatus()).isEqualTo(Status.SUCCEEDED);
+    assertThat(((ExecutableFlowBase) copy.getExecutableNode("jobb"))
+        .getExecutableNode("innerJobA").getStatus()).isEqualTo(Status.KILLED);
+  }
+
+  @Test
+  public void testSmallerThanJson() throws Exception {
+    for (final ExecutableNode node : this.flow.getExecutableNodes()) {
+      node.setStatus(Status.SUCCEEDED);
+      node.setUpdateTime(2000);
+    }
+
+    final byte[] binary = ExecutionUpdateCodec
+        .encode(Arrays.asList(this.flow), Arrays.asList(0L));
+    final String json = JSONUtils.toJSON(this.flow.toUpdateObject(0));
+    assertThat(binary.length).isLessThan(json.length() / 2);
+  }
+
+  private List<Map<String, Object>> decode(final long lastUpdateTime) throws Exception {
+    return ExecutionUpdateCodec.decode(ExecutionUpdateCodec
+        .encode(Arrays.asList(this.flow), Arrays.asList(lastUpdateTime)));
+  }
+}
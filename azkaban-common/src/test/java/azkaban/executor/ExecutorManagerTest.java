@@ -18,10 +18,15 @@ package azkaban.executor;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -43,11 +48,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 
 /**
@@ -272,7 +280,7 @@ public class ExecutorManagerTest {
   /* Flow has been running on an executor but is not any more (for example because of restart) */
   @Test
   public void testNotFoundFlows() throws Exception {
-    testSetUpForRunningFlows();
+    mockRunningFlows();
     final ExecutableFlow flow1 = TestUtils.createTestExecutableFlow("exectest1", "exec1");
     when(this.loader.fetchExecutableFlow(-1)).thenReturn(flow1);
 
@@ -280,19 +288,194 @@ public class ExecutorManagerTest {
         Collections.singletonList(ImmutableMap.of(
             ConnectorParams.UPDATE_MAP_EXEC_ID, -1,
             "error", "Flow does not exist"))));
+    this.manager = createExecutorManager();
 
     this.manager.submitExecutableFlow(flow1, this.user.getUserId());
     final ExecutableFlow fetchedFlow = waitFlowFinished(flow1);
     Assert.assertEquals(fetchedFlow.getStatus(), Status.FAILED);
   }
 
+  /* With status streams on, a pushed update finishing the flow finalizes it without polling */
+  @Test
+  public void testStreamedUpdateFinalizesFlow() throws Exception {
+    this.props.put("azkaban.executor.status.stream.enabled", "true");
+    this.props.put("azkaban.executor.update.reconcile.interval.ms", "600000");
+    this.apiGateway = mock(ExecutorApiGateway.class);
+    doAnswer(invocation -> {
+      final Executor executor = invocation.getArgument(0);
+      if (executor.getId() == 1) {
+        final Map<String, Object> update = new HashMap<>();
+        update.put(ConnectorParams.UPDATE_MAP_EXEC_ID, 1);
+        update.put(ConnectorParams.UPDATE_MAP_STATUS, Status.SUCCEEDED.getNumVal());
+        update.put(ConnectorParams.UPDATE_MAP_UPDATE_TIME, System.currentTimeMillis());
+        final Consumer<Map<String, Object>> consumer = invocation.getArgument(3);
+        consumer.accept(ImmutableMap.of(ConnectorParams.RESPONSE_UPDATED_FLOWS,
+            Collections.singletonList(update)));
+      }
+      Thread.sleep(100);
+      return null;
+    }).when(this.apiGateway).streamUpdates(any(), anyLong(), any(), any());
+    testSetUpForRunningFlows();
+
+    verify(this.loader, timeout(5000)).removeActiveExecutableReference(1);
+    Assert.assertEquals(Status.SUCCEEDED, this.flow1.getStatus());
+    Assert.assertFalse(this.manager.getRunningFlows().contains(this.flow1));
+  }
+
+  /* An executor that does not answer must not hold up updates from the others */
+  @Test
+  public void testHangingExecutorDoesNotDelayOthers() throws Exception {
+    this.props.put("azkaban.executor.update.timeout.ms", "30000");
+    this.apiGateway = mock(ExecutorApiGateway.class);
+    doAnswer(invocation -> {
+      Thread.sleep(60000);
+      return null;
+    }).when(this.apiGateway).callWithExecutionId(eq("localhost"), eq(12345),
+        eq(ConnectorParams.UPDATE_ACTION), any(), any(), any(), any(), any());
+    final Map<String, Object> update = new HashMap<>();
+    update.put(ConnectorParams.UPDATE_MAP_EXEC_ID, 2);
+    update.put(ConnectorParams.UPDATE_MAP_STATUS, Status.SUCCEEDED.getNumVal());
+    update.put(ConnectorParams.UPDATE_MAP_UPDATE_TIME, System.currentTimeMillis());
+    doReturn(ImmutableMap.of(ConnectorParams.RESPONSE_UPDATED_FLOWS,
+        Collections.singletonList(update))).when(this.apiGateway).callWithExecutionId(
+        eq("localhost"), eq(12346), eq(ConnectorParams.UPDATE_ACTION), any(), any(), any(),
+        any(), any());
+    testSetUpForRunningFlows();
+
+    verify(this.loader, timeout(5000)).removeActiveExecutableReference(2);
+    Assert.assertEquals(Status.SUCCEEDED, this.flow2.getStatus());
+  }
+
+  /* Flows queued while a dispatch is under way go out together in the next batch */
+  @Test
+  public void testDispatchesQueuedFlowsInBatch() throws Exception {
+    this.props.put("azkaban.dispatch.batch.size", "3");
+    this.apiGateway = mock(ExecutorApiGateway.class);
+    final CountDownLatch firstDispatched = new CountDownLatch(1);
+    final CountDownLatch releaseFirst = new CountDownLatch(1);
+    final CountDownLatch batchDispatched = new CountDownLatch(3);
+    final AtomicBoolean concurrent = new AtomicBoolean(true);
+    doAnswer(invocation -> {
+      final ExecutableFlow flow = invocation.getArgument(0);
+      if (flow.getExecutionId() == 11) {
+        firstDispatched.countDown();
+        releaseFirst.await();
+      } else {
+        // the whole batch has to be on its way at once for this to return true
+        batchDispatched.countDown();
+        if (!batchDispatched.await(5, TimeUnit.SECONDS)) {
+          concurrent.set(false);
+        }
+      }
+      return null;
+    }).when(this.apiGateway).callWithExecutable(any(), any(),
+        eq(ConnectorParams.EXECUTE_ACTION));
+    testSetUpForRunningFlows();
+
+    this.manager.submitExecutableFlow(createQueuedFlow(11), this.user.getUserId());
+    Assert.assertTrue(firstDispatched.await(5, TimeUnit.SECONDS));
+    for (int execId = 12; execId <= 14; execId++) {
+      this.manager.submitExecutableFlow(createQueuedFlow(execId), this.user.getUserId());
+    }
+    releaseFirst.countDown();
+
+    waitRunningFlows(1, 11, 12, 13, 14);
+    Assert.assertTrue(concurrent.get());
+  }
+
+  /*
+   * Without the StaticRemainingFlowSize filter, executors queue flows beyond their threads, so
+   * flows go out even when every executor reports no remaining capacity.
+   */
+  @Test
+  public void testDispatchesBeyondFlowThreadsByDefault() throws Exception {
+    this.props.put("azkaban.activeexecutor.refresh.milisecinterval", "100");
+    this.apiGateway = mock(ExecutorApiGateway.class);
+    final ExecutorInfo fullExecutor = new ExecutorInfo();
+    fullExecutor.setRemainingFlowCapacity(0);
+    doReturn(fullExecutor).when(this.apiGateway).callForJsonType(any(), anyInt(),
+        eq("/serverStatistics"), any(), any());
+    // an executor with an unbounded queue counts only its idle threads as free slots
+    doReturn(ImmutableMap.of(ConnectorParams.RESPONSE_RESERVED, true,
+        ConnectorParams.RESPONSE_AVAILABLE_SLOTS, -3)).when(this.apiGateway)
+        .callWithExecutable(any(), any(), eq(ConnectorParams.RESERVE_ACTION));
+    testSetUpForRunningFlows();
+
+    for (int execId = 11; execId <= 14; execId++) {
+      this.manager.submitExecutableFlow(createQueuedFlow(execId), this.user.getUserId());
+    }
+
+    waitRunningFlows(1, 11, 12, 13, 14);
+  }
+
+  /* A batch that breaks off part-way puts the flows it didn't get to back in the queue */
+  @Test
+  public void testBrokenBatchRequeuesFlows() throws Exception {
+    this.props.put("azkaban.dispatch.batch.size", "3");
+    this.props.put("azkaban.activeexecutor.refresh.milisecinterval", "100");
+    this.apiGateway = mock(ExecutorApiGateway.class);
+    final CountDownLatch firstDispatched = new CountDownLatch(1);
+    final CountDownLatch releaseFirst = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      final ExecutableFlow flow = invocation.getArgument(0);
+      if (flow.getExecutionId() == 11) {
+        firstDispatched.countDown();
+        releaseFirst.await();
+      }
+      return null;
+    }).when(this.apiGateway).callWithExecutable(any(), any(),
+        eq(ConnectorParams.EXECUTE_ACTION));
+    mockRunningFlows();
+    // choosing an executor for the second flow of the batch fails once
+    when(this.loader.fetchExecutor(99)).thenThrow(new RuntimeException("db is down"))
+        .thenReturn(null);
+    this.manager = createExecutorManager();
+
+    this.manager.submitExecutableFlow(createQueuedFlow(11), this.user.getUserId());
+    Assert.assertTrue(firstDispatched.await(5, TimeUnit.SECONDS));
+    this.manager.submitExecutableFlow(createQueuedFlow(12), this.user.getUserId());
+    final ExecutableFlow pinnedFlow = createQueuedFlow(13);
+    pinnedFlow.getExecutionOptions().addAllFlowParameters(
+        ImmutableMap.of(ExecutionOptions.USE_EXECUTOR, "99"));
+    this.manager.submitExecutableFlow(pinnedFlow, this.user.getUserId());
+    releaseFirst.countDown();
+
+    waitRunningFlows(1, 11, 12, 13);
+    verify(this.loader, timeout(5000).atLeast(2)).fetchExecutor(99);
+  }
+
+  /* A flow whose finalization fails in the db still gives its owner's quota back */
+  @Test
+  public void testFailedFinalizationReleasesQuota() throws Exception {
+    this.props.put("azkaban.webserver.queue.default.quota", "2");
+    this.apiGateway = mock(ExecutorApiGateway.class);
+    final Map<String, Object> update = new HashMap<>();
+    update.put(ConnectorParams.UPDATE_MAP_EXEC_ID, 1);
+    update.put(ConnectorParams.UPDATE_MAP_STATUS, Status.SUCCEEDED.getNumVal());
+    update.put(ConnectorParams.UPDATE_MAP_UPDATE_TIME, System.currentTimeMillis());
+    doReturn(ImmutableMap.of(ConnectorParams.RESPONSE_UPDATED_FLOWS,
+        Collections.singletonList(update))).when(this.apiGateway).callWithExecutionId(
+        eq("localhost"), eq(12345), eq(ConnectorParams.UPDATE_ACTION), any(), any(), any(),
+        any(), any());
+    mockRunningFlows();
+    doThrow(new ExecutorManagerException("db is down")).when(this.loader)
+        .removeActiveExecutableReference(1);
+    this.manager = createExecutorManager();
+
+    // both running flows take up the quota until the first one finishes
+    final ExecutableFlow flow = createQueuedFlow(11);
+    this.manager.submitExecutableFlow(flow, this.user.getUserId());
+    verify(this.apiGateway, timeout(10000)).callWithExecutable(eq(flow), any(),
+        eq(ConnectorParams.EXECUTE_ACTION));
+  }
+
   // Suppress "unchecked generic array creation for varargs parameter".
   // No way to avoid this when mocking a method with generic varags.
   @SuppressWarnings("unchecked")
   private void mockUpdateResponse(
       final Map<String, List<Map<String, Object>>> map) throws Exception {
     doReturn(map).when(this.apiGateway).callWithExecutionId(
-        any(), anyInt(), eq(ConnectorParams.UPDATE_ACTION), any(), any(), any(), any());
+        any(), anyInt(), eq(ConnectorParams.UPDATE_ACTION), any(), any(), any(), any(), any());
   }
 
   /*
@@ -308,7 +491,6 @@ public class ExecutorManagerTest {
     verify(this.loader).addActiveExecutableReference(any());
   }
 
-  @Ignore
   @Test
   public void testFetchAllActiveFlows() throws Exception {
     testSetUpForRunningFlows();
@@ -318,7 +500,6 @@ public class ExecutorManagerTest {
     }
   }
 
-  @Ignore
   @Test
   public void testFetchActiveFlowByProject() throws Exception {
     testSetUpForRunningFlows();
@@ -329,7 +510,6 @@ public class ExecutorManagerTest {
         .assertTrue(this.manager.isFlowRunning(this.flow1.getProjectId(), this.flow1.getFlowId()));
   }
 
-  @Ignore
   @Test
   public void testFetchActiveFlowWithExecutor() throws Exception {
     testSetUpForRunningFlows();
@@ -357,8 +537,19 @@ public class ExecutorManagerTest {
    * TODO: will move below method to setUp() and run before every test for both runningFlows and queuedFlows
    */
   private void testSetUpForRunningFlows() throws Exception {
+    mockRunningFlows();
+    this.manager = createExecutorManager();
+  }
+
+  /*
+   * Stubs two flows running on two executors. Any further stubbing has to happen before the
+   * manager is created, as its threads start calling the mocks right away.
+   */
+  private void mockRunningFlows() throws Exception {
     this.loader = mock(ExecutorLoader.class);
-    this.apiGateway = mock(ExecutorApiGateway.class);
+    if (this.apiGateway == null) {
+      this.apiGateway = mock(ExecutorApiGateway.class);
+    }
     this.user = TestUtils.getTestUser();
     this.props.put(ExecutorManager.AZKABAN_USE_MULTIPLE_EXECUTORS, "true");
     //To test runningFlows, AZKABAN_QUEUEPROCESSING_ENABLED should be set to true
@@ -372,7 +563,6 @@ public class ExecutorManagerTest {
     executors.add(executor2);
 
     when(this.loader.fetchActiveExecutors()).thenReturn(executors);
-    this.manager = createExecutorManager();
 
     this.flow1 = TestUtils.createTestExecutableFlow("exectest1", "exec1");
     this.flow2 = TestUtils.createTestExecutableFlow("exectest1", "exec2");
@@ -387,6 +577,25 @@ public class ExecutorManagerTest {
     when(this.loader.fetchActiveFlows()).thenReturn(this.activeFlows);
   }
 
+  private static ExecutableFlow createQueuedFlow(final int execId) throws Exception {
+    final ExecutableFlow flow = TestUtils.createTestExecutableFlow("exectest1", "exec1");
+    flow.setExecutionId(execId);
+    return flow;
+  }
+
+  /* Waits until exactly the given flows are running, each of them once */
+  private void waitRunningFlows(final Integer... execIds) {
+    azkaban.test.TestUtils.await().untilAsserted(() -> {
+      assertThat(this.manager.getRunningFlows(this.flow1.getProjectId(), this.flow1.getFlowId()))
+          .containsExactly(execIds);
+      // and each of them made it to an executor
+      assertThat(this.manager.getActiveFlowsWithExecutor().stream()
+          .filter(flow -> flow.getSecond() != null)
+          .map(flow -> flow.getFirst().getExecutionId())
+          .collect(Collectors.toList())).contains(execIds);
+    });
+  }
+
   private ExecutableFlow waitFlowFinished(final ExecutableFlow flow) throws Exception {
     azkaban.test.TestUtils.await().untilAsserted(() -> assertThat(getFlowStatus(flow))
         .matches(Status::isStatusFinished, "isStatusFinished"));
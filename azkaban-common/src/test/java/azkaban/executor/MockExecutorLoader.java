@@ -18,6 +18,7 @@ package azkaban.executor;
 
 import azkaban.executor.ExecutorLogEvent.EventType;
 import azkaban.utils.FileIOUtils.LogData;
+import azkaban.utils.LogSearcher;
 import azkaban.utils.Pair;
 import azkaban.utils.Props;
 import java.io.File;
@@ -28,6 +29,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 
@@ -118,12 +120,24 @@ public class MockExecutorLoader implements ExecutorLoader {
   }
 
   @Override
-  public void updateExecutableFlow(final ExecutableFlow flow)
+  public long updateExecutableFlow(final ExecutableFlow flow)
       throws ExecutorManagerException {
     final ExecutableFlow toUpdate = this.flows.get(flow.getExecutionId());
 
     toUpdate.applyUpdateObject(flow.toUpdateObject(0));
     this.flowUpdateCount++;
+    return 0;
+  }
+
+  @Override
+  public void updateExecutableFlowStatus(final ExecutableFlow flow)
+      throws ExecutorManagerException {
+    final ExecutableFlow toUpdate = this.flows.get(flow.getExecutionId());
+    toUpdate.setStatus(flow.getStatus());
+    toUpdate.setUpdateTime(flow.getUpdateTime());
+    toUpdate.setStartTime(flow.getStartTime());
+    toUpdate.setEndTime(flow.getEndTime());
+    this.flowUpdateCount++;
   }
 
   @Override
@@ -201,6 +215,13 @@ public class MockExecutorLoader implements ExecutorLoader {
     return null;
   }
 
+  @Override
+  public LogSearcher.Result searchLogs(final int execId, final String name, final int attempt,
+      final Pattern pattern, final int startByte, final int maxMatches, final long maxBytes)
+      throws ExecutorManagerException {
+    return null;
+  }
+
   @Override
   public List<ExecutableFlow> fetchFlowHistory(final int skip, final int num)
       throws ExecutorManagerException {
@@ -417,4 +438,8 @@ public class MockExecutorLoader implements ExecutorLoader {
       throws ExecutorManagerException {
     return new ArrayList<>();
   }
+
+  @Override
+  public void shutdown() {
+  }
 }
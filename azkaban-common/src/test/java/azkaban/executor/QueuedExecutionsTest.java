@@ -16,11 +16,17 @@
 
 package azkaban.executor;
 
+import azkaban.flow.Flow;
+import azkaban.project.Project;
 import azkaban.utils.Pair;
 import azkaban.utils.TestUtils;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -148,6 +154,18 @@ public class QueuedExecutionsTest {
     Assert.assertEquals(queue.fetchHead(), dataList.get(1));
   }
 
+  /* Test pollHead method */
+  @Test
+  public void testPollHead() throws IOException, ExecutorManagerException {
+    final QueuedExecutions queue = new QueuedExecutions(5);
+    final List<Pair<ExecutionReference, ExecutableFlow>> dataList = getDummyData();
+    Assert.assertNull(queue.pollHead());
+    queue.enqueueAll(dataList);
+    Assert.assertEquals(queue.pollHead(), dataList.get(0));
+    Assert.assertFalse(queue.hasExecution(dataList.get(0).getFirst().getExecId()));
+    Assert.assertEquals(queue.pollHead(), dataList.get(1));
+  }
+
   /* Test isFull method */
   @Test
   public void testIsFull() throws IOException, ExecutorManagerException,
@@ -198,4 +216,201 @@ public class QueuedExecutionsTest {
           queue.getReference(pair.getFirst().getExecId()));
     }
   }
+
+  /* Helper method to create a bare (ExecutionReference, ExecutableFlow) */
+  private Pair<ExecutionReference, ExecutableFlow> createPair(final int execId,
+      final int projectId, final String submitUser) {
+    final ExecutableFlow execFlow =
+        new ExecutableFlow(new Project(projectId, "project" + projectId), new Flow("flow"));
+    execFlow.setExecutionId(execId);
+    execFlow.setSubmitUser(submitUser);
+    execFlow.setExecutionOptions(new ExecutionOptions());
+    return new Pair<>(new ExecutionReference(execId), execFlow);
+  }
+
+  private void enqueue(final QueuedExecutions queue,
+      final Pair<ExecutionReference, ExecutableFlow> pair) throws ExecutorManagerException {
+    queue.enqueue(pair.getSecond(), pair.getFirst());
+  }
+
+  /* Test dequeue from the middle keeps the order of the remaining flows */
+  @Test
+  public void testDequeueKeepsOrder() throws ExecutorManagerException {
+    final QueuedExecutions queue = new QueuedExecutions(10);
+    for (int i = 1; i <= 5; ++i) {
+      enqueue(queue, createPair(i, 1, "user"));
+    }
+    queue.dequeue(3);
+    queue.dequeue(3);
+    Assert.assertEquals(4, queue.size());
+    for (final int expected : new int[]{1, 2, 4, 5}) {
+      Assert.assertEquals(expected, queue.pollHead().getFirst().getExecId());
+    }
+    Assert.assertTrue(queue.isEmpty());
+  }
+
+  /* Test updatePriority moves the flow */
+  @Test
+  public void testUpdatePriority() throws ExecutorManagerException {
+    final QueuedExecutions queue = new QueuedExecutions(10);
+    for (int i = 1; i <= 3; ++i) {
+      enqueue(queue, createPair(i, 1, "user"));
+    }
+    Assert.assertTrue(queue.updatePriority(3, ExecutionOptions.DEFAULT_FLOW_PRIORITY + 1));
+    Assert.assertFalse(queue.updatePriority(7, 1));
+    Assert.assertEquals(String.valueOf(ExecutionOptions.DEFAULT_FLOW_PRIORITY + 1),
+        queue.getFlow(3).getExecutionOptions().getFlowParameters()
+            .get(ExecutionOptions.FLOW_PRIORITY));
+    for (final int expected : new int[]{3, 1, 2}) {
+      Assert.assertEquals(expected, queue.pollHead().getFirst().getExecId());
+    }
+  }
+
+  /* Test fair share interleaves the flows of different users */
+  @Test
+  public void testFairShareByUser() throws ExecutorManagerException {
+    final QueuedExecutions queue =
+        new QueuedExecutions(10, QueuedExecutions.FairShareKey.USER);
+    for (int i = 1; i <= 4; ++i) {
+      enqueue(queue, createPair(i, 1, "busy"));
+    }
+    enqueue(queue, createPair(5, 2, "other"));
+    enqueue(queue, createPair(6, 2, "other"));
+
+    Assert.assertEquals(1, queue.pollHead().getFirst().getExecId());
+    Assert.assertEquals(5, queue.pollHead().getFirst().getExecId());
+    Assert.assertEquals(2, queue.pollHead().getFirst().getExecId());
+    // a newcomer doesn't go behind the backlog already dispatched
+    enqueue(queue, createPair(7, 3, "late"));
+    for (final int expected : new int[]{6, 7, 3, 4}) {
+      Assert.assertEquals(expected, queue.pollHead().getFirst().getExecId());
+    }
+  }
+
+  /* Test fair share by project and that priority still comes first */
+  @Test
+  public void testFairShareByProjectRespectsPriority() throws ExecutorManagerException {
+    final QueuedExecutions queue =
+        new QueuedExecutions(10, QueuedExecutions.FairShareKey.PROJECT);
+    enqueue(queue, createPair(1, 1, "user"));
+    enqueue(queue, createPair(2, 1, "user"));
+    enqueue(queue, createPair(3, 1, "user"));
+    enqueue(queue, createPair(4, 2, "user"));
+    queue.updatePriority(3, ExecutionOptions.DEFAULT_FLOW_PRIORITY + 1);
+    for (final int expected : new int[]{3, 1, 4, 2}) {
+      Assert.assertEquals(expected, queue.pollHead().getFirst().getExecId());
+    }
+  }
+
+  /* Test fetchHead blocks until a flow is enqueued */
+  @Test
+  public void testFetchHeadWaitsForEnqueue() throws Exception {
+    final QueuedExecutions queue = new QueuedExecutions(5);
+    final Pair<ExecutionReference, ExecutableFlow> pair = createPair(1, 1, "user");
+    final Thread producer = new Thread(() -> {
+      try {
+        TimeUnit.MILLISECONDS.sleep(100);
+        enqueue(queue, pair);
+      } catch (final Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    producer.start();
+    Assert.assertEquals(pair, queue.fetchHead());
+    producer.join();
+  }
+
+  /* Enqueue, remove and dequeue at 100k queued flows */
+  @Test
+  public void testLargeQueue() throws ExecutorManagerException {
+    final int numFlows = 100000;
+    final QueuedExecutions queue =
+        new QueuedExecutions(numFlows, QueuedExecutions.FairShareKey.USER);
+    for (int i = 0; i < numFlows; ++i) {
+      enqueue(queue, createPair(i, i % 10, "user" + i % 100));
+    }
+    Assert.assertTrue(queue.isFull());
+
+    final long start = System.currentTimeMillis();
+    for (int i = 0; i < numFlows; i += 2) {
+      queue.dequeue(i);
+    }
+    Assert.assertEquals(numFlows / 2, queue.size());
+
+    int previous = -1;
+    while (!queue.isEmpty()) {
+      final int execId = queue.pollHead().getFirst().getExecId();
+      Assert.assertEquals(1, execId % 2);
+      Assert.assertTrue(execId > previous);
+      previous = execId;
+    }
+    // removals used to scan the whole queue, which was quadratic at this size
+    Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+  }
+
+  /* Test an owner with a higher weight gets proportionally more of the dispatches */
+  @Test
+  public void testFairShareWeights() throws ExecutorManagerException {
+    final Map<String, Integer> weights = new HashMap<>();
+    weights.put("heavy", 2);
+    final QueuedExecutions queue = new QueuedExecutions(20, QueuedExecutions.FairShareKey.USER,
+        weights, Collections.emptyMap(), 0);
+    for (int i = 1; i <= 6; ++i) {
+      enqueue(queue, createPair(i, 1, "heavy"));
+      enqueue(queue, createPair(10 + i, 2, "light"));
+    }
+    for (final int expected : new int[]{1, 11, 2, 3, 12, 4, 5, 13, 6}) {
+      Assert.assertEquals(expected, queue.pollHead().getFirst().getExecId());
+    }
+  }
+
+  /* Test an owner at its quota doesn't block the others */
+  @Test
+  public void testQuota() throws ExecutorManagerException {
+    final Map<String, Integer> quotas = new HashMap<>();
+    quotas.put("project1", 2);
+    final QueuedExecutions queue = new QueuedExecutions(20, QueuedExecutions.FairShareKey.PROJECT,
+        Collections.emptyMap(), quotas, 0);
+    for (int i = 1; i <= 5; ++i) {
+      enqueue(queue, createPair(i, 1, "user"));
+    }
+    enqueue(queue, createPair(6, 2, "user"));
+
+    Assert.assertEquals(1, queue.pollHead().getFirst().getExecId());
+    Assert.assertEquals(6, queue.pollHead().getFirst().getExecId());
+    Assert.assertEquals(2, queue.pollHead().getFirst().getExecId());
+    Assert.assertNull(queue.pollHead());
+    Assert.assertEquals(3, queue.size());
+    Assert.assertEquals(2, queue.getRunningCount("project1"));
+
+    queue.finished(1);
+    queue.finished(1);
+    Assert.assertEquals(1, queue.getRunningCount("project1"));
+    final Pair<ExecutionReference, ExecutableFlow> third = queue.pollHead();
+    Assert.assertEquals(3, third.getFirst().getExecId());
+    Assert.assertNull(queue.pollHead());
+
+    // a requeued flow gives its slot back and goes after the owner's other queued flows
+    enqueue(queue, third);
+    Assert.assertEquals(1, queue.getRunningCount("project1"));
+    Assert.assertEquals(4, queue.pollHead().getFirst().getExecId());
+    Assert.assertNull(queue.pollHead());
+    queue.finished(2);
+    queue.finished(4);
+    Assert.assertEquals(5, queue.pollHead().getFirst().getExecId());
+    Assert.assertEquals(3, queue.pollHead().getFirst().getExecId());
+    Assert.assertTrue(queue.isEmpty());
+  }
+
+  /* Test flows counted as running at start up take up the quota */
+  @Test
+  public void testDefaultQuotaWithRunningFlows() throws ExecutorManagerException {
+    final QueuedExecutions queue = new QueuedExecutions(20, QueuedExecutions.FairShareKey.USER,
+        Collections.emptyMap(), Collections.emptyMap(), 1);
+    queue.running(createPair(1, 1, "user").getSecond());
+    enqueue(queue, createPair(2, 1, "user"));
+    Assert.assertNull(queue.pollHead());
+    queue.finished(1);
+    Assert.assertEquals(2, queue.pollHead().getFirst().getExecId());
+  }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.jobExecutor.utils.process;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+public class ProcessOutputPumpTest {
+
+  private static final Logger logger = Logger.getLogger(ProcessOutputPumpTest.class);
+
+  private final ProcessOutputPump pump = new ProcessOutputPump(1);
+
+  @Test
+  public void testKeepsLastLines() {
+    final byte[] bytes = "line1\nline2\r\nline3\nlast".getBytes(StandardCharsets.UTF_8);
+    final ProcessOutputPump.Output output =
+        this.pump.pump(new ByteArrayInputStream(bytes), logger, Level.INFO, 3);
+    output.processExited();
+    output.awaitCompletion(5000);
+
+    assertThat(output.isDone()).isTrue();
+    assertThat(output.getRecentLog()).isEqualTo(String.join(System.lineSeparator(),
+        "line2", "line3", "last"));
+  }
+
+  @Test
+  public void testPumpsUntilProcessExited() throws Exception {
+    final PipedOutputStream out = new PipedOutputStream();
+    final ProcessOutputPump.Output output =
+        this.pump.pump(new PipedInputStream(out), logger, Level.INFO, 10);
+    out.write("first\n".getBytes(StandardCharsets.UTF_8));
+    out.flush();
+    output.awaitCompletion(100);
+    assertThat(output.isDone()).isFalse();
+    assertThat(output.getRecentLog()).isEqualTo("first");
+
+    out.write("second\n".getBytes(StandardCharsets.UTF_8));
+    out.flush();
+    output.processExited();
+    output.awaitCompletion(5000);
+    assertThat(output.isDone()).isTrue();
+    assertThat(output.getRecentLog()).isEqualTo("first" + System.lineSeparator() + "second");
+  }
+}
@@ -314,6 +314,49 @@ public class JdbcProjectImplTest {
     Assert.assertEquals(sameProps2.get("key2"), "value9");
   }
 
+  @Test
+  public void testFetchProjectPropertiesModifiedTime() throws Exception {
+    createThreeProjects();
+    final Project project = this.loader.fetchProjectByName("mytestProject");
+    Assert.assertEquals(0,
+        this.loader.fetchProjectPropertiesModifiedTime(project.getId(), project.getVersion(),
+            ".jor"));
+
+    final Props props = new Props();
+    props.setSource("job1.jor");
+    props.put("key1", "value1");
+    this.loader.uploadProjectProperty(project, props);
+    final long uploadTime =
+        this.loader.fetchProjectPropertiesModifiedTime(project.getId(), project.getVersion(),
+            ".jor");
+    Assert.assertTrue(uploadTime > 0);
+
+    Thread.sleep(5);
+    props.put("key1", "value2");
+    this.loader.updateProjectProperty(project, props);
+    Assert.assertTrue(this.loader.fetchProjectPropertiesModifiedTime(project.getId(),
+        project.getVersion(), ".jor") > uploadTime);
+  }
+
+  @Test
+  public void testFetchProjectPropertiesByNameSuffix() throws Exception {
+    final Props jobProps = new Props();
+    jobProps.setSource("job1.job");
+    jobProps.put("key1", "value1");
+    final Props overrideProps = new Props();
+    overrideProps.setSource("job1.jor");
+    overrideProps.put("key1", "value2");
+
+    createThreeProjects();
+    final Project project = this.loader.fetchProjectByName("mytestProject");
+    this.loader.uploadProjectProperties(project, Arrays.asList(jobProps, overrideProps));
+
+    final Map<String, Props> propsMap = this.loader
+        .fetchProjectProperties(project.getId(), project.getVersion(), ".jor");
+    Assert.assertEquals(Collections.singleton("job1.jor"), propsMap.keySet());
+    Assert.assertEquals("value2", propsMap.get("job1.jor").get("key1"));
+  }
+
   @Test
   public void testFetchProjectProperties() throws Exception {
     final Props props1 = new Props();
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.trigger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.executor.AlerterHolder;
+import azkaban.executor.ExecutorApiGateway;
+import azkaban.executor.ExecutorManager;
+import azkaban.executor.MockExecutorLoader;
+import azkaban.metrics.CommonMetrics;
+import azkaban.metrics.MetricsManager;
+import azkaban.utils.AbstractMailerTest;
+import azkaban.utils.Emailer;
+import azkaban.utils.Props;
+import com.codahale.metrics.MetricRegistry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TriggerManagerScanTest {
+
+  private static final long SCAN_INTERVAL_MS = 50;
+
+  private ExecutorManager executorManager;
+  private TriggerManager triggerManager;
+
+  @Before
+  public void setUp() throws Exception {
+    final Props props = AbstractMailerTest.createMailProperties();
+    props.put("trigger.scan.interval", SCAN_INTERVAL_MS);
+    props.put("trigger.scan.threads", 2);
+    props.put("executor.port", 12321);
+    final CommonMetrics commonMetrics = new CommonMetrics(new MetricsManager(new MetricRegistry()));
+    this.executorManager = new ExecutorManager(props, new MockExecutorLoader(),
+        new AlerterHolder(props, new Emailer(props, commonMetrics)), commonMetrics,
+        new ExecutorApiGateway(null));
+    this.triggerManager = new TriggerManager(props, new MockTriggerLoader(),
+        this.executorManager);
+    this.triggerManager.start();
+  }
+
+  @After
+  public void tearDown() {
+    this.triggerManager.shutdown();
+    this.executorManager.shutdown();
+  }
+
+  @Test
+  public void testChecksOnlyDueTriggers() throws Exception {
+    final CountingChecker dueChecker = new CountingChecker("due", 0);
+    final CountingChecker laterChecker =
+        new CountingChecker("later", System.currentTimeMillis() + 60 * 60 * 1000);
+    final Trigger dueTrigger = createTrigger(dueChecker);
+    this.triggerManager.insertTrigger(dueTrigger);
+    this.triggerManager.insertTrigger(createTrigger(laterChecker));
+
+    waitForChecks(dueChecker, 3);
+    assertThat(laterChecker.getNumChecks()).isEqualTo(0);
+
+    this.triggerManager.removeTrigger(dueTrigger);
+    // a check may have been under way while it was removed
+    final int numChecks = dueChecker.getNumChecks() + 1;
+    Thread.sleep(5 * SCAN_INTERVAL_MS);
+    assertThat(dueChecker.getNumChecks()).isLessThanOrEqualTo(numChecks);
+  }
+
+  @Test
+  public void testRemovesExpiredTriggerBeforeItIsDue() throws Exception {
+    final CountingChecker laterChecker =
+        new CountingChecker("later", System.currentTimeMillis() + 60 * 60 * 1000);
+    final Trigger trigger = createTrigger(laterChecker);
+    this.triggerManager.insertTrigger(trigger);
+
+    this.triggerManager.expireTrigger(trigger.getTriggerId());
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (this.triggerManager.getTrigger(trigger.getTriggerId()) != null
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(this.triggerManager.getTrigger(trigger.getTriggerId())).isNull();
+    assertThat(laterChecker.getNumChecks()).isEqualTo(0);
+  }
+
+  @Test
+  public void testDoesActionsOfTriggersOneAtATime() throws Exception {
+    final ConcurrencyAction action = new ConcurrencyAction();
+    final Trigger trigger1 = createTrigger(new CountingChecker("met1", 0, true));
+    trigger1.getTriggerActions().add(action);
+    final Trigger trigger2 = createTrigger(new CountingChecker("met2", 0, true));
+    trigger2.getTriggerActions().add(action);
+    this.triggerManager.insertTrigger(trigger1);
+    this.triggerManager.insertTrigger(trigger2);
+
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (action.getNumActions() < 4 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(action.getNumActions()).isGreaterThanOrEqualTo(4);
+    assertThat(action.getMaxConcurrentActions()).isEqualTo(1);
+  }
+
+  private static void waitForChecks(final CountingChecker checker, final int numChecks)
+      throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (checker.getNumChecks() < numChecks && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(checker.getNumChecks()).isGreaterThanOrEqualTo(numChecks);
+  }
+
+  private static Trigger createTrigger(final CountingChecker checker) {
+    final Map<String, ConditionChecker> triggerCheckers = new HashMap<>();
+    triggerCheckers.put(checker.getId(), checker);
+    final Condition triggerCond = new Condition(triggerCheckers, checker.getId() + ".eval()");
+    final Condition expireCond = new Condition(new HashMap<>(), "false");
+    return new Trigger.TriggerBuilder("azkaban", "azkaban", triggerCond, expireCond,
+        new ArrayList<>()).build();
+  }
+
+  /**
+   * Counts how often it's checked.
+   */
+  public static class CountingChecker implements ConditionChecker {
+
+    private final String id;
+    private final long nextCheckTime;
+    private final boolean met;
+    private final AtomicInteger numChecks = new AtomicInteger();
+
+    public CountingChecker(final String id, final long nextCheckTime) {
+      this(id, nextCheckTime, false);
+    }
+
+    public CountingChecker(final String id, final long nextCheckTime, final boolean met) {
+      this.id = id;
+      this.nextCheckTime = nextCheckTime;
+      this.met = met;
+    }
+
+    public int getNumChecks() {
+      return this.numChecks.get();
+    }
+
+    @Override
+    public Object eval() {
+      this.numChecks.incrementAndGet();
+      return this.met;
+    }
+
+    @Override
+    public Object getNum() {
+      return null;
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public String getId() {
+      return this.id;
+    }
+
+    @Override
+    public String getType() {
+      return "CountingChecker";
+    }
+
+    @Override
+    public ConditionChecker fromJson(final Object obj) {
+      return null;
+    }
+
+    @Override
+    public Object toJson() {
+      return null;
+    }
+
+    @Override
+    public void stopChecker() {
+    }
+
+    @Override
+    public void setContext(final Map<String, Object> context) {
+    }
+
+    @Override
+    public long getNextCheckTime() {
+      return this.nextCheckTime;
+    }
+  }
+
+  /**
+   * Takes a while, and records how many of its runs overlapped.
+   */
+  public static class ConcurrencyAction implements TriggerAction {
+
+    private final AtomicInteger numActions = new AtomicInteger();
+    private final AtomicInteger numRunning = new AtomicInteger();
+    private final AtomicInteger maxConcurrentActions = new AtomicInteger();
+
+    public int getNumActions() {
+      return this.numActions.get();
+    }
+
+    public int getMaxConcurrentActions() {
+      return this.maxConcurrentActions.get();
+    }
+
+    @Override
+    public void doAction() throws Exception {
+      final int running = this.numRunning.incrementAndGet();
+      this.maxConcurrentActions.accumulateAndGet(running, Math::max);
+      Thread.sleep(SCAN_INTERVAL_MS);
+      this.numRunning.decrementAndGet();
+      this.numActions.incrementAndGet();
+    }
+
+    @Override
+    public String getId() {
+      return null;
+    }
+
+    @Override
+    public String getType() {
+      return "ConcurrencyAction";
+    }
+
+    @Override
+    public TriggerAction fromJson(final Object obj) {
+      return null;
+    }
+
+    @Override
+    public Object toJson() {
+      return null;
+    }
+
+    @Override
+    public void setContext(final Map<String, Object> context) {
+    }
+
+    @Override
+    public String getDescription() {
+      return "ConcurrencyAction";
+    }
+  }
+}
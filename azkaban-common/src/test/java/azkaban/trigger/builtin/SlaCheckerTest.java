@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.trigger.builtin;
+
+import static azkaban.ServiceProvider.SERVICE_PROVIDER;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.executor.ExecutableFlow;
+import azkaban.executor.ExecutorLoader;
+import azkaban.executor.MockExecutorLoader;
+import azkaban.executor.RunningFlowLookup;
+import azkaban.executor.Status;
+import azkaban.sla.SlaOption;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SlaCheckerTest {
+
+  private static final int EXEC_ID = 1;
+  private static final long HOUR_MS = 60 * 60 * 1000;
+
+  private final AtomicInteger numFetches = new AtomicInteger();
+  private final AtomicInteger numLookups = new AtomicInteger();
+  private ExecutableFlow dbFlow;
+  private ExecutableFlow runningFlow;
+
+  @Before
+  public void setUp() {
+    final ExecutorLoader loader = new MockExecutorLoader() {
+      @Override
+      public ExecutableFlow fetchExecutableFlow(final int execId) {
+        SlaCheckerTest.this.numFetches.incrementAndGet();
+        return SlaCheckerTest.this.dbFlow;
+      }
+    };
+    final RunningFlowLookup runningFlows = execId -> {
+      this.numLookups.incrementAndGet();
+      return execId == EXEC_ID ? this.runningFlow : null;
+    };
+    SERVICE_PROVIDER.unsetInjector();
+    SERVICE_PROVIDER.setInjector(Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(ExecutorLoader.class).toInstance(loader);
+        bind(RunningFlowLookup.class).toInstance(runningFlows);
+      }
+    }));
+  }
+
+  @After
+  public void tearDown() {
+    SERVICE_PROVIDER.unsetInjector();
+  }
+
+  @Test
+  public void testChecksRunningFlowWithoutFetchingIt() {
+    this.runningFlow = createFlow(Status.RUNNING, System.currentTimeMillis() - 2 * HOUR_MS);
+    final SlaChecker checker = createChecker(SlaOption.TYPE_FLOW_FINISH);
+
+    assertThat(checker.isSlaFailed()).isEqualTo(true);
+    assertThat(checker.isSlaPassed()).isEqualTo(false);
+    assertThat(this.numFetches.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void testFetchesFinishedFlow() {
+    final long startTime = System.currentTimeMillis() - 2 * HOUR_MS;
+    this.runningFlow = createFlow(Status.SUCCEEDED, startTime);
+    this.dbFlow = createFlow(Status.SUCCEEDED, startTime);
+    final SlaChecker checker = createChecker(SlaOption.TYPE_FLOW_SUCCEED);
+
+    assertThat(checker.isSlaPassed()).isEqualTo(true);
+    assertThat(checker.isSlaFailed()).isEqualTo(false);
+    assertThat(this.numFetches.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testDoesNotCheckFinishSlaBeforeDeadline() {
+    this.runningFlow = createFlow(Status.RUNNING, System.currentTimeMillis());
+    final SlaChecker checker = createChecker(SlaOption.TYPE_FLOW_FINISH);
+
+    assertThat(checker.isSlaFailed()).isEqualTo(false);
+    assertThat(this.numLookups.get()).isEqualTo(1);
+    // the deadline is known now
+    assertThat(checker.isSlaFailed()).isEqualTo(false);
+    assertThat(checker.eval()).isEqualTo(false);
+    assertThat(this.numLookups.get()).isEqualTo(1);
+  }
+
+  private static ExecutableFlow createFlow(final Status status, final long startTime) {
+    final ExecutableFlow flow = new ExecutableFlow();
+    flow.setExecutionId(EXEC_ID);
+    flow.setStatus(status);
+    flow.setStartTime(startTime);
+    return flow;
+  }
+
+  private static SlaChecker createChecker(final String type) {
+    final Map<String, Object> info = new HashMap<>();
+    info.put(SlaOption.INFO_DURATION, "1h");
+    return new SlaChecker("slaChecker", new SlaOption(type, new ArrayList<>(), info), EXEC_ID);
+  }
+}
@@ -19,10 +19,13 @@ package azkaban.utils;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.comparator.NameFileComparator;
@@ -196,6 +199,36 @@ public class FileIOUtilsTest {
     assertEquals(correctString.length(), mixedText.length() - 3);
   }
 
+  @Test
+  public void testUtf8RangeOfFile() throws IOException {
+    final String mixedText = "abc안녕하세요, 제 이름은 박병호입니다";
+    final byte[] mixedBytes = createUTF8ByteArray(mixedText);
+    final File file = this.temp.newFile("log.txt");
+    FileUtils.writeByteArrayToFile(file, mixedBytes);
+
+    try (FileChannel channel = FileChannel.open(file.toPath())) {
+      for (int offset = 0; offset < mixedBytes.length; offset++) {
+        for (int length = 1; offset + length <= mixedBytes.length; length++) {
+          final Pair<Integer, Integer> expected =
+              FileIOUtils.getUtf8Range(Arrays.copyOfRange(mixedBytes, offset, offset + length), 0,
+                  length);
+          assertEquals(new Pair<>((long) offset + expected.getFirst(), expected.getSecond()),
+              FileIOUtils.getUtf8Range(channel, offset, length));
+        }
+      }
+
+      // cut to the end of the file
+      assertEquals(new Pair<>(3L, mixedBytes.length - 3),
+          FileIOUtils.getUtf8Range(channel, 3, 1000));
+      assertEquals(new Pair<>((long) mixedBytes.length + 5, 0),
+          FileIOUtils.getUtf8Range(channel, mixedBytes.length + 5, 1000));
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      FileIOUtils.transferFully(channel, 3, mixedBytes.length - 3, Channels.newChannel(out));
+      assertEquals(mixedText.substring(3), new String(out.toByteArray(), "UTF-8"));
+    }
+  }
+
   private byte[] createUTF8ByteArray(final String text) {
     byte[] textBytes = null;
     try {
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.db.EncodingType;
+import azkaban.executor.ExecutableFlow;
+import azkaban.flow.Edge;
+import azkaban.flow.Flow;
+import azkaban.flow.Node;
+import azkaban.project.Project;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+/**
+ * Encodes and decodes the flow data of synthetic flows of 100, 1k and 10k jobs, the way it is
+ * stored in execution_flows, and compares the times with the string and tree based codec JSONUtils
+ * used before. Raise ROUNDS to get steadier numbers.
+ */
+public class FlowDataCodecTest {
+
+  private static final Logger logger = Logger.getLogger(FlowDataCodecTest.class);
+
+  private static final int[] NUM_JOBS = {100, 1000, 10000};
+  private static final int ROUNDS = 5;
+
+  /**
+   * Creates a flow of jobs each depending on the two jobs before it.
+   */
+  private static ExecutableFlow createFlow(final int numJobs) {
+    final Flow flow = new Flow("large");
+    for (int i = 0; i < numJobs; i++) {
+      final Node node = new Node("job-" + i);
+      node.setType("noop");
+      node.setJobSource("noop.job");
+      flow.addNode(node);
+      for (int j = Math.max(0, i - 2); j < i; j++) {
+        flow.addEdge(new Edge("job-" + j, "job-" + i));
+      }
+    }
+    flow.initialize();
+    final ExecutableFlow exFlow = new ExecutableFlow(new Project(1, "testProject"), flow);
+    exFlow.setExecutionId(1);
+    return exFlow;
+  }
+
+  private static byte[] encode(final ExecutableFlow flow) throws IOException {
+    return GZIPUtils.gzipBytes(JSONUtils.toJSONBytes(flow.toObject()));
+  }
+
+  private static Object decode(final byte[] data) throws IOException {
+    return GZIPUtils.transformBytesToObject(data, EncodingType.GZIP);
+  }
+
+  private static byte[] encodeBaseline(final ExecutableFlow flow) throws IOException {
+    return GZIPUtils.gzipString(new ObjectMapper().writeValueAsString(flow.toObject()), "UTF-8");
+  }
+
+  private static Object decodeBaseline(final byte[] data) throws IOException {
+    final String json = GZIPUtils.unGzipString(data, "UTF-8");
+    final JsonNode node = new ObjectMapper().readTree(new JsonFactory().createJsonParser(json));
+    return toObjectFromJSONNode(node);
+  }
+
+  private static Object toObjectFromJSONNode(final JsonNode node) {
+    if (node.isObject()) {
+      final HashMap<String, Object> obj = new HashMap<>();
+      final Iterator<String> iter = node.getFieldNames();
+      while (iter.hasNext()) {
+        final String fieldName = iter.next();
+        obj.put(fieldName, toObjectFromJSONNode(node.get(fieldName)));
+      }
+      return obj;
+    } else if (node.isArray()) {
+      final ArrayList<Object> array = new ArrayList<>();
+      final Iterator<JsonNode> iter = node.getElements();
+      while (iter.hasNext()) {
+        array.add(toObjectFromJSONNode(iter.next()));
+      }
+      return array;
+    } else if (node.isTextual()) {
+      return node.asText();
+    } else if (node.isInt()) {
+      return node.asInt();
+    } else if (node.isLong()) {
+      return node.asLong();
+    } else if (node.isDouble()) {
+      return node.asDouble();
+    } else if (node.isBoolean()) {
+      return node.asBoolean();
+    } else {
+      return null;
+    }
+  }
+
+  @Test(timeout = 5 * 60 * 1000)
+  public void testEncodeAndDecodeFlowData() throws Exception {
+    for (final int numJobs : NUM_JOBS) {
+      final ExecutableFlow flow = createFlow(numJobs);
+
+      long encodeNanos = 0;
+      long decodeNanos = 0;
+      long baselineEncodeNanos = 0;
+      long baselineDecodeNanos = 0;
+      int numBytes = 0;
+      for (int round = 0; round < ROUNDS; round++) {
+        long start = System.nanoTime();
+        final byte[] data = encode(flow);
+        encodeNanos += System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final Object decoded = decode(data);
+        decodeNanos += System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final byte[] baselineData = encodeBaseline(flow);
+        baselineEncodeNanos += System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final Object baselineDecoded = decodeBaseline(baselineData);
+        baselineDecodeNanos += System.nanoTime() - start;
+
+        // both paths read each other's data and read the same objects
+        assertThat(baselineDecoded).isEqualTo(decoded);
+        assertThat(decode(baselineData)).isEqualTo(decoded);
+        numBytes = data.length;
+      }
+
+      logger.info(String.format(
+          "%d jobs, %d bytes: encode %.2f ms (baseline %.2f ms), "
+              + "decode %.2f ms (baseline %.2f ms)",
+          numJobs, numBytes, millisPerRound(encodeNanos), millisPerRound(baselineEncodeNanos),
+          millisPerRound(decodeNanos), millisPerRound(baselineDecodeNanos)));
+      assertThat(ExecutableFlow.createExecutableFlowFromObject(decode(encode(flow)))
+          .getExecutableNodes()).hasSize(numJobs);
+    }
+  }
+
+  private static double millisPerRound(final long nanos) {
+    return nanos / 1e6 / ROUNDS;
+  }
+}
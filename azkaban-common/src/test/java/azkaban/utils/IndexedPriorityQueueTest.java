@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+
+public class IndexedPriorityQueueTest {
+
+  private static final Comparator<int[]> BY_VALUE =
+      (a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(a[0], b[0]);
+
+  @Test
+  public void testPollInOrder() {
+    final IndexedPriorityQueue<Integer, int[]> queue = new IndexedPriorityQueue<>(2, BY_VALUE);
+    assertThat(queue.poll()).isNull();
+    for (final int value : new int[]{5, 3, 9, 1, 7}) {
+      assertThat(queue.offer(value, new int[]{value, value})).isTrue();
+    }
+    assertThat(queue.offer(3, new int[]{3, 0})).isFalse();
+    assertThat(queue.size()).isEqualTo(5);
+    assertThat(queue.peek()[0]).isEqualTo(1);
+    for (final int expected : new int[]{1, 3, 5, 7, 9}) {
+      assertThat(queue.poll()[0]).isEqualTo(expected);
+    }
+    assertThat(queue.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void testRemoveAndUpdate() {
+    final IndexedPriorityQueue<Integer, int[]> queue = new IndexedPriorityQueue<>(BY_VALUE);
+    for (int i = 0; i < 10; ++i) {
+      queue.offer(i, new int[]{i, i});
+    }
+    assertThat(queue.remove(4)[0]).isEqualTo(4);
+    assertThat(queue.remove(4)).isNull();
+    assertThat(queue.containsKey(4)).isFalse();
+
+    queue.get(8)[1] = -1;
+    assertThat(queue.update(8)).isTrue();
+    queue.get(0)[1] = 100;
+    assertThat(queue.update(0)).isTrue();
+    assertThat(queue.update(42)).isFalse();
+
+    for (final int expected : new int[]{8, 1, 2, 3, 5, 6, 7, 9, 0}) {
+      assertThat(queue.poll()[0]).isEqualTo(expected);
+    }
+  }
+
+  /**
+   * Runs random offers, polls, removes and updates over 100k entries against a TreeSet.
+   */
+  @Test
+  public void testLargeRandomOperations() {
+    final int numEntries = 100000;
+    final Random random = new Random(1);
+    final IndexedPriorityQueue<Integer, int[]> queue = new IndexedPriorityQueue<>(BY_VALUE);
+    final TreeSet<int[]> expected = new TreeSet<>(BY_VALUE);
+
+    for (int i = 0; i < numEntries; ++i) {
+      final int[] entry = {i, random.nextInt(1000)};
+      queue.offer(i, entry);
+      expected.add(entry);
+    }
+    for (int i = 0; i < numEntries; ++i) {
+      final int key = random.nextInt(numEntries);
+      final int[] entry = queue.get(key);
+      switch (i % 3) {
+        case 0:
+          assertThat(queue.poll()).isSameAs(expected.pollFirst());
+          break;
+        case 1:
+          if (entry != null) {
+            assertThat(queue.remove(key)).isSameAs(entry);
+            expected.remove(entry);
+          }
+          break;
+        default:
+          if (entry != null) {
+            expected.remove(entry);
+            entry[1] = random.nextInt(1000);
+            expected.add(entry);
+            queue.update(key);
+          }
+      }
+    }
+    assertThat(queue.size()).isEqualTo(expected.size());
+    while (!expected.isEmpty()) {
+      assertThat(queue.poll()).isSameAs(expected.pollFirst());
+    }
+    assertThat(queue.isEmpty()).isTrue();
+  }
+}
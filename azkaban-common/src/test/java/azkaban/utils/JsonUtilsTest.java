@@ -16,9 +16,15 @@
 
 package azkaban.utils;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.Assert;
 import org.junit.Test;
@@ -69,4 +75,44 @@ public class JsonUtilsTest {
     checkInAndOut(test, result);
   }
 
+  @Test
+  public void parseTypesTest() throws IOException {
+    final Map<String, Object> result = (Map<String, Object>) JSONUtils.parseJSONFromString(
+        "{\"int\":1,\"long\":12345678901,\"double\":2.5,\"bool\":true,\"null\":null,"
+            + "\"list\":[\"a\",{\"nested\":false},[]],\"map\":{}}");
+
+    Assert.assertEquals(1, result.get("int"));
+    Assert.assertEquals(12345678901L, result.get("long"));
+    Assert.assertEquals(2.5, result.get("double"));
+    Assert.assertEquals(true, result.get("bool"));
+    Assert.assertTrue(result.containsKey("null"));
+    Assert.assertNull(result.get("null"));
+    final List<Object> list = (List<Object>) result.get("list");
+    Assert.assertEquals("a", list.get(0));
+    Assert.assertEquals(false, ((Map<String, Object>) list.get(1)).get("nested"));
+    Assert.assertEquals(new ArrayList<>(), list.get(2));
+    Assert.assertEquals(new HashMap<>(), result.get("map"));
+  }
+
+  @Test
+  public void bytesRoundTripTest() throws IOException {
+    final Map<String, Object> obj = new HashMap<>();
+    obj.put("text", "caf\u00e9 \u2603");
+    obj.put("list", Arrays.asList(1, 2L + Integer.MAX_VALUE, "three"));
+
+    final byte[] json = JSONUtils.toJSONBytes(obj);
+    Assert.assertEquals(JSONUtils.toJSON(obj), new String(json, StandardCharsets.UTF_8));
+    Assert.assertEquals(obj, JSONUtils.parseJSONFromBytes(json));
+    Assert.assertEquals(obj, JSONUtils.parseJSONFromStream(new ByteArrayInputStream(json)));
+  }
+
+  @Test(expected = EOFException.class)
+  public void parseEmptyTest() throws IOException {
+    JSONUtils.parseJSONFromString(" ");
+  }
+
+  @Test(expected = IOException.class)
+  public void parseTruncatedTest() throws IOException {
+    JSONUtils.parseJSONFromString("{\"a\":[1,");
+  }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class LogSearcherTest {
+
+  private static final String LOG = "start\nfirst Exception\r\nok\nsecond exception\nend";
+  private static final byte[] LOG_BYTES = LOG.getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testFindsMatchingLinesAcrossPieces() {
+    final LogSearcher searcher =
+        new LogSearcher(LogSearcher.compile("exception", false, true), 0, 10);
+    // one byte at a time, so every line spans pieces
+    for (int i = 0; i < LOG_BYTES.length; i++) {
+      searcher.update(LOG_BYTES, i, 1);
+    }
+    final LogSearcher.Result result = searcher.getResult();
+
+    assertThat(lines(result)).containsExactly("first Exception", "second exception");
+    assertThat(result.getMatches().get(0).getOffset()).isEqualTo(LOG.indexOf("first"));
+    assertThat(result.getMatches().get(1).getOffset()).isEqualTo(LOG.indexOf("second"));
+    assertThat(result.isComplete()).isTrue();
+    assertThat(result.getEndOffset()).isEqualTo(LOG_BYTES.length);
+  }
+
+  @Test
+  public void testStopsAfterMaxMatchesAndContinues() throws Exception {
+    final LogSearcher searcher =
+        new LogSearcher(LogSearcher.compile("(?i)exception", true, false), 0, 1);
+    searcher.search(new ByteArrayInputStream(LOG_BYTES));
+    final LogSearcher.Result result = searcher.getResult();
+    assertThat(lines(result)).containsExactly("first Exception");
+    assertThat(result.isComplete()).isFalse();
+    assertThat(result.getEndOffset()).isEqualTo(LOG.indexOf("ok"));
+
+    final int next = (int) result.getEndOffset();
+    final LogSearcher rest =
+        new LogSearcher(LogSearcher.compile("(?i)exception", true, false), next, 1);
+    rest.search(new ByteArrayInputStream(LOG_BYTES, next, LOG_BYTES.length - next));
+    assertThat(rest.getResult().getMatches().get(0).getOffset()).isEqualTo(LOG.indexOf("second"));
+  }
+
+  @Test
+  public void testMatchesLastLineAndQuotesText() {
+    final LogSearcher searcher = new LogSearcher(LogSearcher.compile("e.d", false, false), 0, 10);
+    searcher.update(LOG_BYTES, 0, LOG_BYTES.length);
+    assertThat(lines(searcher.getResult())).isEmpty();
+
+    final LogSearcher endSearcher = new LogSearcher(LogSearcher.compile("end", false, false), 0,
+        10);
+    endSearcher.update(LOG_BYTES, 0, LOG_BYTES.length);
+    assertThat(lines(endSearcher.getResult())).containsExactly("end");
+  }
+
+  @Test
+  public void testStopsAtByteLimitOnLineStart() {
+    final LogSearcher searcher = new LogSearcher(LogSearcher.compile("exception", false, true),
+        0, 10, LOG.indexOf("ok") + 1, LogSearcher.MAX_MATCH_STEPS);
+    searcher.update(LOG_BYTES, 0, LOG_BYTES.length);
+    final LogSearcher.Result result = searcher.getResult();
+
+    assertThat(lines(result)).containsExactly("first Exception");
+    assertThat(result.isComplete()).isFalse();
+    assertThat(result.getEndOffset()).isEqualTo(LOG.indexOf("ok"));
+  }
+
+  @Test
+  public void testGetsPastLineLongerThanByteLimit() {
+    final LogSearcher searcher = new LogSearcher(LogSearcher.compile("exception", false, true),
+        0, 10, 3, LogSearcher.MAX_MATCH_STEPS);
+    searcher.update(LOG_BYTES, 0, LOG_BYTES.length);
+    final LogSearcher.Result result = searcher.getResult();
+
+    assertThat(lines(result)).isEmpty();
+    assertThat(result.isComplete()).isFalse();
+    assertThat(result.getEndOffset()).isEqualTo(3);
+  }
+
+  @Test
+  public void testStopsBeforeLineThatExceedsMatchSteps() {
+    final String log = "ok\n" + "aaaaaaaaaaaaaaaaaaaaaaaaaaaa!\n";
+    final byte[] logBytes = log.getBytes(StandardCharsets.UTF_8);
+    final LogSearcher searcher = new LogSearcher(LogSearcher.compile("(.*a){12}x", true, false),
+        0, 10, LogSearcher.MAX_SEARCH_BYTES, 100000);
+    searcher.update(logBytes, 0, logBytes.length);
+    final LogSearcher.Result result = searcher.getResult();
+
+    assertThat(lines(result)).isEmpty();
+    assertThat(result.isComplete()).isFalse();
+    assertThat(result.getEndOffset()).isEqualTo(log.indexOf('a'));
+
+    final int next = (int) result.getEndOffset();
+    final LogSearcher rest = new LogSearcher(LogSearcher.compile("(.*a){12}x", true, false),
+        next, 10, LogSearcher.MAX_SEARCH_BYTES, 100000);
+    assertThatThrownBy(() -> rest.update(logBytes, next, logBytes.length - next))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testResultToAndFromObject() {
+    final LogSearcher searcher =
+        new LogSearcher(LogSearcher.compile("exception", false, true), 0, 10);
+    searcher.update(LOG_BYTES, 0, LOG_BYTES.length);
+    final LogSearcher.Result result = LogSearcher.Result.createResultFromObject(
+        searcher.getResult().toObject());
+    assertThat(lines(result)).containsExactly("first Exception", "second exception");
+    assertThat(result.getEndOffset()).isEqualTo(LOG_BYTES.length);
+    assertThat(result.isComplete()).isTrue();
+  }
+
+  private static List<String> lines(final LogSearcher.Result result) {
+    return result.getMatches().stream().map(LogSearcher.Match::getLine)
+        .collect(Collectors.toList());
+  }
+}
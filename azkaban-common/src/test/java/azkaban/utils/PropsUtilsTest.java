@@ -240,6 +240,48 @@ public class PropsUtilsTest {
         "Newly created Properties: [ c, a_value1], \nDeleted Properties: [ a, a_value1], \n");
   }
 
+  @Test
+  public void testResolveDeepPropsChain() {
+    // Every key refers to the previous two, in props of different levels. Without memoizing
+    // resolved variables this takes exponential time.
+    Props props = new Props();
+    props.put("key0", "a");
+    props.put("key1", "b");
+    for (int i = 2; i < 25; i++) {
+      if (i % 5 == 0) {
+        props = new Props(props);
+      }
+      props.put("key" + i, "${key" + (i - 1) + "}${key" + (i - 2) + "}");
+    }
+    props.put("expression", "$(\"${key5}\".length())");
+
+    final Props resolved = PropsUtils.resolveProps(props);
+
+    // The lengths of the values are fibonacci numbers.
+    long previous = 1;
+    long current = 1;
+    for (int i = 2; i < 25; i++) {
+      final long next = previous + current;
+      previous = current;
+      current = next;
+      Assert.assertEquals(current, resolved.get("key" + i).length());
+    }
+    Assert.assertEquals("babba", resolved.get("key4"));
+    Assert.assertEquals("8", resolved.get("expression"));
+    Assert.assertEquals(25 + 1, resolved.size());
+  }
+
+  @Test
+  public void testUndefinedVariableInResolvedProps() {
+    final Props props = Props.of("a", "${b}", "b", "${c}", "c", "value", "d", "${b} ${e}");
+    try {
+      PropsUtils.resolveProps(props);
+      Assert.fail();
+    } catch (final UndefinedPropertyException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("[d->e]"));
+    }
+  }
+
   private void failIfNotException(final Props props) {
     try {
       PropsUtils.resolveProps(props);
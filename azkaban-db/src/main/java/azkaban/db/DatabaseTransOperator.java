@@ -107,6 +107,16 @@ public class DatabaseTransOperator {
     }
   }
 
+  /**
+   * Executes the statement once for each row of params, in one round trip where the driver
+   * supports batches.
+   *
+   * @return the number of rows updated by each execution
+   */
+  public int[] batch(final String updateClause, final Object[][] params) throws SQLException {
+    return this.queryRunner.batch(this.conn, updateClause, params);
+  }
+
   /**
    * @return the JDBC connection associated with this operator.
    */
@@ -22,6 +22,7 @@ import static azkaban.Constants.ConfigurationKeys.AZKABAN_EVENT_REPORTING_ENABLE
 
 import azkaban.executor.ExecutorLoader;
 import azkaban.executor.JdbcExecutorLoader;
+import azkaban.executor.RunningFlowLookup;
 import azkaban.spi.AzkabanEventReporter;
 import azkaban.utils.Props;
 import com.google.inject.AbstractModule;
@@ -47,6 +48,16 @@ public class AzkabanExecServerModule extends AbstractModule {
     bind(ExecutorLoader.class).to(JdbcExecutorLoader.class);
   }
 
+  /**
+   * The slas of the flows are checked against their state here rather than in the DB.
+   */
+  @Inject
+  @Provides
+  @Singleton
+  public RunningFlowLookup createRunningFlowLookup(final FlowRunnerManager runnerManager) {
+    return runnerManager::getExecutableFlow;
+  }
+
   @Inject
   @Provides
   @Singleton
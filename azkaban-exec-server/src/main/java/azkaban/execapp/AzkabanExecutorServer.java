@@ -534,6 +534,7 @@ public class AzkabanExecutorServer {
     this.server.stop();
     this.server.destroy();
     getFlowRunnerManager().shutdownNow();
+    this.executionLoader.shutdown();
     close();
   }
 }
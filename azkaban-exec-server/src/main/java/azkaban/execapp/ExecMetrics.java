@@ -43,5 +43,28 @@ public class ExecMetrics {
         .addGauge("EXEC-NumRunningFlows", flowRunnerManager::getNumRunningFlows);
     this.metricsManager
         .addGauge("EXEC-NumQueuedFlows", flowRunnerManager::getNumQueuedFlows);
+    this.metricsManager
+        .addHistogram("EXEC-FlowPreparationTime", flowRunnerManager.getFlowPreparationTimes());
+    this.metricsManager
+        .addHistogram("EXEC-JobPreparationTime", flowRunnerManager.getJobPreparationTimes());
+
+    final FlowStatePersister persister = flowRunnerManager.getFlowStatePersister();
+    this.metricsManager.addGauge("EXEC-FlowStateUpdates", persister::getNumUpdates);
+    this.metricsManager.addGauge("EXEC-FlowStateRowsWritten", persister::getNumRowsWritten);
+    this.metricsManager.addGauge("EXEC-FlowStateBytesWritten", persister::getNumBytesWritten);
+    this.metricsManager.addHistogram("EXEC-FlowStateRowsPerFlow", persister.getRowsPerFlow());
+    this.metricsManager.addHistogram("EXEC-FlowStateBytesPerFlow", persister.getBytesPerFlow());
+
+    final JobThreadPool jobThreadPool = flowRunnerManager.getJobThreadPool();
+    if (jobThreadPool != null) {
+      this.metricsManager.addGauge("EXEC-NumRunningJobs", jobThreadPool::getNumRunningJobs);
+      this.metricsManager.addGauge("EXEC-NumQueuedJobs", jobThreadPool::getNumQueuedJobs);
+      this.metricsManager.addHistogram("EXEC-JobQueueTime", jobThreadPool.getQueueTimes());
+    }
+
+    final LogUploader logUploader = flowRunnerManager.getLogUploader();
+    if (logUploader != null) {
+      this.metricsManager.addGauge("EXEC-NumQueuedLogUploads", logUploader::getNumQueuedUploads);
+    }
   }
 }
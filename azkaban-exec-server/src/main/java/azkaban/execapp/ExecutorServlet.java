@@ -20,17 +20,25 @@ import static java.util.Objects.requireNonNull;
 
 import azkaban.Constants;
 import azkaban.executor.ConnectorParams;
+import azkaban.executor.ExecutableFlow;
 import azkaban.executor.ExecutableFlowBase;
+import azkaban.executor.ExecutionUpdateCodec;
 import azkaban.executor.Executor;
 import azkaban.executor.ExecutorLoader;
 import azkaban.executor.ExecutorManagerException;
+import azkaban.utils.FileIOUtils;
 import azkaban.utils.FileIOUtils.JobMetaData;
 import azkaban.utils.FileIOUtils.LogData;
 import azkaban.utils.JSONUtils;
+import azkaban.utils.LogSearcher;
+import azkaban.utils.Pair;
 import com.google.common.base.Preconditions;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,7 +48,6 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.log4j.Logger;
-import org.codehaus.jackson.map.ObjectMapper;
 
 
 public class ExecutorServlet extends HttpServlet implements ConnectorParams {
@@ -49,6 +56,9 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
   private static final long serialVersionUID = 1L;
   private static final Logger logger = Logger.getLogger(ExecutorServlet.class
       .getName());
+  private static final int DEFAULT_STREAM_DURATION_MS = 5 * 60 * 1000;
+  private static final int MAX_STREAM_DURATION_MS = 30 * 60 * 1000;
+  private static final long STREAM_HEARTBEAT_INTERVAL_MS = 5 * 1000;
   private AzkabanExecutorServer application;
   private FlowRunnerManager flowRunnerManager;
 
@@ -73,14 +83,22 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
   protected void writeJSON(final HttpServletResponse resp, final Object obj)
       throws IOException {
     resp.setContentType(JSON_MIME_TYPE);
-    final ObjectMapper mapper = new ObjectMapper();
-    final OutputStream stream = resp.getOutputStream();
-    mapper.writeValue(stream, obj);
+    JSONUtils.toJSON(obj, resp.getOutputStream());
   }
 
   @Override
   public void doGet(final HttpServletRequest req, final HttpServletResponse resp)
       throws ServletException, IOException {
+    if (UPDATE_STREAM_ACTION.equals(req.getParameter(ACTION_PARAM))) {
+      // The stream writes its own response, one JSON document per line.
+      handleUpdateStreamRequest(req, resp);
+      return;
+    }
+    if (LOG_STREAM_ACTION.equals(req.getParameter(ACTION_PARAM))) {
+      handleLogStreamRequest(req, resp);
+      return;
+    }
+
     final HashMap<String, Object> respMap = new HashMap<>();
     // logger.info("ExecutorServer called by " + req.getRemoteAddr());
     try {
@@ -108,6 +126,8 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
           setActive(false, respMap);
         } else if (action.equals(SHUTDOWN)) {
           shutdown(respMap);
+        } else if (action.equals(PREPARE_PROJECT_ACTION)) {
+          handlePrepareProject(req, respMap);
         } else {
           final int execid = Integer.parseInt(getParam(req, EXECID_PARAM));
           final String user = getParam(req, USER_PARAM, null);
@@ -118,8 +138,12 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
             handleFetchMetaDataEvent(execid, req, resp, respMap);
           } else if (action.equals(LOG_ACTION)) {
             handleFetchLogEvent(execid, req, resp, respMap);
+          } else if (action.equals(LOG_SEARCH_ACTION)) {
+            handleLogSearchEvent(execid, req, respMap);
           } else if (action.equals(ATTACHMENTS_ACTION)) {
             handleFetchAttachmentsEvent(execid, req, resp, respMap);
+          } else if (action.equals(RESERVE_ACTION)) {
+            handleAjaxReserve(respMap, execid);
           } else if (action.equals(EXECUTE_ACTION)) {
             handleAjaxExecute(req, respMap, execid);
           } else if (action.equals(STATUS_ACTION)) {
@@ -201,6 +225,78 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
     }
   }
 
+  /**
+   * Answers with the raw bytes of the requested range of a log, cut to whole UTF-8 characters,
+   * with the offset and length of the range in headers. The bytes are transferred from the file
+   * to the response without reading them into memory. Errors are answered with a JSON error like
+   * the other actions, without the headers.
+   */
+  private void handleLogStreamRequest(final HttpServletRequest req,
+      final HttpServletResponse resp) throws IOException {
+    final Map<String, Object> respMap = new HashMap<>();
+    try {
+      final int execId = getIntParam(req, EXECID_PARAM);
+      final String type = getParam(req, "type");
+      final long startByte = Long.parseLong(getParam(req, "offset"));
+      final int length = getIntParam(req, "length");
+
+      try (FileChannel channel = type.equals("flow")
+          ? this.flowRunnerManager.openFlowLog(execId)
+          : this.flowRunnerManager.openJobLog(execId, getParam(req, "jobId"),
+              getIntParam(req, "attempt", 0))) {
+        final Pair<Long, Integer> range = FileIOUtils.getUtf8Range(channel, startByte, length);
+        resp.setContentType("text/plain");
+        resp.setCharacterEncoding("utf-8");
+        resp.setHeader(LOG_OFFSET_HEADER, String.valueOf(range.getFirst()));
+        resp.setHeader(LOG_LENGTH_HEADER, String.valueOf(range.getSecond()));
+        resp.setContentLength(range.getSecond());
+        FileIOUtils.transferFully(channel, range.getFirst(), range.getSecond(),
+            Channels.newChannel(resp.getOutputStream()));
+        resp.flushBuffer();
+        return;
+      }
+    } catch (final ExecutorManagerException | ServletException | NumberFormatException e) {
+      logger.error(e.getMessage(), e);
+      respMap.put(RESPONSE_ERROR, e.getMessage());
+    }
+    writeJSON(resp, respMap);
+    resp.flushBuffer();
+  }
+
+  /**
+   * Searches a log of the execution for the lines that match a pattern, reading the log from the
+   * requested offset on.
+   */
+  private void handleLogSearchEvent(final int execId, final HttpServletRequest req,
+      final Map<String, Object> respMap) throws ServletException {
+    final String type = getParam(req, "type");
+    final long startByte = Long.parseLong(getParam(req, "offset", "0"));
+    final String query = getParam(req, LOG_SEARCH_PATTERN_PARAM);
+    final boolean ignoreCase =
+        Boolean.parseBoolean(getParam(req, LOG_SEARCH_IGNORE_CASE_PARAM, "false"));
+    final int maxMatches = getIntParam(req, LOG_SEARCH_MAX_MATCHES_PARAM);
+    final long maxBytes = Long.parseLong(getParam(req, LOG_SEARCH_MAX_BYTES_PARAM,
+        String.valueOf(LogSearcher.MAX_SEARCH_BYTES)));
+
+    try (FileChannel channel = type.equals("flow")
+        ? this.flowRunnerManager.openFlowLog(execId)
+        : this.flowRunnerManager.openJobLog(execId, getParam(req, "jobId"),
+            getIntParam(req, "attempt", 0))) {
+      // the searcher bounds the bytes read and the matching done for the request
+      final LogSearcher searcher = new LogSearcher(LogSearcher.compile(query, true, ignoreCase),
+          startByte, maxMatches, maxBytes);
+      channel.position(startByte);
+      searcher.search(Channels.newInputStream(channel));
+      respMap.putAll(searcher.getResult().toObject());
+    } catch (final ExecutorManagerException | IOException e) {
+      logger.error(e.getMessage(), e);
+      respMap.put(RESPONSE_ERROR, e.getMessage());
+    } catch (final IllegalArgumentException e) {
+      // the pattern is invalid or too costly to match; the user's mistake, not ours
+      respMap.put(RESPONSE_ERROR, e.getMessage());
+    }
+  }
+
   private void handleFetchAttachmentsEvent(final int execId, final HttpServletRequest req,
       final HttpServletResponse resp, final Map<String, Object> respMap)
       throws ServletException {
@@ -248,12 +344,16 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
         (ArrayList<Object>) JSONUtils.parseJSONFromString(getParam(req,
             EXEC_ID_LIST_PARAM));
 
+    final boolean binary = UPDATE_FORMAT_BINARY.equals(getParam(req, UPDATE_FORMAT_PARAM, null));
+
     final ArrayList<Object> updateList = new ArrayList<>();
+    final List<ExecutableFlow> updatedFlows = new ArrayList<>();
+    final List<Long> lastUpdateTimes = new ArrayList<>();
     for (int i = 0; i < execIDList.size(); ++i) {
       final long updateTime = JSONUtils.getLongFromObject(updateTimesList.get(i));
       final int execId = (Integer) execIDList.get(i);
 
-      final ExecutableFlowBase flow = this.flowRunnerManager.getExecutableFlow(execId);
+      final ExecutableFlow flow = this.flowRunnerManager.getExecutableFlow(execId);
       if (flow == null) {
         final Map<String, Object> errorResponse = new HashMap<>();
         errorResponse.put(RESPONSE_ERROR, "Flow does not exist");
@@ -263,11 +363,96 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
       }
 
       if (flow.getUpdateTime() > updateTime) {
-        updateList.add(flow.toUpdateObject(updateTime));
+        if (binary) {
+          updatedFlows.add(flow);
+          lastUpdateTimes.add(updateTime);
+        } else {
+          updateList.add(flow.toUpdateObject(updateTime));
+        }
       }
     }
 
+    // Errors stay in the JSON list in both formats.
     respMap.put(RESPONSE_UPDATED_FLOWS, updateList);
+    if (binary) {
+      respMap.put(RESPONSE_UPDATED_FLOWS_BINARY, Base64.getEncoder()
+          .encodeToString(ExecutionUpdateCodec.encode(updatedFlows, lastUpdateTimes)));
+    }
+  }
+
+  /**
+   * Pushes flow updates to the caller as newline-delimited JSON, each line shaped like an update
+   * action response. A line is written as soon as a flow changes, and at least once per heartbeat
+   * interval so the caller can tell a quiet executor from a dead connection. The stream ends once
+   * the requested duration elapses and the caller is expected to reconnect.
+   *
+   * The optional execution id and update time lists give the caller's current view, so that only
+   * newer changes are sent. Flows missing from that view are sent in full.
+   */
+  private void handleUpdateStreamRequest(final HttpServletRequest req,
+      final HttpServletResponse resp) throws IOException {
+    final long durationMs = Math.min(MAX_STREAM_DURATION_MS,
+        Math.max(0, getIntParam(req, STREAM_DURATION_PARAM, DEFAULT_STREAM_DURATION_MS)));
+    final Map<Integer, Long> lastSentTimes = new HashMap<>();
+    if (hasParam(req, EXEC_ID_LIST_PARAM) && hasParam(req, UPDATE_TIME_LIST_PARAM)) {
+      final List<Object> execIdList = (List<Object>) JSONUtils.parseJSONFromString(
+          req.getParameter(EXEC_ID_LIST_PARAM));
+      final List<Object> updateTimesList = (List<Object>) JSONUtils.parseJSONFromString(
+          req.getParameter(UPDATE_TIME_LIST_PARAM));
+      for (int i = 0; i < execIdList.size() && i < updateTimesList.size(); ++i) {
+        lastSentTimes.put((Integer) execIdList.get(i),
+            JSONUtils.getLongFromObject(updateTimesList.get(i)));
+      }
+    }
+
+    resp.setContentType(JSON_MIME_TYPE);
+    resp.setCharacterEncoding("utf-8");
+    final OutputStream stream = resp.getOutputStream();
+    final long deadline = System.currentTimeMillis() + durationMs;
+    long version = this.flowRunnerManager.getFlowUpdateVersion();
+    long lastWriteTime = 0;
+
+    while (true) {
+      final List<Object> updateList = new ArrayList<>();
+      final Map<Integer, Long> sentTimes = new HashMap<>();
+      for (final ExecutableFlow flow : this.flowRunnerManager.getReportableFlows()) {
+        final Long lastSentTime = lastSentTimes.get(flow.getExecutionId());
+        final long since = lastSentTime == null ? 0 : lastSentTime;
+        // Read the update time first. A concurrent change is then re-sent, never lost.
+        final long updateTime = flow.getUpdateTime();
+        if (updateTime > since) {
+          updateList.add(flow.toUpdateObject(since));
+          sentTimes.put(flow.getExecutionId(), updateTime);
+        } else {
+          sentTimes.put(flow.getExecutionId(), since);
+        }
+      }
+      lastSentTimes.clear();
+      lastSentTimes.putAll(sentTimes);
+
+      final long now = System.currentTimeMillis();
+      if (!updateList.isEmpty() || now - lastWriteTime >= STREAM_HEARTBEAT_INTERVAL_MS) {
+        final Map<String, Object> batch = new HashMap<>();
+        batch.put(RESPONSE_UPDATED_FLOWS, updateList);
+        batch.put(RESPONSE_UPDATETIME, now);
+        // writeValue would close the response stream, so serialize each line separately.
+        stream.write(JSONUtils.toJSONBytes(batch));
+        stream.write('\n');
+        resp.flushBuffer();
+        lastWriteTime = now;
+      }
+
+      if (now >= deadline) {
+        break;
+      }
+      try {
+        version = this.flowRunnerManager.awaitFlowUpdate(version,
+            Math.min(STREAM_HEARTBEAT_INTERVAL_MS, deadline - now));
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
   }
 
   private void handleAjaxExecute(final HttpServletRequest req,
@@ -281,6 +466,19 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
     }
   }
 
+  private void handleAjaxReserve(final Map<String, Object> respMap, final int execId) {
+    respMap.put(RESPONSE_RESERVED, this.flowRunnerManager.reserveSlot(execId));
+    respMap.put(RESPONSE_AVAILABLE_SLOTS, this.flowRunnerManager.getNumAvailableSlots());
+  }
+
+  private void handlePrepareProject(final HttpServletRequest req,
+      final Map<String, Object> respMap) throws ServletException {
+    final int projectId = getIntParam(req, PROJECT_ID_PARAM);
+    final int version = getIntParam(req, PROJECT_VERSION_PARAM);
+    this.flowRunnerManager.prepareProject(projectId, version);
+    respMap.put(STATUS_PARAM, RESPONSE_SUCCESS);
+  }
+
   private void handleAjaxFlowStatus(final Map<String, Object> respMap, final int execid) {
     final ExecutableFlowBase flow = this.flowRunnerManager.getExecutableFlow(execid);
     if (flow == null) {
@@ -26,13 +26,22 @@ import azkaban.project.ProjectManagerException;
 import azkaban.storage.StorageManager;
 import azkaban.utils.FileIOUtils;
 import azkaban.utils.Pair;
-import azkaban.utils.Utils;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
 import com.google.common.annotations.VisibleForTesting;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.zip.ZipFile;
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
@@ -41,6 +50,8 @@ import org.apache.log4j.Logger;
 public class FlowPreparer {
 
   private static final Logger log = Logger.getLogger(FlowPreparer.class);
+  // Doesn't match the projectId.version pattern of installed projects.
+  private static final String PROJECT_FILE_STORE_DIR = "_files";
 
   // TODO spyne: move to config class
   private final File executionsDir;
@@ -49,29 +60,53 @@ public class FlowPreparer {
 
   private final Map<Pair<Integer, Integer>, ProjectVersion> installedProjects;
   private final StorageManager storageManager;
+  private final ProjectFileStore projectFileStore;
+  // 0 means no limit
+  private final long projectCacheMaxSizeInBytes;
+  // Time taken by setup in milliseconds, one sample per execution.
+  private final Histogram preparationTimes = new Histogram(new ExponentiallyDecayingReservoir());
 
   public FlowPreparer(final StorageManager storageManager, final File executionsDir,
       final File projectsDir,
       final Map<Pair<Integer, Integer>, ProjectVersion> installedProjects) {
+    this(storageManager, executionsDir, projectsDir, installedProjects, 0);
+  }
+
+  /**
+   * @param projectCacheMaxSizeInBytes size of the project files above which the least recently
+   * used project versions no flow is using are deleted. 0 means no limit.
+   */
+  public FlowPreparer(final StorageManager storageManager, final File executionsDir,
+      final File projectsDir,
+      final Map<Pair<Integer, Integer>, ProjectVersion> installedProjects,
+      final long projectCacheMaxSizeInBytes) {
     this.storageManager = storageManager;
     this.executionsDir = executionsDir;
     this.projectsDir = projectsDir;
     this.installedProjects = installedProjects;
+    this.projectCacheMaxSizeInBytes = projectCacheMaxSizeInBytes;
+    this.projectFileStore = new ProjectFileStore(new File(projectsDir, PROJECT_FILE_STORE_DIR));
   }
 
   /**
-   * Prepare the flow directory for execution.
+   * Prepare the flow directory for execution. The project version stays in use by the flow until
+   * {@link #release(ExecutableFlow)} is called.
+   *
+   * The project files in the execution directory are hard links to read-only stored files, so a
+   * job can't write or append to them in place. A job that needs to change one has to replace it,
+   * i.e. delete it and write a new file, which leaves the other executions' copies as they are.
    *
    * @param flow Executable Flow instance.
    */
   void setup(final ExecutableFlow flow) {
+    final long startTime = System.currentTimeMillis();
     File execDir = null;
+    // First get the ProjectVersion
+    final ProjectVersion projectVersion = getProjectVersion(flow);
     try {
-      // First get the ProjectVersion
-      final ProjectVersion projectVersion = getProjectVersion(flow);
-
       // Setup the project
-      setupProject(projectVersion);
+      prepareProject(projectVersion);
+      evictProjects();
 
       // Create the execution directory
       execDir = createExecDir(flow);
@@ -79,15 +114,198 @@ public class FlowPreparer {
       // Create the symlinks from the project
       copyCreateHardlinkDirectory(projectVersion.getInstalledDir(), execDir);
 
-      log.info(String.format("Flow Preparation complete. [execid: %d, path: %s]",
-          flow.getExecutionId(), execDir.getPath()));
+      final long preparationTime = System.currentTimeMillis() - startTime;
+      this.preparationTimes.update(preparationTime);
+      log.info(String.format("Flow Preparation complete. [execid: %d, path: %s, time: %d ms]",
+          flow.getExecutionId(), execDir.getPath(), preparationTime));
     } catch (final Exception e) {
       log.error("Error in setting up project directory: " + this.projectsDir + ", Exception: " + e);
+      release(flow);
       cleanup(execDir);
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * Installs a project version ahead of its first execution, so that the flows of it don't wait
+   * for the download.
+   */
+  void prepareProject(final int projectId, final int version) {
+    final ProjectVersion projectVersion;
+    synchronized (this.installedProjects) {
+      projectVersion = this.installedProjects.computeIfAbsent(new Pair<>(projectId, version),
+          k -> new ProjectVersion(projectId, version));
+      // keeps the version from being evicted while it's installed
+      projectVersion.incrementRefCount();
+    }
+    try {
+      prepareProject(projectVersion);
+    } catch (final Exception e) {
+      log.warn("Failed to prepare project " + projectVersion + " ahead of its executions", e);
+    } finally {
+      synchronized (this.installedProjects) {
+        projectVersion.decrementRefCount();
+      }
+    }
+    evictProjects();
+  }
+
+  /**
+   * Marks the project version of a flow as no longer used by it.
+   */
+  void release(final ExecutableFlow flow) {
+    synchronized (this.installedProjects) {
+      final ProjectVersion projectVersion = this.installedProjects
+          .get(new Pair<>(flow.getProjectId(), flow.getVersion()));
+      if (projectVersion != null && projectVersion.getRefCount() > 0) {
+        projectVersion.decrementRefCount();
+      }
+    }
+    evictProjects();
+  }
+
+  /**
+   * Deletes the stored project files no installed project or execution links to anymore.
+   */
+  void removeUnusedProjectFiles() {
+    final long freed = this.projectFileStore.removeUnlinked();
+    if (freed > 0) {
+      log.info(String.format("Removed %d bytes of unused project files", freed));
+    }
+  }
+
+  /**
+   * Deletes the least recently used project versions that no flow is using, until the project
+   * files fit in the configured size.
+   */
+  @VisibleForTesting
+  void evictProjects() {
+    if (this.projectCacheMaxSizeInBytes <= 0) {
+      return;
+    }
+    // Deleting under the lock keeps a new setup of the same version from racing the deletion.
+    synchronized (this.installedProjects) {
+      if (this.projectFileStore.getSize() <= this.projectCacheMaxSizeInBytes) {
+        return;
+      }
+      final List<ProjectVersion> unused = new ArrayList<>();
+      for (final ProjectVersion projectVersion : this.installedProjects.values()) {
+        if (projectVersion.getRefCount() == 0) {
+          unused.add(projectVersion);
+        }
+      }
+      unused.sort(Comparator.comparingLong(ProjectVersion::getLastAccessTime));
+
+      for (final ProjectVersion projectVersion : unused) {
+        if (this.projectFileStore.getSize() <= this.projectCacheMaxSizeInBytes) {
+          break;
+        }
+        log.info("Evicting project from cache: " + projectVersion);
+        this.installedProjects.remove(
+            new Pair<>(projectVersion.getProjectId(), projectVersion.getVersion()));
+        try {
+          if (projectVersion.getInstalledDir() != null) {
+            FileUtils.deleteDirectory(projectVersion.getInstalledDir());
+          }
+        } catch (final IOException e) {
+          log.error("Failed to delete evicted project " + projectVersion, e);
+        }
+        removeUnusedProjectFiles();
+      }
+    }
+  }
+
+  /**
+   * Deletes the installed versions of each project that are older than its latest one and that
+   * no flow is using. The latest version is kept around for the next executions.
+   *
+   * @param activeProjectVersions project id and version of the flows running now
+   */
+  void removeOlderProjectVersions(final Set<Pair<Integer, Integer>> activeProjectVersions) {
+    // Under the lock, so that a flow can't start using a version while it's being deleted.
+    synchronized (this.installedProjects) {
+      final Map<Integer, List<ProjectVersion>> projectVersions = new HashMap<>();
+      for (final ProjectVersion version : this.installedProjects.values()) {
+        projectVersions.computeIfAbsent(version.getProjectId(), k -> new ArrayList<>())
+            .add(version);
+      }
+
+      for (final List<ProjectVersion> installedVersions : projectVersions.values()) {
+        Collections.sort(installedVersions);
+        for (int i = 0; i < installedVersions.size() - 1; ++i) {
+          final ProjectVersion version = installedVersions.get(i);
+          final Pair<Integer, Integer> versionKey =
+              new Pair<>(version.getProjectId(), version.getVersion());
+          if (activeProjectVersions.contains(versionKey) || version.getRefCount() > 0) {
+            continue;
+          }
+          log.info("Removing old unused installed project " + version);
+          try {
+            if (version.getInstalledDir() != null) {
+              FileUtils.deleteDirectory(version.getInstalledDir());
+            }
+            this.installedProjects.remove(versionKey);
+          } catch (final IOException e) {
+            log.error("Failed to delete old project " + version, e);
+          }
+        }
+      }
+    }
+    removeUnusedProjectFiles();
+  }
+
+  @VisibleForTesting
+  long getProjectCacheSize() {
+    return this.projectFileStore.getSize();
+  }
+
+  /**
+   * @return the distribution of the flow preparation times in milliseconds
+   */
+  public Histogram getPreparationTimes() {
+    return this.preparationTimes;
+  }
+
+  /**
+   * Installs the project version once, however many flows of it are set up at the same time. The
+   * first flow installs it and the others wait for the outcome, while other versions are installed
+   * in parallel. A failed installation is retried by the next flow.
+   */
+  @VisibleForTesting
+  void prepareProject(final ProjectVersion pv)
+      throws ProjectManagerException, IOException, InterruptedException {
+    final CompletableFuture<Void> preparation;
+    final boolean isOwner;
+    synchronized (this.installedProjects) {
+      isOwner = pv.getPreparation() == null;
+      if (isOwner) {
+        pv.setPreparation(new CompletableFuture<>());
+      }
+      preparation = pv.getPreparation();
+    }
+
+    if (!isOwner) {
+      try {
+        preparation.get();
+      } catch (final ExecutionException e) {
+        throw new ProjectManagerException("Failed to prepare project " + pv, e.getCause());
+      }
+      return;
+    }
+
+    try {
+      setupProject(pv);
+      preparation.complete(null);
+    } catch (final Throwable t) {
+      // Whatever went wrong, the flows waiting on the preparation mustn't wait forever.
+      synchronized (this.installedProjects) {
+        pv.setPreparation(null);
+      }
+      preparation.completeExceptionally(t);
+      throw t;
+    }
+  }
+
   /**
    * Prepare the project directory.
    *
@@ -125,8 +343,9 @@ public class FlowPreparer {
 
       log.info("Downloading zip file.");
       final File zipFile = requireNonNull(projectFileHandler.getLocalFile());
-      final ZipFile zip = new ZipFile(zipFile);
-      Utils.unzip(zip, tempDir);
+      try (ZipFile zip = new ZipFile(zipFile)) {
+        this.projectFileStore.unzip(zip, tempDir);
+      }
 
       Files.move(tempDir.toPath(), pv.getInstalledDir().toPath(), StandardCopyOption.ATOMIC_MOVE);
 
@@ -165,6 +384,7 @@ public class FlowPreparer {
       projectVersion = this.installedProjects
           .computeIfAbsent(new Pair<>(flow.getProjectId(), flow.getVersion()),
               k -> new ProjectVersion(flow.getProjectId(), flow.getVersion()));
+      projectVersion.incrementRefCount();
     }
     return projectVersion;
   }
@@ -50,6 +50,7 @@ import azkaban.spi.AzkabanEventReporter;
 import azkaban.spi.EventType;
 import azkaban.utils.Props;
 import azkaban.utils.SwapQueue;
+import com.codahale.metrics.Histogram;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Files;
@@ -83,8 +84,10 @@ public class FlowRunner extends EventHandler implements Runnable {
   private static final Layout DEFAULT_LAYOUT = new PatternLayout(
       "%d{dd-MM-yyyy HH:mm:ss z} %c{1} %p - %m\n");
   // We check update every 5 minutes, just in case things get stuck. But for the
-  // most part, we'll be idling.
+  // most part, we'll be idling until a job finishes or the flow is paused, resumed, killed or
+  // retried, which all notify the main sync object.
   private static final long CHECK_WAIT_MS = 5 * 60 * 1000;
+  private static final int DEFAULT_JOB_PROPS_CACHE_SIZE = 10000;
   private final ExecutableFlow flow;
   // Sync object for queuing
   private final Object mainSyncObj = new Object();
@@ -104,13 +107,26 @@ public class FlowRunner extends EventHandler implements Runnable {
       .newSetFromMap(new ConcurrentHashMap<JobRunner, Boolean>());
   // Thread safe swap queue for finishedExecutions.
   private final SwapQueue<ExecutableNode> finishedNodes;
+  // Number of unfinished dependencies of the nodes that had a dependency finish. Only used by the
+  // flow runner thread.
+  private final Map<ExecutableNode, Integer> pendingDependencies = new HashMap<>();
   private final AzkabanEventReporter azkabanEventReporter;
+  private FlowStatePersister statePersister;
+  private JobPropsCache jobPropsCache;
+  // The job overrides of the project version, fetched when the first job is prepared.
+  private Map<String, Props> jobOverrides;
   // Flag to indicate whether to interpret the flow as the new Flow 2.0 definition.
   private boolean isAzkabanFlowVersion20 = false;
   private Logger logger;
   private Appender flowAppender;
   private File logFile;
   private ExecutorService executorService;
+  // Runs the jobs instead of a pool of the flow, if the executor shares one between the flows.
+  private JobThreadPool jobThreadPool;
+  // Uploads the job logs in the background, if set. Otherwise each job uploads its own log.
+  private LogUploader logUploader;
+  // Records how long the jobs took to prepare, if set
+  private Histogram jobPreparationTimes;
   private Thread flowRunnerThread;
   private int numJobThreads = 10;
   // Used for pipelining
@@ -164,6 +180,10 @@ public class FlowRunner extends EventHandler implements Runnable {
     this.executorService = executorService;
     this.finishedNodes = new SwapQueue<>();
     this.azkabanProps = azkabanProps;
+    // writes every update, unless the manager shares its coalescing persister
+    this.statePersister = new FlowStatePersister(executorLoader, 0);
+    // caches for this execution only, unless the manager shares its cache
+    this.jobPropsCache = new JobPropsCache(projectLoader, DEFAULT_JOB_PROPS_CACHE_SIZE);
     // Add the flow listener only if a non-null eventReporter is available.
     if (azkabanEventReporter != null) {
       this.addListener(this.flowListener);
@@ -183,6 +203,31 @@ public class FlowRunner extends EventHandler implements Runnable {
     return this;
   }
 
+  public FlowRunner setStatePersister(final FlowStatePersister statePersister) {
+    this.statePersister = statePersister;
+    return this;
+  }
+
+  public FlowRunner setJobPropsCache(final JobPropsCache jobPropsCache) {
+    this.jobPropsCache = jobPropsCache;
+    return this;
+  }
+
+  public FlowRunner setJobThreadPool(final JobThreadPool jobThreadPool) {
+    this.jobThreadPool = jobThreadPool;
+    return this;
+  }
+
+  public FlowRunner setLogUploader(final LogUploader logUploader) {
+    this.logUploader = logUploader;
+    return this;
+  }
+
+  public FlowRunner setJobPreparationTimes(final Histogram jobPreparationTimes) {
+    this.jobPreparationTimes = jobPreparationTimes;
+    return this;
+  }
+
   public FlowRunner setNumJobThreads(final int jobs) {
     this.numJobThreads = jobs;
     return this;
@@ -211,7 +256,7 @@ public class FlowRunner extends EventHandler implements Runnable {
   @Override
   public void run() {
     try {
-      if (this.executorService == null) {
+      if (this.executorService == null && this.jobThreadPool == null) {
         this.executorService = Executors.newFixedThreadPool(this.numJobThreads);
       }
       setupFlowExecution();
@@ -307,7 +352,6 @@ public class FlowRunner extends EventHandler implements Runnable {
           + ". Pipelining level " + this.pipelineLevel);
     }
 
-    // The current thread is used for interrupting blocks
     this.flowRunnerThread = Thread.currentThread();
     this.flowRunnerThread.setName("FlowRunner-exec-" + this.flow.getExecutionId());
   }
@@ -316,13 +360,16 @@ public class FlowRunner extends EventHandler implements Runnable {
     updateFlow(System.currentTimeMillis());
   }
 
-  private synchronized void updateFlow(final long time) {
-    try {
+  private void updateFlow(final long time) {
+    synchronized (this.mainSyncObj) {
       this.flow.setUpdateTime(time);
-      this.executorLoader.updateExecutableFlow(this.flow);
-    } catch (final ExecutorManagerException e) {
-      this.logger.error("Error updating flow.", e);
+      // Status streams push the new state to the web server as soon as it is known.
+      this.fireEventListeners(
+          Event.create(this, EventType.FLOW_STATUS_CHANGED, new EventData(this.flow)));
     }
+    // The flow is changed under mainSyncObj, which a write holds only while it copies the flow,
+    // so the jobs can report back while the copy is stored.
+    this.statePersister.persist(this.flow, this.mainSyncObj);
   }
 
   /**
@@ -348,6 +395,15 @@ public class FlowRunner extends EventHandler implements Runnable {
   }
 
   private void closeLogger() {
+    if (this.logUploader != null) {
+      // the job logs must be in the DB once the flow is finished
+      try {
+        this.logUploader.awaitUploads(this.execId);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.logger.error("Interrupted waiting for job logs to be uploaded", e);
+      }
+    }
     if (this.logger != null) {
       this.logger.removeAppender(this.flowAppender);
       this.flowAppender.close();
@@ -365,7 +421,8 @@ public class FlowRunner extends EventHandler implements Runnable {
     for (final FlowProps fprops : this.flow.getFlowProps()) {
       final String source = fprops.getSource();
       final File propsPath = new File(this.execDir, source);
-      final Props props = new Props(null, propsPath);
+      final Props props = this.jobPropsCache.getProps(this.flow.getProjectId(),
+          this.flow.getVersion(), source, () -> new Props(null, propsPath));
       this.sharedProps.put(source, props);
     }
 
@@ -414,7 +471,9 @@ public class FlowRunner extends EventHandler implements Runnable {
     }
 
     this.logger.info("Finishing up flow. Awaiting Termination");
-    this.executorService.shutdown();
+    if (this.executorService != null) {
+      this.executorService.shutdown();
+    }
 
     updateFlow();
     this.logger.info("Finished Flow");
@@ -427,9 +486,12 @@ public class FlowRunner extends EventHandler implements Runnable {
     this.flowKilled = false;
     this.flowFailed = false;
     this.flow.setStatus(Status.RUNNING);
+    // The reset nodes finish again, so the dependencies are counted again.
+    this.pendingDependencies.clear();
 
     final ArrayList<ExecutableNode> retryJobs = new ArrayList<>();
     resetFailedState(this.flow, retryJobs);
+    this.statePersister.resetJobs(this.flow.getExecutionId());
 
     for (final ExecutableNode node : retryJobs) {
       if (node.getStatus() == Status.READY
@@ -490,12 +552,13 @@ public class FlowRunner extends EventHandler implements Runnable {
         }
       }
 
-      // Add all out nodes from the finished job. We'll check against this set
-      // to
-      // see if any are candidates for running.
+      // Add the out nodes whose last dependency just finished. We'll check
+      // against this set to see if any are candidates for running.
       for (final String nodeId : outNodeIds) {
         final ExecutableNode outNode = parentFlow.getExecutableNode(nodeId);
-        nodesToCheck.add(outNode);
+        if (dependencyFinished(outNode)) {
+          nodesToCheck.add(outNode);
+        }
       }
     }
 
@@ -520,6 +583,32 @@ public class FlowRunner extends EventHandler implements Runnable {
     return false;
   }
 
+  /**
+   * Counts down the unfinished dependencies of the node for one that finished, and returns true
+   * once none are left. A node with many dependencies is then only checked when the last one
+   * finishes, instead of going through all its dependencies on each one.
+   *
+   * The count is taken when the first dependency finishes. It can only be lower than the actual
+   * number, e.g. when a counted dependency is retried, so getImpliedStatus still decides whether
+   * the node runs.
+   */
+  private boolean dependencyFinished(final ExecutableNode node) {
+    Integer pending = this.pendingDependencies.get(node);
+    if (pending == null) {
+      pending = 0;
+      final ExecutableFlowBase parentFlow = node.getParentFlow();
+      for (final String dependency : node.getInNodes()) {
+        if (!Status.isStatusFinished(parentFlow.getExecutableNode(dependency).getStatus())) {
+          pending++;
+        }
+      }
+    } else {
+      pending--;
+    }
+    this.pendingDependencies.put(node, pending);
+    return pending <= 0;
+  }
+
   private boolean notReadyToRun(final Status status) {
     return Status.isStatusFinished(status)
         || Status.isStatusRunning(status)
@@ -727,7 +816,8 @@ public class FlowRunner extends EventHandler implements Runnable {
     if (this.isAzkabanFlowVersion20) {
       final String jobPath =
           node.getParentFlow().getFlowId() + Constants.PATH_DELIMITER + node.getId();
-      props = loadPropsFromYamlFile(jobPath);
+      props = this.jobPropsCache.getProps(this.flow.getProjectId(), this.flow.getVersion(),
+          jobPath, () -> loadPropsFromYamlFile(jobPath));
       if (props == null) {
         this.logger.info("Job props loaded from yaml file is empty for job " + node.getId());
         return props;
@@ -739,21 +829,14 @@ public class FlowRunner extends EventHandler implements Runnable {
       }
 
       // load the override props if any
-      try {
-        props =
-            this.projectLoader.fetchProjectProperty(this.flow.getProjectId(),
-                this.flow.getVersion(), node.getId() + ".jor");
-      } catch (final ProjectManagerException e) {
-        e.printStackTrace();
-        this.logger.error("Error loading job override property for job "
-            + node.getId());
-      }
+      props = JobPropsCache.copyOf(getJobOverrides().get(node.getId() + ".jor"));
 
       final File path = new File(this.execDir, source);
       if (props == null) {
         // if no override prop, load the original one on disk
         try {
-          props = new Props(null, path);
+          props = this.jobPropsCache.getProps(this.flow.getProjectId(), this.flow.getVersion(),
+              source, () -> new Props(null, path));
         } catch (final IOException e) {
           e.printStackTrace();
           this.logger.error("Error loading job file " + source + " for job "
@@ -772,6 +855,19 @@ public class FlowRunner extends EventHandler implements Runnable {
     return props;
   }
 
+  private Map<String, Props> getJobOverrides() {
+    if (this.jobOverrides == null) {
+      try {
+        this.jobOverrides = this.jobPropsCache
+            .getJobOverrides(this.flow.getProjectId(), this.flow.getVersion());
+      } catch (final ProjectManagerException e) {
+        this.logger.error("Error loading job override properties", e);
+        return Collections.emptyMap();
+      }
+    }
+    return this.jobOverrides;
+  }
+
   private Props loadPropsFromYamlFile(final String path) {
     File tempDir = null;
     Props props = null;
@@ -819,7 +915,11 @@ public class FlowRunner extends EventHandler implements Runnable {
     final JobRunner runner = createJobRunner(node);
     this.logger.info("Submitting job '" + node.getNestedId() + "' to run.");
     try {
-      this.executorService.submit(runner);
+      if (this.jobThreadPool != null) {
+        this.jobThreadPool.submit(this.execId, this.numJobThreads, node.getType(), runner);
+      } else {
+        this.executorService.submit(runner);
+      }
       this.activeJobRunners.add(runner);
     } catch (final RejectedExecutionException e) {
       this.logger.error(e);
@@ -909,6 +1009,8 @@ public class FlowRunner extends EventHandler implements Runnable {
 
     jobRunner.setDelayStart(node.getDelayedExecution());
     jobRunner.setLogSettings(this.logger, this.jobLogFileSize, this.jobLogNumFiles);
+    jobRunner.setLogUploader(this.logUploader);
+    jobRunner.setPreparationTimes(this.jobPreparationTimes);
     jobRunner.addListener(this.listener);
 
     if (JobCallbackManager.isInitialized()) {
@@ -952,9 +1054,8 @@ public class FlowRunner extends EventHandler implements Runnable {
       } else {
         this.logger.info("Cannot pause finished flow. Called by user " + user);
       }
+      wakeUp();
     }
-
-    interrupt();
   }
 
   public void resume(final String user) {
@@ -974,9 +1075,8 @@ public class FlowRunner extends EventHandler implements Runnable {
 
         updateFlow();
       }
+      wakeUp();
     }
-
-    interrupt();
   }
 
   public void kill(final String user) {
@@ -1007,15 +1107,15 @@ public class FlowRunner extends EventHandler implements Runnable {
         runner.kill();
       }
       updateFlow();
+      wakeUp();
     }
-    interrupt();
   }
 
   public void retryFailures(final String user) {
     synchronized (this.mainSyncObj) {
       this.logger.info("Retrying failures invoked by " + user);
       this.retryFailedJobs = true;
-      interrupt();
+      wakeUp();
     }
   }
 
@@ -1119,8 +1219,13 @@ public class FlowRunner extends EventHandler implements Runnable {
         + oldFlowState + " to " + flow.getStatus());
   }
 
-  private void interrupt() {
-    this.flowRunnerThread.interrupt();
+  /**
+   * Wakes up the flow runner thread to act on a state change. Must hold the main sync object.
+   * Notifying rather than interrupting the thread keeps the interrupt from hitting the file
+   * operations of the thread.
+   */
+  private void wakeUp() {
+    this.mainSyncObj.notifyAll();
   }
 
   public boolean isKilled() {
@@ -1184,6 +1289,9 @@ public class FlowRunner extends EventHandler implements Runnable {
   }
 
   public boolean isThreadPoolShutdown() {
+    if (this.executorService == null) {
+      return this.flowFinished;
+    }
     return this.executorService.isShutdown();
   }
 
@@ -1288,7 +1396,7 @@ public class FlowRunner extends EventHandler implements Runnable {
           FlowRunner.this.finishedNodes.add(node);
           FlowRunner.this.activeJobRunners.remove(jobRunner);
           node.getParentFlow().setUpdateTime(System.currentTimeMillis());
-          interrupt();
+          wakeUp();
           fireEventListeners(event);
         }
       } else if (event.getType() == EventType.JOB_STARTED) {
@@ -46,10 +46,15 @@ import azkaban.utils.Pair;
 import azkaban.utils.Props;
 import azkaban.utils.ThreadPoolExecutingListener;
 import azkaban.utils.TrackingThreadPool;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.google.common.annotations.VisibleForTesting;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.lang.Thread.State;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -59,6 +64,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
@@ -97,12 +104,33 @@ public class FlowRunnerManager implements EventListener,
   private static final String EXECUTOR_THREADPOOL_WORKQUEUE_SIZE = "executor.threadpool.workqueue.size";
   private static final String EXECUTOR_FLOW_THREADS = "executor.flow.threads";
   private static final String FLOW_NUM_JOB_THREADS = "flow.num.job.threads";
+  private static final String EXECUTOR_SLOT_RESERVATION_TIMEOUT_MS =
+      "executor.slot.reservation.timeout.ms";
+  private static final String PROJECT_CACHE_MAX_SIZE_MB = "azkaban.project.cache.max.size.mb";
+  private static final String PROJECT_PREPARE_MAX_THREADS = "azkaban.project.prepare.maxThreads";
+  private static final String FLOW_UPDATE_COALESCE_WINDOW_MS =
+      "executor.flow.update.coalesce.window.ms";
+  private static final String FLOW_UPDATE_NODE_ROWS_ENABLED =
+      "executor.flow.update.node.rows.enabled";
+  private static final String JOB_PROPS_CACHE_SIZE = "executor.job.props.cache.size";
+  private static final String EXECUTOR_MAX_RUNNING_JOBS = "executor.max.running.jobs";
+  private static final String EXECUTOR_MAX_RUNNING_JOBS_TYPE_PREFIX =
+      "executor.max.running.jobs.type.";
+  private static final String LOG_UPLOAD_THREADS = "executor.log.upload.threads";
+  private static final String LOG_UPLOAD_QUEUE_SIZE = "executor.log.upload.queue.size";
 
   // recently finished secs to clean up. 1 minute
   private static final int RECENTLY_FINISHED_TIME_TO_LIVE = 60 * 1000;
 
   private static final int DEFAULT_NUM_EXECUTING_FLOWS = 30;
   private static final int DEFAULT_FLOW_NUM_JOB_TREADS = 10;
+  private static final int DEFAULT_PROJECT_PREPARE_MAX_THREADS = 2;
+  private static final long DEFAULT_FLOW_UPDATE_COALESCE_WINDOW_MS = 1000;
+  private static final int DEFAULT_JOB_PROPS_CACHE_SIZE = 100000;
+  private static final int DEFAULT_LOG_UPLOAD_THREADS = 2;
+  private static final int DEFAULT_LOG_UPLOAD_QUEUE_SIZE = 100;
+  // a reservation the web server doesn't follow up on is given up after 30 seconds
+  private static final long DEFAULT_SLOT_RESERVATION_TIMEOUT_MS = 30 * 1000;
 
   // this map is used to store the flows that have been submitted to
   // the executor service. Once a flow has been submitted, it is either
@@ -111,13 +139,26 @@ public class FlowRunnerManager implements EventListener,
   private final Map<Integer, FlowRunner> runningFlows = new ConcurrentHashMap<>();
   private final Map<Integer, ExecutableFlow> recentlyFinishedFlows = new ConcurrentHashMap<>();
   private final Map<Pair<Integer, Integer>, ProjectVersion> installedProjects;
+  // execution id -> expiry time of the slots reserved for flows about to be submitted.
+  // Guarded by itself.
+  private final Map<Integer, Long> reservedSlots = new HashMap<>();
 
   private final TrackingThreadPool executorService;
+  // Installs newly uploaded project versions in the background.
+  private final ExecutorService projectPrepareService;
+  // Runs the jobs of all flows, if the number of running jobs is bounded for the executor.
+  private final JobThreadPool jobThreadPool;
+  // Uploads the job logs in the background, unless the jobs upload their own.
+  private final LogUploader logUploader;
+  // How long the jobs of all flows took to prepare, including resolving their properties
+  private final Histogram jobPreparationTimes = new Histogram(new ExponentiallyDecayingReservoir());
   private final CleanerThread cleanerThread;
   private final ExecutorLoader executorLoader;
   private final ProjectLoader projectLoader;
   private final JobTypeManager jobtypeManager;
   private final FlowPreparer flowPreparer;
+  private final FlowStatePersister flowStatePersister;
+  private final JobPropsCache jobPropsCache;
   private final TriggerManager triggerManager;
   private final AzkabanEventReporter azkabanEventReporter;
 
@@ -126,10 +167,14 @@ public class FlowRunnerManager implements EventListener,
   private final File projectDirectory;
 
   private final Object executionDirDeletionSync = new Object();
+  // Guards flowUpdateVersion; status streams wait on it for the next flow update.
+  private final Object flowUpdateSync = new Object();
+  private long flowUpdateVersion = 0;
 
   private int numThreads = DEFAULT_NUM_EXECUTING_FLOWS;
   private int threadPoolQueueSize = -1;
   private int numJobThreadPerFlow = DEFAULT_FLOW_NUM_JOB_TREADS;
+  private long slotReservationTimeoutMs = DEFAULT_SLOT_RESERVATION_TIMEOUT_MS;
 
   private Props globalProps;
 
@@ -179,15 +224,29 @@ public class FlowRunnerManager implements EventListener,
     this.numThreads = props.getInt(EXECUTOR_FLOW_THREADS, DEFAULT_NUM_EXECUTING_FLOWS);
     this.numJobThreadPerFlow = props.getInt(FLOW_NUM_JOB_THREADS, DEFAULT_FLOW_NUM_JOB_TREADS);
     this.executorService = createExecutorService(this.numThreads);
+    this.slotReservationTimeoutMs = props.getLong(EXECUTOR_SLOT_RESERVATION_TIMEOUT_MS,
+        DEFAULT_SLOT_RESERVATION_TIMEOUT_MS);
 
     // Create a flow preparer
     this.flowPreparer = new FlowPreparer(storageManager, this.executionDirectory,
         this.projectDirectory,
-        this.installedProjects);
+        this.installedProjects,
+        props.getLong(PROJECT_CACHE_MAX_SIZE_MB, 0) * 1024 * 1024);
+    this.projectPrepareService = Executors.newFixedThreadPool(
+        props.getInt(PROJECT_PREPARE_MAX_THREADS, DEFAULT_PROJECT_PREPARE_MAX_THREADS));
+    this.jobThreadPool = createJobThreadPool(props);
 
     this.executorLoader = executorLoader;
     this.projectLoader = projectLoader;
     this.triggerManager = triggerManager;
+    this.flowStatePersister = new FlowStatePersister(executorLoader,
+        props.getLong(FLOW_UPDATE_COALESCE_WINDOW_MS, DEFAULT_FLOW_UPDATE_COALESCE_WINDOW_MS),
+        props.getBoolean(FLOW_UPDATE_NODE_ROWS_ENABLED, false));
+    this.jobPropsCache = new JobPropsCache(projectLoader,
+        props.getInt(JOB_PROPS_CACHE_SIZE, DEFAULT_JOB_PROPS_CACHE_SIZE));
+    final int logUploadThreads = props.getInt(LOG_UPLOAD_THREADS, DEFAULT_LOG_UPLOAD_THREADS);
+    this.logUploader = logUploadThreads <= 0 ? null : new LogUploader(executorLoader,
+        logUploadThreads, props.getInt(LOG_UPLOAD_QUEUE_SIZE, DEFAULT_LOG_UPLOAD_QUEUE_SIZE));
 
     this.jobLogChunkSize = this.azkabanProps.getString("job.log.chunk.size", "5MB");
     this.jobLogNumFiles = this.azkabanProps.getInt("job.log.backup.index", 4);
@@ -209,6 +268,24 @@ public class FlowRunnerManager implements EventListener,
             getClass().getClassLoader());
   }
 
+  /**
+   * Creates the pool of the jobs of all flows, or returns null if each flow runs its jobs in its own
+   * pool.
+   */
+  @VisibleForTesting
+  static JobThreadPool createJobThreadPool(final Props props) {
+    final int maxRunningJobs = props.getInt(EXECUTOR_MAX_RUNNING_JOBS, 0);
+    if (maxRunningJobs <= 0) {
+      return null;
+    }
+    final Map<String, Integer> maxRunningJobsPerType = new HashMap<>();
+    for (final Map.Entry<String, String> entry : props
+        .getMapByPrefix(EXECUTOR_MAX_RUNNING_JOBS_TYPE_PREFIX).entrySet()) {
+      maxRunningJobsPerType.put(entry.getKey(), Integer.valueOf(entry.getValue().trim()));
+    }
+    return new JobThreadPool(maxRunningJobs, maxRunningJobsPerType);
+  }
+
   /**
    * Setting the gid bit on the execution directory forces all files/directories created within the
    * directory to be a part of the group associated with the azkaban process. Then, when users
@@ -311,13 +388,68 @@ public class FlowRunnerManager implements EventListener,
     }
   }
 
+  /**
+   * Reserves a slot for a flow the web server is about to submit, so that the submission can't be
+   * rejected for lack of capacity. The reservation is used up by {@link #submitFlow(int)} and
+   * expires if the submission doesn't follow in time. Reserving again refreshes the expiry.
+   *
+   * @return false, if all the slots are taken
+   */
+  public boolean reserveSlot(final int execId) {
+    synchronized (this.reservedSlots) {
+      final long currentTime = System.currentTimeMillis();
+      this.reservedSlots.values().removeIf(expiry -> expiry < currentTime);
+      if (!this.reservedSlots.containsKey(execId) && getNumAvailableSlots() <= 0
+          && this.threadPoolQueueSize >= 0) {
+        return false;
+      }
+      this.reservedSlots.put(execId, currentTime + this.slotReservationTimeoutMs);
+      return true;
+    }
+  }
+
+  /**
+   * Number of flows that can still be submitted. With an unbounded queue this is the number of
+   * idle flow threads, and it can go below 0.
+   */
+  public int getNumAvailableSlots() {
+    synchronized (this.reservedSlots) {
+      return this.numThreads + Math.max(this.threadPoolQueueSize, 0)
+          - this.submittedFlows.size() - this.reservedSlots.size();
+    }
+  }
+
+  public int getNumReservedSlots() {
+    synchronized (this.reservedSlots) {
+      return this.reservedSlots.size();
+    }
+  }
+
   public void submitFlow(final int execId) throws ExecutorManagerException {
-    // Load file and submit
     if (this.runningFlows.containsKey(execId)) {
       throw new ExecutorManagerException("Execution " + execId
           + " is already running.");
     }
 
+    // A flow submitted without a reservation takes one now, so that a full executor turns it
+    // down before preparing the project. The slot is held until the flow is in the thread pool.
+    if (!reserveSlot(execId)) {
+      throw new ExecutorManagerException(
+          "Azkaban server can't execute any more flows. "
+              + "The number of running flows has reached the system configured limit."
+              + "Please notify Azkaban administrators");
+    }
+    try {
+      setupAndSubmitFlow(execId);
+    } finally {
+      synchronized (this.reservedSlots) {
+        this.reservedSlots.remove(execId);
+      }
+    }
+  }
+
+  private void setupAndSubmitFlow(final int execId) throws ExecutorManagerException {
+    // Load file and submit
     ExecutableFlow flow = null;
     flow = this.executorLoader.fetchExecutableFlow(execId);
     if (flow == null) {
@@ -327,7 +459,16 @@ public class FlowRunnerManager implements EventListener,
 
     // Sets up the project files and execution directory.
     this.flowPreparer.setup(flow);
+    try {
+      submitPreparedFlow(flow);
+    } catch (final ExecutorManagerException | RuntimeException e) {
+      this.flowPreparer.release(flow);
+      throw e;
+    }
+  }
 
+  private void submitPreparedFlow(final ExecutableFlow flow) throws ExecutorManagerException {
+    final int execId = flow.getExecutionId();
     // Setup flow runner
     FlowWatcher watcher = null;
     final ExecutionOptions options = flow.getExecutionOptions();
@@ -367,6 +508,11 @@ public class FlowRunnerManager implements EventListener,
         new FlowRunner(flow, this.executorLoader, this.projectLoader, this.jobtypeManager,
             this.azkabanProps, this.azkabanEventReporter);
     runner.setFlowWatcher(watcher)
+        .setStatePersister(this.flowStatePersister)
+        .setJobThreadPool(this.jobThreadPool)
+        .setJobPropsCache(this.jobPropsCache)
+        .setLogUploader(this.logUploader)
+        .setJobPreparationTimes(this.jobPreparationTimes)
         .setJobLogSettings(this.jobLogChunkSize, this.jobLogNumFiles)
         .setValidateProxyUser(this.validateProxyUser)
         .setNumJobThreads(numJobThreads).addListener(this);
@@ -393,6 +539,7 @@ public class FlowRunnerManager implements EventListener,
       // update the last submitted time.
       this.lastFlowSubmittedDate = System.currentTimeMillis();
     } catch (final RejectedExecutionException re) {
+      this.runningFlows.remove(execId);
       throw new ExecutorManagerException(
           "Azkaban server can't execute any more flows. "
               + "The number of running flows has reached the system configured limit."
@@ -490,8 +637,59 @@ public class FlowRunnerManager implements EventListener,
     return runner.getExecutableFlow();
   }
 
+  /**
+   * Returns the flows this executor can report on: the running ones and the recently finished
+   * ones that the web server may not have picked up yet.
+   */
+  public List<ExecutableFlow> getReportableFlows() {
+    final List<ExecutableFlow> flows = new ArrayList<>(
+        this.runningFlows.size() + this.recentlyFinishedFlows.size());
+    for (final FlowRunner runner : this.runningFlows.values()) {
+      flows.add(runner.getExecutableFlow());
+    }
+    flows.addAll(this.recentlyFinishedFlows.values());
+    return flows;
+  }
+
+  public long getFlowUpdateVersion() {
+    synchronized (this.flowUpdateSync) {
+      return this.flowUpdateVersion;
+    }
+  }
+
+  /**
+   * Blocks until some flow on this executor has been updated after lastSeenVersion, or until the
+   * timeout elapses.
+   *
+   * @return the current update version
+   */
+  public long awaitFlowUpdate(final long lastSeenVersion, final long timeoutMs)
+      throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeoutMs;
+    synchronized (this.flowUpdateSync) {
+      long remaining = timeoutMs;
+      while (this.flowUpdateVersion == lastSeenVersion && remaining > 0) {
+        this.flowUpdateSync.wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+      return this.flowUpdateVersion;
+    }
+  }
+
+  private void notifyFlowUpdated() {
+    synchronized (this.flowUpdateSync) {
+      this.flowUpdateVersion++;
+      this.flowUpdateSync.notifyAll();
+    }
+  }
+
   @Override
   public void handleEvent(final Event event) {
+    if (event.getType() == EventType.FLOW_STATUS_CHANGED) {
+      notifyFlowUpdated();
+      return;
+    }
+
     if (event.getType() == EventType.FLOW_FINISHED || event.getType() == EventType.FLOW_STARTED) {
       final FlowRunner flowRunner = (FlowRunner) event.getRunner();
       final ExecutableFlow flow = flowRunner.getExecutableFlow();
@@ -501,11 +699,13 @@ public class FlowRunnerManager implements EventListener,
         logger.info("Flow " + flow.getExecutionId()
             + " is finished. Adding it to recently finished flows list.");
         this.runningFlows.remove(flow.getExecutionId());
+        this.flowPreparer.release(flow);
       } else if (event.getType() == EventType.FLOW_STARTED) {
         // add flow level SLA checker
         this.triggerManager
             .addTrigger(flow.getExecutionId(), SlaOption.getFlowLevelSLAOptions(flow));
       }
+      notifyFlowUpdated();
     }
   }
 
@@ -574,6 +774,56 @@ public class FlowRunnerManager implements EventListener,
         "Error reading file. Log directory doesn't exist.");
   }
 
+  /**
+   * Opens the flow log of a running execution for reading. The caller must close the channel.
+   */
+  public FileChannel openFlowLog(final int execId) throws ExecutorManagerException {
+    return openLog(execId, null, 0);
+  }
+
+  /**
+   * Opens the log of a job attempt of a running execution for reading. The caller must close the
+   * channel.
+   */
+  public FileChannel openJobLog(final int execId, final String jobId, final int attempt)
+      throws ExecutorManagerException {
+    return openLog(execId, jobId, attempt);
+  }
+
+  private FileChannel openLog(final int execId, final String jobId, final int attempt)
+      throws ExecutorManagerException {
+    final FlowRunner runner = this.runningFlows.get(execId);
+    if (runner == null) {
+      throw new ExecutorManagerException("Running flow " + execId
+          + " not found.");
+    }
+
+    final File dir = runner.getExecutionDir();
+    if (dir == null || !dir.exists()) {
+      throw new ExecutorManagerException(
+          "Error reading file. Log directory doesn't exist.");
+    }
+    // Only opening the file needs the lock. The open file can still be read once the execution
+    // dir is deleted, so a slow reader doesn't hold up the cleanup.
+    synchronized (this.executionDirDeletionSync) {
+      if (!dir.exists()) {
+        throw new ExecutorManagerException(
+            "Execution dir file doesn't exist. Probably has beend deleted");
+      }
+      final File logFile =
+          jobId == null ? runner.getFlowLogFile() : runner.getJobLogFile(jobId, attempt);
+      if (logFile == null || !logFile.exists()) {
+        throw new ExecutorManagerException(
+            (jobId == null ? "Flow" : "Job") + " log file doesn't exist.");
+      }
+      try {
+        return FileChannel.open(logFile.toPath(), StandardOpenOption.READ);
+      } catch (final IOException e) {
+        throw new ExecutorManagerException(e);
+      }
+    }
+  }
+
   public List<Object> readJobAttachments(final int execId, final String jobId, final int attempt)
       throws ExecutorManagerException {
     final FlowRunner runner = this.runningFlows.get(execId);
@@ -659,6 +909,41 @@ public class FlowRunnerManager implements EventListener,
     return this.executorService.isShutdown();
   }
 
+  /**
+   * Starts installing a project version in the background, e.g. right after it was uploaded, so
+   * that its first execution doesn't have to download it.
+   */
+  public void prepareProject(final int projectId, final int version) {
+    logger.info(String.format("Preparing project %d.%d in the background", projectId, version));
+    this.projectPrepareService.submit(() -> this.flowPreparer.prepareProject(projectId, version));
+  }
+
+  public FlowStatePersister getFlowStatePersister() {
+    return this.flowStatePersister;
+  }
+
+  public Histogram getFlowPreparationTimes() {
+    return this.flowPreparer.getPreparationTimes();
+  }
+
+  public Histogram getJobPreparationTimes() {
+    return this.jobPreparationTimes;
+  }
+
+  /**
+   * @return the pool of the jobs of all flows, or null if each flow runs its jobs in its own pool
+   */
+  public JobThreadPool getJobThreadPool() {
+    return this.jobThreadPool;
+  }
+
+  /**
+   * @return the uploader of the job logs, or null if each job uploads its own log
+   */
+  public LogUploader getLogUploader() {
+    return this.logUploader;
+  }
+
   public int getNumQueuedFlows() {
     return this.executorService.getQueue().size();
   }
@@ -736,6 +1021,7 @@ public class FlowRunnerManager implements EventListener,
    */
   public void shutdown() {
     logger.warn("Shutting down FlowRunnerManager...");
+    this.projectPrepareService.shutdownNow();
     this.executorService.shutdown();
     boolean result = false;
     while (!result) {
@@ -746,6 +1032,13 @@ public class FlowRunnerManager implements EventListener,
         logger.error(e);
       }
     }
+    if (this.jobThreadPool != null) {
+      this.jobThreadPool.shutdown();
+    }
+    if (this.logUploader != null) {
+      this.logUploader.shutdown();
+    }
+    this.flowStatePersister.shutdown();
     logger.warn("Shutdown FlowRunnerManager complete.");
   }
 
@@ -755,7 +1048,12 @@ public class FlowRunnerManager implements EventListener,
    */
   public void shutdownNow() {
     logger.warn("Shutting down FlowRunnerManager now...");
+    this.projectPrepareService.shutdownNow();
     this.executorService.shutdownNow();
+    if (this.jobThreadPool != null) {
+      this.jobThreadPool.shutdownNow();
+    }
+    this.flowStatePersister.shutdown();
     this.triggerManager.shutdown();
   }
 
@@ -918,18 +1216,6 @@ public class FlowRunnerManager implements EventListener,
     }
 
     private void cleanOlderProjects() {
-      final Map<Integer, ArrayList<ProjectVersion>> projectVersions =
-          new HashMap<>();
-      for (final ProjectVersion version : FlowRunnerManager.this.installedProjects.values()) {
-        ArrayList<ProjectVersion> versionList =
-            projectVersions.get(version.getProjectId());
-        if (versionList == null) {
-          versionList = new ArrayList<>();
-          projectVersions.put(version.getProjectId(), versionList);
-        }
-        versionList.add(version);
-      }
-
       final HashSet<Pair<Integer, Integer>> activeProjectVersions =
           new HashSet<>();
       for (final FlowRunner runner : FlowRunnerManager.this.runningFlows.values()) {
@@ -937,36 +1223,7 @@ public class FlowRunnerManager implements EventListener,
         activeProjectVersions.add(new Pair<>(flow
             .getProjectId(), flow.getVersion()));
       }
-
-      for (final Map.Entry<Integer, ArrayList<ProjectVersion>> entry : projectVersions
-          .entrySet()) {
-        // Integer projectId = entry.getKey();
-        final ArrayList<ProjectVersion> installedVersions = entry.getValue();
-
-        // Keep one version of the project around.
-        if (installedVersions.size() == 1) {
-          continue;
-        }
-
-        Collections.sort(installedVersions);
-        for (int i = 0; i < installedVersions.size() - 1; ++i) {
-          final ProjectVersion version = installedVersions.get(i);
-          final Pair<Integer, Integer> versionKey =
-              new Pair<>(version.getProjectId(),
-                  version.getVersion());
-          if (!activeProjectVersions.contains(versionKey)) {
-            try {
-              logger.info("Removing old unused installed project "
-                  + version.getProjectId() + ":" + version.getVersion());
-              deleteDirectory(version);
-              FlowRunnerManager.this.installedProjects.remove(new Pair<>(version
-                  .getProjectId(), version.getVersion()));
-            } catch (final IOException e) {
-              logger.error(e);
-            }
-          }
-        }
-      }
+      FlowRunnerManager.this.flowPreparer.removeOlderProjectVersions(activeProjectVersions);
     }
   }
 
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import azkaban.executor.ExecutableFlow;
+import azkaban.executor.ExecutorLoader;
+import azkaban.executor.ExecutorManagerException;
+import azkaban.executor.Status;
+import azkaban.utils.Pair;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.google.common.util.concurrent.Striped;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import org.apache.log4j.Logger;
+
+/**
+ * Writes the state of running flows to the DB behind the flow runners.
+ *
+ * Every write stores the whole flow, so writing on each job transition makes big flows write many
+ * times their size per minute. The updates of an execution are coalesced instead: the first update
+ * schedules a write at the end of the window and the updates that follow within the window are
+ * covered by that write. A flow in a finished state is written right away, so the final state is
+ * never delayed. A window of 0 writes every update, like before.
+ *
+ * The web server gets the state from the executor itself while the flow runs, so the DB lagging
+ * by up to a window doesn't show in the UI.
+ *
+ * With node rows enabled, the flow data is written only when the flow starts and when it
+ * finishes. The writes in between only update the status and times of the flow; the state of the
+ * jobs is in their execution_jobs rows, which the job runners keep up to date, and reads of
+ * unfinished flows take it from there. Jobs reset for a retry aren't in their rows yet, so the
+ * flow data is written once more after a reset.
+ *
+ * A write copies the flow while holding the lock its runner changes the flow under, so a write
+ * from the scheduler thread never sees the flow half way through a change. The copy is stored
+ * after the lock is released, so the runner and its jobs aren't held up by the DB.
+ */
+public class FlowStatePersister {
+
+  private static final Logger logger = Logger.getLogger(FlowStatePersister.class);
+  private static final int NUM_WRITE_LOCKS = 64;
+
+  private final ExecutorLoader executorLoader;
+  private final long coalesceWindowMs;
+  private final boolean nodeRowsEnabled;
+  private final ScheduledExecutorService scheduler;
+
+  // Flows with a scheduled write and the locks they are changed under, by execution id.
+  private final Map<Integer, Pair<ExecutableFlow, Object>> pendingFlows =
+      new ConcurrentHashMap<>();
+  // Serialize the writes of a flow, so that of two racing writes the last one stored also has the
+  // latest state.
+  private final Striped<Lock> writeLocks = Striped.lock(NUM_WRITE_LOCKS);
+  // Write statistics of the running flows, by execution id.
+  private final Map<Integer, WriteStats> flowStats = new ConcurrentHashMap<>();
+
+  private final AtomicLong numUpdates = new AtomicLong();
+  private final AtomicLong numRowsWritten = new AtomicLong();
+  private final AtomicLong numBytesWritten = new AtomicLong();
+  private final Histogram rowsPerFlow = new Histogram(new ExponentiallyDecayingReservoir());
+  private final Histogram bytesPerFlow = new Histogram(new ExponentiallyDecayingReservoir());
+
+  public FlowStatePersister(final ExecutorLoader executorLoader, final long coalesceWindowMs) {
+    this(executorLoader, coalesceWindowMs, false);
+  }
+
+  public FlowStatePersister(final ExecutorLoader executorLoader, final long coalesceWindowMs,
+      final boolean nodeRowsEnabled) {
+    this.executorLoader = executorLoader;
+    this.coalesceWindowMs = coalesceWindowMs;
+    this.nodeRowsEnabled = nodeRowsEnabled;
+    if (coalesceWindowMs > 0) {
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "azk-flow-state-persister");
+        thread.setDaemon(true);
+        return thread;
+      });
+    } else {
+      this.scheduler = null;
+    }
+  }
+
+  /**
+   * Records that the state of a flow that is changed under its own lock changed.
+   */
+  public void persist(final ExecutableFlow flow) {
+    persist(flow, flow);
+  }
+
+  /**
+   * Records that the state of the flow changed. The flow is written now if it finished or if
+   * updates aren't coalesced, and within the coalesce window otherwise.
+   *
+   * @param stateLock the lock the flow is changed under, held while the flow is copied
+   */
+  public void persist(final ExecutableFlow flow, final Object stateLock) {
+    final int execId = flow.getExecutionId();
+    this.numUpdates.incrementAndGet();
+    this.flowStats.computeIfAbsent(execId, k -> new WriteStats()).numUpdates.incrementAndGet();
+
+    if (this.scheduler == null || Status.isStatusFinished(flow.getStatus())) {
+      this.pendingFlows.remove(execId);
+      write(flow, stateLock);
+      if (Status.isStatusFinished(flow.getStatus())) {
+        finish(execId);
+      }
+      return;
+    }
+
+    if (this.pendingFlows.putIfAbsent(execId, new Pair<>(flow, stateLock)) == null) {
+      try {
+        this.scheduler.schedule(() -> writePending(execId), this.coalesceWindowMs,
+            TimeUnit.MILLISECONDS);
+      } catch (final RuntimeException e) {
+        // shut down
+        this.pendingFlows.remove(execId);
+        write(flow, stateLock);
+      }
+    }
+  }
+
+  /**
+   * Records that jobs of the flow were reset, so that the next write stores the flow data even if
+   * the job rows hold the state of the jobs. Call it before persisting the reset flow.
+   */
+  public void resetJobs(final int execId) {
+    this.flowStats.computeIfAbsent(execId, k -> new WriteStats()).jobsReset.set(true);
+  }
+
+  /**
+   * Writes the flows with pending updates and stops the scheduler.
+   */
+  public void shutdown() {
+    if (this.scheduler != null) {
+      this.scheduler.shutdownNow();
+    }
+    for (final Integer execId : this.pendingFlows.keySet()) {
+      writePending(execId);
+    }
+  }
+
+  public long getNumUpdates() {
+    return this.numUpdates.get();
+  }
+
+  public long getNumRowsWritten() {
+    return this.numRowsWritten.get();
+  }
+
+  public long getNumBytesWritten() {
+    return this.numBytesWritten.get();
+  }
+
+  /**
+   * @return the distribution of the number of writes of a flow, recorded when it finishes
+   */
+  public Histogram getRowsPerFlow() {
+    return this.rowsPerFlow;
+  }
+
+  /**
+   * @return the distribution of the bytes written for a flow, recorded when it finishes
+   */
+  public Histogram getBytesPerFlow() {
+    return this.bytesPerFlow;
+  }
+
+  private void writePending(final int execId) {
+    final Pair<ExecutableFlow, Object> pending = this.pendingFlows.remove(execId);
+    if (pending != null) {
+      write(pending.getFirst(), pending.getSecond());
+    }
+  }
+
+  private void write(final ExecutableFlow flow, final Object stateLock) {
+    final Lock writeLock = this.writeLocks.get(flow.getExecutionId());
+    writeLock.lock();
+    try {
+      final WriteStats stats = this.flowStats.get(flow.getExecutionId());
+      final boolean statusOnly;
+      final ExecutableFlow copy;
+      synchronized (stateLock) {
+        statusOnly = this.nodeRowsEnabled && stats != null && stats.numRows.get() > 0
+            && !Status.isStatusFinished(flow.getStatus()) && !stats.jobsReset.getAndSet(false);
+        copy = statusOnly ? copyStatus(flow)
+            : ExecutableFlow.createExecutableFlowFromObject(flow.toObject());
+      }
+
+      final long numBytes;
+      if (statusOnly) {
+        this.executorLoader.updateExecutableFlowStatus(copy);
+        numBytes = 0;
+      } else {
+        numBytes = this.executorLoader.updateExecutableFlow(copy);
+      }
+      this.numRowsWritten.incrementAndGet();
+      this.numBytesWritten.addAndGet(numBytes);
+      if (stats != null) {
+        stats.numRows.incrementAndGet();
+        stats.numBytes.addAndGet(numBytes);
+      }
+    } catch (final ExecutorManagerException e) {
+      logger.error("Error updating flow " + flow.getExecutionId(), e);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private static ExecutableFlow copyStatus(final ExecutableFlow flow) {
+    final ExecutableFlow copy = new ExecutableFlow();
+    copy.setExecutionId(flow.getExecutionId());
+    copy.setStatus(flow.getStatus());
+    copy.setUpdateTime(flow.getUpdateTime());
+    copy.setStartTime(flow.getStartTime());
+    copy.setEndTime(flow.getEndTime());
+    return copy;
+  }
+
+  private void finish(final int execId) {
+    final WriteStats stats = this.flowStats.remove(execId);
+    if (stats == null) {
+      return;
+    }
+    this.rowsPerFlow.update(stats.numRows.get());
+    this.bytesPerFlow.update(stats.numBytes.get());
+    logger.info(String.format("Flow state of exec %d: %d updates, %d writes, %d bytes", execId,
+        stats.numUpdates.get(), stats.numRows.get(), stats.numBytes.get()));
+  }
+
+  private static class WriteStats {
+
+    private final AtomicLong numUpdates = new AtomicLong();
+    private final AtomicLong numRows = new AtomicLong();
+    private final AtomicLong numBytes = new AtomicLong();
+    private final AtomicBoolean jobsReset = new AtomicBoolean();
+  }
+}
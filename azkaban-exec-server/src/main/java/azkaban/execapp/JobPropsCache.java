@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import azkaban.project.ProjectLoader;
+import azkaban.project.ProjectManagerException;
+import azkaban.utils.Pair;
+import azkaban.utils.Props;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Caches the job props of project versions for the flow runners of an executor.
+ *
+ * The job and properties files of a project version never change, so they are parsed once per
+ * version instead of once per execution. The job overrides (.jor) can be changed on the web server
+ * at any time. They are fetched together per project version, without the other properties, and
+ * fetched again once their last modified time in the DB changed, which costs one small query per
+ * execution instead of one query per job.
+ *
+ * Callers get copies of the cached props they are free to change.
+ */
+public class JobPropsCache {
+
+  private static final String JOB_OVERRIDE_SUFFIX = ".jor";
+
+  private final ProjectLoader projectLoader;
+  // Parsed props by project id, version and source
+  private final Cache<String, Props> props;
+  // Job overrides by project id and version
+  private final Cache<Pair<Integer, Integer>, JobOverrides> jobOverrides;
+
+  public JobPropsCache(final ProjectLoader projectLoader, final int maxNumProps) {
+    this.projectLoader = projectLoader;
+    this.props = CacheBuilder.newBuilder().maximumSize(maxNumProps).build();
+    this.jobOverrides = CacheBuilder.newBuilder().maximumSize(Math.max(maxNumProps / 100, 10))
+        .build();
+  }
+
+  /**
+   * @return a copy of the given cached props the caller is free to change, or null
+   */
+  public static Props copyOf(final Props props) {
+    if (props == null) {
+      return null;
+    }
+    final Props copy = new Props(null, props);
+    copy.setSource(props.getSource());
+    return copy;
+  }
+
+  /**
+   * Returns a copy of the props of the project version with the given source, loading them the
+   * first time.
+   *
+   * @param loader loads the props, may return null if there are none
+   */
+  public Props getProps(final int projectId, final int version, final String source,
+      final Callable<Props> loader) throws IOException {
+    final String key = projectId + "." + version + "/" + source;
+    try {
+      return copyOf(this.props.get(key, loader));
+    } catch (final InvalidCacheLoadException e) {
+      // the loader found nothing, which isn't cached
+      return null;
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Error loading " + source, e.getCause());
+    }
+  }
+
+  /**
+   * Returns the current job overrides of the project version, by the name of the override (the job
+   * id with a .jor suffix). The returned props must not be changed; use {@link #copyOf(Props)}.
+   */
+  public Map<String, Props> getJobOverrides(final int projectId, final int version)
+      throws ProjectManagerException {
+    final Pair<Integer, Integer> key = new Pair<>(projectId, version);
+    final long modifiedTime = this.projectLoader
+        .fetchProjectPropertiesModifiedTime(projectId, version, JOB_OVERRIDE_SUFFIX);
+    final JobOverrides cached = this.jobOverrides.getIfPresent(key);
+    if (cached != null && cached.modifiedTime == modifiedTime) {
+      return cached.props;
+    }
+
+    final Map<String, Props> overrides = modifiedTime > 0
+        ? ImmutableMap.copyOf(
+        this.projectLoader.fetchProjectProperties(projectId, version, JOB_OVERRIDE_SUFFIX))
+        : ImmutableMap.of();
+    final JobOverrides loaded = new JobOverrides(modifiedTime, overrides);
+    this.jobOverrides.put(key, loaded);
+    return loaded.props;
+  }
+
+  private static class JobOverrides {
+
+    private final long modifiedTime;
+    private final Map<String, Props> props;
+
+    private JobOverrides(final long modifiedTime, final Map<String, Props> props) {
+      this.modifiedTime = modifiedTime;
+      this.props = props;
+    }
+  }
+}
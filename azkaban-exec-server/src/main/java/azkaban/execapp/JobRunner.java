@@ -39,6 +39,7 @@ import azkaban.utils.PatternLayoutEscaped;
 import azkaban.utils.Props;
 import azkaban.utils.StringUtils;
 import azkaban.utils.UndefinedPropertyException;
+import com.codahale.metrics.Histogram;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -89,6 +90,10 @@ public class JobRunner extends EventHandler implements Runnable {
 
   private String jobLogChunkSize;
   private int jobLogBackupIndex;
+  // Uploads the log in the background, if set
+  private LogUploader logUploader = null;
+  // Records how long preparing the job took, if set
+  private Histogram preparationTimes = null;
 
   private long delayStartMs = 0;
   private volatile boolean killed = false;
@@ -166,6 +171,14 @@ public class JobRunner extends EventHandler implements Runnable {
     this.jobLogBackupIndex = numLogBackup;
   }
 
+  public void setLogUploader(final LogUploader logUploader) {
+    this.logUploader = logUploader;
+  }
+
+  public void setPreparationTimes(final Histogram preparationTimes) {
+    this.preparationTimes = preparationTimes;
+  }
+
   public Props getProps() {
     return this.props;
   }
@@ -515,6 +528,11 @@ public class JobRunner extends EventHandler implements Runnable {
       });
       Arrays.sort(files, Collections.reverseOrder());
 
+      if (this.logUploader != null) {
+        this.logUploader.upload(this.executionId, this.node.getNestedId(), attemptNo, files,
+            this.flowLogger);
+        return;
+      }
       this.loader.uploadLogFile(this.executionId, this.node.getNestedId(), attemptNo,
           files);
     } catch (final ExecutorManagerException e) {
@@ -582,7 +600,11 @@ public class JobRunner extends EventHandler implements Runnable {
     if (!errorFound && !isKilled()) {
       fireEvent(Event.create(this, EventType.JOB_STARTED, new EventData(this.node)));
 
+      final long prepareStartTime = System.currentTimeMillis();
       final Status prepareStatus = prepareJob();
+      if (this.preparationTimes != null) {
+        this.preparationTimes.update(System.currentTimeMillis() - prepareStartTime);
+      }
       if (prepareStatus != null) {
         // Writes status to the db
         writeStatus();
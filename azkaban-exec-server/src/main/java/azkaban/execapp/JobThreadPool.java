@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the jobs of all the flows on the executor, so that the number of jobs running at once is
+ * bounded for the whole executor instead of for each flow.
+ *
+ * A job waits in the queue of its flow until a thread is free, its flow runs fewer jobs than the
+ * limit of the flow and its job type runs fewer jobs than the limit of the type, if there is one.
+ * The flows take turns: a job of the flow that started a job least recently goes first, so a flow
+ * with many ready jobs doesn't hold up the others.
+ */
+public class JobThreadPool {
+
+  private static final Logger logger = Logger.getLogger(JobThreadPool.class);
+
+  private final int maxRunningJobs;
+  private final Map<String, Integer> maxRunningJobsPerType;
+  private final ExecutorService threadPool;
+  private final Histogram queueTimes = new Histogram(new ExponentiallyDecayingReservoir());
+
+  // The jobs of the flows by execution id, in the order the flows get their turn. Guarded by this,
+  // like the counts below.
+  private final Map<Integer, FlowJobs> flowJobs = new LinkedHashMap<>();
+  private final Map<String, Integer> numRunningJobsPerType = new HashMap<>();
+  private int numRunningJobs = 0;
+  private int numQueuedJobs = 0;
+  private boolean isShutdown = false;
+
+  /**
+   * @param maxRunningJobs the max number of jobs running at once
+   * @param maxRunningJobsPerType the max number of jobs of a job type running at once. Job types
+   * missing from the map are only bound by maxRunningJobs.
+   */
+  public JobThreadPool(final int maxRunningJobs, final Map<String, Integer> maxRunningJobsPerType) {
+    this.maxRunningJobs = maxRunningJobs;
+    this.maxRunningJobsPerType = maxRunningJobsPerType;
+    this.threadPool = Executors.newFixedThreadPool(maxRunningJobs);
+    logger.info("Running at most " + maxRunningJobs + " jobs, per job type "
+        + maxRunningJobsPerType);
+  }
+
+  /**
+   * Queues a job to run once the limits allow.
+   *
+   * @param execId the execution the job is part of
+   * @param maxFlowRunningJobs the max number of jobs of the execution running at once
+   * @param jobType the type of the job
+   * @throws RejectedExecutionException if the pool is shut down
+   */
+  public synchronized void submit(final int execId, final int maxFlowRunningJobs,
+      final String jobType, final Runnable job) {
+    if (this.isShutdown) {
+      throw new RejectedExecutionException("Job thread pool is shut down");
+    }
+    FlowJobs flow = this.flowJobs.get(execId);
+    if (flow == null) {
+      flow = new FlowJobs(execId, maxFlowRunningJobs);
+      this.flowJobs.put(execId, flow);
+    }
+    flow.queue.add(new QueuedJob(flow, jobType, job));
+    this.numQueuedJobs++;
+    startJobs();
+  }
+
+  /**
+   * Stops taking jobs. The queued jobs still run.
+   */
+  public synchronized void shutdown() {
+    this.isShutdown = true;
+    if (this.numQueuedJobs == 0) {
+      this.threadPool.shutdown();
+    }
+  }
+
+  /**
+   * Stops taking jobs, drops the queued ones and interrupts the running ones.
+   */
+  public synchronized void shutdownNow() {
+    this.isShutdown = true;
+    this.flowJobs.clear();
+    this.numQueuedJobs = 0;
+    this.threadPool.shutdownNow();
+  }
+
+  public synchronized int getNumRunningJobs() {
+    return this.numRunningJobs;
+  }
+
+  public synchronized int getNumQueuedJobs() {
+    return this.numQueuedJobs;
+  }
+
+  /**
+   * @return the distribution of the time jobs spent in the queue, in ms
+   */
+  public Histogram getQueueTimes() {
+    return this.queueTimes;
+  }
+
+  private void startJobs() {
+    while (this.numRunningJobs < this.maxRunningJobs && this.numQueuedJobs > 0) {
+      final QueuedJob job = pollNextJob();
+      if (job == null) {
+        // the queued jobs all wait for their flow or job type
+        return;
+      }
+      start(job);
+    }
+  }
+
+  private QueuedJob pollNextJob() {
+    final Iterator<FlowJobs> flowIter = this.flowJobs.values().iterator();
+    while (flowIter.hasNext()) {
+      final FlowJobs flow = flowIter.next();
+      if (flow.numRunningJobs >= flow.maxRunningJobs) {
+        continue;
+      }
+      final Iterator<QueuedJob> jobIter = flow.queue.iterator();
+      while (jobIter.hasNext()) {
+        final QueuedJob job = jobIter.next();
+        final Integer maxTypeJobs = this.maxRunningJobsPerType.get(job.jobType);
+        if (maxTypeJobs == null
+            || this.numRunningJobsPerType.getOrDefault(job.jobType, 0) < maxTypeJobs) {
+          jobIter.remove();
+          // the flow goes to the back of the line
+          flowIter.remove();
+          this.flowJobs.put(flow.execId, flow);
+          return job;
+        }
+      }
+    }
+    return null;
+  }
+
+  private void start(final QueuedJob job) {
+    this.numQueuedJobs--;
+    this.numRunningJobs++;
+    job.flow.numRunningJobs++;
+    this.numRunningJobsPerType.merge(job.jobType, 1, Integer::sum);
+    this.queueTimes.update(System.currentTimeMillis() - job.queuedTime);
+
+    this.threadPool.execute(() -> {
+      try {
+        job.runnable.run();
+      } catch (final RuntimeException e) {
+        logger.error("Error running job of exec " + job.flow.execId, e);
+      } finally {
+        finish(job);
+      }
+    });
+  }
+
+  private synchronized void finish(final QueuedJob job) {
+    this.numRunningJobs--;
+    job.flow.numRunningJobs--;
+    this.numRunningJobsPerType.merge(job.jobType, -1, Integer::sum);
+    if (job.flow.numRunningJobs == 0 && job.flow.queue.isEmpty()) {
+      this.flowJobs.remove(job.flow.execId);
+    }
+    if (this.isShutdown && this.numQueuedJobs == 0) {
+      this.threadPool.shutdown();
+    } else {
+      startJobs();
+    }
+  }
+
+  private static class FlowJobs {
+
+    private final int execId;
+    private final int maxRunningJobs;
+    private final ArrayDeque<QueuedJob> queue = new ArrayDeque<>();
+    private int numRunningJobs = 0;
+
+    private FlowJobs(final int execId, final int maxRunningJobs) {
+      this.execId = execId;
+      this.maxRunningJobs = maxRunningJobs;
+    }
+  }
+
+  private static class QueuedJob {
+
+    private final FlowJobs flow;
+    private final String jobType;
+    private final Runnable runnable;
+    private final long queuedTime = System.currentTimeMillis();
+
+    private QueuedJob(final FlowJobs flow, final String jobType, final Runnable runnable) {
+      this.flow = flow;
+      this.jobType = jobType;
+      this.runnable = runnable;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import azkaban.executor.ExecutorLoader;
+import azkaban.executor.ExecutorManagerException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * Uploads the logs of finished jobs to the DB in the background, so that a job is done as soon as
+ * it ran instead of after its log is uploaded.
+ *
+ * At most maxQueuedUploads uploads wait for a thread. Beyond that the job uploads its log itself,
+ * which slows down jobs rather than letting logs pile up when the DB falls behind. So does every
+ * job once the uploader is shut down. A flow must {@link #awaitUploads(int)} before it finishes,
+ * since the logs of finished flows are read from the DB.
+ */
+public class LogUploader {
+
+  private static final Logger logger = Logger.getLogger(LogUploader.class);
+
+  private final ExecutorLoader executorLoader;
+  private final ThreadPoolExecutor threadPool;
+  // The uploads of the running flows by execution id. Guarded by itself.
+  private final Map<Integer, List<Future<?>>> uploads = new HashMap<>();
+
+  public LogUploader(final ExecutorLoader executorLoader, final int numThreads,
+      final int maxQueuedUploads) {
+    this.executorLoader = executorLoader;
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.threadPool = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(maxQueuedUploads), runnable -> {
+      final Thread thread = new Thread(runnable, "azk-log-upload-" + threadCount.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }, (runnable, executor) -> runnable.run());
+    logger.info("Uploading job logs with " + numThreads + " threads, at most "
+        + maxQueuedUploads + " queued");
+  }
+
+  /**
+   * Uploads the log files of a job, like {@link ExecutorLoader#uploadLogFile(int, String, int,
+   * File...)}.
+   *
+   * @param errorLogger where upload errors are logged, besides the server log
+   */
+  public void upload(final int execId, final String name, final int attempt, final File[] files,
+      final Logger errorLogger) {
+    final Future<?> upload = this.threadPool.submit(() -> {
+      try {
+        this.executorLoader.uploadLogFile(execId, name, attempt, files);
+      } catch (final ExecutorManagerException e) {
+        logger.error("Error uploading logs of " + name + " of exec " + execId, e);
+        if (errorLogger != null) {
+          errorLogger.error("Error writing out logs for job " + name, e);
+        }
+      }
+    });
+    synchronized (this.uploads) {
+      final List<Future<?>> flowUploads =
+          this.uploads.computeIfAbsent(execId, k -> new ArrayList<>());
+      flowUploads.removeIf(Future::isDone);
+      flowUploads.add(upload);
+    }
+  }
+
+  /**
+   * Waits for the log uploads of the execution to finish.
+   */
+  public void awaitUploads(final int execId) throws InterruptedException {
+    final List<Future<?>> flowUploads;
+    synchronized (this.uploads) {
+      flowUploads = this.uploads.remove(execId);
+    }
+    if (flowUploads == null) {
+      return;
+    }
+    for (final Future<?> upload : flowUploads) {
+      try {
+        upload.get();
+      } catch (final ExecutionException e) {
+        logger.error("Error uploading logs of exec " + execId, e.getCause());
+      }
+    }
+  }
+
+  public int getNumQueuedUploads() {
+    return this.threadPool.getQueue().size();
+  }
+
+  /**
+   * Stops taking uploads. The queued ones still run.
+   */
+  public void shutdown() {
+    this.threadPool.shutdown();
+  }
+}
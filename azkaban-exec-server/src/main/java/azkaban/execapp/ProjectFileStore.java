@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.log4j.Logger;
+
+/**
+ * Content addressed store of the files of installed projects.
+ *
+ * Every file extracted from a project zip is kept once in the store, named after the SHA-256 of
+ * its content, and the project directory gets a hard link to it. Files that didn't change between
+ * two versions of a project, typically most of the jars, take disk space once and aren't written
+ * again when the new version is installed.
+ *
+ * Every link shares the one copy of the content, including the links execution directories get
+ * to the project files, so stored files are read-only: a job rewriting a project file in place
+ * would otherwise change it for every project and execution using the same content. A job can
+ * still replace the file in its execution directory, which only unlinks its own copy.
+ *
+ * A stored file is garbage once the store holds the only link to it, i.e. no installed project and
+ * no execution directory refers to it anymore.
+ */
+class ProjectFileStore {
+
+  private static final Logger log = Logger.getLogger(ProjectFileStore.class);
+
+  private final File storeDir;
+  private final AtomicLong size = new AtomicLong();
+  // Held for reading while a file is stored and linked, so that it isn't removed in between.
+  private final ReadWriteLock linkLock = new ReentrantReadWriteLock();
+
+  ProjectFileStore(final File storeDir) {
+    this.storeDir = storeDir;
+    this.storeDir.mkdirs();
+    for (final File file : listFiles()) {
+      // files stored by older versions may still be writable
+      makeReadOnly(file);
+      this.size.addAndGet(file.length());
+    }
+  }
+
+  /**
+   * Total size of the stored files in bytes.
+   */
+  long getSize() {
+    return this.size.get();
+  }
+
+  /**
+   * Extracts a zip into a directory. Entries whose content is already stored are only linked, new
+   * ones are added to the store first.
+   */
+  void unzip(final ZipFile zip, final File destDir) throws IOException {
+    final Enumeration<? extends ZipEntry> entries = zip.entries();
+    while (entries.hasMoreElements()) {
+      final ZipEntry entry = entries.nextElement();
+      final File newFile = new File(destDir, entry.getName());
+      if (entry.isDirectory()) {
+        newFile.mkdirs();
+      } else {
+        newFile.getParentFile().mkdirs();
+        this.linkLock.readLock().lock();
+        try {
+          final File storedFile = store(zip, entry);
+          try {
+            Files.createLink(newFile.toPath(), storedFile.toPath());
+          } catch (final UnsupportedOperationException | FileSystemException e) {
+            // no hard links on this file system, or too many links to the file
+            Files.copy(storedFile.toPath(), newFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+          }
+        } finally {
+          this.linkLock.readLock().unlock();
+        }
+      }
+    }
+  }
+
+  /**
+   * Deletes the stored files nothing links to anymore.
+   *
+   * @return the number of bytes freed
+   */
+  long removeUnlinked() {
+    this.linkLock.writeLock().lock();
+    try {
+      return removeUnlinkedFiles();
+    } finally {
+      this.linkLock.writeLock().unlock();
+    }
+  }
+
+  private long removeUnlinkedFiles() {
+    long freed = 0;
+    for (final File file : listFiles()) {
+      try {
+        final int numLinks = (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+        final long length = file.length();
+        if (numLinks <= 1 && file.delete()) {
+          this.size.addAndGet(-length);
+          freed += length;
+        }
+      } catch (final UnsupportedOperationException | IllegalArgumentException e) {
+        log.warn("Link counts aren't available, project files can't be removed from the store");
+        break;
+      } catch (final IOException e) {
+        log.warn("Failed to check links of stored project file " + file, e);
+      }
+    }
+    return freed;
+  }
+
+  private File store(final ZipFile zip, final ZipEntry entry) throws IOException {
+    // The entry is read twice when it's new. Decompressing is much cheaper than writing files
+    // that are already there, which is the common case.
+    final String hash;
+    try (DigestInputStream in = new DigestInputStream(zip.getInputStream(entry), newDigest())) {
+      IOUtils.copy(in, NullOutputStream.NULL_OUTPUT_STREAM);
+      hash = toHex(in.getMessageDigest().digest());
+    }
+
+    final File storedFile = new File(this.storeDir, hash);
+    if (storedFile.exists()) {
+      return storedFile;
+    }
+
+    final File tempFile = File.createTempFile("_temp.", "." + hash, this.storeDir);
+    try {
+      try (InputStream in = zip.getInputStream(entry)) {
+        Files.copy(in, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      makeReadOnly(tempFile);
+      Files.move(tempFile.toPath(), storedFile.toPath());
+      this.size.addAndGet(storedFile.length());
+    } catch (final FileAlreadyExistsException e) {
+      // stored concurrently by another installation
+    } finally {
+      Files.deleteIfExists(tempFile.toPath());
+    }
+    return storedFile;
+  }
+
+  private static void makeReadOnly(final File file) {
+    if (!file.setWritable(false, false)) {
+      log.warn("Failed to make stored project file " + file + " read-only");
+    }
+  }
+
+  private File[] listFiles() {
+    final File[] files = this.storeDir.listFiles(file -> !file.getName().startsWith("_temp."));
+    return files == null ? new File[0] : files;
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      // every JVM has SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(final byte[] bytes) {
+    final StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (final byte b : bytes) {
+      builder.append(String.format("%02x", b));
+    }
+    return builder.toString();
+  }
+}
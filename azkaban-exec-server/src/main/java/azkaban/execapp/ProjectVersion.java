@@ -19,6 +19,7 @@ package azkaban.execapp;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 
 
 public class ProjectVersion implements Comparable<ProjectVersion> {
@@ -27,6 +28,13 @@ public class ProjectVersion implements Comparable<ProjectVersion> {
   private final int version;
 
   private File installedDir;
+  // Number of flows using this version and when it was last used. Guarded by the installed
+  // projects map of FlowPreparer.
+  private int refCount = 0;
+  private long lastAccessTime = 0;
+  // Installation of the version shared by the flows waiting for it, null until one starts it.
+  // Guarded by the installed projects map of FlowPreparer.
+  private CompletableFuture<Void> preparation;
 
   public ProjectVersion(final int projectId, final int version) {
     checkArgument(projectId > 0);
@@ -57,6 +65,31 @@ public class ProjectVersion implements Comparable<ProjectVersion> {
     this.installedDir = installedDir;
   }
 
+  public int getRefCount() {
+    return this.refCount;
+  }
+
+  public void incrementRefCount() {
+    this.refCount++;
+    this.lastAccessTime = System.currentTimeMillis();
+  }
+
+  public void decrementRefCount() {
+    this.refCount--;
+  }
+
+  public long getLastAccessTime() {
+    return this.lastAccessTime;
+  }
+
+  public CompletableFuture<Void> getPreparation() {
+    return this.preparation;
+  }
+
+  public void setPreparation(final CompletableFuture<Void> preparation) {
+    this.preparation = preparation;
+  }
+
   @Override
   public int compareTo(final ProjectVersion o) {
     if (this.projectId == o.projectId) {
@@ -211,7 +211,8 @@ public class ServerStatisticsServlet extends HttpServlet {
     final AzkabanExecutorServer server = AzkabanExecutorServer.getApp();
     if (server != null) {
       final FlowRunnerManager runnerMgr = AzkabanExecutorServer.getApp().getFlowRunnerManager();
-      final int assignedFlows = runnerMgr.getNumRunningFlows() + runnerMgr.getNumQueuedFlows();
+      final int assignedFlows = runnerMgr.getNumRunningFlows() + runnerMgr.getNumQueuedFlows()
+          + runnerMgr.getNumReservedSlots();
       stats.setRemainingFlowCapacity(runnerMgr.getMaxNumRunningFlows() - assignedFlows);
       stats.setNumberOfAssignedFlows(assignedFlows);
       stats.setLastDispatchedTime(runnerMgr.getLastFlowSubmittedTime());
@@ -17,17 +17,34 @@
 
 package azkaban.execapp;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import azkaban.executor.ExecutableFlow;
 import azkaban.project.ProjectFileHandler;
+import azkaban.project.ProjectManagerException;
 import azkaban.storage.StorageManager;
 import azkaban.utils.Pair;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -93,4 +110,150 @@ public class FlowPreparerTest {
     assertTrue(execDir.exists());
     assertTrue(new File(execDir, SAMPLE_FLOW_01).exists());
   }
+
+  @Test
+  public void testExecutionCanReplaceButNotWriteProjectFiles() throws Exception {
+    final ExecutableFlow executableFlow = mock(ExecutableFlow.class);
+    when(executableFlow.getExecutionId()).thenReturn(12345);
+    when(executableFlow.getProjectId()).thenReturn(12);
+    when(executableFlow.getVersion()).thenReturn(34);
+    this.instance.setup(executableFlow);
+
+    final File execDir = new File(this.executionsDir, "12345");
+    final File execFile = FileUtils.listFiles(execDir, null, true).iterator().next();
+    final Path relativePath = execDir.toPath().relativize(execFile.toPath());
+    final File installedFile = new File(this.projectsDir, "12.34/" + relativePath);
+    final String content = FileUtils.readFileToString(installedFile, StandardCharsets.UTF_8);
+    // Checked on the permissions, as root could write to the file anyway.
+    assertThat(Files.getPosixFilePermissions(execFile.toPath())).doesNotContain(
+        PosixFilePermission.OWNER_WRITE, PosixFilePermission.GROUP_WRITE,
+        PosixFilePermission.OTHERS_WRITE);
+
+    Files.delete(execFile.toPath());
+    FileUtils.writeStringToFile(execFile, "changed by the job", StandardCharsets.UTF_8);
+    assertThat(FileUtils.readFileToString(installedFile, StandardCharsets.UTF_8))
+        .isEqualTo(content);
+  }
+
+  @Test
+  public void testPreparationErrorReleasesWaitingFlows() throws Exception {
+    final CountDownLatch setupStarted = new CountDownLatch(1);
+    final CountDownLatch failSetup = new CountDownLatch(1);
+    final FlowPreparer preparer = new FlowPreparer(null, this.executionsDir, this.projectsDir,
+        this.installedProjects) {
+      @Override
+      void setupProject(final ProjectVersion pv) {
+        setupStarted.countDown();
+        Uninterruptibles.awaitUninterruptibly(failSetup);
+        throw new NoClassDefFoundError("azkaban/Missing");
+      }
+    };
+
+    final ProjectVersion pv = new ProjectVersion(12, 34);
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final Future<?> owner = executor.submit(() -> {
+        preparer.prepareProject(pv);
+        return null;
+      });
+      setupStarted.await();
+      final Future<?> waiter = executor.submit(() -> {
+        preparer.prepareProject(pv);
+        return null;
+      });
+      failSetup.countDown();
+
+      assertThatThrownBy(() -> owner.get(5, TimeUnit.SECONDS))
+          .hasCauseInstanceOf(NoClassDefFoundError.class);
+      // the waiting flow fails too, or sets the version up itself if it came late
+      try {
+        waiter.get(5, TimeUnit.SECONDS);
+      } catch (final ExecutionException e) {
+        assertThat(e.getCause()).isInstanceOfAny(ProjectManagerException.class,
+            NoClassDefFoundError.class);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testPrepareProjectOncePerVersion() throws Exception {
+    final AtomicInteger numSetups = new AtomicInteger();
+    final CountDownLatch setupStarted = new CountDownLatch(1);
+    final CountDownLatch finishSetup = new CountDownLatch(1);
+    final FlowPreparer preparer = new FlowPreparer(null, this.executionsDir, this.projectsDir,
+        this.installedProjects) {
+      @Override
+      void setupProject(final ProjectVersion pv) {
+        numSetups.incrementAndGet();
+        setupStarted.countDown();
+        Uninterruptibles.awaitUninterruptibly(finishSetup);
+      }
+    };
+
+    final ProjectVersion pv = new ProjectVersion(12, 34);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(() -> {
+          preparer.prepareProject(pv);
+          return null;
+        }));
+      }
+      setupStarted.await();
+      finishSetup.countDown();
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(numSetups.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFailedPreparationIsRetried() throws Exception {
+    final AtomicInteger numSetups = new AtomicInteger();
+    final FlowPreparer preparer = new FlowPreparer(null, this.executionsDir, this.projectsDir,
+        this.installedProjects) {
+      @Override
+      void setupProject(final ProjectVersion pv) {
+        if (numSetups.incrementAndGet() == 1) {
+          throw new IllegalStateException("download failed");
+        }
+      }
+    };
+
+    final ProjectVersion pv = new ProjectVersion(12, 34);
+    try {
+      preparer.prepareProject(pv);
+    } catch (final IllegalStateException e) {
+      // expected
+    }
+    preparer.prepareProject(pv);
+    preparer.prepareProject(pv);
+    assertThat(numSetups.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testPrepareProjectAheadOfExecution() throws Exception {
+    final AtomicInteger numSetups = new AtomicInteger();
+    final FlowPreparer preparer = new FlowPreparer(null, this.executionsDir, this.projectsDir,
+        this.installedProjects) {
+      @Override
+      void setupProject(final ProjectVersion pv) {
+        numSetups.incrementAndGet();
+      }
+    };
+
+    preparer.prepareProject(12, 34);
+    final ProjectVersion pv = this.installedProjects.get(new Pair<>(12, 34));
+    assertThat(pv.getRefCount()).isEqualTo(0);
+
+    // executions of the version don't install it again
+    preparer.prepareProject(pv);
+    assertThat(numSetups.get()).isEqualTo(1);
+  }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import azkaban.execapp.jmx.JmxJobMBeanManager;
+import azkaban.executor.ExecutableFlow;
+import azkaban.executor.ExecutableNode;
+import azkaban.executor.MockExecutorLoader;
+import azkaban.executor.Status;
+import azkaban.flow.Edge;
+import azkaban.flow.Flow;
+import azkaban.flow.Node;
+import azkaban.jobtype.JobTypeManager;
+import azkaban.project.Project;
+import azkaban.project.ProjectLoader;
+import azkaban.test.Utils;
+import azkaban.utils.Props;
+import java.io.File;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs a synthetic layered flow of no-op jobs through the hand off from finished jobs to the jobs
+ * depending on them. Raise WIDTH and DEPTH, e.g. to 100 each, to measure the hand off of a large
+ * flow.
+ */
+public class FlowRunnerLargeDagTest {
+
+  private static final Logger logger = Logger.getLogger(FlowRunnerLargeDagTest.class);
+
+  private static final int WIDTH = 10;
+  private static final int DEPTH = 10;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File workingDir;
+
+  /**
+   * Creates layers of WIDTH jobs, each depending on two jobs of the layer before, and a job
+   * depending on the whole last layer.
+   */
+  private static Flow createFlow() {
+    final Flow flow = new Flow("large");
+    for (int layer = 0; layer < DEPTH; layer++) {
+      for (int i = 0; i < WIDTH; i++) {
+        flow.addNode(createNode(jobId(layer, i)));
+        if (layer > 0) {
+          flow.addEdge(new Edge(jobId(layer - 1, i), jobId(layer, i)));
+          flow.addEdge(new Edge(jobId(layer - 1, (i + 1) % WIDTH), jobId(layer, i)));
+        }
+      }
+    }
+    flow.addNode(createNode("end"));
+    for (int i = 0; i < WIDTH; i++) {
+      flow.addEdge(new Edge(jobId(DEPTH - 1, i), "end"));
+    }
+    flow.initialize();
+    return flow;
+  }
+
+  private static Node createNode(final String id) {
+    final Node node = new Node(id);
+    node.setType("noop");
+    node.setJobSource("noop.job");
+    return node;
+  }
+
+  private static String jobId(final int layer, final int i) {
+    return "job-" + layer + "-" + i;
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    this.workingDir = this.temporaryFolder.newFolder();
+    FileUtils.writeStringToFile(new File(this.workingDir, "noop.job"), "type=noop");
+    Utils.initServiceProvider();
+    JmxJobMBeanManager.getInstance().initialize(new Props());
+  }
+
+  @Test(timeout = 60 * 1000)
+  public void testRunLargeDag() throws Exception {
+    final ExecutableFlow exFlow = new ExecutableFlow(new Project(1, "testProject"), createFlow());
+    exFlow.setExecutionId(1);
+    exFlow.setExecutionPath(this.workingDir.getPath());
+    final MockExecutorLoader executorLoader = new MockExecutorLoader();
+    executorLoader.uploadExecutableFlow(exFlow);
+    final FlowRunner runner = new FlowRunner(exFlow, executorLoader,
+        mock(ProjectLoader.class), new JobTypeManager(null, null, getClass().getClassLoader()),
+        new Props(), null);
+
+    final long start = System.nanoTime();
+    runner.run();
+    final long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+    final int numJobs = exFlow.getExecutableNodes().size();
+    logger.info(String.format("Ran %d no-op jobs in %d ms, %.3f ms per job", numJobs, elapsedMs,
+        (double) elapsedMs / numJobs));
+    assertThat(numJobs).isEqualTo(WIDTH * DEPTH + 1);
+    assertThat(exFlow.getStatus()).isEqualTo(Status.SUCCEEDED);
+    for (final ExecutableNode node : exFlow.getExecutableNodes()) {
+      assertThat(node.getStatus()).as(node.getId()).isEqualTo(Status.SUCCEEDED);
+      // a job is handed off to only once all the jobs it depends on finished
+      for (final String inNodeId : node.getInNodes()) {
+        assertThat(node.getStartTime()).as(node.getId())
+            .isGreaterThanOrEqualTo(exFlow.getExecutableNode(inNodeId).getEndTime());
+      }
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import azkaban.executor.ExecutableFlow;
+import azkaban.executor.ExecutorManagerException;
+import azkaban.executor.MockExecutorLoader;
+import azkaban.utils.Props;
+import java.io.File;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FlowRunnerManagerTest {
+
+  private final File executionsDir = new File("executions");
+  private final File projectsDir = new File("projects");
+  private CountingExecutorLoader executorLoader;
+
+  @Before
+  public void setUp() throws Exception {
+    tearDown();
+    this.executorLoader = new CountingExecutorLoader();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(this.executionsDir);
+    FileUtils.deleteDirectory(this.projectsDir);
+  }
+
+  private FlowRunnerManager createManager(final long reservationTimeoutMs) throws Exception {
+    final Props props = new Props();
+    props.put("azkaban.execution.dir", this.executionsDir.getPath());
+    props.put("azkaban.project.dir", this.projectsDir.getPath());
+    props.put("executor.use.bounded.threadpool.queue", "true");
+    props.put("executor.flow.threads", "1");
+    props.put("executor.threadpool.workqueue.size", "1");
+    props.put("executor.slot.reservation.timeout.ms", String.valueOf(reservationTimeoutMs));
+    return new FlowRunnerManager(props, this.executorLoader, null, null, null, null);
+  }
+
+  @Test
+  public void testReserveSlot() throws Exception {
+    final FlowRunnerManager manager = createManager(60 * 1000);
+    assertThat(manager.getNumAvailableSlots()).isEqualTo(2);
+
+    assertThat(manager.reserveSlot(1)).isTrue();
+    assertThat(manager.reserveSlot(2)).isTrue();
+    assertThat(manager.reserveSlot(3)).isFalse();
+    // reserving again only refreshes the reservation
+    assertThat(manager.reserveSlot(1)).isTrue();
+    assertThat(manager.getNumAvailableSlots()).isEqualTo(0);
+    assertThat(manager.getNumReservedSlots()).isEqualTo(2);
+  }
+
+  @Test
+  public void testReservationExpires() throws Exception {
+    final FlowRunnerManager manager = createManager(50);
+    assertThat(manager.reserveSlot(1)).isTrue();
+    assertThat(manager.reserveSlot(2)).isTrue();
+    assertThat(manager.reserveSlot(3)).isFalse();
+
+    Thread.sleep(100);
+    assertThat(manager.reserveSlot(3)).isTrue();
+    assertThat(manager.getNumReservedSlots()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSubmitWithoutSlotIsRejectedBeforeLoading() throws Exception {
+    final FlowRunnerManager manager = createManager(60 * 1000);
+    manager.reserveSlot(1);
+    manager.reserveSlot(2);
+
+    assertThatThrownBy(() -> manager.submitFlow(3))
+        .isInstanceOf(ExecutorManagerException.class);
+    assertThat(this.executorLoader.numFetches).isEqualTo(0);
+  }
+
+  @Test
+  public void testFailedSubmitReleasesReservation() throws Exception {
+    final FlowRunnerManager manager = createManager(60 * 1000);
+    manager.reserveSlot(1);
+
+    // the loader has no flow to return
+    assertThatThrownBy(() -> manager.submitFlow(1))
+        .isInstanceOf(ExecutorManagerException.class);
+    assertThat(this.executorLoader.numFetches).isEqualTo(1);
+    assertThat(manager.getNumReservedSlots()).isEqualTo(0);
+    assertThat(manager.getNumAvailableSlots()).isEqualTo(2);
+  }
+
+  private static class CountingExecutorLoader extends MockExecutorLoader {
+
+    private int numFetches = 0;
+
+    @Override
+    public ExecutableFlow fetchExecutableFlow(final int execId) {
+      this.numFetches++;
+      return null;
+    }
+  }
+}
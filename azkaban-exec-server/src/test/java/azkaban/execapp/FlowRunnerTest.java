@@ -23,6 +23,10 @@ import azkaban.executor.ExecutionOptions.FailureAction;
 import azkaban.executor.InteractiveTestJob;
 import azkaban.executor.Status;
 import azkaban.spi.EventType;
+import azkaban.utils.Props;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -40,7 +44,7 @@ public class FlowRunnerTest extends FlowRunnerTestBase {
   public void exec1Normal() throws Exception {
     final EventCollectorListener eventCollector = new EventCollectorListener();
     eventCollector.setEventFilterOut(EventType.JOB_FINISHED,
-        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED);
+        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED, EventType.FLOW_STATUS_CHANGED);
     this.runner = this.testUtil.createFromFlowFile(eventCollector, "exec1");
 
     FlowRunnerTestUtil.startThread(this.runner);
@@ -63,11 +67,37 @@ public class FlowRunnerTest extends FlowRunnerTestBase {
     eventCollector.assertEvents(EventType.FLOW_STARTED, EventType.FLOW_FINISHED);
   }
 
+  @Test
+  public void exec1NormalOnSharedJobPool() throws Exception {
+    final Props props = new Props();
+    props.put("executor.max.running.jobs", "1");
+    final JobThreadPool jobThreadPool = FlowRunnerManager.createJobThreadPool(props);
+    this.runner = this.testUtil.createFromFlowFile("exec1").setJobThreadPool(jobThreadPool);
+
+    FlowRunnerTestUtil.startThread(this.runner);
+    // The jobs run one at a time, in whatever order the pool picks them.
+    final Set<String> waitingJobs = new HashSet<>(Arrays.asList("job3", "job4", "job6"));
+    while (!waitingJobs.isEmpty()) {
+      final String job = waitForRunningJob(waitingJobs);
+      Assert.assertEquals(1, jobThreadPool.getNumRunningJobs());
+      InteractiveTestJob.getTestJob(job).succeedJob();
+      waitingJobs.remove(job);
+    }
+
+    waitForAndAssertFlowStatus(Status.SUCCEEDED);
+    assertThreadShutDown();
+    Assert.assertTrue(this.runner.isThreadPoolShutdown());
+    for (final ExecutableNode node : this.runner.getExecutableFlow().getExecutableNodes()) {
+      Assert.assertEquals(node.getId(), Status.SUCCEEDED, node.getStatus());
+    }
+    jobThreadPool.shutdown();
+  }
+
   @Test
   public void exec1Disabled() throws Exception {
     final EventCollectorListener eventCollector = new EventCollectorListener();
     eventCollector.setEventFilterOut(EventType.JOB_FINISHED,
-        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED);
+        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED, EventType.FLOW_STATUS_CHANGED);
 
     this.runner = this.testUtil.createFromFlowFile(eventCollector, "exec1");
     final ExecutableFlow exFlow = this.runner.getExecutableFlow();
@@ -106,7 +136,7 @@ public class FlowRunnerTest extends FlowRunnerTestBase {
   public void exec1Failed() throws Exception {
     final EventCollectorListener eventCollector = new EventCollectorListener();
     eventCollector.setEventFilterOut(EventType.JOB_FINISHED,
-        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED);
+        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED, EventType.FLOW_STATUS_CHANGED);
 
     this.runner = this.testUtil.createFromFlowFile(eventCollector, "exec2");
 
@@ -135,7 +165,7 @@ public class FlowRunnerTest extends FlowRunnerTestBase {
   public void exec1FailedKillAll() throws Exception {
     final EventCollectorListener eventCollector = new EventCollectorListener();
     eventCollector.setEventFilterOut(EventType.JOB_FINISHED,
-        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED);
+        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED, EventType.FLOW_STATUS_CHANGED);
     final ExecutionOptions options = new ExecutionOptions();
     options.setFailureAction(FailureAction.CANCEL_ALL);
 
@@ -166,7 +196,7 @@ public class FlowRunnerTest extends FlowRunnerTestBase {
   public void exec1FailedFinishRest() throws Exception {
     final EventCollectorListener eventCollector = new EventCollectorListener();
     eventCollector.setEventFilterOut(EventType.JOB_FINISHED,
-        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED);
+        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED, EventType.FLOW_STATUS_CHANGED);
     final ExecutionOptions options = new ExecutionOptions();
     options.setFailureAction(FailureAction.FINISH_ALL_POSSIBLE);
     this.runner = this.testUtil.createFromFlowFile("exec3", eventCollector, options);
@@ -195,7 +225,7 @@ public class FlowRunnerTest extends FlowRunnerTestBase {
   public void execAndCancel() throws Exception {
     final EventCollectorListener eventCollector = new EventCollectorListener();
     eventCollector.setEventFilterOut(EventType.JOB_FINISHED,
-        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED);
+        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED, EventType.FLOW_STATUS_CHANGED);
     this.runner = this.testUtil.createFromFlowFile(eventCollector, "exec1");
 
     FlowRunnerTestUtil.startThread(this.runner);
@@ -230,7 +260,7 @@ public class FlowRunnerTest extends FlowRunnerTestBase {
   public void execRetries() throws Exception {
     final EventCollectorListener eventCollector = new EventCollectorListener();
     eventCollector.setEventFilterOut(EventType.JOB_FINISHED,
-        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED);
+        EventType.JOB_STARTED, EventType.JOB_STATUS_CHANGED, EventType.FLOW_STATUS_CHANGED);
     this.runner = this.testUtil.createFromFlowFile(eventCollector, "exec4-retry");
 
     FlowRunnerTestUtil.startThread(this.runner);
@@ -246,6 +276,20 @@ public class FlowRunnerTest extends FlowRunnerTestBase {
     waitForAndAssertFlowStatus(Status.FAILED);
   }
 
+  private String waitForRunningJob(final Set<String> jobs) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (System.currentTimeMillis() < deadline) {
+      for (final String job : jobs) {
+        if (this.runner.getExecutableFlow().getExecutableNodePath(job).getStatus()
+            == Status.RUNNING) {
+          return job;
+        }
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("None of " + jobs + " started");
+  }
+
   private void assertAttempts(final String name, final int attempt) {
     final ExecutableNode node = this.runner.getExecutableFlow().getExecutableNode(name);
     if (node.getAttempt() != attempt) {
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.executor.ExecutableFlow;
+import azkaban.executor.MockExecutorLoader;
+import azkaban.executor.Status;
+import azkaban.flow.Flow;
+import azkaban.project.Project;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class FlowStatePersisterTest {
+
+  private final RecordingExecutorLoader loader = new RecordingExecutorLoader();
+
+  private static ExecutableFlow createFlow(final int execId) {
+    final ExecutableFlow flow = new ExecutableFlow(new Project(1, "project"), new Flow("flow"));
+    flow.setExecutionId(execId);
+    flow.setStatus(Status.RUNNING);
+    return flow;
+  }
+
+  @Test
+  public void testWritesEveryUpdateWithoutWindow() {
+    final FlowStatePersister persister = new FlowStatePersister(this.loader, 0);
+    final ExecutableFlow flow = createFlow(1);
+    persister.persist(flow);
+    persister.persist(flow);
+    assertThat(this.loader.writes).hasSize(2);
+  }
+
+  @Test
+  public void testCoalescesUpdatesWithinWindow() throws Exception {
+    final FlowStatePersister persister = new FlowStatePersister(this.loader, 100);
+    final ExecutableFlow flow1 = createFlow(1);
+    final ExecutableFlow flow2 = createFlow(2);
+    for (int i = 0; i < 10; i++) {
+      persister.persist(flow1);
+      persister.persist(flow2);
+    }
+    assertThat(this.loader.writes).isEmpty();
+
+    Thread.sleep(500);
+    assertThat(this.loader.writes).containsExactlyInAnyOrder(1, 2);
+    assertThat(persister.getNumUpdates()).isEqualTo(20);
+    assertThat(persister.getNumRowsWritten()).isEqualTo(2);
+    assertThat(persister.getNumBytesWritten()).isEqualTo(2 * RecordingExecutorLoader.SIZE);
+  }
+
+  @Test
+  public void testCoalescedWriteHoldsStateLock() throws Exception {
+    final FlowStatePersister persister = new FlowStatePersister(this.loader, 10);
+    final ExecutableFlow flow = createFlow(1);
+    final Object stateLock = new Object();
+    synchronized (stateLock) {
+      persister.persist(flow, stateLock);
+      // the flow is still being changed
+      Thread.sleep(200);
+      assertThat(this.loader.writes).isEmpty();
+    }
+
+    Thread.sleep(500);
+    assertThat(this.loader.writes).containsExactly(1);
+  }
+
+  @Test
+  public void testSlowWriteDoesNotHoldStateLock() throws Exception {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch releaseWrite = new CountDownLatch(1);
+    final MockExecutorLoader slowLoader = new MockExecutorLoader() {
+      @Override
+      public long updateExecutableFlow(final ExecutableFlow flow) {
+        writing.countDown();
+        try {
+          releaseWrite.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return RecordingExecutorLoader.SIZE;
+      }
+    };
+    final FlowStatePersister persister = new FlowStatePersister(slowLoader, 10);
+    final ExecutableFlow flow = createFlow(1);
+    final Object stateLock = new Object();
+    persister.persist(flow, stateLock);
+    assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+    // a job reports back to the runner while the flow is being stored
+    final CountDownLatch jobEvent = new CountDownLatch(1);
+    final Thread jobThread = new Thread(() -> {
+      synchronized (stateLock) {
+        flow.setUpdateTime(System.currentTimeMillis());
+      }
+      jobEvent.countDown();
+    });
+    jobThread.start();
+    try {
+      assertThat(jobEvent.await(5, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      releaseWrite.countDown();
+      jobThread.join();
+    }
+    // the write is counted once the loader returns, on the scheduler thread
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (persister.getNumRowsWritten() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    persister.shutdown();
+    assertThat(persister.getNumRowsWritten()).isEqualTo(1);
+  }
+
+  @Test
+  public void testWritesFinishedFlowImmediately() {
+    final FlowStatePersister persister = new FlowStatePersister(this.loader, 60 * 1000);
+    final ExecutableFlow flow = createFlow(1);
+    persister.persist(flow);
+    persister.persist(flow);
+    flow.setStatus(Status.SUCCEEDED);
+    persister.persist(flow);
+
+    assertThat(this.loader.writes).containsExactly(1);
+    assertThat(persister.getRowsPerFlow().getCount()).isEqualTo(1);
+    assertThat(persister.getBytesPerFlow().getSnapshot().getMax())
+        .isEqualTo(RecordingExecutorLoader.SIZE);
+  }
+
+  @Test
+  public void testShutdownWritesPendingUpdates() {
+    final FlowStatePersister persister = new FlowStatePersister(this.loader, 60 * 1000);
+    persister.persist(createFlow(1));
+    persister.shutdown();
+    assertThat(this.loader.writes).containsExactly(1);
+  }
+
+  @Test
+  public void testWritesFlowDataOnlyAtStartAndFinishWithNodeRows() {
+    final FlowStatePersister persister = new FlowStatePersister(this.loader, 0, true);
+    final ExecutableFlow flow = createFlow(1);
+    persister.persist(flow);
+    persister.persist(flow);
+    persister.persist(flow);
+    flow.setStatus(Status.FAILED);
+    persister.persist(flow);
+
+    assertThat(this.loader.writes).containsExactly(1, 1);
+    assertThat(this.loader.statusWrites).containsExactly(1, 1);
+    assertThat(persister.getNumRowsWritten()).isEqualTo(4);
+    assertThat(persister.getNumBytesWritten()).isEqualTo(2 * RecordingExecutorLoader.SIZE);
+  }
+
+  private static class RecordingExecutorLoader extends MockExecutorLoader {
+
+    private static final long SIZE = 100;
+    private final List<Integer> writes = new ArrayList<>();
+    private final List<Integer> statusWrites = new ArrayList<>();
+
+    @Override
+    public synchronized long updateExecutableFlow(final ExecutableFlow flow) {
+      this.writes.add(flow.getExecutionId());
+      return SIZE;
+    }
+
+    @Override
+    public synchronized void updateExecutableFlowStatus(final ExecutableFlow flow) {
+      this.statusWrites.add(flow.getExecutionId());
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import azkaban.project.ProjectLoader;
+import azkaban.utils.Props;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobPropsCacheTest {
+
+  private ProjectLoader projectLoader;
+  private JobPropsCache cache;
+
+  private static Props createProps(final String source, final String value) {
+    final Props props = new Props();
+    props.setSource(source);
+    props.put("key", value);
+    return props;
+  }
+
+  @Before
+  public void setUp() {
+    this.projectLoader = mock(ProjectLoader.class);
+    this.cache = new JobPropsCache(this.projectLoader, 100);
+  }
+
+  @Test
+  public void testLoadsPropsOncePerVersion() throws Exception {
+    final AtomicInteger numLoads = new AtomicInteger();
+    final Props props1 = this.cache.getProps(1, 1, "a.job", () -> {
+      numLoads.incrementAndGet();
+      return createProps("a.job", "value");
+    });
+    props1.put("key", "changed");
+    final Props props2 = this.cache.getProps(1, 1, "a.job", () -> {
+      numLoads.incrementAndGet();
+      return createProps("a.job", "other");
+    });
+
+    assertThat(numLoads.get()).isEqualTo(1);
+    assertThat(props2.get("key")).isEqualTo("value");
+    assertThat(props2.getSource()).isEqualTo("a.job");
+
+    this.cache.getProps(1, 2, "a.job", () -> {
+      numLoads.incrementAndGet();
+      return createProps("a.job", "value");
+    });
+    assertThat(numLoads.get()).isEqualTo(2);
+    assertThat(this.cache.getProps(1, 3, "a.job", () -> null)).isNull();
+  }
+
+  @Test
+  public void testFetchesJobOverridesAgainWhenModified() throws Exception {
+    final Map<String, Props> overrides = new HashMap<>();
+    overrides.put("a.jor", createProps("a.jor", "value1"));
+    when(this.projectLoader.fetchProjectPropertiesModifiedTime(1, 1, ".jor")).thenReturn(100L);
+    when(this.projectLoader.fetchProjectProperties(1, 1, ".jor")).thenReturn(overrides);
+
+    assertThat(this.cache.getJobOverrides(1, 1)).containsOnlyKeys("a.jor");
+    assertThat(this.cache.getJobOverrides(1, 1).get("a.jor").get("key")).isEqualTo("value1");
+    verify(this.projectLoader, times(1)).fetchProjectProperties(1, 1, ".jor");
+
+    overrides.put("a.jor", createProps("a.jor", "value2"));
+    when(this.projectLoader.fetchProjectPropertiesModifiedTime(1, 1, ".jor")).thenReturn(200L);
+    assertThat(this.cache.getJobOverrides(1, 1).get("a.jor").get("key")).isEqualTo("value2");
+    verify(this.projectLoader, times(2)).fetchProjectProperties(1, 1, ".jor");
+    // the other properties of the version are never read
+    verify(this.projectLoader, times(0)).fetchProjectProperties(1, 1);
+  }
+
+  @Test
+  public void testNoJobOverrides() throws Exception {
+    assertThat(this.cache.getJobOverrides(1, 1)).isEmpty();
+    verify(this.projectLoader, times(0)).fetchProjectProperties(1, 1, ".jor");
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class JobThreadPoolTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+  private JobThreadPool pool;
+
+  @After
+  public void tearDown() {
+    this.release.countDown();
+    this.pool.shutdownNow();
+  }
+
+  private Runnable job(final String id) {
+    return () -> {
+      this.started.add(id);
+      try {
+        this.release.await();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+  }
+
+  private void waitForStarted(final int numJobs) throws InterruptedException {
+    for (int i = 0; i < 500 && this.started.size() < numJobs; i++) {
+      Thread.sleep(10);
+    }
+    // give the pool a chance to start more jobs than it should
+    Thread.sleep(50);
+  }
+
+  @Test
+  public void testLimitsRunningJobs() throws Exception {
+    this.pool = new JobThreadPool(2, ImmutableMap.of());
+    for (int i = 0; i < 5; i++) {
+      this.pool.submit(1, 10, "command", job("job" + i));
+    }
+    waitForStarted(2);
+
+    assertThat(this.started).containsExactlyInAnyOrder("job0", "job1");
+    assertThat(this.pool.getNumRunningJobs()).isEqualTo(2);
+    assertThat(this.pool.getNumQueuedJobs()).isEqualTo(3);
+  }
+
+  @Test
+  public void testLimitsRunningJobsPerFlowAndType() throws Exception {
+    this.pool = new JobThreadPool(10, ImmutableMap.of("hadoop", 1));
+    this.pool.submit(1, 1, "command", job("flow1-job0"));
+    this.pool.submit(1, 1, "command", job("flow1-job1"));
+    this.pool.submit(2, 10, "hadoop", job("flow2-hadoop0"));
+    this.pool.submit(2, 10, "hadoop", job("flow2-hadoop1"));
+    this.pool.submit(2, 10, "command", job("flow2-job0"));
+    waitForStarted(3);
+
+    assertThat(this.started)
+        .containsExactlyInAnyOrder("flow1-job0", "flow2-hadoop0", "flow2-job0");
+    assertThat(this.pool.getNumQueuedJobs()).isEqualTo(2);
+  }
+
+  @Test
+  public void testFlowsTakeTurns() throws Exception {
+    this.pool = new JobThreadPool(1, ImmutableMap.of());
+    final CountDownLatch blocker = new CountDownLatch(1);
+    this.pool.submit(0, 1, "command", () -> {
+      try {
+        blocker.await();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    for (int i = 0; i < 3; i++) {
+      this.pool.submit(1, 10, "command", () -> this.started.add("flow1"));
+    }
+    for (int i = 0; i < 3; i++) {
+      this.pool.submit(2, 10, "command", () -> this.started.add("flow2"));
+    }
+    blocker.countDown();
+    waitForStarted(6);
+
+    assertThat(this.started)
+        .containsExactly("flow1", "flow2", "flow1", "flow2", "flow1", "flow2");
+    assertThat(this.pool.getQueueTimes().getCount()).isEqualTo(7);
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void testRejectsJobsAfterShutdown() {
+    this.pool = new JobThreadPool(1, ImmutableMap.of());
+    this.pool.shutdown();
+    this.pool.submit(1, 1, "command", job("job"));
+  }
+
+  @Test
+  public void testRunsQueuedJobsAfterShutdown() throws Exception {
+    this.pool = new JobThreadPool(1, ImmutableMap.of());
+    final CountDownLatch done = new CountDownLatch(3);
+    for (int i = 0; i < 3; i++) {
+      this.pool.submit(1, 1, "command", done::countDown);
+    }
+    this.pool.shutdown();
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+}
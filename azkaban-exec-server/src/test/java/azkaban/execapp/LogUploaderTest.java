@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.executor.ExecutorManagerException;
+import azkaban.executor.MockExecutorLoader;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LogUploaderTest {
+
+  private final CountDownLatch uploadStarted = new CountDownLatch(1);
+  private final CountDownLatch canUpload = new CountDownLatch(1);
+  private final List<String> started = new CopyOnWriteArrayList<>();
+  private final List<String> uploaded = new CopyOnWriteArrayList<>();
+  private final Map<String, String> uploadThreads = new ConcurrentHashMap<>();
+  private LogUploader logUploader;
+
+  @Before
+  public void setUp() {
+    this.logUploader = new LogUploader(new BlockingExecutorLoader(), 1, 1);
+  }
+
+  @After
+  public void tearDown() {
+    this.canUpload.countDown();
+    this.logUploader.shutdown();
+  }
+
+  @Test
+  public void testAwaitUploadsWaitsForUploads() throws Exception {
+    this.logUploader.upload(1, "job1", 0, new File[0], null);
+    assertThat(this.uploadStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+    final Thread awaiting = new Thread(() -> {
+      try {
+        this.logUploader.awaitUploads(1);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    awaiting.start();
+    awaiting.join(100);
+    assertThat(awaiting.isAlive()).isTrue();
+    assertThat(this.uploaded).isEmpty();
+
+    this.canUpload.countDown();
+    awaiting.join(10000);
+    assertThat(awaiting.isAlive()).isFalse();
+    assertThat(this.uploaded).containsExactly("job1");
+  }
+
+  @Test
+  public void testUploadsInCallerWhenQueueIsFull() throws Exception {
+    this.logUploader.upload(1, "job1", 0, new File[0], null);
+    assertThat(this.uploadStarted.await(10, TimeUnit.SECONDS)).isTrue();
+    this.logUploader.upload(1, "job2", 0, new File[0], null);
+    assertThat(this.logUploader.getNumQueuedUploads()).isEqualTo(1);
+
+    // The only thread is busy and the queue is full, so this one can't be handed off.
+    final Thread caller = new Thread(() -> this.logUploader.upload(2, "job3", 0, new File[0], null),
+        "upload-caller");
+    caller.start();
+    while (!this.started.contains("job3")) {
+      assertThat(caller.isAlive()).isTrue();
+      Thread.sleep(10);
+    }
+    this.canUpload.countDown();
+    caller.join(10000);
+    assertThat(this.uploadThreads.get("job3")).isEqualTo("upload-caller");
+
+    this.logUploader.awaitUploads(1);
+    assertThat(this.uploaded).contains("job1", "job2", "job3");
+  }
+
+  private class BlockingExecutorLoader extends MockExecutorLoader {
+
+    @Override
+    public void uploadLogFile(final int execId, final String name, final int attempt,
+        final File... files) throws ExecutorManagerException {
+      LogUploaderTest.this.started.add(name);
+      LogUploaderTest.this.uploadStarted.countDown();
+      try {
+        LogUploaderTest.this.canUpload.await();
+      } catch (final InterruptedException e) {
+        throw new ExecutorManagerException(e);
+      }
+      LogUploaderTest.this.uploadThreads.put(name, Thread.currentThread().getName());
+      LogUploaderTest.this.uploaded.add(name);
+    }
+  }
+}
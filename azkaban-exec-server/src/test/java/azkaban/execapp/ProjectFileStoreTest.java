@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProjectFileStoreTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private ProjectFileStore store;
+
+  @Before
+  public void setUp() throws Exception {
+    this.store = new ProjectFileStore(this.temp.newFolder("store"));
+  }
+
+  private ZipFile createZip(final String name, final String... entries) throws Exception {
+    final File zipFile = this.temp.newFile(name);
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+      for (int i = 0; i < entries.length; i += 2) {
+        out.putNextEntry(new ZipEntry(entries[i]));
+        out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+      }
+    }
+    return new ZipFile(zipFile);
+  }
+
+  @Test
+  public void testUnchangedFilesAreShared() throws Exception {
+    final File v1 = this.temp.newFolder("1.1");
+    final File v2 = this.temp.newFolder("1.2");
+    try (ZipFile zip = createZip("v1.zip", "lib/a.jar", "aaaa", "flow.job", "type=command")) {
+      this.store.unzip(zip, v1);
+    }
+    try (ZipFile zip = createZip("v2.zip", "lib/a.jar", "aaaa", "flow.job", "type=noop")) {
+      this.store.unzip(zip, v2);
+    }
+
+    assertThat(FileUtils.readFileToString(new File(v2, "flow.job"))).isEqualTo("type=noop");
+    assertThat(Files.isSameFile(new File(v1, "lib/a.jar").toPath(),
+        new File(v2, "lib/a.jar").toPath())).isTrue();
+    assertThat(Files.isSameFile(new File(v1, "flow.job").toPath(),
+        new File(v2, "flow.job").toPath())).isFalse();
+    assertThat(this.store.getSize())
+        .isEqualTo("aaaa".length() + "type=command".length() + "type=noop".length());
+  }
+
+  @Test
+  public void testStoredFilesAreReadOnly() throws Exception {
+    final File v1 = this.temp.newFolder("1.1");
+    try (ZipFile zip = createZip("v1.zip", "lib/a.jar", "aaaa")) {
+      this.store.unzip(zip, v1);
+    }
+
+    // the permissions are the shared file's, so no link can be used to write to it
+    final Set<PosixFilePermission> permissions =
+        Files.getPosixFilePermissions(new File(v1, "lib/a.jar").toPath());
+    assertThat(permissions).doesNotContain(PosixFilePermission.OWNER_WRITE,
+        PosixFilePermission.GROUP_WRITE, PosixFilePermission.OTHERS_WRITE);
+    assertThat(permissions).contains(PosixFilePermission.OWNER_READ);
+  }
+
+  @Test
+  public void testRemoveUnlinked() throws Exception {
+    final File v1 = this.temp.newFolder("1.1");
+    final File v2 = this.temp.newFolder("1.2");
+    try (ZipFile zip = createZip("v1.zip", "a.jar", "aaaa", "b.jar", "bb")) {
+      this.store.unzip(zip, v1);
+    }
+    try (ZipFile zip = createZip("v2.zip", "a.jar", "aaaa")) {
+      this.store.unzip(zip, v2);
+    }
+    assertThat(this.store.removeUnlinked()).isEqualTo(0);
+
+    FileUtils.deleteDirectory(v1);
+    assertThat(this.store.removeUnlinked()).isEqualTo(2);
+    assertThat(this.store.getSize()).isEqualTo(4);
+    assertThat(FileUtils.readFileToString(new File(v2, "a.jar"))).isEqualTo("aaaa");
+
+    FileUtils.deleteDirectory(v2);
+    assertThat(this.store.removeUnlinked()).isEqualTo(4);
+    assertThat(this.store.getSize()).isEqualTo(0);
+  }
+}
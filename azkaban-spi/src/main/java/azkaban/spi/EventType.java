@@ -6,6 +6,7 @@ package azkaban.spi;
 public enum EventType {
   FLOW_STARTED,
   FLOW_FINISHED,
+  FLOW_STATUS_CHANGED,
   JOB_STARTED,
   JOB_FINISHED,
   JOB_STATUS_CHANGED,
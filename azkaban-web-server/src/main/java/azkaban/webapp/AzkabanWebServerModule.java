@@ -17,6 +17,8 @@
 
 package azkaban.webapp;
 
+import azkaban.executor.ExecutorManager;
+import azkaban.executor.RunningFlowLookup;
 import azkaban.scheduler.ScheduleLoader;
 import azkaban.scheduler.TriggerBasedScheduleLoader;
 import azkaban.user.UserManager;
@@ -49,6 +51,7 @@ public class AzkabanWebServerModule extends AbstractModule {
   protected void configure() {
     bind(Server.class).toProvider(WebServerProvider.class);
     bind(ScheduleLoader.class).to(TriggerBasedScheduleLoader.class);
+    bind(RunningFlowLookup.class).to(ExecutorManager.class);
   }
 
   @Inject
@@ -28,6 +28,7 @@ import azkaban.executor.ExecutionOptions.FailureAction;
 import azkaban.executor.Executor;
 import azkaban.executor.ExecutorManagerAdapter;
 import azkaban.executor.ExecutorManagerException;
+import azkaban.executor.LogStreamHandler;
 import azkaban.executor.Status;
 import azkaban.flow.Flow;
 import azkaban.flow.FlowUtils;
@@ -44,6 +45,7 @@ import azkaban.user.User;
 import azkaban.user.UserManager;
 import azkaban.utils.ExternalLinkUtils;
 import azkaban.utils.FileIOUtils.LogData;
+import azkaban.utils.LogSearcher;
 import azkaban.utils.Pair;
 import azkaban.utils.Props;
 import azkaban.webapp.AzkabanWebServer;
@@ -55,10 +57,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.log4j.Logger;
 
@@ -68,6 +73,8 @@ public class ExecutorServlet extends LoginAbstractAzkabanServlet {
   private static final Logger LOGGER =
       Logger.getLogger(ExecutorServlet.class.getName());
   private static final long serialVersionUID = 1L;
+  private static final int DEFAULT_LOG_SEARCH_MATCHES = 100;
+  private static final int MAX_LOG_SEARCH_MATCHES = 1000;
   private WebMetrics webMetrics;
   private ProjectManager projectManager;
   private ExecutorManagerAdapter executorManager;
@@ -137,6 +144,17 @@ public class ExecutorServlet extends LoginAbstractAzkabanServlet {
           ajaxFetchExecFlowLogs(req, resp, ret, session.getUser(), exFlow);
         } else if (ajaxName.equals("fetchExecJobLogs")) {
           ajaxFetchJobLogs(req, resp, ret, session.getUser(), exFlow);
+        } else if (ajaxName.equals("streamExecFlowLogs")
+            || ajaxName.equals("streamExecJobLogs")) {
+          if (ajaxStreamLogs(req, resp, ret, session.getUser(), exFlow,
+              ajaxName.equals("streamExecJobLogs"))) {
+            // the log itself is the response
+            return;
+          }
+        } else if (ajaxName.equals("searchExecFlowLogs")
+            || ajaxName.equals("searchExecJobLogs")) {
+          ajaxSearchLogs(req, ret, session.getUser(), exFlow,
+              ajaxName.equals("searchExecJobLogs"));
         } else if (ajaxName.equals("fetchExecJobStats")) {
           ajaxFetchJobStats(req, resp, ret, session.getUser(), exFlow);
         } else if (ajaxName.equals("retryFailedJobs")) {
@@ -567,6 +585,154 @@ public class ExecutorServlet extends LoginAbstractAzkabanServlet {
     }
   }
 
+  /**
+   * Finds the lines of the flow log or a job log that match the query, from the offset on, so that
+   * users needn't page through a whole log to find something in it. A job log is searched in the
+   * given attempt, or in all attempts of the job from their start if no attempt is given. The bytes
+   * scanned per request are bounded, so a search of a large log may need several requests.
+   */
+  private void ajaxSearchLogs(final HttpServletRequest req, final HashMap<String, Object> ret,
+      final User user, final ExecutableFlow exFlow, final boolean isJobLog)
+      throws ServletException {
+    final Project project =
+        getProjectAjaxByPermission(ret, exFlow.getProjectId(), user, Type.READ);
+    if (project == null) {
+      return;
+    }
+
+    final Pattern pattern;
+    try {
+      pattern = LogSearcher.compile(getParam(req, "query"),
+          HttpRequestUtils.getBooleanParam(req, "regex", false),
+          HttpRequestUtils.getBooleanParam(req, "ignoreCase", false));
+    } catch (final PatternSyntaxException e) {
+      ret.put("error", "Invalid query: " + e.getMessage());
+      return;
+    }
+    final long offset = this.getLongParam(req, "offset", 0);
+    final int maxMatches = Math.min(
+        this.getIntParam(req, "maxMatches", DEFAULT_LOG_SEARCH_MATCHES), MAX_LOG_SEARCH_MATCHES);
+
+    try {
+      if (!isJobLog) {
+        ret.putAll(toEscapedObject(
+            this.executorManager.searchExecutableFlowLog(exFlow, pattern, offset, maxMatches)));
+        return;
+      }
+
+      final String jobId = this.getParam(req, "jobId");
+      final ExecutableNode node = exFlow.getExecutableNodePath(jobId);
+      if (node == null) {
+        ret.put("error",
+            "Job " + jobId + " doesn't exist in " + exFlow.getExecutionId());
+        return;
+      }
+      final List<Object> attempts = new ArrayList<>();
+      if (hasParam(req, "attempt")) {
+        final int attempt = this.getIntParam(req, "attempt");
+        attempts.add(toAttemptObject(attempt, this.executorManager.searchExecutionJobLog(exFlow,
+            jobId, attempt, pattern, offset, maxMatches, LogSearcher.MAX_SEARCH_BYTES)));
+      } else {
+        // The attempts share the matches and bytes of one request. An attempt that isn't
+        // searched to its end ends the request, and the next request continues it.
+        int remainingMatches = maxMatches;
+        long remainingBytes = LogSearcher.MAX_SEARCH_BYTES;
+        for (int attempt = 0; attempt <= node.getAttempt(); attempt++) {
+          if (remainingBytes <= 0) {
+            attempts.add(toAttemptObject(attempt,
+                new LogSearcher.Result(new ArrayList<>(), 0, false)));
+            break;
+          }
+          final LogSearcher.Result result = this.executorManager.searchExecutionJobLog(exFlow,
+              jobId, attempt, pattern, 0, remainingMatches, remainingBytes);
+          attempts.add(toAttemptObject(attempt, result));
+          if (!result.isComplete()) {
+            break;
+          }
+          remainingMatches -= result.getMatches().size();
+          remainingBytes -= result.getEndOffset();
+        }
+      }
+      ret.put("attempts", attempts);
+    } catch (final IllegalArgumentException e) {
+      ret.put("error", "Invalid query: " + e.getMessage());
+    } catch (final ExecutorManagerException e) {
+      throw new ServletException(e);
+    }
+  }
+
+  private static Map<String, Object> toAttemptObject(final int attempt,
+      final LogSearcher.Result result) {
+    final Map<String, Object> attemptResult = toEscapedObject(result);
+    attemptResult.put("attempt", attempt);
+    return attemptResult;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> toEscapedObject(final LogSearcher.Result result) {
+    final Map<String, Object> resultObj = result.toObject();
+    for (final Object match : (List<Object>) resultObj.get("matches")) {
+      final Map<String, Object> matchObj = (Map<String, Object>) match;
+      matchObj.put("line", StringEscapeUtils.escapeHtml((String) matchObj.get("line")));
+    }
+    return resultObj;
+  }
+
+  /**
+   * Answers with the raw bytes of a range of the flow or a job log, with the offset and length of
+   * the range in headers. The log of a running execution is passed on from the executor as it
+   * arrives, without reading it into memory or encoding it as JSON.
+   *
+   * @return false if the request failed before anything was written and the error is in ret.
+   */
+  private boolean ajaxStreamLogs(final HttpServletRequest req,
+      final HttpServletResponse resp, final HashMap<String, Object> ret, final User user,
+      final ExecutableFlow exFlow, final boolean isJobLog) throws ServletException {
+    final long startMs = System.currentTimeMillis();
+    final Project project =
+        getProjectAjaxByPermission(ret, exFlow.getProjectId(), user, Type.READ);
+    if (project == null) {
+      return false;
+    }
+
+    final long offset = this.getLongParam(req, "offset");
+    final int length = this.getIntParam(req, "length");
+    final LogStreamHandler handler = (logOffset, logLength, data) -> {
+      resp.setContentType("text/plain");
+      resp.setCharacterEncoding("utf-8");
+      resp.setHeader(ConnectorParams.LOG_OFFSET_HEADER, String.valueOf(logOffset));
+      resp.setHeader(ConnectorParams.LOG_LENGTH_HEADER, String.valueOf(logLength));
+      resp.setContentLength(logLength);
+      IOUtils.copyLarge(data, resp.getOutputStream());
+    };
+
+    try {
+      if (isJobLog) {
+        final String jobId = this.getParam(req, "jobId");
+        final ExecutableNode node = exFlow.getExecutableNodePath(jobId);
+        if (node == null) {
+          ret.put("error",
+              "Job " + jobId + " doesn't exist in " + exFlow.getExecutionId());
+          return false;
+        }
+        final int attempt = this.getIntParam(req, "attempt", node.getAttempt());
+        this.executorManager.streamExecutionJobLog(exFlow, jobId, offset, length, attempt,
+            handler);
+      } else {
+        this.executorManager.streamExecutableFlowLog(exFlow, offset, length, handler);
+        this.webMetrics.setFetchLogLatency(System.currentTimeMillis() - startMs);
+      }
+    } catch (final ExecutorManagerException e) {
+      if (!resp.isCommitted()) {
+        ret.put("error", e.getMessage());
+        return false;
+      }
+      // too late to answer with the error
+      LOGGER.error("Error streaming log of execution " + exFlow.getExecutionId(), e);
+    }
+    return true;
+  }
+
   private void ajaxFetchJobStats(final HttpServletRequest req,
       final HttpServletResponse resp, final HashMap<String, Object> ret, final User user,
       final ExecutableFlow exFlow) throws ServletException {
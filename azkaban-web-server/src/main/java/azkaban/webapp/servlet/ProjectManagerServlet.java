@@ -1710,9 +1710,14 @@ public class ProjectManagerServlet extends LoginAbstractAzkabanServlet {
         IOUtils.copy(item.getInputStream(), out);
         out.close();
 
+        final int previousVersion = project.getVersion();
         final Map<String, ValidationReport> reports =
             this.projectManager.uploadProject(project, archiveFile, type, user,
                 props);
+        if (project.getVersion() != previousVersion) {
+          // the new version passed validation and was stored
+          this.executorManager.prepareProject(project.getId(), project.getVersion());
+        }
         final StringBuffer errorMsgs = new StringBuffer();
         final StringBuffer warnMsgs = new StringBuffer();
         for (final Entry<String, ValidationReport> reportEntry : reports.entrySet()) {
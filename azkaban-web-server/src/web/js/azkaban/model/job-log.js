@@ -30,7 +30,7 @@ azkaban.JobLogModel = Backbone.Model.extend({
       var requestData = {
         "execid": execId,
         "jobId": jobId,
-        "ajax": "fetchExecJobLogs",
+        "ajax": "streamExecJobLogs",
         "offset": this.get("offset"),
         "length": 50000,
         "attempt": attempt
@@ -38,18 +38,22 @@ azkaban.JobLogModel = Backbone.Model.extend({
 
       var self = this;
 
-      var successHandler = function (data) {
+      // The log comes as plain text with its offset and length in headers. Errors come as JSON
+      // without the headers.
+      var successHandler = function (data, status, xhr) {
         console.log("fetchLogs");
-        if (data.error) {
-          console.log(data.error);
+        var offset = xhr.getResponseHeader("Azkaban-Log-Offset");
+        var length = xhr.getResponseHeader("Azkaban-Log-Length");
+        if (offset == null || length == null) {
+          console.log(data);
           finished = true;
         }
-        else if (data.length == 0) {
+        else if (parseInt(length) == 0) {
           finished = true;
         }
         else {
-          self.set("offset", data.offset + data.length);
-          self.set("logData", self.get("logData") + data.data);
+          self.set("offset", parseInt(offset) + parseInt(length));
+          self.set("logData", self.get("logData") + _.escape(data));
         }
       }
 
@@ -58,7 +62,7 @@ azkaban.JobLogModel = Backbone.Model.extend({
         type: "get",
         async: false,
         data: requestData,
-        dataType: "json",
+        dataType: "text",
         error: function (data) {
           console.log(data);
           finished = true;
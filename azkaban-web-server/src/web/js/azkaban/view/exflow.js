@@ -327,25 +327,30 @@ azkaban.FlowLogView = Backbone.View.extend({
       url: requestURL,
       data: {
         "execid": execId,
-        "ajax": "fetchExecFlowLogs",
+        "ajax": "streamExecFlowLogs",
         "offset": offset,
         "length": 50000
       },
-      success: function (data) {
+      dataType: "text",
+      success: function (data, status, xhr) {
         console.log("fetchLogs");
-        if (data.error) {
-          console.log(data.error);
+        // The log comes as plain text with its offset and length in headers. Errors come as JSON
+        // without the headers.
+        var logOffset = xhr.getResponseHeader("Azkaban-Log-Offset");
+        var logLength = xhr.getResponseHeader("Azkaban-Log-Length");
+        if (logOffset == null || logLength == null) {
+          console.log(data);
         }
         else {
           var log = $("#logSection").text();
           if (!log) {
-            log = data.data;
+            log = data;
           }
           else {
-            log += data.data;
+            log += data;
           }
 
-          var newOffset = data.offset + data.length;
+          var newOffset = parseInt(logOffset) + parseInt(logLength);
 
           $("#logSection").text(log);
           model.set({"offset": newOffset, "log": log});